@@ -1,9 +1,5 @@
 package de.mpa.algorithms.quantification;
 
-import java.util.ArrayList;
-
-import com.compomics.util.experiment.biology.Enzyme;
-
 import de.mpa.client.model.dbsearch.ProteinHit;
 
 /**
@@ -19,21 +15,6 @@ public class ExponentiallyModifiedProteinAbundanceIndex implements QuantMethod {
 	public void calculate(Object... obj) {
 		
 		ProteinHit proteinHit = (ProteinHit) obj[0];
-		// Constructur enzyme
-		// 1. id, the enzyme id which should be OMSSA compatible
-		// 2. name, the name of the enzym
-		// 3. aminoAcidBefore, the amino-acids which can be found before the cleavage
-		// 4. restrictionBefore, amino-acids which should not be found before the cleavage
-		// 5. aminoAcidAfter, the amino-acids which should be found after the cleavage
-		// 6. restrictionAfter, the amino-acids which should not be found after the cleavage
-		Enzyme trypsin = new Enzyme(1, "Trypsin", "RK" , "", "", "P");
-
-		// Call digest
-		// @param sequence              the protein sequence
-		// @param nMissedCleavages      the allowed number of missed cleavages
-		// @param nMin                  the minimal size for a peptide
-		// @param nMax                  the maximal size for a peptide
-		ArrayList<String> insilicoPeptides = new ArrayList<String>();
 		//	Remove missed-cleaved peptides from calculation.
 		if (proteinHit.getSequence() != null && proteinHit.getSequence().length() > 0) {
 			String str = proteinHit.getSequence();
@@ -43,10 +24,10 @@ public class ExponentiallyModifiedProteinAbundanceIndex implements QuantMethod {
 				str = str.substring(0, str.length() - 1);
 			}
 			  
-			insilicoPeptides= trypsin.digest(str, 0, 4, 1000);
 			double pAI;
 			double peptideObserved = proteinHit.getPeptideCount();
-			double peptideObservable = insilicoPeptides.size();
+			// Count fully cleaved tryptic peptides of 4 to 1000 residues
+			double peptideObservable = InSilicoDigester.TRYPSIN.countPeptides(str);
 			// Calculates the PAI
 			pAI = peptideObserved / peptideObservable;
 
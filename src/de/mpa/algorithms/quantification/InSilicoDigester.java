@@ -0,0 +1,159 @@
+package de.mpa.algorithms.quantification;
+
+import java.nio.CharBuffer;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.compomics.util.experiment.biology.Enzyme;
+
+/**
+ * Counts the distinct peptides observable after in-silico digestion of protein
+ * sequences. The cleavage rules of the wrapped enzyme are tabulated per
+ * amino acid pair, peptides are compared as views on the protein sequence
+ * without creating substrings and counts are cached per protein sequence.
+ *
+ * @author A. Behne
+ */
+public class InSilicoDigester {
+
+	/**
+	 * Digester for fully cleaved tryptic peptides of 4 to 1000 residues.
+	 */
+	public static final InSilicoDigester TRYPSIN =
+			new InSilicoDigester(new Enzyme(1, "Trypsin", "RK", "", "", "P"), 4, 1000);
+
+	/**
+	 * The maximum number of cached peptide counts.
+	 */
+	private static final int MAX_CACHE_SIZE = 100000;
+
+	/**
+	 * The enzyme providing the cleavage rules.
+	 */
+	private final Enzyme enzyme;
+
+	/**
+	 * The minimum peptide length.
+	 */
+	private final int minLength;
+
+	/**
+	 * The maximum peptide length.
+	 */
+	private final int maxLength;
+
+	/**
+	 * The lazily filled cleavage site table for pairs of ASCII residues. Values
+	 * are <code>0</code> for unknown, <code>1</code> for no cleavage and
+	 * <code>2</code> for cleavage.
+	 */
+	private final byte[] cleavageSites = new byte[128 * 128];
+
+	/**
+	 * The peptide counts keyed by protein sequence, least recently used entries
+	 * are evicted first.
+	 */
+	private final Map<String, Integer> counts =
+			new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Entry<String, Integer> eldest) {
+			return this.size() > MAX_CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Constructs a digester counting peptides of the specified enzyme within
+	 * the specified length range. Missed cleavages are not considered.
+	 * @param enzyme the enzyme
+	 * @param minLength the minimum peptide length
+	 * @param maxLength the maximum peptide length
+	 */
+	public InSilicoDigester(Enzyme enzyme, int minLength, int maxLength) {
+		this.enzyme = enzyme;
+		this.minLength = minLength;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Returns the number of distinct peptides within the length range of this
+	 * digester obtained from digesting the specified protein sequence.
+	 * @param sequence the protein sequence
+	 * @return the number of observable peptides
+	 */
+	public int countPeptides(String sequence) {
+		Integer count;
+		synchronized (counts) {
+			count = counts.get(sequence);
+		}
+		if (count == null) {
+			count = this.digest(sequence);
+			synchronized (counts) {
+				counts.put(sequence, count);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Digests the specified protein sequence and counts the distinct peptides
+	 * within the length range.
+	 * @param sequence the protein sequence
+	 * @return the number of observable peptides
+	 */
+	private int digest(String sequence) {
+		int length = sequence.length();
+		if (length == 0) {
+			return 0;
+		}
+		Set<CharBuffer> peptides = new HashSet<CharBuffer>();
+		int start = 0;
+		for (int i = 1; i < length; i++) {
+			if (this.isCleavageSite(sequence.charAt(i - 1), sequence.charAt(i))) {
+				this.addPeptide(sequence, start, i, peptides);
+				start = i;
+			}
+		}
+		this.addPeptide(sequence, start, length, peptides);
+		return peptides.size();
+	}
+
+	/**
+	 * Adds the specified region of the protein sequence to the set of peptides
+	 * if its length lies within the length range.
+	 * @param sequence the protein sequence
+	 * @param start the start index (inclusive)
+	 * @param end the end index (exclusive)
+	 * @param peptides the set of peptides
+	 */
+	private void addPeptide(String sequence, int start, int end, Set<CharBuffer> peptides) {
+		int length = end - start;
+		if ((length >= minLength) && (length <= maxLength)) {
+			peptides.add(CharBuffer.wrap(sequence, start, end));
+		}
+	}
+
+	/**
+	 * Returns whether the enzyme cleaves between the specified residues.
+	 * @param before the residue before the cleavage site
+	 * @param after the residue after the cleavage site
+	 * @return <code>true</code> if the enzyme cleaves, <code>false</code> otherwise
+	 */
+	private boolean isCleavageSite(char before, char after) {
+		if ((before >= 128) || (after >= 128)) {
+			return enzyme.isCleavageSite(before, after);
+		}
+		int index = (before << 7) | after;
+		byte site = cleavageSites[index];
+		if (site == 0) {
+			site = (byte) (enzyme.isCleavageSite(before, after) ? 2 : 1);
+			cleavageSites[index] = site;
+		}
+		return (site == 2);
+	}
+
+}
@@ -1,5 +1,6 @@
 package de.mpa.algorithms.quantification;
 
+import java.util.Collection;
 import java.util.Map;
 
 import de.mpa.client.model.dbsearch.PeptideHit;
@@ -28,38 +29,59 @@ public class NormalizedSpectralAbundanceFactor implements QuantMethod {
 		ProteinHit proteinHitOfInterest = (ProteinHit) params[1];
 
 		// Calculate the number of spectrum matches weighted by sequence length for all proteins
-		double protSum = 0.0;
-		for ( ProteinHit proteinHit : proteinHitMap.values()) {
-			double pepSum = 0.0;
-			for ( PeptideHit peptideHit : proteinHit.getPeptideHitList()) {
-				pepSum += peptideHit.getSpectralCount();
-			}
-			// Check for missing protein sequence 
-				if (proteinHit.getSequence() != null && proteinHit.getSequence().length() > 0 ) {
-					protSum += pepSum / proteinHit.getSequence().length();
-				}
-				
+		double protSum = calculateDenominator(proteinHitMap.values());
+
+		// Calculate  NSAF
+		nSAF = calculate(proteinHitOfInterest, protSum);
+	}
+
+	/**
+	 * Calculates the NSAF of the specified protein hit using a pre-calculated
+	 * sum of length-weighted spectral counts.
+	 * @param proteinHit the protein hit
+	 * @param protSum the sum of length-weighted spectral counts of all proteins
+	 * @return the NSAF or <code>0.0</code> if the protein sequence is missing
+	 * @see #calculateDenominator(Collection)
+	 */
+	public static double calculate(ProteinHit proteinHit, double protSum) {
+		// Check for no protein sequence 
+		String sequence = proteinHit.getSequence();
+		if (sequence != null && sequence.length() > 0) {
+			return getWeightedSpectralCount(proteinHit) / protSum;
+		}
+		return 0.0;
+	}
 
+	/**
+	 * Calculates the sum of length-weighted spectral counts of the specified
+	 * protein hits, i.e. the shared denominator of their NSAF values.
+	 * @param proteinHits the protein hits
+	 * @return the sum of length-weighted spectral counts
+	 */
+	public static double calculateDenominator(Collection<ProteinHit> proteinHits) {
+		double protSum = 0.0;
+		for (ProteinHit proteinHit : proteinHits) {
+			protSum += getWeightedSpectralCount(proteinHit);
 		}
+		return protSum;
+	}
 
-		// Calculate the number of spectrum matches weighted by sequence length for protein of interest
-		double protOfInterestSum = 0.0;
-		for (PeptideHit peptideHitofInterest : proteinHitOfInterest.getPeptideHitList()) {
-			protOfInterestSum += peptideHitofInterest.getSpectralCount();
+	/**
+	 * Returns the number of spectrum matches of the specified protein hit
+	 * weighted by its sequence length.
+	 * @param proteinHit the protein hit
+	 * @return the weighted spectral count or <code>0.0</code> if the protein sequence is missing
+	 */
+	private static double getWeightedSpectralCount(ProteinHit proteinHit) {
+		// Check for missing protein sequence 
+		String sequence = proteinHit.getSequence();
+		if (sequence == null || sequence.length() == 0) {
+			return 0.0;
 		}
-		
-		// Check for no protein sequence 
-		if (proteinHitOfInterest.getSequence() != null && proteinHitOfInterest.getSequence().length() > 0 ) {
-			protOfInterestSum /= proteinHitOfInterest.getSequence().length();
-			// Calculate  NSAF
-			nSAF = protOfInterestSum / protSum;
-		}else{
-			nSAF = 0.0;
+		double pepSum = 0.0;
+		for (PeptideHit peptideHit : proteinHit.getPeptideHitList()) {
+			pepSum += peptideHit.getSpectralCount();
 		}
-			
-		
-			
-		
-		
+		return pepSum / sequence.length();
 	}
 }
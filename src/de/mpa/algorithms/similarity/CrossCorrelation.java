@@ -27,6 +27,16 @@ public class CrossCorrelation implements SpectrumComparator {
 	 */
 	private Map<Double,Double> peaksSrc;
 	
+	/**
+	 * The auto-correlated source spectrum peaks (array-based variant).
+	 */
+	private SpectrumVector vecSrc = new SpectrumVector();
+	
+	/**
+	 * The re-usable buffer for vectorized spectrum peaks.
+	 */
+	private SpectrumVector vecTrg = new SpectrumVector();
+	
 	/**
 	 * The bin width.
 	 */
@@ -116,6 +126,68 @@ public class CrossCorrelation implements SpectrumComparator {
 		this.similarity = (similarity > 0.0) ? similarity : 0.0;	// cut off negative scores
 	}
 
+	@Override
+	public void prepare(SpectrumVector inputPeaksSrc) {
+		
+		// vectorize input source spectrum
+		peaksSrc = null;
+		vect.vectorize(inputPeaksSrc, trafo, vecTrg);
+		
+		// determine source spectrum magnitude
+		double magSrc = Math.sqrt(vecTrg.getSquaredMagnitude());
+		
+		// apply cross-correlation transformation, gather all offset peaks 
+		// first and merge coinciding positions afterwards
+		vecSrc.clear();
+		vecSrc.ensureCapacity(vecTrg.size() * (2*offsets + 1));
+		for (int i = 0; i < vecTrg.size(); i++) {
+			// normalize intensity
+			double intenSrc = vecTrg.getIntensity(i) / magSrc;
+			for (int tau = -offsets; tau <= offsets; tau++) {
+				if (tau == 0) {
+					vecSrc.add(vecTrg.getMz(i), intenSrc);
+				} else {
+					vecSrc.add(vecTrg.getMz(i) + tau*binWidth, -intenSrc/(2*offsets));
+				}
+			}
+		}
+		vecSrc.consolidate();
+		
+		// determine auto-correlation (squared magnitude, essentially)
+		autoCorr = vecSrc.getSquaredMagnitude();
+	}
+	
+	@Override
+	public void compareTo(SpectrumVector inputPeaksTrg) {
+		
+		// vectorize target spectrum
+		vect.vectorize(inputPeaksTrg, trafo, vecTrg);
+		compareToVectorized(vecTrg);
+	}
+	
+	@Override
+	public void compareToVectorized(SpectrumVector vectPeaksTrg) {
+		
+		double[] mzSrc = vecSrc.getMzArray(), inSrc = vecSrc.getIntensityArray();
+		double[] mzTrg = vectPeaksTrg.getMzArray(), inTrg = vectPeaksTrg.getIntensityArray();
+		int sizeSrc = vecSrc.size(), sizeTrg = vectPeaksTrg.size();
+		
+		// determine target spectrum magnitude
+		double magTrg = Math.sqrt(vectPeaksTrg.getSquaredMagnitude());
+		
+		// calculate dot product by merging both m/z-sorted vectors
+		double numer = 0.0;
+		for (int i = 0, j = 0; j < sizeTrg; j++) {
+			while ((i < sizeSrc) && (mzSrc[i] < mzTrg[j])) i++;
+			if ((i < sizeSrc) && (mzSrc[i] == mzTrg[j]))
+				numer += inSrc[i] * (inTrg[j] / magTrg);
+		}
+		
+		// normalize score using auto-correlation
+		double similarity = numer / autoCorr;
+		this.similarity = (similarity > 0.0) ? similarity : 0.0;	// cut off negative scores
+	}
+
 	@Override
 	public double getSimilarity() {
 		return similarity;
@@ -123,7 +195,7 @@ public class CrossCorrelation implements SpectrumComparator {
 
 	@Override
 	public Map<Double, Double> getSourcePeaks() {
-		return peaksSrc;
+		return (peaksSrc != null) ? peaksSrc : vecSrc.toPeakMap();
 	}
 
 	@Override
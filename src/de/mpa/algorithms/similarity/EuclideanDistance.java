@@ -10,6 +10,8 @@ public class EuclideanDistance implements SpectrumComparator {
 	private Transformation trafo;
 	private Map<Double, Double> peaksSrc;
 	private double magSrc;
+	private SpectrumVector vecSrc = new SpectrumVector();
+	private SpectrumVector vecTrg = new SpectrumVector();
 	private double similarity;
 	
 //	private final double sqrt2 = Math.sqrt(2.0);
@@ -60,6 +62,48 @@ public class EuclideanDistance implements SpectrumComparator {
 		this.similarity = Math.sqrt(distance);
 	}
 
+	@Override
+	public void prepare(SpectrumVector inputPeaksSrc) {
+		
+		// bin source spectrum
+		peaksSrc = null;
+		vect.vectorize(inputPeaksSrc, trafo, vecSrc);
+		
+		// calculate squared magnitude of source intensity vector
+		magSrc = vecSrc.getSquaredMagnitude();
+	}
+	
+	@Override
+	public void compareTo(SpectrumVector inputPeaksTrg) {
+		
+		// bin target spectrum
+		vect.vectorize(inputPeaksTrg, trafo, vecTrg);
+		compareToVectorized(vecTrg);
+	}
+	
+	@Override
+	public void compareToVectorized(SpectrumVector vectPeaksTrg) {
+		
+		double[] mzSrc = vecSrc.getMzArray(), inSrc = vecSrc.getIntensityArray();
+		double[] mzTrg = vectPeaksTrg.getMzArray(), inTrg = vectPeaksTrg.getIntensityArray();
+		int sizeSrc = vecSrc.size(), sizeTrg = vectPeaksTrg.size();
+		
+		// calculate euclidean distance by merging both m/z-sorted vectors
+		double distance = magSrc;
+		for (int i = 0, j = 0; j < sizeTrg; j++) {
+			double intenSrc = 0.0;
+			while ((i < sizeSrc) && (mzSrc[i] < mzTrg[j])) i++;
+			if ((i < sizeSrc) && (mzSrc[i] == mzTrg[j])) {
+				intenSrc = inSrc[i];
+				distance -= intenSrc * intenSrc;
+			}
+			double delta = inTrg[j] - intenSrc;
+			distance += delta * delta;
+		}
+		
+		this.similarity = Math.sqrt(distance);
+	}
+
 	@Override
 	public double getSimilarity() {
 		return similarity;
@@ -67,7 +111,7 @@ public class EuclideanDistance implements SpectrumComparator {
 
 	@Override
 	public Map<Double, Double> getSourcePeaks() {
-		return peaksSrc;
+		return (peaksSrc != null) ? peaksSrc : vecSrc.toPeakMap();
 	}
 
 	@Override
@@ -21,6 +21,16 @@ public class NormalizedDotProduct implements SpectrumComparator {
 	 */
 	private Map<Double, Double> peaksSrc; 
 	
+	/**
+	 * The vectorized peaks of the source spectrum (array-based variant).
+	 */
+	private SpectrumVector vecSrc = new SpectrumVector();
+	
+	/**
+	 * The re-usable buffer for vectorized target spectrum peaks.
+	 */
+	private SpectrumVector vecTrg = new SpectrumVector();
+	
 	/**
 	 * The similarity score between source spectrum and target spectrum.
 	 * Ranges between 0.0 and 1.0.
@@ -74,6 +84,45 @@ public class NormalizedDotProduct implements SpectrumComparator {
 		this.similarity = numer / Math.sqrt(denom1 * denom2);
 	}
 
+	@Override
+	public void prepare(SpectrumVector inputPeaksSrc) {
+		
+		// bin source spectrum
+		peaksSrc = null;
+		vect.vectorize(inputPeaksSrc, trafo, vecSrc);
+		
+		denom1 = vecSrc.getSquaredMagnitude();
+	}
+	
+	@Override
+	public void compareTo(SpectrumVector inputPeaksTrg) {
+		
+		// bin target spectrum
+		vect.vectorize(inputPeaksTrg, trafo, vecTrg);
+		compareToVectorized(vecTrg);
+	}
+	
+	@Override
+	public void compareToVectorized(SpectrumVector vectPeaksTrg) {
+		
+		// calculate dot product by merging both m/z-sorted vectors
+		double[] mzSrc = vecSrc.getMzArray(), inSrc = vecSrc.getIntensityArray();
+		double[] mzTrg = vectPeaksTrg.getMzArray(), inTrg = vectPeaksTrg.getIntensityArray();
+		int sizeSrc = vecSrc.size(), sizeTrg = vectPeaksTrg.size();
+		double numer = 0.0, denom2 = 0.0;
+		for (int i = 0, j = 0; j < sizeTrg; j++) {
+			double intenTrg = inTrg[j];
+			while ((i < sizeSrc) && (mzSrc[i] < mzTrg[j])) i++;
+			if ((i < sizeSrc) && (mzSrc[i] == mzTrg[j])) {
+				numer += inSrc[i] * intenTrg;
+			}
+			denom2 += intenTrg * intenTrg;
+		}
+		
+		// normalize score
+		this.similarity = numer / Math.sqrt(denom1 * denom2);
+	}
+
 	@Override
 	public double getSimilarity() {
 		return similarity;
@@ -81,7 +130,7 @@ public class NormalizedDotProduct implements SpectrumComparator {
 
 	@Override
 	public Map<Double, Double> getSourcePeaks() {
-		return peaksSrc;
+		return (peaksSrc != null) ? peaksSrc : vecSrc.toPeakMap();
 	}
 
 	@Override
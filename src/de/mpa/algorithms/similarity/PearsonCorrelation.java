@@ -21,6 +21,16 @@ public class PearsonCorrelation implements SpectrumComparator {
 	 */
 	private Map<Double, Double> peaksSrc; 
 	
+	/**
+	 * The vectorized peaks of the source spectrum (array-based variant).
+	 */
+	private SpectrumVector vecSrc = new SpectrumVector();
+	
+	/**
+	 * The re-usable buffer for vectorized target spectrum peaks.
+	 */
+	private SpectrumVector vecTrg = new SpectrumVector();
+	
 	/**
 	 * The similarity score between source spectrum and target spectrum.
 	 * Ranges between 0.0 and 1.0.
@@ -103,6 +113,76 @@ public class PearsonCorrelation implements SpectrumComparator {
 		this.similarity = (similarity > 0.0) ? similarity : 0.0;	// cut off negative scores
 	}
 
+	@Override
+	public void prepare(SpectrumVector inputPeaksSrc) {
+		
+		// bin source spectrum
+		peaksSrc = null;
+		vect.vectorize(inputPeaksSrc, trafo, vecSrc);
+		
+		// calculate magnitude and mean intensity
+		double magSrc = 0.0;
+		double meanSrc = 0.0;
+		for (int i = 0; i < vecSrc.size(); i++) {
+			double intenSrc = vecSrc.getIntensity(i);
+			magSrc += intenSrc * intenSrc;
+			meanSrc += intenSrc;
+		}
+		magSrc = Math.sqrt(magSrc);
+		meanSrc /= vecSrc.size();
+		meanSrc /= magSrc;
+		
+		// normalize and center source spectrum peaks
+		denom1 = 0.0;
+		for (int i = 0; i < vecSrc.size(); i++) {
+			double intenSrc = vecSrc.getIntensity(i)/magSrc - meanSrc;
+			vecSrc.setIntensity(i, intenSrc);
+			denom1 += intenSrc * intenSrc;
+		}
+	}
+	
+	@Override
+	public void compareTo(SpectrumVector inputPeaksTrg) {
+		
+		// bin target spectrum
+		vect.vectorize(inputPeaksTrg, trafo, vecTrg);
+		compareToVectorized(vecTrg);
+	}
+	
+	@Override
+	public void compareToVectorized(SpectrumVector vectPeaksTrg) {
+		
+		double[] mzSrc = vecSrc.getMzArray(), inSrc = vecSrc.getIntensityArray();
+		double[] mzTrg = vectPeaksTrg.getMzArray(), inTrg = vectPeaksTrg.getIntensityArray();
+		int sizeSrc = vecSrc.size(), sizeTrg = vectPeaksTrg.size();
+		
+		// calculate magnitude and mean intensity
+		double magTrg = 0.0;
+		double meanTrg = 0.0;
+		for (int j = 0; j < sizeTrg; j++) {
+			magTrg += inTrg[j] * inTrg[j];
+			meanTrg += inTrg[j];
+		}
+		magTrg = Math.sqrt(magTrg);
+		meanTrg /= sizeTrg;
+		meanTrg /= magTrg;
+		
+		// calculate dot product by merging both m/z-sorted vectors
+		double numer = 0.0, denom2 = 0.0;
+		for (int i = 0, j = 0; j < sizeTrg; j++) {
+			double intenTrg = inTrg[j]/magTrg - meanTrg;	// normalize and center
+			while ((i < sizeSrc) && (mzSrc[i] < mzTrg[j])) i++;
+			if ((i < sizeSrc) && (mzSrc[i] == mzTrg[j])) {
+				numer += inSrc[i] * intenTrg;
+			}
+			denom2 += intenTrg * intenTrg;
+		}
+		
+		// normalize score
+		this.similarity = numer / Math.sqrt(denom1 * denom2);
+		this.similarity = (similarity > 0.0) ? similarity : 0.0;	// cut off negative scores
+	}
+
 	@Override
 	public double getSimilarity() {
 		return similarity;
@@ -110,7 +190,7 @@ public class PearsonCorrelation implements SpectrumComparator {
 
 	@Override
 	public Map<Double, Double> getSourcePeaks() {
-		return peaksSrc;
+		return (peaksSrc != null) ? peaksSrc : vecSrc.toPeakMap();
 	}
 
 	@Override
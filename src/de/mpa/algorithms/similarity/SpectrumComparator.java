@@ -7,6 +7,30 @@ public interface SpectrumComparator {
 	public double getSimilarity();
 	public void prepare(Map<Double, Double> inputPeaksSrc);
 	public void compareTo(Map<Double, Double> inputPeaksTrg);
+	
+	/**
+	 * Array-based counterpart of {@link #prepare(Map)}.
+	 * @param inputPeaksSrc the source peaks sorted by ascending m/z
+	 */
+	public void prepare(SpectrumVector inputPeaksSrc);
+	
+	/**
+	 * Array-based counterpart of {@link #compareTo(Map)}. Implementations
+	 * re-use internal buffers, i.e. repeated calls do not allocate memory.
+	 * @param inputPeaksTrg the target peaks sorted by ascending m/z
+	 */
+	public void compareTo(SpectrumVector inputPeaksTrg);
+	
+	/**
+	 * Scores target peaks that have already been vectorized and transformed
+	 * using this comparator's vectorization and transformation methods, e.g.
+	 * pre-processed library spectra.<br>
+	 * Must not be used with vectorization methods depending on the source
+	 * spectrum, like peak matching.
+	 * @param vectPeaksTrg the vectorized target peaks sorted by ascending m/z
+	 */
+	public void compareToVectorized(SpectrumVector vectPeaksTrg);
+	
 	public Map<Double, Double> getSourcePeaks();
 	public Vectorization getVectorization();
 }	
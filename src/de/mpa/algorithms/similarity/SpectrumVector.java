@@ -0,0 +1,395 @@
+package de.mpa.algorithms.similarity;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Compact spectrum representation storing peaks as parallel primitive arrays
+ * of m/z and intensity values sorted by ascending m/z.<br>
+ * Instances are also used as re-usable output buffers of array-based
+ * vectorization methods, in which case the backing arrays only grow when
+ * necessary, i.e. repeated comparisons do not allocate any new objects.
+ *
+ * @author A. Behne
+ */
+public class SpectrumVector {
+
+	/**
+	 * The default initial capacity.
+	 */
+	private static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * The array of m/z values.
+	 */
+	private double[] mz;
+
+	/**
+	 * The array of intensity values.
+	 */
+	private double[] in;
+
+	/**
+	 * The number of peaks stored in the arrays.
+	 */
+	private int size;
+
+	/**
+	 * Constructs an empty spectrum vector using the default initial capacity.
+	 */
+	public SpectrumVector() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs an empty spectrum vector using the specified initial capacity.
+	 * @param capacity the initial capacity
+	 */
+	public SpectrumVector(int capacity) {
+		this.mz = new double[capacity];
+		this.in = new double[capacity];
+		this.size = 0;
+	}
+
+	/**
+	 * Constructs a spectrum vector from the specified peak map.
+	 * @param peaks the map of m/z-intensity pairs
+	 */
+	public SpectrumVector(Map<Double, Double> peaks) {
+		this(peaks.size());
+		for (Entry<Double, Double> peak : peaks.entrySet()) {
+			mz[size] = peak.getKey();
+			in[size] = peak.getValue();
+			size++;
+		}
+		this.consolidate();
+	}
+
+	/**
+	 * Constructs a spectrum vector wrapping the specified m/z and intensity
+	 * arrays. The arrays are used directly and will be re-ordered by m/z if
+	 * necessary.
+	 * @param mzArray the array of m/z values
+	 * @param inArray the array of intensity values
+	 */
+	public SpectrumVector(double[] mzArray, double[] inArray) {
+		this.mz = mzArray;
+		this.in = inArray;
+		this.size = Math.min(mzArray.length, inArray.length);
+		this.consolidate();
+	}
+
+	/**
+	 * Returns the number of peaks.
+	 * @return the number of peaks
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the m/z value of the peak at the specified index.
+	 * @param index the peak index
+	 * @return the m/z value
+	 */
+	public double getMz(int index) {
+		return mz[index];
+	}
+
+	/**
+	 * Returns the intensity value of the peak at the specified index.
+	 * @param index the peak index
+	 * @return the intensity value
+	 */
+	public double getIntensity(int index) {
+		return in[index];
+	}
+
+	/**
+	 * Sets the intensity value of the peak at the specified index.
+	 * @param index the peak index
+	 * @param intensity the intensity value to set
+	 */
+	public void setIntensity(int index, double intensity) {
+		in[index] = intensity;
+	}
+
+	/**
+	 * Returns the backing array of m/z values. Only the first
+	 * {@link #size()} elements are valid.
+	 * @return the m/z array
+	 */
+	public double[] getMzArray() {
+		return mz;
+	}
+
+	/**
+	 * Returns the backing array of intensity values. Only the first
+	 * {@link #size()} elements are valid.
+	 * @return the intensity array
+	 */
+	public double[] getIntensityArray() {
+		return in;
+	}
+
+	/**
+	 * Removes all peaks while retaining the allocated capacity.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Grows the backing arrays to hold at least the specified amount of peaks.
+	 * @param capacity the minimum capacity
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > mz.length) {
+			int newCapacity = Math.max(capacity, mz.length + (mz.length >> 1) + 1);
+			mz = Arrays.copyOf(mz, newCapacity);
+			in = Arrays.copyOf(in, newCapacity);
+		}
+	}
+
+	/**
+	 * Appends a peak to the end of the vector. The caller is responsible for
+	 * maintaining ascending m/z order.
+	 * @param mzValue the m/z value
+	 * @param inValue the intensity value
+	 */
+	public void add(double mzValue, double inValue) {
+		ensureCapacity(size + 1);
+		mz[size] = mzValue;
+		in[size] = inValue;
+		size++;
+	}
+
+	/**
+	 * Adds the specified intensity to the peak of identical m/z or inserts a
+	 * new peak at its sorted position if no such peak exists yet. The search
+	 * starts at the end of the vector, i.e. this is fastest for values close
+	 * to the current maximum m/z.
+	 * @param mzValue the m/z value
+	 * @param inValue the intensity value
+	 */
+	public void accumulate(double mzValue, double inValue) {
+		int i = size - 1;
+		while ((i >= 0) && (mz[i] > mzValue)) {
+			i--;
+		}
+		if ((i >= 0) && (mz[i] == mzValue)) {
+			in[i] += inValue;
+		} else {
+			ensureCapacity(size + 1);
+			int pos = i + 1;
+			System.arraycopy(mz, pos, mz, pos + 1, size - pos);
+			System.arraycopy(in, pos, in, pos + 1, size - pos);
+			mz[pos] = mzValue;
+			in[pos] = inValue;
+			size++;
+		}
+	}
+
+	/**
+	 * Replaces the contents of this vector with those of the specified vector.
+	 * @param other the vector to copy
+	 */
+	public void copyFrom(SpectrumVector other) {
+		ensureCapacity(other.size);
+		System.arraycopy(other.mz, 0, mz, 0, other.size);
+		System.arraycopy(other.in, 0, in, 0, other.size);
+		size = other.size;
+	}
+
+	/**
+	 * Applies the specified transformation to all intensity values.
+	 * @param trafo the transformation method
+	 */
+	public void transform(Transformation trafo) {
+		for (int i = 0; i < size; i++) {
+			in[i] = trafo.transform(in[i]);
+		}
+	}
+
+	/**
+	 * Returns the squared magnitude of the intensity vector.
+	 * @return the squared magnitude
+	 */
+	public double getSquaredMagnitude() {
+		double res = 0.0;
+		for (int i = 0; i < size; i++) {
+			res += in[i] * in[i];
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the index of the peak with the specified m/z value or
+	 * <code>(-(insertion point) - 1)</code> if no such peak exists.
+	 * @param mzValue the m/z value
+	 * @return the peak index
+	 * @see Arrays#binarySearch(double[], int, int, double)
+	 */
+	public int indexOf(double mzValue) {
+		return Arrays.binarySearch(mz, 0, size, mzValue);
+	}
+
+	/**
+	 * Sorts the peaks by ascending m/z and merges peaks sharing identical m/z
+	 * values by summing their intensities.
+	 */
+	public void consolidate() {
+		boolean sorted = true;
+		for (int i = 1; i < size; i++) {
+			if (mz[i - 1] > mz[i]) {
+				sorted = false;
+				break;
+			}
+		}
+		if (!sorted) {
+			sort(0, size - 1);
+		}
+		if (size > 1) {
+			int j = 0;
+			for (int i = 1; i < size; i++) {
+				if (mz[i] == mz[j]) {
+					in[j] += in[i];
+				} else {
+					j++;
+					mz[j] = mz[i];
+					in[j] = in[i];
+				}
+			}
+			size = j + 1;
+		}
+	}
+
+	/**
+	 * Sorts the specified index range of the parallel arrays by m/z.
+	 * @param lo the lowest index (inclusive)
+	 * @param hi the highest index (inclusive)
+	 */
+	private void sort(int lo, int hi) {
+		while (hi - lo > 16) {
+			double pivot = mz[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (mz[i] < pivot) i++;
+				while (mz[j] > pivot) j--;
+				if (i <= j) {
+					swap(i++, j--);
+				}
+			}
+			// recurse into smaller partition, iterate over larger one
+			if (j - lo < hi - i) {
+				sort(lo, j);
+				lo = i;
+			} else {
+				sort(i, hi);
+				hi = j;
+			}
+		}
+		// insertion sort for small ranges
+		for (int i = lo + 1; i <= hi; i++) {
+			for (int j = i; (j > lo) && (mz[j - 1] > mz[j]); j--) {
+				swap(j - 1, j);
+			}
+		}
+	}
+
+	/**
+	 * Swaps the peaks at the specified indices.
+	 */
+	private void swap(int i, int j) {
+		double tmp = mz[i];
+		mz[i] = mz[j];
+		mz[j] = tmp;
+		tmp = in[i];
+		in[i] = in[j];
+		in[j] = tmp;
+	}
+
+	/**
+	 * Returns a new vector containing the <code>k</code> most intense peaks of
+	 * this vector in ascending m/z order. Uses linear-time selection of the
+	 * intensity threshold instead of sorting all peaks, ties at the threshold
+	 * are resolved in favor of lower m/z values.
+	 * @param k the number of peaks to pick, <code>0</code> picks all peaks
+	 * @return the vector of picked peaks
+	 */
+	public SpectrumVector getHighestPeaks(int k) {
+		SpectrumVector res;
+		if ((k <= 0) || (k >= size)) {
+			res = new SpectrumVector(size);
+			res.copyFrom(this);
+		} else {
+			// select k-th highest intensity as threshold
+			double[] sel = Arrays.copyOf(in, size);
+			double threshold = select(sel, size - k);
+			// count peaks strictly above threshold, remaining slots go to peaks at threshold
+			int above = 0;
+			for (int i = 0; i < size; i++) {
+				if (in[i] > threshold) above++;
+			}
+			int equal = k - above;
+			res = new SpectrumVector(k);
+			for (int i = 0; i < size; i++) {
+				if (in[i] > threshold) {
+					res.add(mz[i], in[i]);
+				} else if ((in[i] == threshold) && (equal > 0)) {
+					res.add(mz[i], in[i]);
+					equal--;
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the element of the specified array that would be located at the
+	 * specified index if the array was sorted (quickselect). Re-orders the
+	 * array in the process.
+	 * @param values the values
+	 * @param index the index of the element to select
+	 * @return the selected element
+	 */
+	private static double select(double[] values, int index) {
+		int lo = 0, hi = values.length - 1;
+		while (lo < hi) {
+			double pivot = values[(lo + hi) >>> 1];
+			int i = lo, j = hi;
+			while (i <= j) {
+				while (values[i] < pivot) i++;
+				while (values[j] > pivot) j--;
+				if (i <= j) {
+					double tmp = values[i];
+					values[i++] = values[j];
+					values[j--] = tmp;
+				}
+			}
+			if (index <= j) {
+				hi = j;
+			} else if (index >= i) {
+				lo = i;
+			} else {
+				break;
+			}
+		}
+		return values[index];
+	}
+
+	/**
+	 * Returns a peak map representation of this vector.
+	 * @return the map of m/z-intensity pairs
+	 */
+	public HashMap<Double, Double> toPeakMap() {
+		HashMap<Double, Double> res = new HashMap<Double, Double>(size);
+		for (int i = 0; i < size; i++) {
+			res.put(mz[i], in[i]);
+		}
+		return res;
+	}
+
+}
@@ -12,5 +12,16 @@ public interface Vectorization {
 	
 	public abstract Map<Double, Double> vectorize(Map<Double, Double> input, Transformation trafo);
 	
+	/**
+	 * Array-based counterpart of {@link #vectorize(Map, Transformation)}.
+	 * Writes the vectorized and transformed peaks of the input into the
+	 * provided output buffer, which is cleared beforehand. The output is
+	 * sorted by ascending m/z.
+	 * @param input the input peaks sorted by ascending m/z
+	 * @param trafo the transformation method
+	 * @param output the output buffer
+	 */
+	public abstract void vectorize(SpectrumVector input, Transformation trafo, SpectrumVector output);
+	
 	public abstract void cleanup();
 }
\ No newline at end of file
@@ -74,9 +74,49 @@ public abstract class VectorizationFactory {
 				}
 				return output;
 			}
+			/**
+			 * The reference peaks of the array-based variant.
+			 */
+			private SpectrumVector refVec;
+			@Override
+			public void vectorize(SpectrumVector input, Transformation trafo,
+					SpectrumVector output) {
+				output.copyFrom(input);
+				if (refVec == null) {
+					refVec = new SpectrumVector(input.size());
+					refVec.copyFrom(input);
+				} else {
+					double[] mzB = output.getMzArray();
+					int sizeB = output.size();
+					double maxDelta = delta/2.0;
+					
+					for (int i = 0; i < refVec.size(); i++) {
+						double newKey = refVec.getMz(i);
+						int index = output.indexOf(newKey);
+						// skip if key already exists
+						if (index >= 0) continue;
+						// find nearest keys and calculate their deltas
+						int loIndex = -index - 2, hiIndex = -index - 1;
+						double loDelta = (loIndex >= 0) ? newKey-mzB[loIndex] : Double.MAX_VALUE;
+						double hiDelta = (hiIndex < sizeB) ? mzB[hiIndex]-newKey : Double.MAX_VALUE;
+						// evaluate deltas, changing the key in place keeps 
+						// the output sorted as no other key lies in between
+						if ((loDelta <= maxDelta) && (loDelta <= hiDelta)) {
+							// left key inside range and closer (or equally close)
+							mzB[loIndex] = newKey;
+						} else if ((hiDelta <= maxDelta) && (hiDelta < loDelta)) {
+							// right key inside range and closer
+							mzB[hiIndex] = newKey;
+						}
+					}
+				}
+				// transform output values
+				output.transform(trafo);
+			}
 			@Override
 			public void cleanup() {
 				inputA = null;
+				refVec = null;
 			}
 		};
 	}
@@ -114,6 +154,25 @@ public abstract class VectorizationFactory {
 				return output;
 			}
 			@Override
+			public void vectorize(SpectrumVector input, Transformation trafo,
+					SpectrumVector output) {
+				output.clear();
+				// sorted input yields non-decreasing bin keys, merging is done by comparing with the last bin
+				for (int i = 0; i < input.size(); i++) {
+					// round key to nearest bin center
+					double roundedKey = Math.round((input.getMz(i)-binShift)/binWidth)*binWidth + binShift;
+					int last = output.size() - 1;
+					if ((last >= 0) && (output.getMz(last) == roundedKey)) {
+						// add to already existing bin
+						output.setIntensity(last, output.getIntensity(last) + input.getIntensity(i));
+					} else {
+						output.add(roundedKey, input.getIntensity(i));
+					}
+				}
+				// transform output values
+				output.transform(trafo);
+			}
+			@Override
 			public void cleanup() {}
 		};
 	}
@@ -175,6 +234,42 @@ public abstract class VectorizationFactory {
 				return output;
 			}
 			@Override
+			public void vectorize(SpectrumVector input, Transformation trafo,
+					SpectrumVector output) {
+				output.clear();
+				for (int i = 0; i < input.size(); i++) {
+					double ky = input.getMz(i), 				// original key
+						   lb = ky - baseWidth/2,				// left boundary
+						   rb,									// right boundary
+						   lr = lb,								// left root
+						   rr = ky + baseWidth/2,				// right root
+						   h2 = 4*input.getIntensity(i)/baseWidth,	// doubled area height
+						   l2 = h2/baseWidth / 2,				// halved area slope
+						   rk = Math.round((lb - binShift)/binWidth)*binWidth + binShift,	// rounded key
+						   vl;									// transformed value
+					while (true) {
+						// calculate right boundary
+						rb = rk + binWidth/2;
+						// reset right boundary if it exceeds either the original key or the right root
+						rb = (rb > rr) ? rr : ( ((lb < ky) && (rb > ky)) ? ky : rb );
+						// calculate trapezoid area between boundaries
+						vl = l2*(lb + rb - 2*lr);
+						vl = (rb <= ky) ? vl*(rb-lb) : (h2-vl)*(rb-lb);
+						// store calculated value, bins of sorted input are mostly appended
+						output.accumulate(rk, vl);
+						// right boundary becomes left boundary in next iteration
+						lb = rb;
+						// abort if right root has been reached
+						if (lb >= rr)
+							break;
+						// find nearest bin center
+						rk = Math.ceil((lb - binShift)/binWidth)*binWidth + binShift;
+					}
+				}
+				// transform output values
+				output.transform(trafo);
+			}
+			@Override
 			public void cleanup() {}
 		};
 	}
@@ -0,0 +1,248 @@
+package de.mpa.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UniProt entry source querying the tab-separated output of the UniProt REST
+ * interface. The base URL is configurable so that mirrors or a local stub
+ * server can be used instead of the public service.
+ * <p>
+ * Entries are requested via
+ * <code>&lt;base&gt;/uniprot/?query=accession:A+OR+accession:B&amp;format=tab&amp;columns=id,organism-id,ec,keywords,database(KO),sequence</code>,
+ * UniRef clusters via <code>&lt;base&gt;/uniref/?query=member:A&amp;format=tab&amp;columns=id</code>.
+ * Accessions matching no primary accession of the response are requested
+ * one by one, so that secondary accessions can be linked to their entries.
+ * The release is read from the <code>X-UniProt-Release</code> response header.
+ *
+ * @author A. Behne
+ */
+public class HttpEntrySource implements UniProtEntrySource {
+
+	/**
+	 * The base URL of the public UniProt service.
+	 */
+	public static final String DEFAULT_URL = "http://www.uniprot.org";
+
+	/**
+	 * The name of the response header holding the UniProt release.
+	 */
+	public static final String RELEASE_HEADER = "X-UniProt-Release";
+
+	/**
+	 * The entry columns requested from the service.
+	 */
+	private static final String COLUMNS = "id,organism-id,ec,keywords,database(KO),sequence";
+
+	/**
+	 * The maximum number of accessions per request keeping the URL length
+	 * within common server limits.
+	 */
+	private static final int BATCH_SIZE = 100;
+
+	/**
+	 * The connect and read timeout in milliseconds.
+	 */
+	private static final int TIMEOUT = 60000;
+
+	/**
+	 * The base URL without trailing slash.
+	 */
+	private final String baseUrl;
+
+	/**
+	 * Creates an entry source querying the public UniProt service.
+	 */
+	public HttpEntrySource() {
+		this(DEFAULT_URL);
+	}
+
+	/**
+	 * Creates an entry source querying the service at the specified base URL.
+	 * @param baseUrl the base URL, e.g. 'http://localhost:8080'
+	 */
+	public HttpEntrySource(String baseUrl) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+	}
+
+	@Override
+	public String getRelease() throws Exception {
+		HttpURLConnection conn = this.open("/uniprot/?query=&format=tab&columns=id&limit=1");
+		try {
+			this.checkResponse(conn);
+			String release = conn.getHeaderField(RELEASE_HEADER);
+			if (release == null) {
+				throw new IOException("Missing " + RELEASE_HEADER + " header in response of " + conn.getURL());
+			}
+			return release.trim();
+		} finally {
+			conn.disconnect();
+		}
+	}
+
+	@Override
+	public int getBatchSize() {
+		return BATCH_SIZE;
+	}
+
+	@Override
+	public Map<String, ReducedProteinData> fetch(List<String> accessions, boolean doUniRefRetrieval) throws Exception {
+		Map<String, ReducedProteinData> proteinData = this.queryEntries(accessions);
+		for (String accession : accessions) {
+			if (!proteinData.containsKey(accession)) {
+				// secondary or unknown accession, a single request reveals its entry
+				for (ReducedProteinData data : this.queryEntries(Collections.singletonList(accession)).values()) {
+					ReducedProteinData known = proteinData.get(data.getAccession());
+					if (known == null) {
+						proteinData.put(data.getAccession(), data);
+						known = data;
+					}
+					known.getSecondaryAccessions().add(accession);
+				}
+			}
+		}
+		if (!doUniRefRetrieval) {
+			return proteinData;
+		}
+
+		Map<String, ReducedProteinData> uniRefData = new HashMap<String, ReducedProteinData>();
+		for (ReducedProteinData data : proteinData.values()) {
+			String accession = data.getAccession();
+			String uniRef100 = null, uniRef90 = null, uniRef50 = null;
+			List<String[]> clusters = this.query("/uniref/?query="
+					+ URLEncoder.encode("member:" + accession, "UTF-8") + "&format=tab&columns=id");
+			for (String[] cluster : clusters) {
+				String clusterID = cluster[0];
+				if (clusterID.startsWith("UniRef100_")) {
+					uniRef100 = clusterID;
+				} else if (clusterID.startsWith("UniRef90_")) {
+					uniRef90 = clusterID;
+				} else if (clusterID.startsWith("UniRef50_")) {
+					uniRef50 = clusterID;
+				}
+			}
+			uniRefData.put(accession, new ReducedProteinData(accession, data.getSecondaryAccessions(), data.getTaxID(),
+					data.getEcNumbers(), data.getKoNumbers(), data.getKeywords(), uniRef100, uniRef90, uniRef50, data.getSequence()));
+		}
+		return uniRefData;
+	}
+
+	/**
+	 * Requests the entries of the specified accessions without UniRef cluster IDs.
+	 * @param accessions the primary or secondary accessions
+	 * @return a mapping of primary accessions to protein data
+	 * @throws IOException if the request fails
+	 */
+	private Map<String, ReducedProteinData> queryEntries(List<String> accessions) throws IOException {
+		Map<String, ReducedProteinData> proteinData = new HashMap<String, ReducedProteinData>();
+		if (accessions.isEmpty()) {
+			return proteinData;
+		}
+
+		StringBuilder query = new StringBuilder();
+		for (String accession : accessions) {
+			if (query.length() > 0) {
+				query.append(" OR ");
+			}
+			query.append("accession:").append(accession);
+		}
+		List<String[]> rows = this.query("/uniprot/?query=" + URLEncoder.encode(query.toString(), "UTF-8")
+				+ "&format=tab&columns=" + URLEncoder.encode(COLUMNS, "UTF-8"));
+		for (String[] row : rows) {
+			String accession = row[0];
+			Long taxID = ((row.length > 1) && !row[1].isEmpty()) ? Long.valueOf(row[1]) : null;
+			String ecNumbers = (row.length > 2) ? normalize(row[2]) : "";
+			String keywords = (row.length > 3) ? normalize(row[3]) : "";
+			String koNumbers = (row.length > 4) ? normalize(row[4]) : "";
+			String sequence = (row.length > 5) ? row[5] : null;
+			proteinData.put(accession, new ReducedProteinData(accession, new ArrayList<String>(), taxID,
+					ecNumbers, koNumbers, keywords, null, null, null, sequence));
+		}
+		return proteinData;
+	}
+
+	/**
+	 * Sends a request to the specified path and returns the tab-separated
+	 * response rows without the column header line.
+	 * @param path the request path including the query string
+	 * @return the rows split into columns
+	 * @throws IOException if the request fails
+	 */
+	private List<String[]> query(String path) throws IOException {
+		List<String[]> rows = new ArrayList<String[]>();
+		HttpURLConnection conn = this.open(path);
+		try {
+			this.checkResponse(conn);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), "UTF-8"));
+			try {
+				String line = reader.readLine();
+				while ((line = reader.readLine()) != null) {
+					if (!line.isEmpty()) {
+						rows.add(line.split("\t", -1));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		} finally {
+			conn.disconnect();
+		}
+		return rows;
+	}
+
+	/**
+	 * Opens a connection to the specified path of the service.
+	 * @param path the request path including the query string
+	 * @return the connection
+	 * @throws IOException if the connection cannot be opened
+	 */
+	private HttpURLConnection open(String path) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		conn.setConnectTimeout(TIMEOUT);
+		conn.setReadTimeout(TIMEOUT);
+		return conn;
+	}
+
+	/**
+	 * Checks the response code of the specified connection.
+	 * @param conn the connection
+	 * @throws IOException if the server did not respond with HTTP 200
+	 */
+	private void checkResponse(HttpURLConnection conn) throws IOException {
+		int code = conn.getResponseCode();
+		if (code != HttpURLConnection.HTTP_OK) {
+			throw new IOException("HTTP " + code + " for " + conn.getURL());
+		}
+	}
+
+	/**
+	 * Converts a list of values separated by semicolons and optional
+	 * whitespace, e.g. 'Calcium; Hydrolase' or 'K01047;', to the form used by
+	 * {@link ReducedProteinData}.
+	 * @param values the values
+	 * @return the values separated by single semicolons
+	 */
+	private static String normalize(String values) {
+		StringBuilder sb = new StringBuilder();
+		for (String value : values.split(";")) {
+			value = value.trim();
+			if (!value.isEmpty()) {
+				if (sb.length() > 0) {
+					sb.append(';');
+				}
+				sb.append(value);
+			}
+		}
+		return sb.toString();
+	}
+
+}
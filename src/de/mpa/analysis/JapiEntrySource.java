@@ -0,0 +1,94 @@
+package de.mpa.analysis;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import uk.ac.ebi.kraken.interfaces.ProteinData;
+import uk.ac.ebi.kraken.interfaces.uniprot.UniProtEntry;
+import uk.ac.ebi.kraken.interfaces.uniref.UniRefDatabaseType;
+import uk.ac.ebi.kraken.interfaces.uniref.UniRefEntry;
+import uk.ac.ebi.kraken.interfaces.uniref.member.UniRefRepresentativeMember;
+import uk.ac.ebi.kraken.uuw.services.remoting.EntryIterator;
+import uk.ac.ebi.kraken.uuw.services.remoting.EntryRetrievalService;
+import uk.ac.ebi.kraken.uuw.services.remoting.Query;
+import uk.ac.ebi.kraken.uuw.services.remoting.UniProtJAPI;
+import uk.ac.ebi.kraken.uuw.services.remoting.UniProtQueryBuilder;
+import uk.ac.ebi.kraken.uuw.services.remoting.UniProtQueryService;
+
+/**
+ * UniProt entry source querying the EBI UniProt web service via the UniProt
+ * Java API.
+ *
+ * @author T. Muth, A. Behne
+ */
+public class JapiEntrySource implements UniProtEntrySource {
+
+	/**
+	 * The maximum clause count of a UniProt query.
+	 */
+	private static final int BATCH_SIZE = 1024;
+
+	/**
+	 * The UniProt query service instance.
+	 */
+	private final UniProtQueryService uniProtQueryService;
+
+	/**
+	 * UniProt (single) entry retrieval service instance.
+	 */
+	private final EntryRetrievalService entryRetrievalService;
+
+	/**
+	 * Creates an entry source backed by the UniProt Java API services.
+	 */
+	public JapiEntrySource() {
+		uniProtQueryService = UniProtJAPI.factory.getUniProtQueryService();
+		entryRetrievalService = UniProtJAPI.factory.getEntryRetrievalService();
+	}
+
+	@Override
+	public String getRelease() throws Exception {
+		return UniProtJAPI.factory.getVersion();
+	}
+
+	@Override
+	public int getBatchSize() {
+		return BATCH_SIZE;
+	}
+
+	@Override
+	public Map<String, ReducedProteinData> fetch(List<String> accessions, boolean doUniRefRetrieval) throws Exception {
+		Map<String, ReducedProteinData> uniprotEntries = new HashMap<String, ReducedProteinData>();
+
+		Query query = UniProtQueryBuilder.buildIDListQuery(accessions);
+		EntryIterator<UniProtEntry> entryIterator = uniProtQueryService.getEntryIterator(query);
+
+		// Iterate the entries and add them to the map.
+		for (UniProtEntry entry : entryIterator) {
+			ReducedProteinData proteinData;
+			String accession = entry.getPrimaryUniProtAccession().getValue();
+			if (doUniRefRetrieval) {
+				// Get the UniRefEntry
+				String uniRef100Identifier = "UniRef100_" + accession;
+				UniRefEntry uniRefEntry = entryRetrievalService.getUniRefEntry(uniRef100Identifier);
+
+				if (uniRefEntry != null) {
+					UniRefRepresentativeMember member = uniRefEntry.getRepresentativeMember();
+					proteinData = new ReducedProteinData(entry, uniRefEntry.getUniRefEntryId().getValue(), member.getUniRef90EntryId().getValue(), member.getUniRef50EntryId().getValue());
+				} else {
+					ProteinData proteinData2 = entryRetrievalService.getProteinData(accession);
+					UniRefEntry uniref100 = proteinData2.getUniRefEntry(UniRefDatabaseType.UniRef100);
+					UniRefEntry uniref90 = proteinData2.getUniRefEntry(UniRefDatabaseType.UniRef90);
+					UniRefEntry uniref50 = proteinData2.getUniRefEntry(UniRefDatabaseType.UniRef50);
+					proteinData = new ReducedProteinData(entry, uniref100.getUniRefEntryId().getValue(), uniref90.getUniRefEntryId().getValue(), uniref50.getUniRefEntryId().getValue());
+				}
+			} else {
+				proteinData = new ReducedProteinData(entry);
+			}
+			uniprotEntries.put(accession, proteinData);
+		}
+		return uniprotEntries;
+	}
+
+}
@@ -1,11 +1,14 @@
 package de.mpa.analysis;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import de.mpa.algorithms.quantification.NormalizedSpectralAbundanceFactor;
 import de.mpa.algorithms.quantification.QuantMethod;
 import de.mpa.client.Client;
+import de.mpa.client.model.dbsearch.DbSearchResult;
 import de.mpa.client.model.dbsearch.PeptideHit;
 import de.mpa.client.model.dbsearch.ProteinHit;
 import de.mpa.util.Formatter;
@@ -203,4 +206,27 @@ public class ProteinAnalysis {
 			qm.calculate(params);
 			return qm.getResult();
 		}
+
+		/**
+		 * Calculates label-free quantification measures for all proteins of the
+		 * specified search result in a single pass and stores them on the
+		 * protein hits. The NSAF denominator shared by all proteins is
+		 * calculated only once. Previously cached values are discarded, as
+		 * the visible spectrum matches may have changed since.
+		 * @param result The search result containing the proteins to quantify.
+		 */
+		public static void calculateLabelFree(DbSearchResult result) {
+			Collection<ProteinHit> proteinHits = result.getProteinHits().values();
+			for (ProteinHit proteinHit : proteinHits) {
+				proteinHit.setSpectralCount(-1);
+				proteinHit.setEmPAI(-1.0);
+			}
+			double protSum = NormalizedSpectralAbundanceFactor.calculateDenominator(proteinHits);
+			for (ProteinHit proteinHit : proteinHits) {
+				proteinHit.setNSAF(NormalizedSpectralAbundanceFactor.calculate(proteinHit, protSum));
+				// Spectral count and emPAI are cached by the protein hit
+				proteinHit.getSpectralCount();
+				proteinHit.getEmPAI();
+			}
+		}
 	}
@@ -1,5 +1,13 @@
 package de.mpa.analysis;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.ebi.kraken.interfaces.uniprot.DatabaseCrossReference;
+import uk.ac.ebi.kraken.interfaces.uniprot.DatabaseType;
+import uk.ac.ebi.kraken.interfaces.uniprot.Keyword;
+import uk.ac.ebi.kraken.interfaces.uniprot.SecondaryUniProtAccession;
 import uk.ac.ebi.kraken.interfaces.uniprot.UniProtEntry;
 
 public class ReducedProteinData {
@@ -8,31 +16,159 @@ public class ReducedProteinData {
 	private String uniRef100EntryId;
 	private String uniRef90EntryId;
 	private String uniRef50EntryId;
-	
+
+	private String accession;
+	private List<String> secondaryAccessions;
+	private Long taxID;
+	private String ecNumbers;
+	private String koNumbers;
+	private String keywords;
+	private String sequence;
+
 	public ReducedProteinData(UniProtEntry uniProtEntry, String uniRef100EntryId, String uniRef90EntryId, String uniRef50EntryId) {
 		this.uniProtEntry = uniProtEntry;
 		this.uniRef100EntryId = uniRef100EntryId;
 		this.uniRef90EntryId = uniRef90EntryId;
 		this.uniRef50EntryId = uniRef50EntryId;
+
+		if (uniProtEntry != null) {
+			this.accession = uniProtEntry.getPrimaryUniProtAccession().getValue();
+			this.secondaryAccessions = new ArrayList<String>();
+			for (SecondaryUniProtAccession secAcc : uniProtEntry.getSecondaryUniProtAccessions()) {
+				this.secondaryAccessions.add(secAcc.getValue());
+			}
+			this.taxID = Long.valueOf(uniProtEntry.getNcbiTaxonomyIds().get(0).getValue());
+			this.ecNumbers = join(uniProtEntry.getProteinDescription().getEcNumbers());
+			List<String> koList = new ArrayList<String>();
+			for (DatabaseCrossReference xRef : uniProtEntry.getDatabaseCrossReferences(DatabaseType.KO)) {
+				koList.add(xRef.getPrimaryId().getValue());
+			}
+			this.koNumbers = join(koList);
+			List<String> keywordList = new ArrayList<String>();
+			for (Keyword kw : uniProtEntry.getKeywords()) {
+				keywordList.add(kw.getValue());
+			}
+			this.keywords = join(keywordList);
+		}
 	}
-	
+
 	public ReducedProteinData(UniProtEntry uniProtEntry) {
 		this(uniProtEntry, null, null, null);
 	}
-	
+
+	/**
+	 * Creates protein data from pre-formatted annotations, e.g. read from a
+	 * local {@link UniProtStore}, without an underlying UniProt entry.
+	 * @param accession the primary accession
+	 * @param secondaryAccessions the secondary accessions
+	 * @param taxID the NCBI taxonomy ID
+	 * @param ecNumbers the semicolon-separated EC numbers
+	 * @param koNumbers the semicolon-separated KO numbers
+	 * @param keywords the semicolon-separated keywords
+	 * @param uniRef100EntryId the UniRef100 cluster ID
+	 * @param uniRef90EntryId the UniRef90 cluster ID
+	 * @param uniRef50EntryId the UniRef50 cluster ID
+	 */
+	public ReducedProteinData(String accession, List<String> secondaryAccessions, Long taxID,
+			String ecNumbers, String koNumbers, String keywords,
+			String uniRef100EntryId, String uniRef90EntryId, String uniRef50EntryId) {
+		this(accession, secondaryAccessions, taxID, ecNumbers, koNumbers, keywords,
+				uniRef100EntryId, uniRef90EntryId, uniRef50EntryId, null);
+	}
+
+	/**
+	 * Creates protein data from pre-formatted annotations and the protein
+	 * sequence, e.g. read from a response cache, without an underlying
+	 * UniProt entry.
+	 * @param accession the primary accession
+	 * @param secondaryAccessions the secondary accessions
+	 * @param taxID the NCBI taxonomy ID
+	 * @param ecNumbers the semicolon-separated EC numbers
+	 * @param koNumbers the semicolon-separated KO numbers
+	 * @param keywords the semicolon-separated keywords
+	 * @param uniRef100EntryId the UniRef100 cluster ID
+	 * @param uniRef90EntryId the UniRef90 cluster ID
+	 * @param uniRef50EntryId the UniRef50 cluster ID
+	 * @param sequence the protein sequence
+	 */
+	public ReducedProteinData(String accession, List<String> secondaryAccessions, Long taxID,
+			String ecNumbers, String koNumbers, String keywords,
+			String uniRef100EntryId, String uniRef90EntryId, String uniRef50EntryId, String sequence) {
+		this(null, uniRef100EntryId, uniRef90EntryId, uniRef50EntryId);
+		this.sequence = sequence;
+		this.accession = accession;
+		this.secondaryAccessions = secondaryAccessions;
+		this.taxID = taxID;
+		this.ecNumbers = ecNumbers;
+		this.koNumbers = koNumbers;
+		this.keywords = keywords;
+	}
+
+	/**
+	 * Joins the specified values using semicolons.
+	 * @param values the values
+	 * @return the joined values
+	 */
+	private static String join(List<String> values) {
+		StringBuilder sb = new StringBuilder();
+		for (String value : values) {
+			if (sb.length() > 0) {
+				sb.append(';');
+			}
+			sb.append(value);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the UniProt entry.
+	 * @return the UniProt entry or <code>null</code> if the data has been read from a local store
+	 */
 	public UniProtEntry getUniProtEntry() {
 		return uniProtEntry;
 	}
-	
+
 	public String getUniRef100EntryId() {
 		return uniRef100EntryId;
 	}
-	
+
 	public String getUniRef90EntryId() {
 		return uniRef90EntryId;
 	}
-	
+
 	public String getUniRef50EntryId() {
 		return uniRef50EntryId;
 	}
+
+	public String getAccession() {
+		return accession;
+	}
+
+	public List<String> getSecondaryAccessions() {
+		return (secondaryAccessions == null) ? Collections.<String>emptyList() : secondaryAccessions;
+	}
+
+	public Long getTaxID() {
+		return taxID;
+	}
+
+	public String getEcNumbers() {
+		return ecNumbers;
+	}
+
+	public String getKoNumbers() {
+		return koNumbers;
+	}
+
+	public String getKeywords() {
+		return keywords;
+	}
+
+	/**
+	 * Returns the protein sequence.
+	 * @return the sequence or <code>null</code> if no sequence is available
+	 */
+	public String getSequence() {
+		return (uniProtEntry == null) ? sequence : uniProtEntry.getSequence().getValue();
+	}
 }
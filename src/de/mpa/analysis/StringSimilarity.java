@@ -1,6 +1,7 @@
 package de.mpa.analysis;
 
 import java.util.Collection;
+import java.util.Random;
 
 /**
  * Class to calculate peptide similarity
@@ -26,8 +27,10 @@ public class StringSimilarity {
 			if (peptide1.split("(?<=[RK])(?=[^P])").length <2) {
 				for (String peptide2 : pepSeqsB) {
 					if (peptide2.split("(?<=[RK])(?=[^P])").length <2) {
-						int levDistance = StringSimilarity.calculateLevenshteinDistance(peptide1, peptide2);
-						if(( levDistance > 0) && (levDistance <= threshold)){return true;}
+						if (!peptide1.equals(peptide2)
+								&& (StringSimilarity.calculateLevenshteinDistance(peptide1, peptide2, threshold) <= threshold)) {
+							return true;
+						}
 					}
 				}
 
@@ -61,7 +64,7 @@ public class StringSimilarity {
 		for(int j=1;j<len1;j++) {
 	 
 			// initial cost of skipping prefix in String s1
-			newcost[0]=j-1;
+			newcost[0]=j;
 	 
 			// transformation cost for each letter in s0
 			for(int i=1;i<len0;i++) {
@@ -87,4 +90,109 @@ public class StringSimilarity {
 		return cost[len0-1];
 		
 	}
+
+	/**
+	 * Calculates the Levenshtein distance of two strings up to the specified
+	 * maximum distance. Only cells of the dynamic-programming matrix within a
+	 * band of <code>2 * maxDistance + 1</code> diagonals are computed and the
+	 * calculation stops as soon as all cells of a row exceed the maximum.
+	 * @param s0 String 1.
+	 * @param s1 String 2.
+	 * @param maxDistance The maximum distance of interest.
+	 * @return The Levenshtein distance or <code>maxDistance + 1</code> if the
+	 *  distance exceeds the maximum distance.
+	 */
+	public static int calculateLevenshteinDistance(String s0, String s1, int maxDistance) {
+		int len0 = s0.length();
+		int len1 = s1.length();
+		int exceeded = maxDistance + 1;
+		// strings differing in length by more than the maximum cannot be similar
+		if (Math.abs(len0 - len1) > maxDistance) {
+			return exceeded;
+		}
+
+		// the array of distances, cells outside the band are marked as exceeded
+		int[] cost = new int[len0 + 1];
+		int[] newcost = new int[len0 + 1];
+		for (int i = 0; i <= len0; i++) {
+			cost[i] = Math.min(i, exceeded);
+		}
+
+		// transformation cost for each letter in s1
+		for (int j = 1; j <= len1; j++) {
+			int from = Math.max(1, j - maxDistance);
+			int to = Math.min(len0, j + maxDistance);
+
+			// cost of skipping prefix in String s1 or left band boundary
+			newcost[from - 1] = (from == 1) ? Math.min(j, exceeded) : exceeded;
+			int rowMin = newcost[from - 1];
+
+			// transformation cost for each letter in s0 within the band
+			for (int i = from; i <= to; i++) {
+				int match = (s0.charAt(i - 1) == s1.charAt(j - 1)) ? 0 : 1;
+				int newCost = Math.min(Math.min(cost[i] + 1, newcost[i - 1] + 1), cost[i - 1] + match);
+				newcost[i] = Math.min(newCost, exceeded);
+				rowMin = Math.min(rowMin, newcost[i]);
+			}
+			// right band boundary
+			if (to < len0) {
+				newcost[to + 1] = exceeded;
+			}
+
+			// abort if no path within the maximum distance remains
+			if (rowMin > maxDistance) {
+				return exceeded;
+			}
+
+			// swap cost/newcost arrays
+			int[] swap = cost; cost = newcost; newcost = swap;
+		}
+
+		return cost[len0];
+	}
+
+	/**
+	 * Compares the run times of full and bounded all-against-all distance
+	 * calculations of random peptides.
+	 * @param args the optional number of peptides and maximum distance
+	 */
+	public static void main(String[] args) {
+		int count = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+		int maxDistance = (args.length > 1) ? Integer.parseInt(args[1]) : 2;
+		Random random = new Random(42L);
+		String[] peptides = new String[count];
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = 6 + random.nextInt(15);
+			for (int j = 0; j < length; j++) {
+				sb.append("ACDEKLR".charAt(random.nextInt(7)));
+			}
+			peptides[i] = sb.toString();
+		}
+
+		long startTime = System.currentTimeMillis();
+		int full = 0;
+		for (String peptideA : peptides) {
+			for (String peptideB : peptides) {
+				if (calculateLevenshteinDistance(peptideA, peptideB) <= maxDistance) {
+					full++;
+				}
+			}
+		}
+		long fullTime = System.currentTimeMillis() - startTime;
+
+		startTime = System.currentTimeMillis();
+		int bounded = 0;
+		for (String peptideA : peptides) {
+			for (String peptideB : peptides) {
+				if (calculateLevenshteinDistance(peptideA, peptideB, maxDistance) <= maxDistance) {
+					bounded++;
+				}
+			}
+		}
+		long boundedTime = System.currentTimeMillis() - startTime;
+
+		System.out.println(String.format("%d similar pairs (bounded: %d). Full: %d ms, bounded: %d ms.",
+				full, bounded, fullTime, boundedTime));
+	}
 }
@@ -0,0 +1,39 @@
+package de.mpa.analysis;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remote source of UniProt entries and their UniRef cluster memberships used
+ * by the {@link UniProtRetriever}. Implementations must be safe to be called
+ * concurrently from multiple threads.
+ *
+ * @author A. Behne
+ */
+public interface UniProtEntrySource {
+
+	/**
+	 * Returns the UniProt release served by this source, e.g. '2015_05'.
+	 * @return the release identifier
+	 * @throws Exception if the release cannot be determined
+	 */
+	public String getRelease() throws Exception;
+
+	/**
+	 * Returns the maximum number of accessions per batch.
+	 * @return the batch size
+	 */
+	public int getBatchSize();
+
+	/**
+	 * Retrieves the entries of the specified batch of UniProt accessions.
+	 * Unknown accessions are omitted from the result, secondary accessions
+	 * must be contained in the secondary accessions of their entries.
+	 * @param accessions the UniProt accessions
+	 * @param doUniRefRetrieval <code>true</code> if UniRef cluster IDs shall be retrieved, too
+	 * @return a mapping of primary accessions to protein data
+	 * @throws Exception if the request fails
+	 */
+	public Map<String, ReducedProteinData> fetch(List<String> accessions, boolean doUniRefRetrieval) throws Exception;
+
+}
@@ -0,0 +1,696 @@
+package de.mpa.analysis;
+
+import gnu.trove.iterator.TObjectLongIterator;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.TObjectLongMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TObjectLongHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+import de.mpa.client.Constants;
+import de.mpa.main.Starter;
+
+/**
+ * Retrieval engine for UniProt entries and UniRef cluster IDs from a remote
+ * {@link UniProtEntrySource}. Batches of accessions are requested
+ * concurrently using a bounded pool of worker threads, failed requests are
+ * retried with exponential backoff. Retrieved entries are appended to a
+ * persistent response cache file per UniProt release, so accessions already
+ * retrieved for a previous experiment are not requested again as long as the
+ * release served by the source does not change. The release is verified upon
+ * each retrieval and a new cache file is opened once it changes.
+ * <p>
+ * Only the file offsets of the cached records are held in memory, keyed by
+ * primary and secondary accessions, records are read from disk upon lookup.
+ * Records superseded by later ones, e.g. entries re-requested for their
+ * UniRef cluster IDs, are removed when opening a cache file of which they
+ * make up more than a third.
+ * <p>
+ * Cache file layout (big-endian):
+ * <pre>
+ * int      magic number
+ * int      version
+ * record[] appended records, each an int byte length followed by modified
+ *          UTF-8 strings, the taxonomy ID and the ASCII sequence
+ * </pre>
+ *
+ * @author A. Behne
+ */
+public class UniProtRetriever {
+
+	/**
+	 * The magic number identifying response cache files ('MPAC').
+	 */
+	private static final int MAGIC = 0x4D504143;
+
+	/**
+	 * The cache file format version.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * The size of the cache file header in bytes.
+	 */
+	private static final long HEADER_SIZE = 8L;
+
+	/**
+	 * The name of the cache folder inside the configuration folder.
+	 */
+	private static final String CACHE_FOLDER = "cache";
+
+	/**
+	 * The default number of concurrent requests.
+	 */
+	private static final int DEFAULT_THREADS = 4;
+
+	/**
+	 * The default number of retries of a failed request.
+	 */
+	private static final int DEFAULT_RETRIES = 3;
+
+	/**
+	 * The default delay in milliseconds before the first retry.
+	 */
+	private static final long DEFAULT_BACKOFF = 1000L;
+
+	/**
+	 * The ASCII character set.
+	 */
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	/**
+	 * The logger instance.
+	 */
+	private static Logger log = Logger.getLogger(UniProtRetriever.class);
+
+	/**
+	 * The shared retriever instance.
+	 */
+	private static UniProtRetriever instance;
+
+	/**
+	 * The entry source.
+	 */
+	private final UniProtEntrySource source;
+
+	/**
+	 * The folder containing the cache files.
+	 */
+	private final File cacheDir;
+
+	/**
+	 * The number of retries of a failed request.
+	 */
+	private final int maxRetries;
+
+	/**
+	 * The delay in milliseconds before the first retry.
+	 */
+	private final long backoff;
+
+	/**
+	 * The bounded pool of request threads.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * The file offsets of the cached records keyed by primary and secondary accessions.
+	 */
+	private final TObjectLongMap<String> index = new TObjectLongHashMap<String>();
+
+	/**
+	 * The release of the opened cache file.
+	 */
+	private String release;
+
+	/**
+	 * The output stream appending to the cache file.
+	 */
+	private DataOutputStream cacheOut;
+
+	/**
+	 * The random access file reading records from the cache file.
+	 */
+	private RandomAccessFile cacheIn;
+
+	/**
+	 * The length of the cache file.
+	 */
+	private long cacheLength;
+
+	/**
+	 * Creates a retriever with default concurrency and retry settings.
+	 * @param source the entry source
+	 * @param cacheDir the folder containing the cache files
+	 */
+	public UniProtRetriever(UniProtEntrySource source, File cacheDir) {
+		this(source, cacheDir, DEFAULT_THREADS, DEFAULT_RETRIES, DEFAULT_BACKOFF);
+	}
+
+	/**
+	 * Creates a retriever.
+	 * @param source the entry source
+	 * @param cacheDir the folder containing the cache files or <code>null</code> to disable caching
+	 * @param threads the maximum number of concurrent requests
+	 * @param maxRetries the number of retries of a failed request
+	 * @param backoff the delay in milliseconds before the first retry, doubled for each further retry
+	 */
+	public UniProtRetriever(UniProtEntrySource source, File cacheDir, int threads, int maxRetries, long backoff) {
+		this.source = source;
+		this.cacheDir = cacheDir;
+		this.maxRetries = maxRetries;
+		this.backoff = backoff;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count;
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "UniProtRetriever-" + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Returns the shared retriever querying the UniProt web service and
+	 * caching responses in the configuration folder.
+	 * @return the shared retriever
+	 */
+	public static synchronized UniProtRetriever getInstance() {
+		if (instance == null) {
+			File cacheDir = null;
+			try {
+				if (Starter.isJarExport()) {
+					cacheDir = new File(Constants.CONFIGURATION_PATH_JAR + File.separator + CACHE_FOLDER);
+				} else {
+					URL url = UniProtRetriever.class.getResource(Constants.CONFIGURATION_PATH);
+					cacheDir = new File(new File(url.toURI()), CACHE_FOLDER);
+				}
+			} catch (Exception e) {
+				log.error("Could not locate UniProt response cache folder: " + e.getMessage(), e);
+			}
+			instance = new UniProtRetriever(new JapiEntrySource(), cacheDir);
+		}
+		return instance;
+	}
+
+	/**
+	 * Retrieves the entries of the specified UniProt accessions from the
+	 * response cache or, if missing there, from the entry source. Batches
+	 * that still fail after all retries are logged and omitted from the
+	 * result.
+	 * @param accessions the primary or secondary UniProt accessions
+	 * @param doUniRefRetrieval <code>true</code> if UniRef cluster IDs shall be retrieved, too
+	 * @return a mapping of primary accessions to protein data
+	 */
+	public Map<String, ReducedProteinData> retrieve(List<String> accessions, boolean doUniRefRetrieval) {
+		Map<String, ReducedProteinData> proteinData = new TreeMap<String, ReducedProteinData>();
+		this.checkRelease();
+
+		List<String> missingList = new ArrayList<String>();
+		for (String accession : new LinkedHashSet<String>(accessions)) {
+			ReducedProteinData data = this.getCached(accession);
+			if ((data != null) && (!doUniRefRetrieval || (data.getUniRef100EntryId() != null))) {
+				proteinData.put(data.getAccession(), data);
+			} else {
+				missingList.add(accession);
+			}
+		}
+		if (missingList.isEmpty()) {
+			return proteinData;
+		}
+
+		int batchSize = source.getBatchSize();
+		List<Future<Map<String, ReducedProteinData>>> futures = new ArrayList<Future<Map<String, ReducedProteinData>>>();
+		for (int i = 0; i < missingList.size(); i += batchSize) {
+			List<String> batch = new ArrayList<String>(
+					missingList.subList(i, Math.min(i + batchSize, missingList.size())));
+			futures.add(executor.submit(new BatchRequest(batch, doUniRefRetrieval)));
+		}
+		for (Future<Map<String, ReducedProteinData>> future : futures) {
+			try {
+				proteinData.putAll(future.get());
+			} catch (ExecutionException e) {
+				log.error("UniProt retrieval failed: " + e.getCause().getMessage(), e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				log.error("UniProt retrieval interrupted.", e);
+				break;
+			}
+		}
+		return proteinData;
+	}
+
+	/**
+	 * Returns the number of cached accessions.
+	 * @return the number of primary and secondary accessions in the cache
+	 */
+	public synchronized int getCacheSize() {
+		return index.size();
+	}
+
+	/**
+	 * Stops the request threads and closes the cache file.
+	 */
+	public synchronized void shutdown() {
+		executor.shutdownNow();
+		this.closeCache();
+	}
+
+	/**
+	 * Determines the release served by the entry source and opens the
+	 * corresponding cache file unless it is open already. If the release
+	 * cannot be determined an open cache file remains in use, otherwise
+	 * retrieval proceeds without cache and opening is attempted again upon
+	 * the next retrieval.
+	 */
+	private synchronized void checkRelease() {
+		if (cacheDir == null) {
+			return;
+		}
+		String newRelease;
+		try {
+			Callable<String> task = new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					return source.getRelease();
+				}
+			};
+			// an open cache is not worth waiting for retries
+			newRelease = (release == null) ? this.withRetries(task) : task.call();
+		} catch (Exception e) {
+			if (release == null) {
+				log.warn("Could not determine UniProt release, responses will not be cached: " + e.getMessage());
+			} else {
+				log.warn("Could not verify UniProt release, keeping response cache of release " + release + ": " + e.getMessage());
+			}
+			return;
+		}
+		if (newRelease.equals(release)) {
+			return;
+		}
+		if (release != null) {
+			log.info("UniProt release changed from " + release + " to " + newRelease + ", opening new response cache.");
+			this.closeCache();
+		}
+		File cacheFile = new File(cacheDir, "uniprot-" + newRelease.replaceAll("[^A-Za-z0-9._-]", "_") + ".cache");
+		try {
+			this.openCache(cacheFile);
+			release = newRelease;
+		} catch (IOException e) {
+			log.error("Could not open UniProt response cache " + cacheFile + ": " + e.getMessage(), e);
+			this.closeCache();
+		}
+	}
+
+	/**
+	 * Opens the specified cache file, indexing its records and compacting it
+	 * if necessary.
+	 * @param cacheFile the cache file
+	 * @throws IOException if an I/O error occurs
+	 */
+	private void openCache(File cacheFile) throws IOException {
+		if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+			throw new IOException("Could not create folder " + cacheDir);
+		}
+		long length = 0L;
+		if (cacheFile.exists()) {
+			TLongIntMap recordSizes = new TLongIntHashMap();
+			try {
+				length = this.readIndex(cacheFile, recordSizes);
+			} catch (IOException e) {
+				log.warn(e.getMessage() + ", discarding it.");
+				index.clear();
+			}
+			RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw");
+			try {
+				if (raf.length() > length) {
+					if (length > 0L) {
+						log.warn("Discarding incomplete record at the end of " + cacheFile);
+					}
+					raf.setLength(length);
+				}
+			} finally {
+				raf.close();
+			}
+			if (length > 0L) {
+				length = this.compact(cacheFile, length, recordSizes);
+			}
+		}
+		cacheOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile, true)));
+		if (length == 0L) {
+			cacheOut.writeInt(MAGIC);
+			cacheOut.writeInt(VERSION);
+			cacheOut.flush();
+			length = HEADER_SIZE;
+		}
+		cacheLength = length;
+		cacheIn = new RandomAccessFile(cacheFile, "r");
+	}
+
+	/**
+	 * Closes the cache file and clears the index.
+	 */
+	private void closeCache() {
+		try {
+			if (cacheOut != null) {
+				cacheOut.close();
+			}
+			if (cacheIn != null) {
+				cacheIn.close();
+			}
+		} catch (IOException e) {
+			log.error("Could not close UniProt response cache: " + e.getMessage(), e);
+		}
+		cacheOut = null;
+		cacheIn = null;
+		index.clear();
+		release = null;
+	}
+
+	/**
+	 * Indexes the records of the specified cache file.
+	 * @param cacheFile the cache file
+	 * @param recordSizes the map to store the sizes of all records keyed by offset
+	 * @return the length of the valid part of the file
+	 * @throws IOException if the file cannot be read or is no response cache
+	 */
+	private long readIndex(File cacheFile, TLongIntMap recordSizes) throws IOException {
+		long fileLength = cacheFile.length();
+		DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+		long length = 0L;
+		try {
+			if ((dis.readInt() != MAGIC) || (dis.readInt() != VERSION)) {
+				throw new IOException("Unsupported UniProt response cache file " + cacheFile);
+			}
+			length = HEADER_SIZE;
+			while (true) {
+				int size = dis.readInt();
+				if ((size < 0) || (length + 4L + size > fileLength)) {
+					// incomplete trailing record
+					break;
+				}
+				byte[] bytes = new byte[size];
+				dis.readFully(bytes);
+				// only the accessions are needed for the index
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+				String accession = record.readUTF();
+				String secondary = record.readUTF();
+				this.putIndex(accession, secondary.isEmpty()
+						? new ArrayList<String>() : Arrays.asList(secondary.split(";")), length);
+				recordSizes.put(length, 4 + bytes.length);
+				length += 4 + bytes.length;
+			}
+		} catch (EOFException e) {
+			// end of file or incomplete trailing record
+		} finally {
+			dis.close();
+		}
+		return length;
+	}
+
+	/**
+	 * Rewrites the specified cache file without superseded records if these
+	 * make up more than a third of its length.
+	 * @param cacheFile the cache file
+	 * @param length the length of the cache file
+	 * @param recordSizes the sizes of all records keyed by offset
+	 * @return the length of the cache file after compaction
+	 * @throws IOException if an I/O error occurs
+	 */
+	private long compact(File cacheFile, long length, TLongIntMap recordSizes) throws IOException {
+		long[] liveOffsets = new TLongHashSet(index.values()).toArray();
+		long liveLength = HEADER_SIZE;
+		for (long offset : liveOffsets) {
+			liveLength += recordSizes.get(offset);
+		}
+		if (3L * (length - liveLength) <= length) {
+			return length;
+		}
+		Arrays.sort(liveOffsets);
+		TLongLongMap movedOffsets = new TLongLongHashMap(liveOffsets.length);
+		File tmpFile = File.createTempFile(cacheFile.getName(), ".tmp", cacheDir);
+		try {
+			RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+			DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			try {
+				dos.writeInt(MAGIC);
+				dos.writeInt(VERSION);
+				long position = HEADER_SIZE;
+				for (long offset : liveOffsets) {
+					byte[] bytes = new byte[recordSizes.get(offset)];
+					raf.seek(offset);
+					raf.readFully(bytes);
+					dos.write(bytes);
+					movedOffsets.put(offset, position);
+					position += bytes.length;
+				}
+			} finally {
+				dos.close();
+				raf.close();
+			}
+			if (!cacheFile.delete() || !tmpFile.renameTo(cacheFile)) {
+				throw new IOException("Could not replace " + cacheFile + " by compacted file");
+			}
+		} finally {
+			tmpFile.delete();
+		}
+		for (TObjectLongIterator<String> it = index.iterator(); it.hasNext();) {
+			it.advance();
+			it.setValue(movedOffsets.get(it.value()));
+		}
+		log.info("Compacted UniProt response cache " + cacheFile + " from " + length + " to " + liveLength + " bytes.");
+		return liveLength;
+	}
+
+	/**
+	 * Maps the specified primary and secondary accessions to the specified record offset.
+	 * @param accession the primary accession
+	 * @param secondaryAccessions the secondary accessions
+	 * @param offset the record offset
+	 */
+	private void putIndex(String accession, List<String> secondaryAccessions, long offset) {
+		index.put(accession, offset);
+		for (String secondary : secondaryAccessions) {
+			index.put(secondary, offset);
+		}
+	}
+
+	/**
+	 * Reads the cached entry of the specified primary or secondary accession.
+	 * @param accession the accession
+	 * @return the protein data or <code>null</code> if the accession is not cached
+	 */
+	private synchronized ReducedProteinData getCached(String accession) {
+		if ((cacheIn == null) || !index.containsKey(accession)) {
+			return null;
+		}
+		try {
+			cacheIn.seek(index.get(accession));
+			byte[] bytes = new byte[cacheIn.readInt()];
+			cacheIn.readFully(bytes);
+			return readRecord(new DataInputStream(new ByteArrayInputStream(bytes)));
+		} catch (IOException e) {
+			log.error("Could not read UniProt response cache: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Appends the specified entries to the cache file.
+	 * @param proteinData the protein data
+	 */
+	private synchronized void writeCached(Map<String, ReducedProteinData> proteinData) {
+		if (cacheOut == null) {
+			return;
+		}
+		try {
+			List<byte[]> records = new ArrayList<byte[]>(proteinData.size());
+			for (ReducedProteinData data : proteinData.values()) {
+				byte[] bytes = toRecord(data);
+				cacheOut.writeInt(bytes.length);
+				cacheOut.write(bytes);
+				records.add(bytes);
+			}
+			cacheOut.flush();
+			// index records only once they have been written completely
+			int i = 0;
+			for (ReducedProteinData data : proteinData.values()) {
+				this.putIndex(data.getAccession(), data.getSecondaryAccessions(), cacheLength);
+				cacheLength += 4 + records.get(i++).length;
+			}
+		} catch (IOException e) {
+			// the file may end with an incomplete record, re-open it upon the next retrieval
+			log.error("Could not write UniProt response cache: " + e.getMessage(), e);
+			this.closeCache();
+		}
+	}
+
+	/**
+	 * Serializes the specified entry to a cache record.
+	 * @param data the protein data
+	 * @return the record bytes without length prefix
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static byte[] toRecord(ReducedProteinData data) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		DataOutputStream dos = new DataOutputStream(baos);
+		dos.writeUTF(data.getAccession());
+		StringBuilder secondary = new StringBuilder();
+		for (String accession : data.getSecondaryAccessions()) {
+			if (secondary.length() > 0) {
+				secondary.append(';');
+			}
+			secondary.append(accession);
+		}
+		dos.writeUTF(secondary.toString());
+		dos.writeLong((data.getTaxID() == null) ? -1L : data.getTaxID());
+		dos.writeUTF(nullToEmpty(data.getEcNumbers()));
+		dos.writeUTF(nullToEmpty(data.getKoNumbers()));
+		dos.writeUTF(nullToEmpty(data.getKeywords()));
+		dos.writeUTF(nullToEmpty(data.getUniRef100EntryId()));
+		dos.writeUTF(nullToEmpty(data.getUniRef90EntryId()));
+		dos.writeUTF(nullToEmpty(data.getUniRef50EntryId()));
+		String sequence = data.getSequence();
+		if (sequence == null) {
+			dos.writeInt(-1);
+		} else {
+			byte[] bytes = sequence.getBytes(ASCII);
+			dos.writeInt(bytes.length);
+			dos.write(bytes);
+		}
+		dos.flush();
+		return baos.toByteArray();
+	}
+
+	/**
+	 * Reads a cache record.
+	 * @param dis the input stream
+	 * @return the protein data
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static ReducedProteinData readRecord(DataInputStream dis) throws IOException {
+		String accession = dis.readUTF();
+		String secondary = dis.readUTF();
+		List<String> secondaryAccessions = (secondary.isEmpty())
+				? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(secondary.split(";")));
+		long taxID = dis.readLong();
+		String ecNumbers = dis.readUTF();
+		String koNumbers = dis.readUTF();
+		String keywords = dis.readUTF();
+		String uniRef100 = emptyToNull(dis.readUTF());
+		String uniRef90 = emptyToNull(dis.readUTF());
+		String uniRef50 = emptyToNull(dis.readUTF());
+		String sequence = null;
+		int length = dis.readInt();
+		if (length >= 0) {
+			byte[] bytes = new byte[length];
+			dis.readFully(bytes);
+			sequence = new String(bytes, ASCII);
+		}
+		return new ReducedProteinData(accession, secondaryAccessions, (taxID < 0L) ? null : taxID,
+				ecNumbers, koNumbers, keywords, uniRef100, uniRef90, uniRef50, sequence);
+	}
+
+	private static String nullToEmpty(String value) {
+		return (value == null) ? "" : value;
+	}
+
+	private static String emptyToNull(String value) {
+		return value.isEmpty() ? null : value;
+	}
+
+	/**
+	 * Calls the specified task, retrying it with exponentially increasing
+	 * delays if it fails.
+	 * @param task the task
+	 * @return the task result
+	 * @throws Exception if the last attempt fails
+	 */
+	private <T> T withRetries(Callable<T> task) throws Exception {
+		long delay = backoff;
+		for (int attempt = 0; ; attempt++) {
+			try {
+				return task.call();
+			} catch (Exception e) {
+				if (attempt >= maxRetries) {
+					throw e;
+				}
+				log.warn("UniProt request failed (" + e.getMessage() + "), retrying in " + delay + " ms.");
+				Thread.sleep(delay);
+				delay *= 2L;
+			}
+		}
+	}
+
+	/**
+	 * Task requesting a batch of accessions from the entry source and adding
+	 * the response to the cache.
+	 */
+	private class BatchRequest implements Callable<Map<String, ReducedProteinData>> {
+
+		/**
+		 * The accessions.
+		 */
+		private final List<String> accessions;
+
+		/**
+		 * The flag denoting whether UniRef cluster IDs shall be retrieved.
+		 */
+		private final boolean doUniRefRetrieval;
+
+		/**
+		 * Creates a request for the specified batch of accessions.
+		 * @param accessions the accessions
+		 * @param doUniRefRetrieval <code>true</code> if UniRef cluster IDs shall be retrieved, too
+		 */
+		public BatchRequest(List<String> accessions, boolean doUniRefRetrieval) {
+			this.accessions = accessions;
+			this.doUniRefRetrieval = doUniRefRetrieval;
+		}
+
+		@Override
+		public Map<String, ReducedProteinData> call() throws Exception {
+			Map<String, ReducedProteinData> proteinData = withRetries(new Callable<Map<String, ReducedProteinData>>() {
+				@Override
+				public Map<String, ReducedProteinData> call() throws Exception {
+					return source.fetch(accessions, doUniRefRetrieval);
+				}
+			});
+			writeCached(proteinData);
+			return proteinData;
+		}
+	}
+
+}
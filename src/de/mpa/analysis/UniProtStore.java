@@ -0,0 +1,920 @@
+package de.mpa.analysis;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+
+import de.mpa.client.Constants;
+import de.mpa.main.Starter;
+
+/**
+ * Read-only store of UniProt annotations (taxonomy ID, EC numbers, KO numbers,
+ * keywords and UniRef cluster IDs) backed by a memory-mapped binary file. The
+ * file is imported once from a UniProt flat file ('uniprot_sprot.dat',
+ * 'uniprot_trembl.dat') and optionally the UniProt ID mapping file
+ * 'idmapping_selected.tab' providing UniRef cluster memberships. Records are
+ * found by binary search over the sorted hashes of primary and secondary
+ * accessions.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * int      magic number
+ * int      version
+ * int      number of records
+ * int      number of accession keys
+ * long[]   sorted accession hashes
+ * int[]    record indices of the accession keys
+ * long[]   record offsets relative to the record section
+ * byte[]   UniRef100/90/50 IDs per record (fixed width, zero-padded ASCII)
+ * byte[]   records (length-prefixed UTF-8 strings and the taxonomy ID)
+ * </pre>
+ *
+ * @author A. Behne
+ */
+public class UniProtStore {
+
+	/**
+	 * The filename of the UniProt store inside the configuration folder.
+	 */
+	public static final String STORE_FILENAME = "uniprot.bin";
+
+	/**
+	 * The magic number identifying UniProt store files.
+	 */
+	private static final int MAGIC = 0x4D504155;
+
+	/**
+	 * The file format version.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * The byte size of the file header.
+	 */
+	private static final int HEADER_SIZE = 16;
+
+	/**
+	 * The fixed byte width of a UniRef ID.
+	 */
+	private static final int UNIREF_LENGTH = 24;
+
+	/**
+	 * The number of array elements per mapped buffer.
+	 */
+	private static final int BLOCK_SIZE = 1 << 27;
+
+	/**
+	 * The size of the memory-mapped segments of the record section.
+	 */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	/**
+	 * The number of bytes by which consecutive record segments overlap, i.e.
+	 * the maximum record size.
+	 */
+	private static final long SEGMENT_OVERLAP = 1L << 20;
+
+	/**
+	 * The maximum byte length of a record string, chosen such that the five
+	 * strings and the taxonomy ID of a record fit into the segment overlap.
+	 */
+	private static final int MAX_STRING_LENGTH = (int) (SEGMENT_OVERLAP / 8L);
+
+	/**
+	 * The ASCII character set.
+	 */
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The logger instance.
+	 */
+	private static Logger log = Logger.getLogger(UniProtStore.class);
+
+	/**
+	 * The shared store instance.
+	 */
+	private static UniProtStore instance;
+
+	/**
+	 * Flag denoting whether opening the shared store instance has been attempted.
+	 */
+	private static boolean initialized;
+
+	/**
+	 * The number of records.
+	 */
+	private final int recordCount;
+
+	/**
+	 * The number of accession keys.
+	 */
+	private final int keyCount;
+
+	/**
+	 * The blocks of sorted accession hashes.
+	 */
+	private final LongBuffer[] hashes;
+
+	/**
+	 * The blocks of record indices of the accession keys.
+	 */
+	private final IntBuffer[] keyRecords;
+
+	/**
+	 * The blocks of record offsets.
+	 */
+	private final LongBuffer[] offsets;
+
+	/**
+	 * The byte position of the record section.
+	 */
+	private final long recordsPos;
+
+	/**
+	 * The store file channel.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The mapped UniRef section blocks.
+	 */
+	private final MappedByteBuffer[] unirefs;
+
+	/**
+	 * The lazily mapped segments of the record section.
+	 */
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Maps the specified UniProt store file into memory.
+	 * @param storeFile the UniProt store file
+	 * @throws IOException if the file cannot be read or is no UniProt store
+	 */
+	public UniProtStore(File storeFile) throws IOException {
+		channel = new RandomAccessFile(storeFile, "r").getChannel();
+		if (channel.size() < HEADER_SIZE) {
+			channel.close();
+			throw new IOException("Unsupported UniProt store file: " + storeFile);
+		}
+		ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0L, HEADER_SIZE);
+		if ((header.getInt() != MAGIC) || (header.getInt() != VERSION)) {
+			channel.close();
+			throw new IOException("Unsupported UniProt store file: " + storeFile);
+		}
+		recordCount = header.getInt();
+		keyCount = header.getInt();
+
+		long pos = HEADER_SIZE;
+		hashes = new LongBuffer[blockCount(keyCount)];
+		for (int i = 0; i < hashes.length; i++) {
+			hashes[i] = this.map(pos + 8L * i * BLOCK_SIZE, 8L * blockLength(keyCount, i)).asLongBuffer();
+		}
+		pos += 8L * keyCount;
+		keyRecords = new IntBuffer[blockCount(keyCount)];
+		for (int i = 0; i < keyRecords.length; i++) {
+			keyRecords[i] = this.map(pos + 4L * i * BLOCK_SIZE, 4L * blockLength(keyCount, i)).asIntBuffer();
+		}
+		pos += 4L * keyCount;
+		offsets = new LongBuffer[blockCount(recordCount)];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = this.map(pos + 8L * i * BLOCK_SIZE, 8L * blockLength(recordCount, i)).asLongBuffer();
+		}
+		pos += 8L * recordCount;
+		int unirefsPerBlock = BLOCK_SIZE / (3 * UNIREF_LENGTH);
+		unirefs = new MappedByteBuffer[(int) ((recordCount + unirefsPerBlock - 1L) / unirefsPerBlock)];
+		for (int i = 0; i < unirefs.length; i++) {
+			int records = Math.min(unirefsPerBlock, recordCount - i * unirefsPerBlock);
+			unirefs[i] = this.map(pos + 3L * UNIREF_LENGTH * i * unirefsPerBlock, 3L * UNIREF_LENGTH * records);
+		}
+		pos += 3L * UNIREF_LENGTH * recordCount;
+		recordsPos = pos;
+		segments = new MappedByteBuffer[(int) ((channel.size() - recordsPos + SEGMENT_SIZE - 1L) / SEGMENT_SIZE)];
+	}
+
+	/**
+	 * Returns the UniProt store located in the configuration folder.
+	 * @return the UniProt store or <code>null</code> if no store file exists
+	 */
+	public static synchronized UniProtStore getInstance() {
+		if (!initialized) {
+			initialized = true;
+			try {
+				File storeFile = null;
+				if (Starter.isJarExport()) {
+					storeFile = new File(Constants.CONFIGURATION_PATH_JAR + File.separator + STORE_FILENAME);
+				} else {
+					URL url = UniProtStore.class.getResource(Constants.CONFIGURATION_PATH + STORE_FILENAME);
+					if (url != null) {
+						storeFile = new File(url.toURI());
+					}
+				}
+				if ((storeFile != null) && storeFile.exists()) {
+					instance = new UniProtStore(storeFile);
+				} else {
+					log.info("No UniProt store found, annotations will be retrieved from the UniProt web service.");
+				}
+			} catch (Exception e) {
+				log.error("Could not open UniProt store: " + e.getMessage(), e);
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Replaces the shared store instance, e.g. by a store located elsewhere.
+	 * @param store the UniProt store or <code>null</code> to disable the store
+	 */
+	static synchronized void setInstance(UniProtStore store) {
+		initialized = true;
+		instance = store;
+	}
+
+	/**
+	 * Returns the number of stored records.
+	 * @return the number of records
+	 */
+	public int size() {
+		return recordCount;
+	}
+
+	/**
+	 * Returns the annotations of the specified primary or secondary accession.
+	 * @param accession the UniProt accession
+	 * @return the protein data or <code>null</code> if the accession is unknown
+	 * @throws IOException if the store file cannot be mapped
+	 */
+	public ReducedProteinData getProteinData(String accession) throws IOException {
+		long hash = hash(accession);
+		int index = this.indexOf(hash);
+		if (index < 0) {
+			return null;
+		}
+		// rewind to the first of several keys sharing the same hash
+		while ((index > 0) && (this.getHash(index - 1) == hash)) {
+			index--;
+		}
+		// resolve hash collisions by comparing the actual accessions
+		for (; (index < keyCount) && (this.getHash(index) == hash); index++) {
+			ReducedProteinData data = this.readRecord(this.getKeyRecord(index));
+			if (accession.equals(data.getAccession()) || data.getSecondaryAccessions().contains(accession)) {
+				return data;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the store file.
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Reads the specified record.
+	 * @param record the record index
+	 * @return the protein data
+	 * @throws IOException if the store file cannot be mapped
+	 */
+	private ReducedProteinData readRecord(int record) throws IOException {
+		long offset = offsets[record / BLOCK_SIZE].get(record % BLOCK_SIZE);
+		int segmentIndex = (int) (offset / SEGMENT_SIZE);
+		ByteBuffer buf = this.getSegment(segmentIndex).duplicate();
+		buf.position((int) (offset - segmentIndex * SEGMENT_SIZE));
+		DataInputStream dis = new DataInputStream(new ByteBufferInputStream(buf));
+		String accession = readString(dis);
+		String secondary = readString(dis);
+		List<String> secondaryAccessions = (secondary.isEmpty())
+				? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(secondary.split(";")));
+		long taxID = dis.readLong();
+		String ecNumbers = readString(dis);
+		String koNumbers = readString(dis);
+		String keywords = readString(dis);
+
+		int unirefsPerBlock = BLOCK_SIZE / (3 * UNIREF_LENGTH);
+		ByteBuffer unirefBuf = unirefs[record / unirefsPerBlock].duplicate();
+		unirefBuf.position(3 * UNIREF_LENGTH * (record % unirefsPerBlock));
+		String uniref100 = readUniRef(unirefBuf);
+		String uniref90 = readUniRef(unirefBuf);
+		String uniref50 = readUniRef(unirefBuf);
+
+		return new ReducedProteinData(accession, secondaryAccessions, taxID,
+				ecNumbers, koNumbers, keywords, uniref100, uniref90, uniref50);
+	}
+
+	/**
+	 * Reads a length-prefixed UTF-8 string.
+	 * @param dis the input stream
+	 * @return the string
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static String readString(DataInputStream dis) throws IOException {
+		byte[] bytes = new byte[dis.readInt()];
+		dis.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Writes the specified string with a length prefix in UTF-8 encoding.
+	 * Strings exceeding the maximum record string length are cut after the
+	 * last complete semicolon-separated value fitting into it.
+	 * @param dos the output stream
+	 * @param str the string
+	 * @return <code>true</code> if the string was cut, <code>false</code> otherwise
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static boolean writeString(DataOutputStream dos, String str) throws IOException {
+		byte[] bytes = str.getBytes(UTF8);
+		boolean cut = (bytes.length > MAX_STRING_LENGTH);
+		if (cut) {
+			str = new String(bytes, 0, MAX_STRING_LENGTH, UTF8);
+			str = str.substring(0, Math.max(0, str.lastIndexOf(';')));
+			bytes = str.getBytes(UTF8);
+		}
+		dos.writeInt(bytes.length);
+		dos.write(bytes);
+		return cut;
+	}
+
+	/**
+	 * Reads a fixed-width UniRef ID and advances the buffer position past it.
+	 * @param buf the UniRef section buffer
+	 * @return the UniRef ID or <code>null</code> if none is stored
+	 */
+	private static String readUniRef(ByteBuffer buf) {
+		byte[] bytes = new byte[UNIREF_LENGTH];
+		buf.get(bytes);
+		int length = 0;
+		while ((length < UNIREF_LENGTH) && (bytes[length] != 0)) {
+			length++;
+		}
+		return (length == 0) ? null : new String(bytes, 0, length, ASCII);
+	}
+
+	/**
+	 * Binary searches the sorted hashes for the specified hash.
+	 * @param hash the accession hash
+	 * @return the index of a matching hash or <code>-1</code> if none matches
+	 */
+	private int indexOf(long hash) {
+		int low = 0;
+		int high = keyCount - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midHash = this.getHash(mid);
+			if (midHash < hash) {
+				low = mid + 1;
+			} else if (midHash > hash) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the hash of the specified accession key.
+	 * @param index the key index
+	 * @return the hash
+	 */
+	private long getHash(int index) {
+		return hashes[index / BLOCK_SIZE].get(index % BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns the record index of the specified accession key.
+	 * @param index the key index
+	 * @return the record index
+	 */
+	private int getKeyRecord(int index) {
+		return keyRecords[index / BLOCK_SIZE].get(index % BLOCK_SIZE);
+	}
+
+	/**
+	 * Maps the specified region of the store file.
+	 * @param pos the byte position
+	 * @param length the number of bytes
+	 * @return the mapped region
+	 * @throws IOException if the region cannot be mapped
+	 */
+	private MappedByteBuffer map(long pos, long length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+	}
+
+	/**
+	 * Returns the specified segment of the record section, maps it if necessary.
+	 * @param segmentIndex the segment index
+	 * @return the segment
+	 * @throws IOException if the store file cannot be mapped
+	 */
+	private synchronized MappedByteBuffer getSegment(int segmentIndex) throws IOException {
+		MappedByteBuffer segment = segments[segmentIndex];
+		if (segment == null) {
+			long start = recordsPos + segmentIndex * SEGMENT_SIZE;
+			segment = this.map(start, Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, channel.size() - start));
+			segments[segmentIndex] = segment;
+		}
+		return segment;
+	}
+
+	/**
+	 * Returns the number of buffers needed to map the specified number of array elements.
+	 * @param length the number of elements
+	 * @return the number of blocks
+	 */
+	private static int blockCount(int length) {
+		return (int) ((length + BLOCK_SIZE - 1L) / BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns the number of array elements in the specified block.
+	 * @param length the total number of elements
+	 * @param block the block index
+	 * @return the number of elements in the block
+	 */
+	private static int blockLength(int length, int block) {
+		return Math.min(BLOCK_SIZE, length - block * BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns the 64-bit FNV-1a hash of the specified accession.
+	 * @param accession the accession
+	 * @return the hash
+	 */
+	private static long hash(String accession) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < accession.length(); i++) {
+			hash ^= accession.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Imports a UniProt store file from the specified UniProt flat file and
+	 * optional ID mapping file. Both files may be gzip-compressed.
+	 * @param datFile the UniProt flat file, e.g. 'uniprot_sprot.dat'
+	 * @param idMappingFile the ID mapping file 'idmapping_selected.tab'
+	 *  providing UniRef cluster IDs, may be <code>null</code>
+	 * @param storeFile the UniProt store file to write
+	 * @return the number of imported records
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static int build(File datFile, File idMappingFile, File storeFile) throws IOException {
+		TLongList keyHashes = new TLongArrayList();
+		TIntList keyRecordList = new TIntArrayList();
+		TLongList offsetList = new TLongArrayList();
+
+		// write records to a temporary file while collecting the accession keys
+		File recordsFile = File.createTempFile("uniprot", ".tmp", storeFile.getAbsoluteFile().getParentFile());
+		try {
+			CountingOutputStream cos = new CountingOutputStream(
+					new BufferedOutputStream(new FileOutputStream(recordsFile), 1 << 16));
+			DataOutputStream records = new DataOutputStream(cos);
+			BufferedReader br = new BufferedReader(new InputStreamReader(open(datFile), "UTF-8"), 1 << 16);
+			try {
+				FlatFileEntry entry = new FlatFileEntry();
+				String line;
+				while ((line = br.readLine()) != null) {
+					if (line.startsWith("//")) {
+						if (!entry.accessions.isEmpty()) {
+							int record = offsetList.size();
+							offsetList.add(cos.count);
+							entry.write(records);
+							for (String accession : entry.accessions) {
+								keyHashes.add(hash(accession));
+								keyRecordList.add(record);
+							}
+						}
+						entry = new FlatFileEntry();
+					} else {
+						entry.parseLine(line);
+					}
+				}
+			} finally {
+				br.close();
+				records.close();
+			}
+
+			long[] hashes = keyHashes.toArray();
+			keyHashes = null;
+			int[] keyRecords = keyRecordList.toArray();
+			keyRecordList = null;
+			sort(hashes, keyRecords, 0, hashes.length - 1);
+			int recordCount = offsetList.size();
+
+			DataOutputStream dos = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(storeFile), 1 << 16));
+			try {
+				dos.writeInt(MAGIC);
+				dos.writeInt(VERSION);
+				dos.writeInt(recordCount);
+				dos.writeInt(hashes.length);
+				for (long hash : hashes) {
+					dos.writeLong(hash);
+				}
+				for (int record : keyRecords) {
+					dos.writeInt(record);
+				}
+				for (int i = 0; i < recordCount; i++) {
+					dos.writeLong(offsetList.get(i));
+				}
+				// UniRef IDs are filled in afterwards
+				byte[] empty = new byte[3 * UNIREF_LENGTH];
+				for (int i = 0; i < recordCount; i++) {
+					dos.write(empty);
+				}
+				InputStream is = new BufferedInputStream(new FileInputStream(recordsFile));
+				try {
+					byte[] buf = new byte[1 << 16];
+					int read;
+					while ((read = is.read(buf)) > 0) {
+						dos.write(buf, 0, read);
+					}
+				} finally {
+					is.close();
+				}
+			} finally {
+				dos.close();
+			}
+
+			if (idMappingFile != null) {
+				long unirefPos = HEADER_SIZE + 12L * hashes.length + 8L * recordCount;
+				importUniRefs(idMappingFile, storeFile, hashes, keyRecords, unirefPos);
+			}
+			return recordCount;
+		} finally {
+			recordsFile.delete();
+		}
+	}
+
+	/**
+	 * Writes the UniRef cluster IDs listed in the specified ID mapping file
+	 * into the UniRef section of the store file.
+	 * @param idMappingFile the ID mapping file 'idmapping_selected.tab'
+	 * @param storeFile the UniProt store file
+	 * @param hashes the sorted accession hashes
+	 * @param keyRecords the record indices of the accession hashes
+	 * @param unirefPos the byte position of the UniRef section
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static void importUniRefs(File idMappingFile, File storeFile,
+			long[] hashes, int[] keyRecords, long unirefPos) throws IOException {
+		UniProtStore store = new UniProtStore(storeFile);
+		RandomAccessFile raf = new RandomAccessFile(storeFile, "rw");
+		BufferedReader br = new BufferedReader(new InputStreamReader(open(idMappingFile), "UTF-8"), 1 << 16);
+		try {
+			FileChannel out = raf.getChannel();
+			ByteBuffer unirefBuf = ByteBuffer.allocate(3 * UNIREF_LENGTH);
+			// example format: "Q6GZX4	001R_FRG3G	2947773	YP_031579.1	81941549; 49237298		GO:0006355	UniRef100_Q6GZX4	UniRef90_Q6GZX4	UniRef50_Q6GZX4	UPI00003B0FD4		654924	..."
+			String line;
+			while ((line = br.readLine()) != null) {
+				String[] split = line.split("\t", -1);
+				if (split.length < 10) {
+					continue;
+				}
+				String accession = split[0];
+				long hash = hash(accession);
+				int index = Arrays.binarySearch(hashes, hash);
+				if (index < 0) {
+					continue;
+				}
+				while ((index > 0) && (hashes[index - 1] == hash)) {
+					index--;
+				}
+				for (; (index < hashes.length) && (hashes[index] == hash); index++) {
+					int record = keyRecords[index];
+					// UniRef memberships are listed for primary accessions only
+					if (accession.equals(store.readRecord(record).getAccession())) {
+						unirefBuf.clear();
+						for (int i = 7; i < 10; i++) {
+							byte[] bytes = split[i].trim().getBytes(ASCII);
+							unirefBuf.put(bytes, 0, Math.min(bytes.length, UNIREF_LENGTH));
+							for (int j = bytes.length; j < UNIREF_LENGTH; j++) {
+								unirefBuf.put((byte) 0);
+							}
+						}
+						unirefBuf.flip();
+						out.write(unirefBuf, unirefPos + 3L * UNIREF_LENGTH * record);
+						break;
+					}
+				}
+			}
+		} finally {
+			br.close();
+			raf.close();
+			store.close();
+		}
+	}
+
+	/**
+	 * Opens the specified file for reading, decompresses gzip-compressed files.
+	 * @param file the file
+	 * @return the input stream
+	 * @throws IOException if the file cannot be opened
+	 */
+	private static InputStream open(File file) throws IOException {
+		InputStream is = new FileInputStream(file);
+		if (file.getName().endsWith(".gz")) {
+			is = new GZIPInputStream(is, 1 << 16);
+		}
+		return is;
+	}
+
+	/**
+	 * Sorts the key arrays by hash using quicksort.
+	 * @param hashes the accession hashes
+	 * @param records the record indices
+	 * @param low the first index to sort
+	 * @param high the last index to sort
+	 */
+	private static void sort(long[] hashes, int[] records, int low, int high) {
+		while (low < high) {
+			long pivot = hashes[(low + high) >>> 1];
+			int i = low, j = high;
+			while (i <= j) {
+				while (hashes[i] < pivot) {
+					i++;
+				}
+				while (hashes[j] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					long hash = hashes[i];
+					hashes[i] = hashes[j];
+					hashes[j] = hash;
+					int record = records[i];
+					records[i] = records[j];
+					records[j] = record;
+					i++;
+					j--;
+				}
+			}
+			// recurse into the smaller partition to bound the stack depth
+			if (j - low < high - i) {
+				sort(hashes, records, low, j);
+				low = i;
+			} else {
+				sort(hashes, records, i, high);
+				high = j;
+			}
+		}
+	}
+
+	/**
+	 * Imports a UniProt store file from UniProt dump files.
+	 * @param args the paths of the UniProt flat file, the target file and
+	 *  optionally the ID mapping file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: UniProtStore <uniprot.dat[.gz]> <" + STORE_FILENAME + "> [idmapping_selected.tab[.gz]]");
+			return;
+		}
+		long startTime = System.currentTimeMillis();
+		int records = UniProtStore.build(new File(args[0]),
+				(args.length > 2) ? new File(args[2]) : null, new File(args[1]));
+		System.out.println("Imported " + records + " entries in "
+				+ (System.currentTimeMillis() - startTime) / 1000L + " s.");
+	}
+
+	/**
+	 * Annotations of a UniProt flat file entry collected line by line.
+	 */
+	private static class FlatFileEntry {
+
+		/**
+		 * The primary accession followed by the secondary accessions.
+		 */
+		private final List<String> accessions = new ArrayList<String>();
+
+		/**
+		 * The NCBI taxonomy ID.
+		 */
+		private long taxID;
+
+		/**
+		 * The EC numbers.
+		 */
+		private final List<String> ecNumbers = new ArrayList<String>();
+
+		/**
+		 * The KO numbers.
+		 */
+		private final List<String> koNumbers = new ArrayList<String>();
+
+		/**
+		 * The concatenated keyword lines.
+		 */
+		private final StringBuilder keywords = new StringBuilder();
+
+		/**
+		 * Parses the specified flat file line.
+		 * @param line the line
+		 */
+		private void parseLine(String line) {
+			if (line.length() < 5) {
+				return;
+			}
+			String code = line.substring(0, 2);
+			String value = line.substring(5);
+			if (code.equals("AC")) {
+				// example format: "AC   Q6GZX4; Q91G88;"
+				for (String accession : value.split(";")) {
+					accession = accession.trim();
+					if (!accession.isEmpty()) {
+						accessions.add(accession);
+					}
+				}
+			} else if (code.equals("OX")) {
+				// example format: "OX   NCBI_TaxID=654924 {ECO:0000313|EMBL:AAT09660.1};"
+				int start = value.indexOf("NCBI_TaxID=");
+				if (start >= 0) {
+					start += 11;
+					int end = start;
+					while ((end < value.length()) && Character.isDigit(value.charAt(end))) {
+						end++;
+					}
+					taxID = Long.parseLong(value.substring(start, end));
+				}
+			} else if (code.equals("DE")) {
+				// example format: "DE            EC=3.1.1.4 {ECO:0000269|PubMed:11237599};"
+				int start = value.indexOf("EC=");
+				if (start >= 0) {
+					start += 3;
+					int end = start;
+					while ((end < value.length()) && (value.charAt(end) != ';') && (value.charAt(end) != ' ')) {
+						end++;
+					}
+					String ecNumber = value.substring(start, end);
+					if (!ecNumbers.contains(ecNumber)) {
+						ecNumbers.add(ecNumber);
+					}
+				}
+			} else if (code.equals("DR")) {
+				// example format: "DR   KO; K00001; -."
+				if (value.startsWith("KO;")) {
+					String[] split = value.split(";");
+					if (split.length > 1) {
+						koNumbers.add(split[1].trim());
+					}
+				}
+			} else if (code.equals("KW")) {
+				// example format: "KW   Complete proteome; Reference proteome."
+				keywords.append(value).append(' ');
+			}
+		}
+
+		/**
+		 * Writes the entry as a store record.
+		 * @param dos the output stream
+		 * @throws IOException if an I/O error occurs
+		 */
+		private void write(DataOutputStream dos) throws IOException {
+			boolean cut = writeString(dos, accessions.get(0));
+			cut |= writeString(dos, join(accessions.subList(1, accessions.size())));
+			dos.writeLong(taxID);
+			cut |= writeString(dos, join(ecNumbers));
+			cut |= writeString(dos, join(koNumbers));
+			List<String> keywordList = new ArrayList<String>();
+			String kwLines = keywords.toString().trim();
+			if (kwLines.endsWith(".")) {
+				kwLines = kwLines.substring(0, kwLines.length() - 1);
+			}
+			for (String keyword : kwLines.split(";")) {
+				// strip evidence tags, e.g. "Zinc {ECO:0000256|SAAS:SAAS00071424}"
+				int evidence = keyword.indexOf('{');
+				if (evidence >= 0) {
+					keyword = keyword.substring(0, evidence);
+				}
+				keyword = keyword.trim();
+				if (!keyword.isEmpty()) {
+					keywordList.add(keyword);
+				}
+			}
+			cut |= writeString(dos, join(keywordList));
+			if (cut) {
+				log.warn("Oversized annotations of UniProt entry " + accessions.get(0) + " have been cut.");
+			}
+		}
+
+		/**
+		 * Joins the specified values using semicolons.
+		 * @param values the values
+		 * @return the joined values
+		 */
+		private static String join(List<String> values) {
+			StringBuilder sb = new StringBuilder();
+			for (String value : values) {
+				if (sb.length() > 0) {
+					sb.append(';');
+				}
+				sb.append(value);
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Output stream wrapper counting the written bytes.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		/**
+		 * The number of written bytes.
+		 */
+		private long count;
+
+		/**
+		 * Wraps the specified output stream.
+		 * @param out the output stream
+		 */
+		private CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+
+	/**
+	 * Input stream reading from a byte buffer.
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		/**
+		 * The byte buffer.
+		 */
+		private final ByteBuffer buf;
+
+		/**
+		 * Wraps the specified byte buffer.
+		 * @param buf the byte buffer
+		 */
+		private ByteBufferInputStream(ByteBuffer buf) {
+			this.buf = buf;
+		}
+
+		@Override
+		public int read() {
+			return buf.hasRemaining() ? (buf.get() & 0xFF) : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buf.hasRemaining()) {
+				return -1;
+			}
+			len = Math.min(len, buf.remaining());
+			buf.get(b, off, len);
+			return len;
+		}
+	}
+
+}
@@ -3,6 +3,7 @@ package de.mpa.analysis;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
@@ -13,17 +14,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-import uk.ac.ebi.kraken.interfaces.ProteinData;
-import uk.ac.ebi.kraken.interfaces.uniprot.UniProtEntry;
-import uk.ac.ebi.kraken.interfaces.uniref.UniRefDatabaseType;
-import uk.ac.ebi.kraken.interfaces.uniref.UniRefEntry;
-import uk.ac.ebi.kraken.interfaces.uniref.member.UniRefRepresentativeMember;
-import uk.ac.ebi.kraken.uuw.services.remoting.EntryIterator;
-import uk.ac.ebi.kraken.uuw.services.remoting.EntryRetrievalService;
-import uk.ac.ebi.kraken.uuw.services.remoting.Query;
-import uk.ac.ebi.kraken.uuw.services.remoting.UniProtJAPI;
-import uk.ac.ebi.kraken.uuw.services.remoting.UniProtQueryBuilder;
-import uk.ac.ebi.kraken.uuw.services.remoting.UniProtQueryService;
+import org.apache.log4j.Logger;
+
 import de.mpa.client.Constants;
 import de.mpa.main.Starter;
 
@@ -33,19 +25,11 @@ import de.mpa.main.Starter;
  * @date 19-12-2013
  */
 public class UniProtUtilities {
-	
-	// Max clause count == BATCH SIZE is set to 1024
-	private static final int BATCH_SIZE = 1024;
-	
-	/**
-	 * The shared UniProt query service instance. 
-	 */
-	private static UniProtQueryService uniProtQueryService;
-	
+
 	/**
-	 * UniProt (single) entry retrieval service instance.
+	 * The logger instance.
 	 */
-	private static EntryRetrievalService entryRetrievalService;
+	private static Logger log = Logger.getLogger(UniProtUtilities.class);
 
 	/**
 	 * Enumeration holding ontology keywords.
@@ -216,76 +200,50 @@ public class UniProtUtilities {
 
 	/**
 	 * Retrieves batch-wise a mapping of UniProt identifiers to UniProt entries.
+	 * Identifiers are looked up in the local {@link UniProtStore} first, if
+	 * available, only identifiers missing there are retrieved remotely using
+	 * the {@link UniProtRetriever}. Store records lacking UniRef cluster IDs,
+	 * i.e. of stores imported without ID mapping file, are used as they are.
 	 * @param identifierList {@link List} of UniProt identifiers.
 	 * @return {@link Map} of ReducedProteinData objects.
 	 */
 	public static Map<String, ReducedProteinData> retrieveProteinData(List<String> identifierList, boolean doUniRefRetrieval) {
 		Map<String, ReducedProteinData> proteinData = new TreeMap<String, ReducedProteinData>();
 		
-		// Check whether UniProt query service has been established yet.
-		if (uniProtQueryService == null) {
-			uniProtQueryService = UniProtJAPI.factory.getUniProtQueryService();
-		}
-		
-		// Check whether UniProt query service has been established yet.
-		if (entryRetrievalService == null) {
-			entryRetrievalService = UniProtJAPI.factory.getEntryRetrievalService();
+		UniProtStore store = UniProtStore.getInstance();
+		if (store != null) {
+			List<String> missingList = new ArrayList<String>();
+			int missingUniRefs = 0;
+			for (String identifier : identifierList) {
+				ReducedProteinData data = null;
+				try {
+					data = store.getProteinData(identifier);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+				if (data != null) {
+					if (doUniRefRetrieval && (data.getUniRef100EntryId() == null)) {
+						missingUniRefs++;
+					}
+					proteinData.put(data.getAccession(), data);
+				} else {
+					missingList.add(identifier);
+				}
+			}
+			if (missingUniRefs > 0) {
+				log.warn(missingUniRefs + " entries of the local UniProt store lack UniRef cluster IDs, "
+						+ "import 'idmapping_selected.tab' into the store to provide them.");
+			}
+			if (missingList.isEmpty()) {
+				return proteinData;
+			}
+			identifierList = missingList;
 		}
 		
-		int maxClauseCount = BATCH_SIZE;
-		int maxBatchCount = identifierList.size() / maxClauseCount;		
-		for (int i = 0; i < maxBatchCount; i++) {
-			int startIndex = i * maxClauseCount;
-			int endIndex = (i + 1) * maxClauseCount - 1;
-			List<String> shortList = new ArrayList<String>(identifierList.subList(startIndex, endIndex));
-			startIndex = endIndex + 1;
-			queryUniProtEntriesByIdentifiers(shortList, proteinData, doUniRefRetrieval);
-			shortList.clear();
-		}
-		queryUniProtEntriesByIdentifiers(new ArrayList<String>(identifierList.subList(maxBatchCount * maxClauseCount, identifierList.size())), proteinData, doUniRefRetrieval);
+		proteinData.putAll(UniProtRetriever.getInstance().retrieve(identifierList, doUniRefRetrieval));
 		
 		return proteinData;
 	}
-	
-	/**
-	 * Queries the UniProt entries by identifiers.
-	 * @param identifierList {@link List} of UniProt identifiers.
-	 * @param uniprotEntries {@link Map} of UniProt entries.
-	 */
-	private static void queryUniProtEntriesByIdentifiers(List<String> identifierList, Map<String, ReducedProteinData> uniprotEntries, boolean doUniRefRetrieval) {
-		
-		// Create entry retrival service
-		EntryRetrievalService entryRetrievalService = UniProtJAPI.factory.getEntryRetrievalService();
-				
-		Query query = UniProtQueryBuilder.buildIDListQuery(identifierList);
-		EntryIterator<UniProtEntry> entryIterator = uniProtQueryService.getEntryIterator(query);
-		
-		// Iterate the entries and add them to the list. 
-		for (UniProtEntry entry : entryIterator) {
-			
-			ReducedProteinData proteinData;			
-			String accession = entry.getPrimaryUniProtAccession().getValue();
-			if (doUniRefRetrieval) {
-				// Get the UniRefEntry
-				String uniRef100Identifier = "UniRef100_" + accession;
-				UniRefEntry uniRefEntry = entryRetrievalService.getUniRefEntry(uniRef100Identifier);
-				
-				if (uniRefEntry != null) {
-					UniRefRepresentativeMember member = uniRefEntry.getRepresentativeMember();
-					proteinData = new ReducedProteinData(entry, uniRefEntry.getUniRefEntryId().getValue(), member.getUniRef90EntryId().getValue(), member.getUniRef50EntryId().getValue());
-				} else {
-					ProteinData proteinData2 = entryRetrievalService.getProteinData(accession);
-					UniRefEntry uniref100 = proteinData2.getUniRefEntry(UniRefDatabaseType.UniRef100);
-					UniRefEntry uniref90 = proteinData2.getUniRefEntry(UniRefDatabaseType.UniRef90);
-					UniRefEntry uniref50 = proteinData2.getUniRefEntry(UniRefDatabaseType.UniRef50);
-					proteinData = new ReducedProteinData(entry, uniref100.getUniRefEntryId().getValue(), uniref90.getUniRefEntryId().getValue(), uniref50.getUniRefEntryId().getValue());
-				}
-			} else {
-				proteinData = new ReducedProteinData(entry);
-			}
-			uniprotEntries.put(accession, proteinData);
-		}	
-	}
 
 	/**
 	 * The UniProt keyword taxonomy map.
@@ -175,6 +175,21 @@ public class TaxonomyNode implements Serializable {
 		
 		return path.toArray(new TaxonomyNode[path.size()]);
 	}
+
+	/**
+	 * Returns the number of nodes on the path from the taxonomy root to this
+	 * node, i.e. the length of the array returned by {@link #getPath()}.
+	 * @return the depth of this node
+	 */
+	public int getDepth() {
+		int depth = 0;
+		TaxonomyNode parent = this;
+		while (parent.getID() != 1) {
+			depth++;
+			parent = parent.getParentNode();
+		}
+		return depth;
+	}
 	
 	@Override
 	public boolean equals(Object obj) {
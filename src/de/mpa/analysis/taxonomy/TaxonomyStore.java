@@ -0,0 +1,347 @@
+package de.mpa.analysis.taxonomy;
+
+import gnu.trove.map.TIntByteMap;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntByteHashMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import de.mpa.client.Constants;
+import de.mpa.main.Starter;
+
+/**
+ * Read-only NCBI taxonomy backed by a memory-mapped binary file. The file is
+ * built once from the NCBI dump files 'nodes.dmp' and 'names.dmp' and holds
+ * parent IDs, rank indices and name offsets in arrays indexed by taxonomy ID,
+ * hence lookups neither query the database nor parse text.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * int      magic number
+ * int      version
+ * int      size (maximum taxonomy ID + 1)
+ * int      number of ranks, followed by the rank strings (modified UTF-8)
+ * int      length of the name section in bytes
+ * int[]    parent IDs (-1 for missing nodes, 0 for the root node)
+ * int[]    name offsets (-1 for missing names)
+ * byte[]   rank indices
+ * byte[]   scientific names (modified UTF-8)
+ * </pre>
+ *
+ * @author A. Behne
+ */
+public class TaxonomyStore {
+
+	/**
+	 * The filename of the taxonomy store inside the configuration folder.
+	 */
+	public static final String STORE_FILENAME = "taxonomy.bin";
+
+	/**
+	 * The magic number identifying taxonomy store files.
+	 */
+	private static final int MAGIC = 0x4D504154;
+
+	/**
+	 * The file format version.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The UTF-8 character set.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The logger instance.
+	 */
+	private static Logger log = Logger.getLogger(TaxonomyStore.class);
+
+	/**
+	 * The shared store instance.
+	 */
+	private static TaxonomyStore instance;
+
+	/**
+	 * Flag denoting whether opening the shared store instance has been attempted.
+	 */
+	private static boolean initialized;
+
+	/**
+	 * The mapped store file.
+	 */
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * The number of taxonomy ID slots.
+	 */
+	private final int size;
+
+	/**
+	 * The rank strings.
+	 */
+	private final String[] ranks;
+
+	/**
+	 * The byte position of the parent ID array.
+	 */
+	private final int parentsPos;
+
+	/**
+	 * The byte position of the name offset array.
+	 */
+	private final int namesOffsetPos;
+
+	/**
+	 * The byte position of the rank index array.
+	 */
+	private final int ranksPos;
+
+	/**
+	 * The byte position of the name section.
+	 */
+	private final int namesPos;
+
+	/**
+	 * Maps the specified taxonomy store file into memory.
+	 * @param storeFile the taxonomy store file
+	 * @throws IOException if the file cannot be read or is no taxonomy store
+	 */
+	public TaxonomyStore(File storeFile) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(storeFile, "r");
+		try {
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, raf.length());
+		} finally {
+			raf.close();
+		}
+		ByteBuffer header = buffer.duplicate();
+		if ((header.getInt() != MAGIC) || (header.getInt() != VERSION)) {
+			throw new IOException("Unsupported taxonomy store file: " + storeFile);
+		}
+		size = header.getInt();
+		ranks = new String[header.getInt()];
+		for (int i = 0; i < ranks.length; i++) {
+			byte[] bytes = new byte[header.getShort() & 0xFFFF];
+			header.get(bytes);
+			ranks[i] = new String(bytes, UTF8);
+		}
+		header.getInt();
+		parentsPos = header.position();
+		namesOffsetPos = parentsPos + 4 * size;
+		ranksPos = namesOffsetPos + 4 * size;
+		namesPos = ranksPos + size;
+	}
+
+	/**
+	 * Returns the taxonomy store located in the configuration folder.
+	 * @return the taxonomy store or <code>null</code> if no store file exists
+	 */
+	public static synchronized TaxonomyStore getInstance() {
+		if (!initialized) {
+			initialized = true;
+			try {
+				File storeFile = null;
+				if (Starter.isJarExport()) {
+					storeFile = new File(Constants.CONFIGURATION_PATH_JAR + File.separator + STORE_FILENAME);
+				} else {
+					URL url = TaxonomyStore.class.getResource(Constants.CONFIGURATION_PATH + STORE_FILENAME);
+					if (url != null) {
+						storeFile = new File(url.toURI());
+					}
+				}
+				if ((storeFile != null) && storeFile.exists()) {
+					instance = new TaxonomyStore(storeFile);
+				} else {
+					log.info("No taxonomy store found, taxonomies will be retrieved from the database.");
+				}
+			} catch (Exception e) {
+				log.error("Could not open taxonomy store: " + e.getMessage(), e);
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns whether the store contains the specified taxonomy ID.
+	 * @param taxID the taxonomy ID
+	 * @return <code>true</code> if the taxonomy is known, <code>false</code> otherwise
+	 */
+	public boolean contains(long taxID) {
+		return (taxID >= 0L) && (taxID < size) && (buffer.getInt(parentsPos + 4 * (int) taxID) >= 0);
+	}
+
+	/**
+	 * Returns the parent ID of the specified taxonomy.
+	 * @param taxID the taxonomy ID
+	 * @return the parent taxonomy ID, <code>0</code> for the root node or
+	 *  <code>-1</code> for unknown taxonomies
+	 */
+	public long getParentID(long taxID) {
+		if ((taxID < 0L) || (taxID >= size)) {
+			return -1L;
+		}
+		return buffer.getInt(parentsPos + 4 * (int) taxID);
+	}
+
+	/**
+	 * Returns the rank string of the specified taxonomy.
+	 * @param taxID the taxonomy ID
+	 * @return the rank, e.g. 'species', or <code>null</code> for unknown taxonomies
+	 */
+	public String getRank(long taxID) {
+		if (!this.contains(taxID)) {
+			return null;
+		}
+		return ranks[buffer.get(ranksPos + (int) taxID) & 0xFF];
+	}
+
+	/**
+	 * Returns the scientific name of the specified taxonomy.
+	 * @param taxID the taxonomy ID
+	 * @return the name or <code>null</code> if no name is known
+	 */
+	public String getName(long taxID) {
+		if ((taxID < 0L) || (taxID >= size)) {
+			return null;
+		}
+		int offset = buffer.getInt(namesOffsetPos + 4 * (int) taxID);
+		if (offset < 0) {
+			return null;
+		}
+		ByteBuffer name = buffer.duplicate();
+		name.position(namesPos + offset);
+		byte[] bytes = new byte[name.getShort() & 0xFFFF];
+		name.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Builds a taxonomy store file from the specified NCBI dump files.
+	 * @param nodesFile the 'nodes.dmp' file
+	 * @param namesFile the 'names.dmp' file
+	 * @param storeFile the taxonomy store file to write
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void build(File nodesFile, File namesFile, File storeFile) throws IOException {
+		TIntIntMap parents = new TIntIntHashMap();
+		TIntByteMap rankIndices = new TIntByteHashMap();
+		List<String> ranks = new ArrayList<String>();
+		Map<String, Byte> rankMap = new HashMap<String, Byte>();
+		int maxID = 0;
+
+		// example format: "2	|	131567	|	superkingdom	|		|	0	|	0	|	11	|	0	|	0	|	0	|	0	|	0	|		|"
+		BufferedReader br = new BufferedReader(new FileReader(nodesFile));
+		String line;
+		while ((line = br.readLine()) != null) {
+			String[] split = line.split("\t\\|\t");
+			int taxID = Integer.parseInt(split[0]);
+			int parentID = Integer.parseInt(split[1]);
+			// the root node refers to itself, mark it by the dummy parent ID 0 and the 'root' rank
+			boolean isRoot = (taxID == parentID);
+			String rank = (isRoot) ? "root" : split[2];
+			Byte rankIndex = rankMap.get(rank);
+			if (rankIndex == null) {
+				rankIndex = (byte) ranks.size();
+				rankMap.put(rank, rankIndex);
+				ranks.add(rank);
+			}
+			parents.put(taxID, (isRoot) ? 0 : parentID);
+			rankIndices.put(taxID, rankIndex);
+			maxID = Math.max(maxID, taxID);
+		}
+		br.close();
+
+		// example format: "1	|	root	|		|	scientific name	|"
+		TIntObjectMap<String> names = new TIntObjectHashMap<String>();
+		br = new BufferedReader(new FileReader(namesFile));
+		while ((line = br.readLine()) != null) {
+			if (line.endsWith("scientific name\t|")) {
+				String[] split = line.split("\t\\|\t");
+				names.put(Integer.parseInt(split[0]), split[1]);
+			}
+		}
+		br.close();
+
+		int size = maxID + 1;
+		int[] nameOffsets = new int[size];
+		byte[][] nameBytes = new byte[size][];
+		int namesLength = 0;
+		for (int taxID = 0; taxID < size; taxID++) {
+			String name = names.get(taxID);
+			if (name != null) {
+				nameBytes[taxID] = name.getBytes(UTF8);
+				nameOffsets[taxID] = namesLength;
+				namesLength += 2 + nameBytes[taxID].length;
+			} else {
+				nameOffsets[taxID] = -1;
+			}
+		}
+
+		DataOutputStream dos = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(storeFile)));
+		try {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(size);
+			dos.writeInt(ranks.size());
+			for (String rank : ranks) {
+				byte[] bytes = rank.getBytes(UTF8);
+				dos.writeShort(bytes.length);
+				dos.write(bytes);
+			}
+			dos.writeInt(namesLength);
+			for (int taxID = 0; taxID < size; taxID++) {
+				dos.writeInt(parents.containsKey(taxID) ? parents.get(taxID) : -1);
+			}
+			for (int taxID = 0; taxID < size; taxID++) {
+				dos.writeInt(nameOffsets[taxID]);
+			}
+			for (int taxID = 0; taxID < size; taxID++) {
+				dos.writeByte(rankIndices.get(taxID));
+			}
+			for (int taxID = 0; taxID < size; taxID++) {
+				if (nameBytes[taxID] != null) {
+					dos.writeShort(nameBytes[taxID].length);
+					dos.write(nameBytes[taxID]);
+				}
+			}
+		} finally {
+			dos.close();
+		}
+	}
+
+	/**
+	 * Builds a taxonomy store file from NCBI dump files.
+	 * @param args the paths of 'nodes.dmp', 'names.dmp' and the target file
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.err.println("Usage: TaxonomyStore <nodes.dmp> <names.dmp> <" + STORE_FILENAME + ">");
+			return;
+		}
+		TaxonomyStore.build(new File(args[0]), new File(args[1]), new File(args[2]));
+	}
+
+}
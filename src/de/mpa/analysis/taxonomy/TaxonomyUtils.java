@@ -1,11 +1,15 @@
 package de.mpa.analysis.taxonomy;
 
+import gnu.trove.list.array.TIntArrayList;
+
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import de.mpa.analysis.UniProtUtilities;
@@ -36,71 +40,63 @@ public class TaxonomyUtils {
 			@Override
 			public TaxonomyNode getCommonTaxonomyNode(TaxonomyNode nodeA,
 					TaxonomyNode nodeB) {
-				// Get root paths of both taxonomy nodes
-				TaxonomyNode[] path1 = nodeA.getPath();
-				TaxonomyNode[] path2 = nodeB.getPath();
-				TaxonomyNode ancestor = null;
+				// Get root path lengths of both taxonomy nodes
+				int depthA = nodeA.getDepth();
+				int depthB = nodeB.getDepth();
 
 				// Find last common element starting from the root
-				int len = Math.min(path1.length, path2.length);
+				int len = Math.min(depthA, depthB);
 
 				// Only root
 				if (len == 0) {
 					// is root
-					ancestor = new TaxonomyNode(1, TaxonomyRank.NO_RANK, "root");
+					return new TaxonomyNode(1, TaxonomyRank.NO_RANK, "root");
 				}
 
 				// Taxonomy is superkingdom or "unclassified" (taxID == "0")
 				if (len == 1) {
 					// Both are unclassified
 					if (nodeA.getID() == 0 && nodeB.getID() == 0) {
-						ancestor = new TaxonomyNode(1, TaxonomyRank.NO_RANK,
-								"root");
+						return new TaxonomyNode(1, TaxonomyRank.NO_RANK, "root");
 					}
 					// Just one is unclassified (Taxonomy ID is "0")
 					else if (nodeA.getID() == 0) {
-						ancestor = nodeB;
+						return nodeB;
 					}
 					// Just one is unclassified (Taxonomy ID is "0")
 					else if (nodeB.getID() == 0) {
-						ancestor = nodeA;
-						// Similar superkingdom
-					} else if (path1[0].equals(path2[0])) {
-						ancestor = path1[0];
-						// Else different superkingdoms
-					} else if (!path1[0].equals(path2[0])) {
-						ancestor = new TaxonomyNode(1, TaxonomyRank.NO_RANK,
-								"root");
+						return nodeA;
 					}
 				}
-				// Find common ancestor of both paths
-				if (len > 1) {
-					// check for different superkingdoms
-					if (!path1[0].equals(path2[0])) {
-						ancestor = new TaxonomyNode(1, TaxonomyRank.NO_RANK,
-								"root");
-					} else {
-						ancestor = path1[0]; // initialize ancestor as root
-						for (int i = 1; i < len; i++) {
-							if (!path1[i].equals(path2[i])) {
-								break;
-							}
-							ancestor = path1[i];
-						}
-					}
+
+				// Move both nodes up to the same depth
+				for (; depthA > depthB; depthA--) {
+					nodeA = nodeA.getParentNode();
+				}
+				for (; depthB > depthA; depthB--) {
+					nodeB = nodeB.getParentNode();
 				}
-				return ancestor;
+				// Climb both paths until reaching the common ancestor
+				while (nodeA.getID() != nodeB.getID()) {
+					nodeA = nodeA.getParentNode();
+					nodeB = nodeB.getParentNode();
+				}
+				// Different superkingdoms have the root as ancestor
+				if (nodeA.isRoot()) {
+					return new TaxonomyNode(1, TaxonomyRank.NO_RANK, "root");
+				}
+				return nodeA;
 			}
 		},
 		MOST_SPECIFIC("by most specific member") {
 			@Override
 			public TaxonomyNode getCommonTaxonomyNode(TaxonomyNode nodeA,
 					TaxonomyNode nodeB) {
-				// Get root paths of both taxonomy nodes
-				TaxonomyNode[] path1 = nodeA.getPath();
-				TaxonomyNode[] path2 = nodeB.getPath();
-				// return node at the end of the longer one of either paths
-				if (path1.length >= path2.length) {
+				// return node at the end of the longer one of either root paths,
+				// break ties by the lower taxonomy ID to be independent of node order
+				int depthA = nodeA.getDepth();
+				int depthB = nodeB.getDepth();
+				if ((depthA > depthB) || ((depthA == depthB) && (nodeA.getID() <= nodeB.getID()))) {
 					return nodeA;
 				} else {
 					return nodeB;
@@ -141,6 +137,160 @@ public class TaxonomyUtils {
 		 */
 		public abstract TaxonomyNode getCommonTaxonomyNode(TaxonomyNode nodeA,
 				TaxonomyNode nodeB);
+
+		/**
+		 * Returns the common taxonomy node of the specified taxonomy nodes by
+		 * successively combining them with the common node of their
+		 * predecessors.
+		 * 
+		 * @param nodes
+		 *            the taxonomy nodes
+		 * @param from
+		 *            the index of the first node to combine with the
+		 *            first node
+		 * @return the common taxonomy node
+		 */
+		private TaxonomyNode getCommonTaxonomyNode(List<TaxonomyNode> nodes, int from) {
+			TaxonomyNode ancestor = nodes.get(0);
+			for (int i = from; i < nodes.size(); i++) {
+				ancestor = this.getCommonTaxonomyNode(ancestor, nodes.get(i));
+			}
+			return ancestor;
+		}
+	}
+
+	/**
+	 * Memoizing finder of common taxonomy nodes. Results are cached by the
+	 * sorted set of taxonomy IDs of the combined nodes, which makes repeated
+	 * lookups for sets of proteins belonging to the same taxa nearly free.
+	 * Sets containing missing or unclassified nodes (taxonomy ID 0) are
+	 * evaluated directly as their result depends on the order of the nodes.
+	 */
+	private static class CommonTaxonomyFinder {
+
+		/**
+		 * The taxonomy definition.
+		 */
+		private TaxonomyDefinition definition;
+
+		/**
+		 * The index of the first node to combine with the first node.
+		 */
+		private int from;
+
+		/**
+		 * The cached common taxonomy nodes keyed by sorted taxonomy IDs.
+		 */
+		private Map<TIntArrayList, TaxonomyNode> cache = new HashMap<TIntArrayList, TaxonomyNode>();
+
+		/**
+		 * Constructs a common taxonomy node finder.
+		 * @param definition the taxonomy definition
+		 * @param from the index of the first node to combine with the first node
+		 */
+		public CommonTaxonomyFinder(TaxonomyDefinition definition, int from) {
+			this.definition = definition;
+			this.from = from;
+		}
+
+		/**
+		 * Returns the common taxonomy node of the specified taxonomy nodes.
+		 * @param nodes the taxonomy nodes
+		 * @return the common taxonomy node
+		 */
+		public TaxonomyNode find(List<TaxonomyNode> nodes) {
+			TIntArrayList key = new TIntArrayList(nodes.size());
+			for (TaxonomyNode node : nodes) {
+				if ((node == null) || (node.getID() == 0)) {
+					return definition.getCommonTaxonomyNode(nodes, from);
+				}
+				key.add(node.getID());
+			}
+			key.sort();
+			TaxonomyNode ancestor = cache.get(key);
+			if (ancestor == null) {
+				ancestor = definition.getCommonTaxonomyNode(nodes, from);
+				cache.put(key, ancestor);
+			}
+			return ancestor;
+		}
+	}
+
+	/**
+	 * Process-wide cache of canonical taxonomy nodes keyed by taxonomy ID.
+	 * Branches created for different experiments share their common ancestor
+	 * nodes, least recently used nodes are evicted first. As cached nodes are
+	 * shared they must not be modified after having been interned.
+	 */
+	private static class TaxonomyNodeCache {
+
+		/**
+		 * The maximum number of cached taxonomy nodes.
+		 */
+		private static final int MAX_CACHE_SIZE = 100000;
+
+		/**
+		 * The canonical taxonomy nodes keyed by taxonomy ID.
+		 */
+		private static final Map<Integer, TaxonomyNode> NODES =
+				new LinkedHashMap<Integer, TaxonomyNode>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Entry<Integer, TaxonomyNode> eldest) {
+				return this.size() > MAX_CACHE_SIZE;
+			}
+		};
+
+		/**
+		 * Returns the cached taxonomy node of the specified taxonomy ID.
+		 * @param taxID the taxonomy ID
+		 * @return the cached node or <code>null</code> if no node is cached
+		 */
+		public static TaxonomyNode get(long taxID) {
+			synchronized (NODES) {
+				return NODES.get((int) taxID);
+			}
+		}
+
+		/**
+		 * Interns the nodes of the specified branch. The branch is traversed
+		 * upwards until a node whose ID is already cached is found, which
+		 * then replaces the uncached node's parent.
+		 * @param leafNode the leaf node of the branch
+		 * @return the canonical leaf node
+		 */
+		public static TaxonomyNode intern(TaxonomyNode leafNode) {
+			synchronized (NODES) {
+				TaxonomyNode cached = NODES.get(leafNode.getID());
+				if (cached != null) {
+					return cached;
+				}
+				TaxonomyNode node = leafNode;
+				while (node != null) {
+					NODES.put(node.getID(), node);
+					TaxonomyNode parentNode = node.getParentNode();
+					if (parentNode != null) {
+						cached = NODES.get(parentNode.getID());
+						if (cached != null) {
+							node.setParentNode(cached);
+							break;
+						}
+					}
+					node = parentNode;
+				}
+			}
+			return leafNode;
+		}
+
+		/**
+		 * Removes all nodes from the cache.
+		 */
+		public static void clear() {
+			synchronized (NODES) {
+				NODES.clear();
+			}
+		}
 	}
 
 	/**
@@ -202,8 +352,70 @@ public class TaxonomyUtils {
 	
 	/**
 	 * Creates a taxonomy node which contains all ancestor taxonomy nodes up to
-	 * the root node. Looks up unmapped IDs in the remote database and stores
-	 * them in the provided map.
+	 * the root node using the specified taxonomy store. Nodes are shared with
+	 * previously created branches via the process-wide node cache.
+	 * @param currentID the taxonomy ID of the start element
+	 * @param store the taxonomy store
+	 * @return the desired taxonomy node or <code>null</code> if the store
+	 *  does not contain the complete lineage
+	 */
+	public static TaxonomyNode createTaxonomyNode(long currentID, TaxonomyStore store) {
+		TaxonomyNode cachedNode = TaxonomyNodeCache.get(currentID);
+		if (cachedNode != null) {
+			return cachedNode;
+		}
+		if (!store.contains(currentID)) {
+			return null;
+		}
+		Map<String, TaxonomyRank> targetRanks = UniProtUtilities.TAXONOMY_RANKS_MAP;
+
+		// Check for rank being contained in the main categories (from superkingdom to species)
+		TaxonomyRank taxonomyRank = targetRanks.get(store.getRank(currentID));
+		if (taxonomyRank == null) {
+			taxonomyRank = TaxonomyRank.SPECIES;
+		}
+		
+		// Create leaf node
+		TaxonomyNode leafNode = new TaxonomyNode(
+				(int) currentID, taxonomyRank, store.getName(currentID));
+		
+		// Iterate up taxonomic hierarchy and create parent nodes
+		TaxonomyNode currentNode = leafNode;
+		long parentID = store.getParentID(currentID);
+		while (parentID != 0L) {
+			if (!store.contains(parentID)) {
+				return null;
+			}
+			// Check whether parent rank is in targeted ranks
+			TaxonomyRank parentRank = targetRanks.get(store.getRank(parentID));
+			if (parentRank != null) {
+				// Re-use cached parent node including its ancestors or create a new one
+				TaxonomyNode parentNode = TaxonomyNodeCache.get(parentID);
+				boolean cached = (parentNode != null);
+				if (!cached) {
+					parentNode = new TaxonomyNode(
+							(int) parentID, parentRank, store.getName(parentID));
+				}
+				currentNode.setParentNode(parentNode);
+				if (parentRank == TaxonomyRank.SPECIES) {
+					currentNode.setRank(TaxonomyRank.SUBSPECIES);
+				}
+				if (cached) {
+					break;
+				}
+				currentNode = parentNode;
+			}
+			parentID = store.getParentID(parentID);
+		}
+		return TaxonomyNodeCache.intern(leafNode);
+	}
+	
+	/**
+	 * Creates a taxonomy node which contains all ancestor taxonomy nodes up to
+	 * the root node. Uses the taxonomy store if available, otherwise looks up
+	 * unmapped IDs in the remote database and stores them in the provided map.
+	 * Nodes are shared with previously created branches via the process-wide
+	 * node cache, hence climbing the hierarchy stops at the first cached node.
 	 * @param currentID the taxonomy ID of the start element
 	 * @param taxonomyMap map containing taxonomy ID-to-taxonomy node mappings
 	 * @param conn the database connection
@@ -213,6 +425,19 @@ public class TaxonomyUtils {
 	public static TaxonomyNode createTaxonomyNode(
 			long currentID, Map<Long, Taxonomy> taxonomyMap, Connection conn) {
 		
+		TaxonomyNode cachedNode = TaxonomyNodeCache.get(currentID);
+		if (cachedNode != null) {
+			return cachedNode;
+		}
+		
+		TaxonomyStore store = TaxonomyStore.getInstance();
+		if (store != null) {
+			TaxonomyNode leafNode = createTaxonomyNode(currentID, store);
+			if (leafNode != null) {
+				return leafNode;
+			}
+		}
+		
 		try {
 			
 			Taxonomy current = taxonomyMap.get(currentID);
@@ -258,24 +483,47 @@ public class TaxonomyUtils {
 				// Check whether parent rank is in targeted ranks
 				TaxonomyRank parentRank = targetRanks.get(current.getRank());
 				if (parentRank != null) {
-					// Create and configure parent node
-					TaxonomyNode parentNode = new TaxonomyNode(
-							(int) current.getTaxonomyid(), parentRank, current.getDescription());
+					// Re-use cached parent node including its ancestors or create a new one
+					TaxonomyNode parentNode = TaxonomyNodeCache.get(parentID);
+					boolean cached = (parentNode != null);
+					if (!cached) {
+						parentNode = new TaxonomyNode(
+								(int) current.getTaxonomyid(), parentRank, current.getDescription());
+					}
 					currentNode.setParentNode(parentNode);
 					// TODO: consider subspecies distinction in database, so far all subspecies are labeled species there (Nov. 2013)
 					if (parentRank == TaxonomyRank.SPECIES) {
 						currentNode.setRank(TaxonomyRank.SUBSPECIES);
 					}
+					if (cached) {
+						break;
+					}
 					currentNode = parentNode;
 				}
 			}
-			return leafNode;
+			return TaxonomyNodeCache.intern(leafNode);
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 		return null;
 	}
 	
+	/**
+	 * Returns the cached canonical taxonomy node of the specified taxonomy ID.
+	 * @param taxID the taxonomy ID
+	 * @return the cached taxonomy node or <code>null</code> if no node is cached
+	 */
+	public static TaxonomyNode getCachedTaxonomyNode(long taxID) {
+		return TaxonomyNodeCache.get(taxID);
+	}
+	
+	/**
+	 * Removes all nodes from the process-wide taxonomy node cache.
+	 */
+	public static void clearTaxonomyNodeCache() {
+		TaxonomyNodeCache.clear();
+	}
+	
 	/**
 	 * Method to go through a peptide set and define for each peptide hit the
 	 * common taxonomy of the subsequent proteins.
@@ -288,6 +536,9 @@ public class TaxonomyUtils {
 		// Insert root node
 		nodeMap.put(1, new TaxonomyNode(1, TaxonomyRank.NO_RANK, "root"));
 
+		// Common taxonomy nodes of already encountered protein taxon sets
+		CommonTaxonomyFinder finder = new CommonTaxonomyFinder(definition, 0);
+
 		// Iterate peptides and gather common taxonomy
 		for (PeptideHit peptideHit : peptideSet) {
 
@@ -298,37 +549,8 @@ public class TaxonomyUtils {
 				taxonNodes.add(proteinHit.getTaxonomyNode());
 			}
 
-			// Find common ancestor node
-			TaxonomyNode ancestor = taxonNodes.get(0);
-			for (int i = 0; i < taxonNodes.size(); i++) {
-				ancestor = definition.getCommonTaxonomyNode(ancestor, taxonNodes.get(i));
-			}
-
-			// Gets the parent node of the taxon node
-			TaxonomyNode child = ancestor;
-			TaxonomyNode parent = nodeMap.get(ancestor.getID());
-			if (parent == null) {
-				parent = child.getParentNode();
-				// iterate up the taxonomy hierarchy until a mapped node is found (which may be the root)
-				while (true) {
-					// retrieve parent node from map
-					TaxonomyNode temp = nodeMap.get(parent.getID());
-
-					if (temp == null) {
-						// add child's parent node to map
-						child.setParentNode(parent);
-						nodeMap.put(parent.getID(), parent);
-						child = parent;
-						parent = parent.getParentNode();
-					} else {
-						// replace child's parent node with mapped parent and break out of loop
-						child.setParentNode(temp);
-						break;
-					}
-				}
-			} else {
-				ancestor = parent;
-			}
+			// Find common ancestor node and merge it with the already mapped nodes
+			TaxonomyNode ancestor = getMappedNode(finder.find(taxonNodes), nodeMap);
 
 			// set peptide hit taxon node to ancestor
 			peptideHit.setTaxonomyNode(ancestor);
@@ -343,6 +565,32 @@ public class TaxonomyUtils {
 		}
 	}
 
+	/**
+	 * Returns the mapped node of the specified taxonomy node. Unmapped nodes
+	 * are copied and linked to their mapped ancestors instead of being
+	 * rewired, as they may be shared between experiments.
+	 * @param node the taxonomy node
+	 * @param nodeMap the map of already mapped nodes keyed by taxonomy ID
+	 * @return the mapped node
+	 */
+	private static TaxonomyNode getMappedNode(TaxonomyNode node, Map<Integer, TaxonomyNode> nodeMap) {
+		// iterate up the taxonomy hierarchy until a mapped node is found (which may be the root)
+		List<TaxonomyNode> unmapped = new ArrayList<TaxonomyNode>();
+		TaxonomyNode mapped = nodeMap.get(node.getID());
+		while (mapped == null) {
+			unmapped.add(node);
+			node = node.getParentNode();
+			mapped = (node == null) ? nodeMap.get(1) : nodeMap.get(node.getID());
+		}
+		// copy unmapped nodes top-down, linking each copy to its mapped parent
+		for (int i = unmapped.size() - 1; i >= 0; i--) {
+			TaxonomyNode orig = unmapped.get(i);
+			mapped = new TaxonomyNode(orig.getID(), orig.getRank(), orig.getName(), mapped);
+			nodeMap.put(mapped.getID(), mapped);
+		}
+		return mapped;
+	}
+
 	/**
 	 * Sets the taxonomy of meta-proteins contained in the specified list to the
 	 * common taxonomy based on their child protein taxonomies.
@@ -376,6 +624,8 @@ public class TaxonomyUtils {
 	 * @param definition the taxonomy definition
 	 */
 	public static void determineTaxonomy(List<? extends Taxonomic> taxList, TaxonomyDefinition definition) {
+		// common taxonomy nodes of already encountered child taxon sets
+		CommonTaxonomyFinder finder = new CommonTaxonomyFinder(definition, 1);
 		// iterate taxonomic list
 		for (Taxonomic taxonomic : taxList) {
 			// extract child taxonomy nodes
@@ -390,13 +640,10 @@ public class TaxonomyUtils {
 			}
 			
 			// find common taxonomy node
-			TaxonomyNode ancestor = taxonNodes.get(0);
-			if (ancestor == null) {
+			if (taxonNodes.get(0) == null) {
 				System.err.println("ERROR: no taxonomic ancestor found for " + taxonomic);
 			}
-			for (int i = 1; i < taxonNodes.size(); i++) {
-				ancestor = definition.getCommonTaxonomyNode(ancestor, taxonNodes.get(i));
-			}
+			TaxonomyNode ancestor = finder.find(taxonNodes);
 			
 			// set common taxonomy node
 			taxonomic.setTaxonomyNode(ancestor);
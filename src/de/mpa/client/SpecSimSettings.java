@@ -29,6 +29,7 @@ import javax.xml.bind.annotation.XmlType;
  *         &lt;element name="profileIndex" type="{http://www.w3.org/2001/XMLSchema}int"/>
  *         &lt;element name="baseWidth" type="{http://www.w3.org/2001/XMLSchema}double"/>
  *         &lt;element name="xCorrOffset" type="{http://www.w3.org/2001/XMLSchema}int"/>
+ *         &lt;element name="threadCount" type="{http://www.w3.org/2001/XMLSchema}int"/>
  *       &lt;/sequence>
  *     &lt;/restriction>
  *   &lt;/complexContent>
@@ -51,7 +52,8 @@ import javax.xml.bind.annotation.XmlType;
     "binShift",
     "profileIndex",
     "baseWidth",
-    "xCorrOffset"
+    "xCorrOffset",
+    "threadCount"
 })
 public class SpecSimSettings {
 
@@ -68,6 +70,7 @@ public class SpecSimSettings {
     protected int profileIndex;
     protected double baseWidth;
     protected int xCorrOffset;
+    protected int threadCount;
 
     /**
      * Gets the value of the tolMz property.
@@ -277,4 +280,22 @@ public class SpecSimSettings {
         this.xCorrOffset = value;
     }
 
+    /**
+     * Gets the value of the threadCount property, i.e. the number of worker
+     * threads used for scoring. Values smaller than 1 denote the number of
+     * available processors.
+     * 
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the value of the threadCount property.
+     * 
+     */
+    public void setThreadCount(int value) {
+        this.threadCount = value;
+    }
+
 }
@@ -1,7 +1,13 @@
 package de.mpa.client.model;
 
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -11,8 +17,10 @@ import org.jdesktop.swingx.JXErrorPane;
 import org.jdesktop.swingx.error.ErrorInfo;
 import org.jdesktop.swingx.error.ErrorLevel;
 
+import de.mpa.analysis.ProteinAnalysis;
 import de.mpa.analysis.UniProtUtilities.TaxonomyRank;
 import de.mpa.analysis.taxonomy.TaxonomyNode;
+import de.mpa.analysis.taxonomy.TaxonomyStore;
 import de.mpa.analysis.taxonomy.TaxonomyUtils;
 import de.mpa.client.Client;
 import de.mpa.client.model.dbsearch.DbSearchResult;
@@ -32,6 +40,7 @@ import de.mpa.db.accessor.Searchspectrum;
 import de.mpa.db.accessor.Taxonomy;
 import de.mpa.db.accessor.Uniprotentry;
 import de.mpa.db.extractor.SearchHitExtractor;
+import de.mpa.db.extractor.SearchResultExtractor;
 
 /**
  * Implementation of the experiment interface for database-linked experiments.
@@ -40,6 +49,11 @@ import de.mpa.db.extractor.SearchHitExtractor;
  */
 public class DatabaseExperiment extends AbstractExperiment {
 	
+	/**
+	 * The number of search hits whose referenced entities are loaded at once.
+	 */
+	private static final int HIT_CHUNK_SIZE = 1000;
+	
 	/**
 	 * The search result object.
 	 */
@@ -125,25 +139,18 @@ public class DatabaseExperiment extends AbstractExperiment {
 				// initialize database connection
 				Connection conn = client.getConnection();
 
-				// gather search hits from remote database
-				List<SearchHit> searchHits = SearchHitExtractor.findSearchHitsFromExperimentID(this.getID(), conn);
-
-				long maxProgress = searchHits.size();
+				// fetch search hits from remote database and add them to the result object,
+				// the number of hits is unknown beforehand, hence progress stays indeterminate
 				client.firePropertyChange("new message", null, "BUILDING RESULTS OBJECT");
+				this.addSearchHits(searchResult, conn);
 				client.firePropertyChange("indeterminate", true, false);
-				client.firePropertyChange("resetall", 0L, maxProgress);
-				client.firePropertyChange("resetcur", 0L, maxProgress);
-				
-				
-				// add search hits to result object
-				for (SearchHit searchHit : searchHits) {
-					this.addProteinSearchHit(searchResult, searchHit, this.getID(), conn);
-					client.firePropertyChange("progressmade", true, false);
-				}
 				
 				// determine total spectral count
 				searchResult.setTotalSpectrumCount(Searchspectrum.getSpectralCountFromExperimentID(this.getID(), conn));
 
+				// quantify proteins once instead of upon each table refresh
+				ProteinAnalysis.calculateLabelFree(searchResult);
+
 				client.firePropertyChange("new message", null, "BUILDING RESULTS OBJECT FINISHED");
 
 				this.searchResult = searchResult;
@@ -160,6 +167,24 @@ public class DatabaseExperiment extends AbstractExperiment {
 		this.searchResult = searchResult;
 	}
 	
+	/**
+	 * Adds the search hits of this experiment to the specified result object.
+	 * All hits are streamed before the entities they reference are loaded, as
+	 * no further statements may be issued on a connection while a streaming
+	 * result set is open on it.
+	 * @param result the database search result
+	 * @param conn the database connection
+	 * @throws SQLException if a database error occurs
+	 */
+	void addSearchHits(DbSearchResult result, Connection conn) throws SQLException {
+		List<SearchHit> searchHits = SearchHitExtractor.findSearchHitsFromExperimentID(this.getID(), conn);
+		SearchHitCollector collector = new SearchHitCollector(result, conn);
+		for (SearchHit searchHit : searchHits) {
+			collector.add(searchHit);
+		}
+		collector.flush();
+	}
+
 	/**
 	 * This method converts a search hit into a protein hit and adds it to the current protein hit set.
 	 * @param result the database search result
@@ -169,19 +194,37 @@ public class DatabaseExperiment extends AbstractExperiment {
 	public void addProteinSearchHit(DbSearchResult result, SearchHit hit,
 			long experimentID, Connection conn) throws Exception {
 
+		// retrieve the peptide, protein and UniProt database entries
+		long proteinID = hit.getFk_proteinid();
+		this.addProteinSearchHit(result, hit,
+				PeptideAccessor.findFromID(hit.getFk_peptideid(), conn),
+				ProteinAccessor.findFromID(proteinID, conn),
+				Uniprotentry.findFromProteinID(proteinID, conn), null, experimentID, conn);
+	}
+	
+	/**
+	 * Converts a search hit into a protein hit using the specified pre-fetched
+	 * database entries and adds it to the current protein hit set.
+	 * @param result the database search result
+	 * @param hit the search hit implementation
+	 * @param peptide the peptide database entry
+	 * @param protein the protein database entry
+	 * @param uniprotEntryAccessor the UniProt database entry, may be <code>null</code>
+	 * @param taxonomyNodes the map of taxonomy nodes to re-use, may be <code>null</code>
+	 * @param experimentID the experiment ID
+	 * @param conn the database connection used for fetching missing taxonomies
+	 */
+	private void addProteinSearchHit(DbSearchResult result, SearchHit hit,
+			PeptideAccessor peptide, ProteinAccessor protein, Uniprotentry uniprotEntryAccessor,
+			TLongObjectMap<TaxonomyNode> taxonomyNodes, long experimentID, Connection conn) {
+		
 		// wrap the search hit in a new PSM
 		PeptideSpectrumMatch psm = new PeptideSpectrumMatch(hit.getFk_searchspectrumid(), hit);
 		
 		// wrap the PSM in a new peptide
-		PeptideAccessor peptide = PeptideAccessor.findFromID(hit.getFk_peptideid(), conn);
 		PeptideHit peptideHit = new PeptideHit(peptide.getSequence(), psm);
 		
-		// retrieve the protein database entry
-		long proteinID = hit.getFk_proteinid();
-		ProteinAccessor protein = ProteinAccessor.findFromID(proteinID, conn);
-		
-		// retrieve UniProt meta-data
-		Uniprotentry uniprotEntryAccessor = Uniprotentry.findFromProteinID(proteinID, conn);
+		// wrap UniProt meta-data
 		ReducedUniProtEntry uniprotEntry = null;
 		TaxonomyNode taxonomyNode = null;
 		// if meta-data exists...
@@ -197,7 +240,15 @@ public class DatabaseExperiment extends AbstractExperiment {
 					uniprotEntryAccessor.getUniref50());
 			
 			// retrieve taxonomy branch
-			taxonomyNode = TaxonomyUtils.createTaxonomyNode(taxID, taxonomyMap, conn);
+			if (taxonomyNodes != null) {
+				taxonomyNode = taxonomyNodes.get(taxID);
+			}
+			if (taxonomyNode == null) {
+				taxonomyNode = TaxonomyUtils.createTaxonomyNode(taxID, taxonomyMap, conn);
+				if (taxonomyNodes != null) {
+					taxonomyNodes.put(taxID, taxonomyNode);
+				}
+			}
 		} else {
 			// create dummy UniProt entry
 			uniprotEntry = new ReducedUniProtEntry(1, "", "", "", null, null, null);
@@ -216,6 +267,118 @@ public class DatabaseExperiment extends AbstractExperiment {
 				peptideHit, uniprotEntry, taxonomyNode, experimentID));
 	}
 
+	/**
+	 * Collector adding search hits to a result object. Hits are buffered in
+	 * chunks, the peptides, proteins, UniProt entries and taxonomies
+	 * referenced by a chunk are bulk-loaded unless they have been loaded for
+	 * a previous chunk already.
+	 */
+	private class SearchHitCollector {
+		
+		/**
+		 * The result object to add the search hits to.
+		 */
+		private final DbSearchResult result;
+		
+		/**
+		 * The database connection.
+		 */
+		private final Connection conn;
+		
+		/**
+		 * The buffered search hits.
+		 */
+		private final List<SearchHit> chunk = new ArrayList<SearchHit>(HIT_CHUNK_SIZE);
+		
+		/**
+		 * The loaded peptides keyed by peptide ID.
+		 */
+		private final TLongObjectMap<PeptideAccessor> peptides = new TLongObjectHashMap<PeptideAccessor>();
+		
+		/**
+		 * The loaded proteins keyed by protein ID.
+		 */
+		private final TLongObjectMap<ProteinAccessor> proteins = new TLongObjectHashMap<ProteinAccessor>();
+		
+		/**
+		 * The loaded UniProt entries keyed by protein ID.
+		 */
+		private final TLongObjectMap<Uniprotentry> uniprotEntries = new TLongObjectHashMap<Uniprotentry>();
+		
+		/**
+		 * The created taxonomy nodes keyed by taxonomy ID.
+		 */
+		private final TLongObjectMap<TaxonomyNode> taxonomyNodes = new TLongObjectHashMap<TaxonomyNode>();
+		
+		/**
+		 * Creates a collector adding search hits to the specified result object.
+		 * @param result the result object
+		 * @param conn the database connection
+		 */
+		public SearchHitCollector(DbSearchResult result, Connection conn) {
+			this.result = result;
+			this.conn = conn;
+		}
+		
+		/**
+		 * Buffers the specified search hit and flushes the buffer once a
+		 * chunk is complete.
+		 * @param searchHit the search hit
+		 * @throws SQLException if a database error occurs
+		 */
+		public void add(SearchHit searchHit) throws SQLException {
+			chunk.add(searchHit);
+			if (chunk.size() >= HIT_CHUNK_SIZE) {
+				this.flush();
+			}
+		}
+		
+		/**
+		 * Loads the entities referenced by the buffered search hits and adds
+		 * the hits to the result object.
+		 * @throws SQLException if a database error occurs
+		 */
+		public void flush() throws SQLException {
+			// bulk-load peptides, proteins and UniProt entries not loaded before
+			TLongSet peptideIDs = new TLongHashSet();
+			TLongSet proteinIDs = new TLongHashSet();
+			for (SearchHit searchHit : chunk) {
+				if (!peptides.containsKey(searchHit.getFk_peptideid())) {
+					peptideIDs.add(searchHit.getFk_peptideid());
+				}
+				if (!proteins.containsKey(searchHit.getFk_proteinid())) {
+					proteinIDs.add(searchHit.getFk_proteinid());
+				}
+			}
+			peptides.putAll(SearchResultExtractor.findPeptides(peptideIDs, conn));
+			proteins.putAll(SearchResultExtractor.findProteins(proteinIDs, conn));
+			TLongObjectMap<Uniprotentry> newEntries = SearchResultExtractor.findUniProtEntries(proteinIDs, conn);
+			uniprotEntries.putAll(newEntries);
+			
+			// bulk-load taxonomy branches
+			TLongSet taxIDs = new TLongHashSet();
+			TaxonomyStore store = TaxonomyStore.getInstance();
+			for (Uniprotentry uniprotEntry : newEntries.valueCollection()) {
+				// cached taxonomies and those contained in the local store need no database lookup
+				long taxID = uniprotEntry.getTaxid();
+				if (!taxonomyNodes.containsKey(taxID) && (TaxonomyUtils.getCachedTaxonomyNode(taxID) == null)
+						&& ((store == null) || !store.contains(taxID))) {
+					taxIDs.add(taxID);
+				}
+			}
+			SearchResultExtractor.fillTaxonomyMap(taxIDs, taxonomyMap, conn);
+			
+			// add search hits to result object
+			for (SearchHit searchHit : chunk) {
+				long proteinID = searchHit.getFk_proteinid();
+				DatabaseExperiment.this.addProteinSearchHit(result, searchHit,
+						peptides.get(searchHit.getFk_peptideid()), proteins.get(proteinID),
+						uniprotEntries.get(proteinID), taxonomyNodes, DatabaseExperiment.this.getID(), conn);
+			}
+			chunk.clear();
+		}
+	}
+
 	@Override
 	public void persist(String title, Map<String, String> properties, Object... params) {
 		try {
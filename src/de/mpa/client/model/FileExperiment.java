@@ -17,6 +17,7 @@ import org.jdesktop.swingx.error.ErrorLevel;
 
 import com.thoughtworks.xstream.XStream;
 
+import de.mpa.analysis.ProteinAnalysis;
 import de.mpa.client.Client;
 import de.mpa.client.Constants;
 import de.mpa.client.model.dbsearch.DbSearchResult;
@@ -106,6 +107,8 @@ public class FileExperiment extends AbstractExperiment {
 			try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(
 					new GZIPInputStream(new FileInputStream(resultFile))))) {
 				searchResult = (DbSearchResult) ois.readObject();
+				// quantify proteins once instead of upon each table refresh
+				ProteinAnalysis.calculateLabelFree(searchResult);
 				
 				ClientFrame.getInstance().getGraphDatabaseResultPanel().setResultsButtonEnabled(true);
 				client.firePropertyChange("new message", null, "READING RESULTS FILE FINISHED");
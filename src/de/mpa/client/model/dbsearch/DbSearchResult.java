@@ -2,6 +2,7 @@ package de.mpa.client.model.dbsearch;
 
 import java.io.Serializable;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -63,6 +64,23 @@ public class DbSearchResult implements Serializable {
 	 * The total amount of spectra.
 	 */
 	private int totalSpectra;
+	
+	/**
+	 * Index mapping protein accessions to protein hits. Rebuilt lazily after
+	 * deserialization.
+	 */
+	private transient Map<String, ProteinHit> proteinIndex;
+	
+	/**
+	 * Index mapping peptide sequences to peptide hits.
+	 */
+	private transient Map<String, PeptideHit> peptideIndex;
+	
+	/**
+	 * Index mapping spectrum match keys (sequence + search spectrum ID) to
+	 * the peptide hits containing the respective spectrum matches.
+	 */
+	private transient Map<String, PeptideHit> matchIndex;
 
 	/**
 	 * Constructs a result object from the specified project title, experiment
@@ -91,8 +109,9 @@ public class DbSearchResult implements Serializable {
 		Set<Long> experimentIDs = proteinHit.getExperimentIDs();
 
 		// check for existing elements
-		
-		SpectrumMatch currentSpectrumMatch = this.getSpectrumMatch(peptideHit.getSequence() + spectrumMatch.getSearchSpectrumID());
+		this.ensureIndexed();
+		String matchKey = peptideHit.getSequence() + spectrumMatch.getSearchSpectrumID();
+		SpectrumMatch currentSpectrumMatch = this.getSpectrumMatch(matchKey);
 		if (currentSpectrumMatch != null) {
 			currentSpectrumMatch.addExperimentIDs(experimentIDs);
 			spectrumMatch = currentSpectrumMatch;
@@ -116,12 +135,86 @@ public class DbSearchResult implements Serializable {
 					"Meta-Protein " + proteinHit.getAccession(), proteinHit);
 			proteinHit.setMetaProteinHit(mph);
 			this.metaProteins.add(mph);
+			this.proteinIndex.put(proteinHit.getAccession(), proteinHit);
 		}
 		
 		// add elements, possibly replacing them with existing ones
 		proteinHit.addPeptideHit(peptideHit);
 		peptideHit.addSpectrumMatch(peptideHit.getSequence(), spectrumMatch);
 		spectrumMatch.addSearchHit(searchHit);
+		
+		// update indexes
+		if (!this.peptideIndex.containsKey(peptideHit.getSequence())) {
+			this.peptideIndex.put(peptideHit.getSequence(), peptideHit);
+		}
+		if (!this.matchIndex.containsKey(matchKey)) {
+			this.matchIndex.put(matchKey, peptideHit);
+		}
+	}
+	
+	/**
+	 * Builds the accession, sequence and spectrum match indexes from the
+	 * meta-protein list if they have not been initialized yet, e.g. after
+	 * deserialization. The indexes refer to protein, peptide and spectrum
+	 * objects which are retained when meta-proteins are condensed, i.e. they
+	 * stay valid in that case.
+	 */
+	private void ensureIndexed() {
+		if (proteinIndex == null) {
+			proteinIndex = new HashMap<String, ProteinHit>();
+			peptideIndex = new HashMap<String, PeptideHit>();
+			matchIndex = new HashMap<String, PeptideHit>();
+			for (ProteinHit mph : metaProteins) {
+				for (ProteinHit ph : ((MetaProteinHit) mph).getProteinHitList()) {
+					if (!proteinIndex.containsKey(ph.getAccession())) {
+						proteinIndex.put(ph.getAccession(), ph);
+					}
+					for (PeptideHit peptideHit : ph.getPeptideHits().values()) {
+						if (!peptideIndex.containsKey(peptideHit.getSequence())) {
+							peptideIndex.put(peptideHit.getSequence(), peptideHit);
+						}
+						for (SpectrumMatch sm : peptideHit.getSpectrumMatches()) {
+							String key = peptideHit.getSequence() + sm.getSearchSpectrumID();
+							if (!matchIndex.containsKey(key)) {
+								matchIndex.put(key, peptideHit);
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether the specified protein hit is part of the visible
+	 * meta-proteins as determined by the current FDR threshold.
+	 * @param proteinHit the protein hit
+	 * @return <code>true</code> if visible, <code>false</code> otherwise
+	 */
+	private boolean isVisible(ProteinHit proteinHit) {
+		if (visMetaProteins == null) {
+			return true;
+		}
+		MetaProteinHit mph = proteinHit.getMetaProteinHit();
+		return (mph != null) && mph.isVisible()
+				&& (mph.getProteinHit(proteinHit.getAccession()) == proteinHit);
+	}
+	
+	/**
+	 * Returns whether the specified peptide hit belongs to a visible protein hit.
+	 * @param peptideHit the peptide hit
+	 * @return <code>true</code> if visible, <code>false</code> otherwise
+	 */
+	private boolean isVisible(PeptideHit peptideHit) {
+		if (visMetaProteins == null) {
+			return true;
+		}
+		for (ProteinHit proteinHit : peptideHit.getProteinHits()) {
+			if (this.isVisible(proteinHit)) {
+				return true;
+			}
+		}
+		return false;
 	}
 
 	/**
@@ -203,6 +296,12 @@ public class DbSearchResult implements Serializable {
 	 * @return the protein hit or <code>null</code> if no such hit exists
 	 */
 	public ProteinHit getProteinHit(String accession) {
+		this.ensureIndexed();
+		ProteinHit proteinHit = proteinIndex.get(accession);
+		if ((proteinHit == null) || this.isVisible(proteinHit)) {
+			return proteinHit;
+		}
+		// fall back to scanning visible meta-proteins
 		ProteinHitList metaProteins =
 				(visMetaProteins == null) ? this.metaProteins : this.visMetaProteins;
 		for (ProteinHit mph : metaProteins) {
@@ -220,6 +319,12 @@ public class DbSearchResult implements Serializable {
 	 * @return the peptide hit or <code>null</code> if no such hit exists
 	 */
 	public PeptideHit getPeptideHit(String sequence) {
+		this.ensureIndexed();
+		PeptideHit indexed = peptideIndex.get(sequence);
+		if ((indexed == null) || this.isVisible(indexed)) {
+			return indexed;
+		}
+		// fall back to scanning visible proteins
 		for (ProteinHit proteinHit : this.getProteinHitList()) {
 			PeptideHit peptideHit = proteinHit.getPeptideHit(sequence);
 			if (peptideHit != null) {
@@ -235,6 +340,18 @@ public class DbSearchResult implements Serializable {
 	 * @return the spectrum match or <code>null</code> if no such match exists
 	 */
 	public SpectrumMatch getSpectrumMatch(String key) {
+		this.ensureIndexed();
+		PeptideHit indexed = matchIndex.get(key);
+		if (indexed == null) {
+			return null;
+		}
+		if (this.isVisible(indexed)) {
+			SpectrumMatch spectrumMatch = indexed.getSpectrumMatch(key);
+			if (spectrumMatch != null) {
+				return spectrumMatch;
+			}
+		}
+		// fall back to scanning visible proteins
 		for (ProteinHit proteinHit : this.getProteinHitList()) {
 			for (PeptideHit peptideHit : proteinHit.getPeptideHits().values()) {
 				SpectrumMatch spectrumMatch = peptideHit.getSpectrumMatch(key);
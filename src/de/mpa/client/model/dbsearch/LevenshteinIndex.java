@@ -0,0 +1,182 @@
+package de.mpa.client.model.dbsearch;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of sequence strings supporting queries for all indexed sequences
+ * within a maximum Levenshtein distance. Candidates are pre-selected by their
+ * length and by the q-gram lemma, i.e. two strings <i>a</i> and <i>b</i> of
+ * distance <i>k</i> or less share at least
+ * <code>max(|a|, |b|) - q + 1 - k * q</code> q-grams, before their distance
+ * is computed.
+ *
+ * @author A. Behne
+ */
+public class LevenshteinIndex {
+
+	/**
+	 * The q-gram length.
+	 */
+	private static final int Q = 2;
+
+	/**
+	 * The maximum Levenshtein distance.
+	 */
+	private final int maxDistance;
+
+	/**
+	 * The indexed sequences.
+	 */
+	private final List<String> sequences = new ArrayList<String>();
+
+	/**
+	 * The postings of each q-gram, i.e. pairs of sequence index and q-gram
+	 * count stored in consecutive list elements.
+	 */
+	private final TIntObjectMap<TIntList> postings = new TIntObjectHashMap<TIntList>();
+
+	/**
+	 * The indices of the sequences of each length.
+	 */
+	private final TIntObjectMap<TIntList> lengths = new TIntObjectHashMap<TIntList>();
+
+	/**
+	 * Constructs an empty index for the specified maximum distance.
+	 * @param maxDistance the maximum Levenshtein distance
+	 */
+	public LevenshteinIndex(int maxDistance) {
+		this.maxDistance = maxDistance;
+	}
+
+	/**
+	 * Adds the specified sequence to the index.
+	 * @param sequence the sequence
+	 * @return the index of the sequence
+	 */
+	public int add(String sequence) {
+		int index = sequences.size();
+		sequences.add(sequence);
+		for (TIntIntIterator it = countQGrams(sequence).iterator(); it.hasNext();) {
+			it.advance();
+			TIntList posting = postings.get(it.key());
+			if (posting == null) {
+				posting = new TIntArrayList();
+				postings.put(it.key(), posting);
+			}
+			posting.add(index);
+			posting.add(it.value());
+		}
+		TIntList indices = lengths.get(sequence.length());
+		if (indices == null) {
+			indices = new TIntArrayList();
+			lengths.put(sequence.length(), indices);
+		}
+		indices.add(index);
+		return index;
+	}
+
+	/**
+	 * Returns the indexed sequence at the specified index.
+	 * @param index the index
+	 * @return the sequence
+	 */
+	public String get(int index) {
+		return sequences.get(index);
+	}
+
+	/**
+	 * Returns the indices of all indexed sequences whose Levenshtein distance
+	 * to the specified sequence does not exceed the maximum distance.
+	 * @param sequence the query sequence
+	 * @return the indices of the similar sequences
+	 */
+	public TIntList findSimilar(String sequence) {
+		TIntList similar = new TIntArrayList();
+		int length = sequence.length();
+
+		// sequences too short for the q-gram lemma are compared directly
+		for (int len = Math.max(0, length - maxDistance); len <= length + maxDistance; len++) {
+			if (this.getMinimumShared(length, len) <= 0) {
+				TIntList indices = lengths.get(len);
+				if (indices != null) {
+					for (int i = 0; i < indices.size(); i++) {
+						this.addIfSimilar(sequence, indices.get(i), similar);
+					}
+				}
+			}
+		}
+
+		// accumulate shared q-gram counts of length-compatible candidates
+		TIntIntMap shared = new TIntIntHashMap();
+		for (TIntIntIterator it = countQGrams(sequence).iterator(); it.hasNext();) {
+			it.advance();
+			TIntList posting = postings.get(it.key());
+			if (posting != null) {
+				for (int i = 0; i < posting.size(); i += 2) {
+					int index = posting.get(i);
+					int len = sequences.get(index).length();
+					if ((Math.abs(len - length) <= maxDistance)
+							&& (this.getMinimumShared(length, len) > 0)) {
+						shared.adjustOrPutValue(index, Math.min(it.value(), posting.get(i + 1)),
+								Math.min(it.value(), posting.get(i + 1)));
+					}
+				}
+			}
+		}
+		for (TIntIntIterator it = shared.iterator(); it.hasNext();) {
+			it.advance();
+			int index = it.key();
+			if (it.value() >= this.getMinimumShared(length, sequences.get(index).length())) {
+				this.addIfSimilar(sequence, index, similar);
+			}
+		}
+		return similar;
+	}
+
+	/**
+	 * Adds the specified sequence index to the result list if the distance of
+	 * the indexed sequence to the query sequence does not exceed the maximum.
+	 * @param sequence the query sequence
+	 * @param index the index of the candidate sequence
+	 * @param similar the result list
+	 */
+	private void addIfSimilar(String sequence, int index, TIntList similar) {
+		if (MetaProteinFactory.computeLevenshteinDistance(sequence, sequences.get(index), maxDistance) <= maxDistance) {
+			similar.add(index);
+		}
+	}
+
+	/**
+	 * Returns the minimum number of q-grams shared by two sequences of the
+	 * specified lengths within the maximum distance.
+	 * @param lengthA the length of the first sequence
+	 * @param lengthB the length of the second sequence
+	 * @return the minimum number of shared q-grams
+	 */
+	private int getMinimumShared(int lengthA, int lengthB) {
+		return Math.max(lengthA, lengthB) - Q + 1 - maxDistance * Q;
+	}
+
+	/**
+	 * Counts the occurrences of each q-gram of the specified sequence.
+	 * @param sequence the sequence
+	 * @return a map of q-gram counts keyed by encoded q-gram
+	 */
+	private static TIntIntMap countQGrams(String sequence) {
+		TIntIntMap counts = new TIntIntHashMap();
+		for (int i = 0; i + Q <= sequence.length(); i++) {
+			counts.adjustOrPutValue((sequence.charAt(i) << 16) | sequence.charAt(i + 1), 1, 1);
+		}
+		return counts;
+	}
+
+}
@@ -1,14 +1,23 @@
 package de.mpa.client.model.dbsearch;
 
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
+import de.mpa.analysis.ProteinAnalysis;
+import de.mpa.analysis.StringSimilarity;
 import de.mpa.analysis.UniProtUtilities.TaxonomyRank;
 import de.mpa.analysis.taxonomy.TaxonomyUtils;
 import de.mpa.analysis.taxonomy.TaxonomyUtils.TaxonomyDefinition;
@@ -165,29 +174,41 @@ public class MetaProteinFactory {
 		 * @return <code>true</code> if the meta-proteins should be merged, <code>false</code> otherwise
 		 */
 		public boolean shouldCondense(MetaProteinHit mphA, MetaProteinHit mphB) {
-			ReducedUniProtEntry upeA = mphA.getProteinHitList().get(0).getUniProtEntry();
-			ReducedUniProtEntry upeB = mphB.getProteinHitList().get(0).getUniProtEntry();
-			if ((upeA == null) || (upeB == null)) {
-				return false;
+			String refA = this.getClusterID(mphA);
+			return (refA != null) && refA.equals(this.getClusterID(mphB));
+		}
+
+		/**
+		 * Returns the identifier of the protein cluster the provided
+		 * meta-protein belongs to. Meta-proteins are merged by this rule if
+		 * their identifiers are equal and not <code>null</code>.
+		 * @param mph the meta-protein
+		 * @return the cluster identifier or <code>null</code> if the meta-protein
+		 *  shall not be merged
+		 */
+		public String getClusterID(MetaProteinHit mph) {
+			switch (this) {
+				case NEVER:
+					return null;
+				case ALWAYS:
+					return "";
+				default:
+					break;
+			}
+			ReducedUniProtEntry upe = mph.getProteinHitList().get(0).getUniProtEntry();
+			if (upe == null) {
+				return null;
 			}
-			String refA = null;
-			String refB = null;
 			switch (this) {
 				case UNIREF100:
-					refA = upeA.getUniRef100id();
-					refB = upeB.getUniRef100id();
-					break;
+					return upe.getUniRef100id();
 				case UNIREF90:
-					refA = upeA.getUniRef90id();
-					refB = upeB.getUniRef90id();
-//					System.out.println("" + refA + " " + refB + " " + ((refA != null) && refA.equals(refB)));
-					break;
+					return upe.getUniRef90id();
 				case UNIREF50:
-					refA = upeA.getUniRef50id();
-					refB = upeB.getUniRef50id();
-					break;
+					return upe.getUniRef50id();
+				default:
+					return null;
 			}
-			return (refA != null) && refA.equals(refB);
 		}
 		
 	}
@@ -223,14 +244,16 @@ public class MetaProteinFactory {
 				// Merge meta-proteins if at least one overlapping peptide
 				// element exists (weak similarity criterion)
 				for (String seqA : pepSeqsA) {
-					for (String seqB : pepSeqsB) {
-						if (seqA.equals(seqB)) {
-							return true;
-						} else {
-							if (this.getMaximumDistance() > 0) {
-								if (MetaProteinFactory.computeLevenshteinDistance(seqA, seqB) <= this.getMaximumDistance()) {
-									return true;
-								}
+					if (pepSeqsB.contains(seqA)) {
+						return true;
+					}
+				}
+				int maxDistance = this.getMaximumDistance();
+				if (maxDistance > 0) {
+					for (String seqA : pepSeqsA) {
+						for (String seqB : pepSeqsB) {
+							if (MetaProteinFactory.computeLevenshteinDistance(seqA, seqB, maxDistance) <= maxDistance) {
+								return true;
 							}
 						}
 					}
@@ -259,7 +282,7 @@ public class MetaProteinFactory {
 					while (iterB.hasNext()) {
 						String seqB = (String) iterB.next();
 						if (seqA.equals(seqB) || ((this.getMaximumDistance() > 0) 
-								&& (MetaProteinFactory.computeLevenshteinDistance(seqA, seqB) <= this.getMaximumDistance()))) {
+								&& (MetaProteinFactory.computeLevenshteinDistance(seqA, seqB, this.getMaximumDistance()) <= this.getMaximumDistance()))) {
 							// match found, remove from lists
 							iterA.remove();
 							iterB.remove();
@@ -280,7 +303,7 @@ public class MetaProteinFactory {
 						while (iterA.hasNext()) {
 							String seqA = (String) iterA.next();
 							if (seqA.equals(seqB) || ((this.getMaximumDistance() > 0) 
-									&& (MetaProteinFactory.computeLevenshteinDistance(seqA, seqB) <= this.getMaximumDistance()))) {
+									&& (MetaProteinFactory.computeLevenshteinDistance(seqA, seqB, this.getMaximumDistance()) <= this.getMaximumDistance()))) {
 								// match found, remove from lists
 								iterA.remove();
 								iterB.remove();
@@ -460,13 +483,28 @@ public class MetaProteinFactory {
 		 *         <code>false</code> otherwise
 		 */
 		public boolean shouldCondense(MetaProteinHit mphA, MetaProteinHit mphB) {
-			// extract first protein from meta-proteins
-			ProteinHit phA = mphA.getProteinHitList().get(0);
-			ProteinHit phB = mphB.getProteinHitList().get(0);
-			// get taxonomy name for target rank
-			String taxNameA = TaxonomyUtils.getTaxonNameByRank(phA.getTaxonomyNode(), this.rank);
-			String taxNameB = TaxonomyUtils.getTaxonNameByRank(phB.getTaxonomyNode(), this.rank);
-			return taxNameA.equals(taxNameB);
+			return this.getTaxonName(mphA).equals(this.getTaxonName(mphB));
+		}
+
+		/**
+		 * Returns the name of the taxon of the provided meta-protein at the
+		 * taxonomy rank of this rule. Meta-proteins are merged by this rule if
+		 * their taxon names are equal and not <code>null</code>.
+		 * @param mph the meta-protein
+		 * @return the taxon name or <code>null</code> if the meta-protein shall
+		 *  not be merged
+		 */
+		public String getTaxonName(MetaProteinHit mph) {
+			switch (this) {
+				case NEVER:
+					return null;
+				case ALWAYS:
+					return "";
+				default:
+					// extract first protein from meta-protein and get taxonomy name for target rank
+					ProteinHit ph = mph.getProteinHitList().get(0);
+					return TaxonomyUtils.getTaxonNameByRank(ph.getTaxonomyNode(), this.rank);
+			}
 		}
 	}
 	
@@ -501,7 +539,7 @@ public class MetaProteinFactory {
 		for (int j = 1; j < len1; j++) {
 	
 			// initial cost of skipping prefix in String s1
-			newcost[0] = j - 1;
+			newcost[0] = j;
 	
 			// transformation cost for each letter in s0
 			for (int i = 1; i < len0; i++) {
@@ -528,6 +566,20 @@ public class MetaProteinFactory {
 		return cost[len0 - 1];
 	}
 
+	/**
+	 * Computes the Levenshtein distance between the provided strings up to the
+	 * specified maximum distance.
+	 * @param s0 the first string
+	 * @param s1 the second string
+	 * @param maxDistance the maximum distance of interest
+	 * @return the Levenshtein distance or <code>maxDistance + 1</code> if the
+	 *  distance exceeds the maximum distance
+	 * @see StringSimilarity#calculateLevenshteinDistance(String, String, int)
+	 */
+	public static int computeLevenshteinDistance(String s0, String s1, int maxDistance) {
+		return StringSimilarity.calculateLevenshteinDistance(s0, s1, maxDistance);
+	}
+
 	/**
 	 * Creates meta-proteins from the specified database search result and
 	 * creates the peptide, protein and meta-protein taxonomies.
@@ -580,6 +632,9 @@ public class MetaProteinFactory {
 		TaxonomyUtils.determineMetaProteinTaxonomy(result.getMetaProteins(), params);
 		
 		client.firePropertyChange("new message", null, "DETERMINING META-PROTEIN TAXONOMY FINISHED");
+
+		// Quantify the proteins remaining after the FDR cut-off
+		ProteinAnalysis.calculateLabelFree(result);
 	}
 	
 	/**
@@ -595,65 +650,11 @@ public class MetaProteinFactory {
 			PeptideRule peptideRule = (PeptideRule) params.get("peptideRule").getValue();
 			TaxonomyRule taxonomyRule = (TaxonomyRule) params.get("taxonomyRule").getValue();
 			
-			boolean distinctIL = peptideRule.isDistinctIL();
-			
-			// Iterate (initially single-protein) meta-proteins
-			Iterator<ProteinHit> rowIter = metaProteins.iterator();
-			while (rowIter.hasNext()) {
-				MetaProteinHit rowMP = (MetaProteinHit) rowIter.next();
-	
-				// Get set of peptide sequences
-				Set<PeptideHit> rowPeps = rowMP.getPeptideSet();
-				Set<String> rowPepSeqs = new HashSet<String>() ;
-				for (PeptideHit peptideHit : rowPeps) {
-					// Make copy of sequence string to avoid overwriting the original sequence
-					String sequence = new String(peptideHit.getSequence());
-					// Merge leucine and isoleucine if not considered distinct
-					if (!distinctIL) {
-						sequence = sequence.replaceAll("[IL]", "L");
-					}
-					rowPepSeqs.add(sequence);
-				}
-	
-				// Nested iteration of the same meta-protein list, stop when outer and inner iteration element 
-				// are identical, iterate backwards from the end of the list
-				ListIterator<ProteinHit> colIter = metaProteins.listIterator(metaProteins.size());
-				while (colIter.hasPrevious()) {
-					MetaProteinHit colMP = (MetaProteinHit) colIter.previous();
-					// Check termination condition
-					if (rowMP == colMP) {
-						break;
-					}
-	
-					// Get set of peptide sequences (of inner iteration element)
-					Set<PeptideHit> colPeps = colMP.getPeptideSet();
-					Set<String> colPepSeqs = new HashSet<String>() ;
-					for (PeptideHit peptideHit : colPeps) {
-						// Make copy of sequence string to avoid overwriting the original sequence
-						String sequence = new String(peptideHit.getSequence());
-						// Merge leucine and isoleucine into one if desired
-						if (!distinctIL) {
-							sequence = sequence.replaceAll("[IL]", "L");
-						}
-						colPepSeqs.add(sequence);
-					}
-	
-					// Merge meta-proteins if rules apply
-					if (clusterRule.shouldCondense(rowMP, colMP)
-							&& peptideRule.shouldCondense(rowPepSeqs, colPepSeqs)
-	//						&& levRule.shouldCondense(rowPepSeqs, colPepSeqs, levThreshold)
-							&& taxonomyRule.shouldCondense(rowMP, colMP)) {
-						// Add all proteins of outer meta-protein to inner meta-protein
-						colMP.addAll(rowMP.getProteinHitList());
-						// Remove emptied outer meta-protein from list
-						rowIter.remove();
-						// Abort inner iteration as outer element has been removed and 
-						// therefore cannot be merged into another meta-protein again
-						break;
-					}
-				}
-				// Fire progress notification
-				Client.getInstance().firePropertyChange("progressmade", false, true);
+			if (peptideRule == PeptideRule.SHARED_SUBSET) {
+				// Subset relations are not transitive, merge pairwise
+				condensePairwise(metaProteins, clusterRule, peptideRule, taxonomyRule);
+			} else {
+				condenseComponents(metaProteins, clusterRule, peptideRule, taxonomyRule);
 			}
 	
 			// Re-number condensed meta-proteins
@@ -675,4 +676,227 @@ public class MetaProteinFactory {
 			}
 		}
 	
+
+	/**
+	 * Merges meta-proteins into connected components. Two meta-proteins are
+	 * connected if they belong to the same protein cluster and taxon and if
+	 * they share a peptide (or, in case of a non-zero maximum distance, a
+	 * similar peptide). Peptides are looked up in an inverted index and
+	 * connected meta-proteins are joined using a union-find structure. Each
+	 * component is merged into its last member in list order.
+	 * @param metaProteins the list of meta-proteins to condense
+	 * @param clusterRule the protein cluster rule
+	 * @param peptideRule the peptide rule
+	 * @param taxonomyRule the taxonomy rule
+	 */
+	static void condenseComponents(ProteinHitList metaProteins,
+			ClusterRule clusterRule, PeptideRule peptideRule, TaxonomyRule taxonomyRule) {
+		int size = metaProteins.size();
+		int[] parents = new int[size];
+		for (int i = 0; i < size; i++) {
+			parents[i] = i;
+		}
+
+		if (peptideRule != PeptideRule.NEVER) {
+			// Group meta-proteins by cluster and taxon, only members of the same group may be merged
+			Map<List<String>, TIntList> groups = new HashMap<List<String>, TIntList>();
+			for (int i = 0; i < size; i++) {
+				MetaProteinHit mph = (MetaProteinHit) metaProteins.get(i);
+				String clusterID = clusterRule.getClusterID(mph);
+				String taxonName = taxonomyRule.getTaxonName(mph);
+				if ((clusterID != null) && (taxonName != null)) {
+					List<String> key = Arrays.asList(clusterID, taxonName);
+					TIntList members = groups.get(key);
+					if (members == null) {
+						members = new TIntArrayList();
+						groups.put(key, members);
+					}
+					members.add(i);
+				}
+			}
+			
+			for (TIntList members : groups.values()) {
+				if (peptideRule == PeptideRule.ALWAYS) {
+					for (int j = 1; j < members.size(); j++) {
+						union(parents, members.get(0), members.get(j));
+					}
+				} else {
+					unionSharedPeptides(metaProteins, members, peptideRule, parents);
+				}
+			}
+		}
+
+		// Collect component members in list order
+		TIntObjectMap<TIntList> components = new TIntObjectHashMap<TIntList>();
+		for (int i = 0; i < size; i++) {
+			int root = find(parents, i);
+			TIntList members = components.get(root);
+			if (members == null) {
+				members = new TIntArrayList(1);
+				components.put(root, members);
+			}
+			members.add(i);
+		}
+
+		// Merge each component into its last member
+		List<ProteinHit> condensed = new ArrayList<ProteinHit>(components.size());
+		for (int i = 0; i < size; i++) {
+			TIntList members = components.get(find(parents, i));
+			int last = members.get(members.size() - 1);
+			if (i == last) {
+				MetaProteinHit target = (MetaProteinHit) metaProteins.get(last);
+				for (int j = 0; j < members.size() - 1; j++) {
+					target.addAll(((MetaProteinHit) metaProteins.get(members.get(j))).getProteinHitList());
+				}
+				condensed.add(target);
+			}
+			// Fire progress notification
+			Client.getInstance().firePropertyChange("progressmade", false, true);
+		}
+		metaProteins.clear();
+		metaProteins.addAll(condensed);
+	}
+
+	/**
+	 * Joins the specified group of meta-proteins sharing peptide sequences.
+	 * Each normalized sequence is mapped to a meta-protein containing it, if
+	 * a maximum distance is configured distinct sequences are additionally
+	 * matched using a {@link LevenshteinIndex}.
+	 * @param metaProteins the list of meta-proteins
+	 * @param members the list indices of the group members
+	 * @param peptideRule the peptide rule
+	 * @param parents the union-find parent array
+	 */
+	private static void unionSharedPeptides(ProteinHitList metaProteins, TIntList members,
+			PeptideRule peptideRule, int[] parents) {
+		// Inverted index mapping peptide sequences to a meta-protein containing them
+		Map<String, Integer> owners = new HashMap<String, Integer>();
+		for (int j = 0; j < members.size(); j++) {
+			int index = members.get(j);
+			Set<String> sequences = getNormalizedSequences(
+					(MetaProteinHit) metaProteins.get(index), peptideRule.isDistinctIL());
+			for (String sequence : sequences) {
+				Integer owner = owners.put(sequence, index);
+				if (owner != null) {
+					union(parents, owner, index);
+				}
+			}
+		}
+
+		int maxDistance = peptideRule.getMaximumDistance();
+		if (maxDistance > 0) {
+			// Join meta-proteins containing similar peptides
+			LevenshteinIndex levIndex = new LevenshteinIndex(maxDistance);
+			for (Entry<String, Integer> entry : owners.entrySet()) {
+				TIntList similar = levIndex.findSimilar(entry.getKey());
+				for (int k = 0; k < similar.size(); k++) {
+					union(parents, owners.get(levIndex.get(similar.get(k))), entry.getValue());
+				}
+				levIndex.add(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Merges meta-proteins by evaluating the specified rules for each pair of
+	 * meta-proteins. A meta-protein is merged into the last following
+	 * meta-protein satisfying all rules.
+	 * @param metaProteins the list of meta-proteins to condense
+	 * @param clusterRule the protein cluster rule
+	 * @param peptideRule the peptide rule
+	 * @param taxonomyRule the taxonomy rule
+	 */
+	static void condensePairwise(ProteinHitList metaProteins,
+			ClusterRule clusterRule, PeptideRule peptideRule, TaxonomyRule taxonomyRule) {
+		boolean distinctIL = peptideRule.isDistinctIL();
+
+		// Pre-compute peptide sequence sets
+		List<Set<String>> pepSeqs = new ArrayList<Set<String>>(metaProteins.size());
+		for (ProteinHit mph : metaProteins) {
+			pepSeqs.add(getNormalizedSequences((MetaProteinHit) mph, distinctIL));
+		}
+
+		// Iterate (initially single-protein) meta-proteins
+		int row = 0;
+		while (row < metaProteins.size()) {
+			MetaProteinHit rowMP = (MetaProteinHit) metaProteins.get(row);
+			Set<String> rowPepSeqs = pepSeqs.get(row);
+			boolean merged = false;
+			// Nested iteration of the same meta-protein list backwards from
+			// the end of the list, stop when reaching the outer element
+			for (int col = metaProteins.size() - 1; col > row; col--) {
+				MetaProteinHit colMP = (MetaProteinHit) metaProteins.get(col);
+				Set<String> colPepSeqs = pepSeqs.get(col);
+
+				// Merge meta-proteins if rules apply
+				if (clusterRule.shouldCondense(rowMP, colMP)
+						&& peptideRule.shouldCondense(rowPepSeqs, colPepSeqs)
+						&& taxonomyRule.shouldCondense(rowMP, colMP)) {
+					// Add all proteins of outer meta-protein to inner meta-protein
+					colMP.addAll(rowMP.getProteinHitList());
+					colPepSeqs.addAll(rowPepSeqs);
+					// Remove emptied outer meta-protein from list
+					metaProteins.remove(row);
+					pepSeqs.remove(row);
+					merged = true;
+					break;
+				}
+			}
+			if (!merged) {
+				row++;
+			}
+			// Fire progress notification
+			Client.getInstance().firePropertyChange("progressmade", false, true);
+		}
+	}
+
+	/**
+	 * Returns the distinct peptide sequences of the specified meta-protein.
+	 * @param mph the meta-protein
+	 * @param distinctIL <code>true</code> if leucine and isoleucine are considered
+	 *  distinct, <code>false</code> if isoleucine shall be replaced by leucine
+	 * @return the set of peptide sequences
+	 */
+	private static Set<String> getNormalizedSequences(MetaProteinHit mph, boolean distinctIL) {
+		Set<String> sequences = new HashSet<String>();
+		for (PeptideHit peptideHit : mph.getPeptideSet()) {
+			String sequence = peptideHit.getSequence();
+			// Merge leucine and isoleucine if not considered distinct
+			if (!distinctIL) {
+				sequence = sequence.replace('I', 'L');
+			}
+			sequences.add(sequence);
+		}
+		return sequences;
+	}
+
+	/**
+	 * Returns the root of the union-find tree containing the specified element.
+	 * @param parents the union-find parent array
+	 * @param i the element
+	 * @return the root element
+	 */
+	private static int find(int[] parents, int i) {
+		while (parents[i] != i) {
+			// path halving
+			parents[i] = parents[parents[i]];
+			i = parents[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Joins the union-find trees containing the specified elements.
+	 * @param parents the union-find parent array
+	 * @param i the first element
+	 * @param j the second element
+	 */
+	private static void union(int[] parents, int i, int j) {
+		int rootI = find(parents, i);
+		int rootJ = find(parents, j);
+		if (rootI != rootJ) {
+			parents[Math.min(rootI, rootJ)] = Math.max(rootI, rootJ);
+		}
+	}
+	
 }
@@ -333,6 +333,15 @@ public class ProteinHit implements Serializable, Comparable<ProteinHit>, Taxonom
 		return specCount;
 	}
 
+	/**
+	 * Sets the spectral count of the protein.
+	 * @param specCount the spectral count to set, a negative value causes
+	 *  the spectral count to be recalculated upon the next request
+	 */
+	public void setSpectralCount(int specCount) {
+		this.specCount = specCount;
+	}
+
 	/**
 	 * Gets the emPAI of the protein
 	 * @return the emPAI
@@ -0,0 +1,153 @@
+package de.mpa.client.model.dbsearch;
+
+import java.io.Serializable;
+
+import de.mpa.db.accessor.SearchHit;
+
+/**
+ * This class represents a reduced model of a search engine hit containing only
+ * the values needed for building peptide-spectrum matches.
+ * @author A. Behne
+ */
+public class ReducedSearchHit implements SearchHit, Serializable {
+
+	/**
+	 * Serialization ID set to default == 1L;
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The search engine type.
+	 */
+	private SearchEngineType type;
+
+	/**
+	 * The search spectrum ID.
+	 */
+	private long searchspectrumID;
+
+	/**
+	 * The peptide ID.
+	 */
+	private long peptideID;
+
+	/**
+	 * The protein ID.
+	 */
+	private long proteinID;
+
+	/**
+	 * The peptide sequence.
+	 */
+	private String sequence;
+
+	/**
+	 * The protein accession.
+	 */
+	private String accession;
+
+	/**
+	 * The engine-specific score.
+	 */
+	private double score;
+
+	/**
+	 * The q-value.
+	 */
+	private Number qvalue;
+
+	/**
+	 * The precursor charge.
+	 */
+	private long charge;
+
+	/**
+	 * Constructs a reduced search hit from the specified values.
+	 * @param type the search engine type
+	 * @param searchspectrumID the search spectrum ID
+	 * @param peptideID the peptide ID
+	 * @param proteinID the protein ID
+	 * @param sequence the peptide sequence
+	 * @param accession the protein accession
+	 * @param score the engine-specific score
+	 * @param qvalue the q-value
+	 * @param charge the precursor charge
+	 */
+	public ReducedSearchHit(SearchEngineType type, long searchspectrumID, long peptideID,
+			long proteinID, String sequence, String accession, double score, Number qvalue, long charge) {
+		this.type = type;
+		this.searchspectrumID = searchspectrumID;
+		this.peptideID = peptideID;
+		this.proteinID = proteinID;
+		this.sequence = sequence;
+		this.accession = accession;
+		this.score = score;
+		this.qvalue = qvalue;
+		this.charge = charge;
+	}
+
+	@Override
+	public SearchEngineType getType() {
+		return type;
+	}
+
+	@Override
+	public String getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public String getAccession() {
+		return accession;
+	}
+
+	@Override
+	public Number getQvalue() {
+		return qvalue;
+	}
+
+	@Override
+	public double getScore() {
+		return score;
+	}
+
+	@Override
+	public long getCharge() {
+		return charge;
+	}
+
+	@Override
+	public long getFk_searchspectrumid() {
+		return searchspectrumID;
+	}
+
+	@Override
+	public long getFk_peptideid() {
+		return peptideID;
+	}
+
+	@Override
+	public long getFk_proteinid() {
+		return proteinID;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof SearchHit) {
+			SearchHit hit = ((SearchHit) obj);
+			return (hit.getType() == this.getType())
+					&& (hit.getFk_searchspectrumid() == this.getFk_searchspectrumid())
+					&& (hit.getFk_peptideid() == this.getFk_peptideid());
+		}
+		return false;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = type.hashCode();
+		hash = 31 * hash + (int) (searchspectrumID ^ (searchspectrumID >>> 32));
+		hash = 31 * hash + (int) (peptideID ^ (peptideID >>> 32));
+		return hash;
+	}
+
+}
@@ -2,10 +2,9 @@ package de.mpa.client.model.specsim;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeSet;
 
+import de.mpa.algorithms.similarity.SpectrumVector;
 import de.mpa.io.SixtyFourBitStringSupport;
 
 public class SpectralSearchCandidate {
@@ -15,6 +14,7 @@ public class SpectralSearchCandidate {
 	private double precursorMz;
 	private int precursorCharge;
 	private Map<Double, Double> peaks;
+	private SpectrumVector peakVector;
 	private long peptideID;
 	private String sequence;
 	
@@ -30,12 +30,30 @@ public class SpectralSearchCandidate {
 		this.spectrumTitle = aResultSet.getString("title");
 		this.precursorMz = aResultSet.getDouble("precursor_mz");
 		this.precursorCharge = aResultSet.getInt("precursor_charge");
-		this.peaks = SixtyFourBitStringSupport.buildPeakMap(SixtyFourBitStringSupport.decodeBase64StringToDoubles(aResultSet.getString("mzarray")),
-															SixtyFourBitStringSupport.decodeBase64StringToDoubles(aResultSet.getString("intarray")));
+		this.peakVector = new SpectrumVector(SixtyFourBitStringSupport.decodeBase64StringToDoubles(aResultSet.getString("mzarray")),
+											 SixtyFourBitStringSupport.decodeBase64StringToDoubles(aResultSet.getString("intarray")));
 		this.peptideID = aResultSet.getLong("peptideid");
 		this.sequence = aResultSet.getString("sequence");
 	}
 
+	/**
+	 * Constructs a spectral search candidate from the specified values, e.g.
+	 * when restoring pre-vectorized candidates from a library cache.
+	 * @param libspectrumID the libspectrum ID
+	 * @param precursorMz the precursor m/z
+	 * @param precursorCharge the precursor charge
+	 * @param peptideID the peptide ID
+	 * @param peakVector the m/z-sorted peaks
+	 */
+	public SpectralSearchCandidate(long libspectrumID, double precursorMz,
+			int precursorCharge, long peptideID, SpectrumVector peakVector) {
+		this.libspectrumID = libspectrumID;
+		this.precursorMz = precursorMz;
+		this.precursorCharge = precursorCharge;
+		this.peptideID = peptideID;
+		this.peakVector = peakVector;
+	}
+
 	/**
 	 * @return the spectrumID
 	 */
@@ -68,28 +86,27 @@ public class SpectralSearchCandidate {
 	 * @return the peaks
 	 */
 	public Map<Double, Double> getPeaks() {
+		if (peaks == null) {
+			peaks = peakVector.toPeakMap();
+		}
 		return peaks;
 	}
 	
+	/**
+	 * @return the peaks as m/z-sorted primitive arrays
+	 */
+	public SpectrumVector getPeakVector() {
+		return peakVector;
+	}
+	
 	/**
 	 * @return the peaks
 	 */
 	public Map<Double, Double> getHighestPeaks(int k) {
 		if (k == 0) {
-    		return peaks;
+    		return getPeaks();
     	} else {
-    		HashMap<Double, Double> res = new HashMap<Double, Double>(peaks);
-    		TreeSet sortedSet = null;
-    		try {
-    			sortedSet = new TreeSet<Double>(res.values());
-    		} catch (Exception e) {
-    			e.printStackTrace();
-    		}
-    		while (sortedSet.size() > k) {
-    			res.values().remove(sortedSet.first());
-    			sortedSet.remove(sortedSet.first());
-    		}
-    		return res;
+    		return peakVector.getHighestPeaks(k).toPeakMap();
     	}
 	}
 
@@ -0,0 +1,119 @@
+package de.mpa.client.model.specsim;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of spectral search candidates sorted by precursor m/z. Candidates
+ * inside a precursor tolerance window are located via binary search over a
+ * primitive array, i.e. a lookup touches only the candidates in the window
+ * instead of the whole library.
+ *
+ * @author A. Behne
+ */
+public class SpectralSearchCandidateIndex {
+
+	/**
+	 * The candidates sorted by ascending precursor m/z.
+	 */
+	private List<SpectralSearchCandidate> candidates;
+
+	/**
+	 * The ascending precursor m/z values, parallel to the candidate list.
+	 */
+	private double[] precursorMzs;
+
+	/**
+	 * Constructs a candidate index from the specified collection of candidates.
+	 * @param candidates the candidates to be indexed
+	 */
+	public SpectralSearchCandidateIndex(Collection<SpectralSearchCandidate> candidates) {
+		ArrayList<SpectralSearchCandidate> sorted = new ArrayList<SpectralSearchCandidate>(candidates);
+		Collections.sort(sorted, new Comparator<SpectralSearchCandidate>() {
+			@Override
+			public int compare(SpectralSearchCandidate o1, SpectralSearchCandidate o2) {
+				return Double.compare(o1.getPrecursorMz(), o2.getPrecursorMz());
+			}
+		});
+		this.candidates = Collections.unmodifiableList(sorted);
+		this.precursorMzs = new double[sorted.size()];
+		for (int i = 0; i < precursorMzs.length; i++) {
+			precursorMzs[i] = sorted.get(i).getPrecursorMz();
+		}
+	}
+
+	/**
+	 * Returns the candidates whose precursor m/z lies strictly within the
+	 * specified tolerance around the specified precursor m/z, ordered by
+	 * ascending precursor m/z.
+	 * @param precursorMz the query precursor m/z
+	 * @param tolMz the precursor tolerance
+	 * @return an unmodifiable view of the candidates inside the window
+	 */
+	public List<SpectralSearchCandidate> getCandidates(double precursorMz, double tolMz) {
+		int fromIndex = this.upperBound(precursorMz - tolMz);
+		int toIndex = this.lowerBound(precursorMz + tolMz);
+		if (fromIndex >= toIndex) {
+			return Collections.emptyList();
+		}
+		return candidates.subList(fromIndex, toIndex);
+	}
+
+	/**
+	 * Returns the index of the first precursor m/z greater than or equal to the
+	 * specified value.
+	 * @param value the m/z value
+	 * @return the lower bound index
+	 */
+	private int lowerBound(double value) {
+		int lo = 0, hi = precursorMzs.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (precursorMzs[mid] < value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the index of the first precursor m/z strictly greater than the
+	 * specified value.
+	 * @param value the m/z value
+	 * @return the upper bound index
+	 */
+	private int upperBound(double value) {
+		int lo = 0, hi = precursorMzs.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (precursorMzs[mid] <= value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns all indexed candidates ordered by ascending precursor m/z.
+	 * @return an unmodifiable list of candidates
+	 */
+	public List<SpectralSearchCandidate> getCandidates() {
+		return candidates;
+	}
+
+	/**
+	 * Returns the number of indexed candidates.
+	 * @return the number of candidates
+	 */
+	public int size() {
+		return precursorMzs.length;
+	}
+
+}
@@ -95,8 +95,6 @@ import scala.actors.threadpool.Arrays;
 import com.jgoodies.forms.factories.CC;
 import com.jgoodies.forms.layout.FormLayout;
 
-import de.mpa.algorithms.quantification.NormalizedSpectralAbundanceFactor;
-import de.mpa.analysis.ProteinAnalysis;
 import de.mpa.client.Client;
 import de.mpa.client.Constants;
 import de.mpa.client.model.FileExperiment;
@@ -1979,13 +1977,7 @@ public class DbSearchResultPanel extends JPanel implements Busyable {
 					ProteinHitList proteinHits = ((MetaProteinHit) metaProtein).getProteinHitList();
 					for (ProteinHit proteinHit : proteinHits) {
 		
-						// Calculate NSAF
 						double nsaf = proteinHit.getNSAF();
-						if (nsaf < 0.0) {
-							// Calculate NSAF
-							nsaf = ProteinAnalysis.calculateLabelFree(new NormalizedSpectralAbundanceFactor(), dbSearchResult.getProteinHits(),	proteinHit);
-							proteinHit.setNSAF(nsaf);
-						}
 		
 						// Determine maximum values for visualization later on
 						maxCoverage = Math.max(maxCoverage,	proteinHit.getCoverage());
@@ -10,11 +10,6 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 
-import uk.ac.ebi.kraken.interfaces.uniprot.DatabaseCrossReference;
-import uk.ac.ebi.kraken.interfaces.uniprot.DatabaseType;
-import uk.ac.ebi.kraken.interfaces.uniprot.Keyword;
-import uk.ac.ebi.kraken.interfaces.uniprot.SecondaryUniProtAccession;
-import uk.ac.ebi.kraken.interfaces.uniprot.UniProtEntry;
 import de.mpa.analysis.ReducedProteinData;
 import de.mpa.analysis.UniProtUtilities;
 import de.mpa.client.model.dbsearch.SearchEngineType;
@@ -22,6 +17,7 @@ import de.mpa.client.model.specsim.SpectrumSpectrumMatch;
 import de.mpa.client.settings.ConnectionParameters;
 import de.mpa.client.settings.ParameterMap;
 import de.mpa.db.accessor.Uniprotentry;
+import de.mpa.db.job.ServerProperties;
 import de.mpa.db.storager.CruxStorager;
 import de.mpa.db.storager.InspectStorager;
 import de.mpa.db.storager.OmssaStorager;
@@ -29,7 +25,6 @@ import de.mpa.db.storager.SpecSimStorager;
 import de.mpa.db.storager.SpectrumStorager;
 import de.mpa.db.storager.Storager;
 import de.mpa.db.storager.XTandemStorager;
-import de.mpa.util.Formatter;
 
 /**
  * This class serves for handling and managing the database.
@@ -106,6 +101,17 @@ public class DBManager {
 	public SpectrumStorager storeSpectra(File spectrumFile, long experimentid) throws IOException, SQLException, InterruptedException {
 		// Store the spectra from the spectrum file for a given experiment.	
 		SpectrumStorager specStorager = new SpectrumStorager(conn, spectrumFile, experimentid, false);
+		ServerProperties serverProperties = ServerProperties.getInstance();
+		if (serverProperties != null) {
+			String batchSize = serverProperties.getProperty("db.batchsize");
+			if (batchSize != null) {
+				specStorager.setBatchSize(Integer.parseInt(batchSize.trim()));
+			}
+			String commitInterval = serverProperties.getProperty("db.commitinterval");
+			if (commitInterval != null) {
+				specStorager.setCommitInterval(Integer.parseInt(commitInterval.trim()));
+			}
+		}
 		spectraThread = new Thread(specStorager);
 		spectraThread.start();
 		spectraThread.join();
@@ -178,57 +184,25 @@ public class DBManager {
 			int counter = 0;
 			for (Entry<String, ReducedProteinData> e : entrySet) {
 				ReducedProteinData proteinData = e.getValue();
-				if (proteinData != null && proteinData.getUniProtEntry() != null) {
-					UniProtEntry uniProtEntry = proteinData.getUniProtEntry();
+				if (proteinData != null && proteinData.getAccession() != null) {
 					// Get the corresponding protein accessor.
 					long proteinid = 0L;
 
 					// Check for secondary protein accessions.
 					if (proteinHits.get(e.getKey()) == null) {
-						List<SecondaryUniProtAccession> secondaryUniProtAccessions = uniProtEntry.getSecondaryUniProtAccessions();
-						for (SecondaryUniProtAccession acc : secondaryUniProtAccessions) {
-							if (proteinHits.get(acc.getValue()) != null) {
-								proteinid = proteinHits.get(acc.getValue());
+						for (String acc : proteinData.getSecondaryAccessions()) {
+							if (proteinHits.get(acc) != null) {
+								proteinid = proteinHits.get(acc);
 							}
 						}
 					} else {
 						proteinid = proteinHits.get(e.getKey());
 					}
-					// Get taxonomy id
-					Long taxID = Long.valueOf(uniProtEntry.getNcbiTaxonomyIds().get(0).getValue());
-
-					// Get EC Numbers.
-					String ecNumbers = "";
-					List<String> ecNumberList = uniProtEntry.getProteinDescription().getEcNumbers();
-					if (ecNumberList.size() > 0) {
-						for (String ecNumber : ecNumberList) {
-							ecNumbers += ecNumber + ";";
-						}
-						ecNumbers = Formatter.removeLastChar(ecNumbers);
-					}
-
-					// Get ontology keywords.
-					String keywords = "";
-					List<Keyword> keywordsList = uniProtEntry.getKeywords();
-
-					if (keywordsList.size() > 0) {
-						for (Keyword kw : keywordsList) {
-							keywords += kw.getValue() + ";";
-						}
-						keywords = Formatter.removeLastChar(keywords);
-					}
-
-					// Get KO numbers.
-					String koNumbers = "";
-					List<DatabaseCrossReference> xRefs = uniProtEntry.getDatabaseCrossReferences(DatabaseType.KO);
-					if (xRefs.size() > 0) {
-						for (DatabaseCrossReference xRef : xRefs) {
-							koNumbers += xRef.getPrimaryId().getValue() + ";";
-						}
-						koNumbers = Formatter.removeLastChar(koNumbers);
-					}
-					
-					
+					// Get taxonomy id, EC numbers, ontology keywords and KO numbers
+					Long taxID = proteinData.getTaxID();
+					String ecNumbers = proteinData.getEcNumbers();
+					String keywords = proteinData.getKeywords();
+					String koNumbers = proteinData.getKoNumbers();
 					
 					String uniref100 = proteinData.getUniRef100EntryId();
 					String uniref90 = proteinData.getUniRef90EntryId();
@@ -1,6 +1,8 @@
 package de.mpa.db.accessor;
 
+import gnu.trove.map.TLongLongMap;
 import gnu.trove.map.hash.TLongDoubleHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -116,6 +118,69 @@ public class Searchspectrum extends SearchspectrumTableAccessor {
 		return spectrum;
     }
     
+    /**
+     * Finds the IDs of the search spectra linking the specified spectra to the
+     * specified experiment using a single query.
+     * @param spectrumids the spectrum IDs
+     * @param experimentid the experiment ID
+     * @param conn the database connection
+     * @return map of search spectrum IDs keyed by spectrum ID
+     * @throws SQLException when the retrieval did not succeed
+     */
+    public static TLongLongMap findIDsFromSpectrumIDsAndExperimentID(long[] spectrumids, long experimentid, Connection conn) throws SQLException {
+    	TLongLongMap temp = new TLongLongHashMap(spectrumids.length);
+    	if (spectrumids.length == 0) {
+    		return temp;
+    	}
+    	StringBuilder sb = new StringBuilder("SELECT fk_spectrumid, searchspectrumid FROM searchspectrum WHERE fk_experimentid = ? AND fk_spectrumid IN (?");
+    	for (int i = 1; i < spectrumids.length; i++) {
+    		sb.append(", ?");
+    	}
+    	sb.append(")");
+    	PreparedStatement ps = conn.prepareStatement(sb.toString());
+    	ps.setLong(1, experimentid);
+    	for (int i = 0; i < spectrumids.length; i++) {
+    		ps.setLong(i + 2, spectrumids[i]);
+    	}
+    	ResultSet rs = ps.executeQuery();
+    	while (rs.next()) {
+    		temp.put(rs.getLong(1), rs.getLong(2));
+    	}
+    	rs.close();
+    	ps.close();
+    	return temp;
+    }
+    
+    /**
+     * Finds the spectrum IDs belonging to the specified searchspectrum IDs using a single query.
+     * @param searchspectrumids the searchspectrum IDs
+     * @param conn the database connection
+     * @return a map of spectrum IDs keyed by searchspectrum ID
+     * @throws SQLException when the retrieval did not succeed
+     */
+    public static TLongLongMap findSpectrumIDsFromSearchSpectrumIDs(long[] searchspectrumids, Connection conn) throws SQLException {
+    	TLongLongMap temp = new TLongLongHashMap(searchspectrumids.length);
+    	if (searchspectrumids.length == 0) {
+    		return temp;
+    	}
+    	StringBuilder sb = new StringBuilder("SELECT searchspectrumid, fk_spectrumid FROM searchspectrum WHERE searchspectrumid IN (?");
+    	for (int i = 1; i < searchspectrumids.length; i++) {
+    		sb.append(", ?");
+    	}
+    	sb.append(")");
+    	PreparedStatement ps = conn.prepareStatement(sb.toString());
+    	for (int i = 0; i < searchspectrumids.length; i++) {
+    		ps.setLong(i + 1, searchspectrumids[i]);
+    	}
+    	ResultSet rs = ps.executeQuery();
+    	while (rs.next()) {
+    		temp.put(rs.getLong(1), rs.getLong(2));
+    	}
+    	rs.close();
+    	ps.close();
+    	return temp;
+    }
+    
     /**
      * Returns the number of searchspectrum entries for the specified experiment ID.
      * @param experimentID the database ID of the experiment
@@ -1,5 +1,10 @@
 package de.mpa.db.accessor;
 
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -153,4 +158,40 @@ public class Spec2pep extends Spec2pepTableAccessor {
 
         return temp;
     }
+    
+    /**
+     * Finds the linked peptide IDs of the specified spectra using a single query.
+     * @param spectrumIDs the spectrum IDs
+     * @param aConn the database connection
+     * @return a map of linked peptide ID sets keyed by spectrum ID, spectra without links are omitted
+     * @throws SQLException when the retrieval did not succeed
+     */
+    public static TLongObjectMap<TLongSet> findPeptideIDsFromSpectrumIDs(long[] spectrumIDs, Connection aConn) throws SQLException {
+    	TLongObjectMap<TLongSet> temp = new TLongObjectHashMap<TLongSet>();
+    	if (spectrumIDs.length == 0) {
+    		return temp;
+    	}
+    	StringBuilder sb = new StringBuilder("SELECT " + FK_SPECTRUMID + ", " + FK_PEPTIDEID + " FROM spec2pep WHERE " + FK_SPECTRUMID + " IN (?");
+    	for (int i = 1; i < spectrumIDs.length; i++) {
+    		sb.append(", ?");
+    	}
+    	sb.append(")");
+    	PreparedStatement ps = aConn.prepareStatement(sb.toString());
+    	for (int i = 0; i < spectrumIDs.length; i++) {
+    		ps.setLong(i + 1, spectrumIDs[i]);
+    	}
+    	ResultSet rs = ps.executeQuery();
+    	while (rs.next()) {
+    		long spectrumID = rs.getLong(1);
+    		TLongSet peptideIDs = temp.get(spectrumID);
+    		if (peptideIDs == null) {
+    			peptideIDs = new TLongHashSet();
+    			temp.put(spectrumID, peptideIDs);
+    		}
+    		peptideIDs.add(rs.getLong(2));
+    	}
+    	rs.close();
+    	ps.close();
+    	return temp;
+    }
 }
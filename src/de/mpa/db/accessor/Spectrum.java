@@ -4,7 +4,9 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
 
 import de.mpa.db.MapContainer;
 import de.mpa.io.MascotGenericFile;
@@ -23,6 +25,43 @@ public class Spectrum extends SpectrumTableAccessor {
         super(params);
     }
 
+    /**
+     * This method will find the IDs of the spectra matching the specified
+     * titles using a single query.
+     *
+     * @param titles the spectrum titles
+     * @param aConn Connection to read the spectra from.
+     * @return Map of spectrum IDs keyed by title.
+     * @throws SQLException when the retrieval did not succeed or duplicate titles are found.
+     */
+    public static Map<String, Long> findIDsFromTitles(Collection<String> titles, Connection aConn) throws SQLException {
+    	Map<String, Long> temp = new HashMap<String, Long>(titles.size());
+    	if (titles.isEmpty()) {
+    		return temp;
+    	}
+    	StringBuilder sb = new StringBuilder("SELECT spectrumid, title FROM spectrum WHERE title IN (?");
+    	for (int i = 1; i < titles.size(); i++) {
+    		sb.append(", ?");
+    	}
+    	sb.append(")");
+    	PreparedStatement ps = aConn.prepareStatement(sb.toString());
+    	int index = 1;
+    	for (String title : titles) {
+    		ps.setString(index++, title);
+    	}
+    	ResultSet rs = ps.executeQuery();
+    	while (rs.next()) {
+    		if (temp.put(rs.getString(2), rs.getLong(1)) != null) {
+    			rs.close();
+    			ps.close();
+    			throw new SQLException("Duplicate spectrum found in the database.");
+    		}
+    	}
+    	rs.close();
+    	ps.close();
+    	return temp;
+    }
+
     /**
      * This method will find a spectrum file from the current connection, based on the spectrum name.
      *
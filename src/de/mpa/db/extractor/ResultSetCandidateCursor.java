@@ -0,0 +1,51 @@
+package de.mpa.db.extractor;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import de.mpa.client.model.specsim.SpectralSearchCandidate;
+
+/**
+ * Cursor over spectral search candidates streamed from the database. The
+ * underlying connection must not be used for other statements until the
+ * cursor has been closed.
+ *
+ * @author A. Behne
+ */
+class ResultSetCandidateCursor extends SpectralSearchCandidateCursor {
+
+	/**
+	 * The prepared statement.
+	 */
+	private PreparedStatement ps;
+
+	/**
+	 * The streaming result set.
+	 */
+	private ResultSet rs;
+
+	/**
+	 * Constructs a cursor executing the specified statement.
+	 * @param ps the statement selecting candidates ordered by precursor m/z
+	 * @throws SQLException if a database error occurs
+	 */
+	ResultSetCandidateCursor(PreparedStatement ps) throws SQLException {
+		this.ps = ps;
+		this.rs = ps.executeQuery();
+		this.advance();
+	}
+
+	@Override
+	protected SpectralSearchCandidate readNext() throws SQLException {
+		return (rs.next()) ? new SpectralSearchCandidate(rs) : null;
+	}
+
+	@Override
+	public void close() throws SQLException {
+		super.close();
+		rs.close();
+		ps.close();
+	}
+
+}
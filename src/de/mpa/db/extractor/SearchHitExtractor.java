@@ -1,35 +1,199 @@
 package de.mpa.db.extractor;
 
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import de.mpa.db.accessor.Cruxhit;
-import de.mpa.db.accessor.Inspecthit;
-import de.mpa.db.accessor.Mascothit;
-import de.mpa.db.accessor.Omssahit;
+import de.mpa.client.model.dbsearch.ReducedSearchHit;
+import de.mpa.client.model.dbsearch.SearchEngineType;
 import de.mpa.db.accessor.SearchHit;
-import de.mpa.db.accessor.XTandemhit;
 
+/**
+ * Extracts the search engine hits of an experiment. Hits of all engines are
+ * fetched by a single <code>UNION ALL</code> query selecting only the columns
+ * needed for building peptide-spectrum matches, rows are streamed from the
+ * database and handed to a {@link SearchHitHandler}.
+ */
 public class SearchHitExtractor {
-	
-	public static Map<Long, Boolean> MAP = new HashMap<Long, Boolean>();
-	
-	public static List<SearchHit> findSearchHitsFromExperimentID(long experimentID, Connection conn) throws SQLException{
-		List<SearchHit> searchHits = new ArrayList<SearchHit>();
-		searchHits.addAll(XTandemhit.getHitsFromExperimentID(experimentID, conn));
-		searchHits.addAll(Omssahit.getHitsFromExperimentID(experimentID, conn));
-		searchHits.addAll(Cruxhit.getHitsFromExperimentID(experimentID, conn));
-		searchHits.addAll(Inspecthit.getHitsFromExperimentID(experimentID, conn));
-		searchHits.addAll(Mascothit.getHitsFromExperimentID(experimentID, conn));
-		
-		for (SearchHit searchHit : searchHits) {			
-			MAP.put(searchHit.getFk_searchspectrumid(), true);
-		}
+
+	/**
+	 * The search engine types in order of their numeric codes in the union query.
+	 */
+	private static final SearchEngineType[] ENGINE_TYPES = {
+		SearchEngineType.XTANDEM, SearchEngineType.OMSSA, SearchEngineType.CRUX,
+		SearchEngineType.INSPECT, SearchEngineType.MASCOT };
+
+	/**
+	 * The statement selecting reduced hits of all search engines for an experiment.
+	 * Columns are engine code, search spectrum ID, peptide ID, protein ID,
+	 * sequence, accession, score, q-value and charge.
+	 */
+	private static final String UNION_STATEMENT =
+			"SELECT 0, x.fk_searchspectrumid, x.fk_peptideid, x.fk_proteinid, p.sequence, pr.accession, x.hyperscore, x.qvalue, 2 " +
+			"FROM xtandemhit x INNER JOIN searchspectrum s ON s.searchspectrumid = x.fk_searchspectrumid " +
+			"INNER JOIN peptide p ON x.fk_peptideid = p.peptideid INNER JOIN protein pr ON x.fk_proteinid = pr.proteinid " +
+			"WHERE s.fk_experimentid = ? " +
+			"UNION ALL " +
+			"SELECT 1, o.fk_searchspectrumid, o.fk_peptideid, o.fk_proteinid, p.sequence, pr.accession, o.evalue, o.qvalue, o.charge " +
+			"FROM omssahit o INNER JOIN searchspectrum s ON s.searchspectrumid = o.fk_searchspectrumid " +
+			"INNER JOIN peptide p ON o.fk_peptideid = p.peptideid INNER JOIN protein pr ON o.fk_proteinid = pr.proteinid " +
+			"WHERE s.fk_experimentid = ? " +
+			"UNION ALL " +
+			"SELECT 2, c.fk_searchspectrumid, c.fk_peptideid, c2p.fk_proteinid, p.sequence, pr.accession, c.percolator_score, c.qvalue, c.charge " +
+			"FROM cruxhit c INNER JOIN searchspectrum s ON s.searchspectrumid = c.fk_searchspectrumid " +
+			"INNER JOIN cruxhit2prot c2p ON c.cruxhitid = c2p.fk_cruxhitid " +
+			"INNER JOIN peptide p ON c.fk_peptideid = p.peptideid INNER JOIN protein pr ON c2p.fk_proteinid = pr.proteinid " +
+			"WHERE s.fk_experimentid = ? " +
+			"UNION ALL " +
+			"SELECT 3, i.fk_searchspectrumid, i.fk_peptideid, i.fk_proteinid, p.sequence, pr.accession, i.f_score, i.p_value, i.charge " +
+			"FROM inspecthit i INNER JOIN searchspectrum s ON s.searchspectrumid = i.fk_searchspectrumid " +
+			"INNER JOIN peptide p ON i.fk_peptideid = p.peptideid INNER JOIN protein pr ON i.fk_proteinid = pr.proteinid " +
+			"WHERE s.fk_experimentid = ? " +
+			"UNION ALL " +
+			"SELECT 4, m.fk_searchspectrumid, m.fk_peptideid, m.fk_proteinid, p.sequence, pr.accession, m.ionscore, 0.0, m.charge " +
+			"FROM mascothit m INNER JOIN searchspectrum s ON s.searchspectrumid = m.fk_searchspectrumid " +
+			"INNER JOIN peptide p ON m.fk_peptideid = p.peptideid INNER JOIN protein pr ON m.fk_proteinid = pr.proteinid " +
+			"WHERE s.fk_experimentid = ?";
+
+	/**
+	 * The statement selecting the IDs of all search spectra of an experiment
+	 * which were identified by at least one search engine.
+	 */
+	private static final String IDENTIFIED_STATEMENT =
+			"SELECT x.fk_searchspectrumid FROM xtandemhit x INNER JOIN searchspectrum s ON s.searchspectrumid = x.fk_searchspectrumid WHERE s.fk_experimentid = ? " +
+			"UNION SELECT o.fk_searchspectrumid FROM omssahit o INNER JOIN searchspectrum s ON s.searchspectrumid = o.fk_searchspectrumid WHERE s.fk_experimentid = ? " +
+			"UNION SELECT c.fk_searchspectrumid FROM cruxhit c INNER JOIN searchspectrum s ON s.searchspectrumid = c.fk_searchspectrumid WHERE s.fk_experimentid = ? " +
+			"UNION SELECT i.fk_searchspectrumid FROM inspecthit i INNER JOIN searchspectrum s ON s.searchspectrumid = i.fk_searchspectrumid WHERE s.fk_experimentid = ? " +
+			"UNION SELECT m.fk_searchspectrumid FROM mascothit m INNER JOIN searchspectrum s ON s.searchspectrumid = m.fk_searchspectrumid WHERE s.fk_experimentid = ?";
+
+	/**
+	 * Callback interface for consuming streamed search hits.
+	 */
+	public interface SearchHitHandler {
+
+		/**
+		 * Handles the specified search hit.
+		 * @param searchHit the search hit
+		 * @throws SQLException if a database error occurs
+		 */
+		public void handle(SearchHit searchHit) throws SQLException;
+	}
+
+	/**
+	 * Returns the search hits of all search engines belonging to the specified experiment.
+	 * @param experimentID the experiment ID
+	 * @param conn the database connection
+	 * @return the list of search hits
+	 * @throws SQLException if a database error occurs
+	 */
+	public static List<SearchHit> findSearchHitsFromExperimentID(long experimentID, Connection conn) throws SQLException {
+		final List<SearchHit> searchHits = new ArrayList<SearchHit>();
+		streamSearchHitsFromExperimentID(experimentID, conn, new SearchHitHandler() {
+			@Override
+			public void handle(SearchHit searchHit) {
+				searchHits.add(searchHit);
+			}
+		});
 		return searchHits;
-		
+	}
+
+	/**
+	 * Streams the search hits of all search engines belonging to the specified
+	 * experiment to the specified handler. Identical peptide sequences and
+	 * protein accessions share the same string instances. The handler must
+	 * not issue statements on the specified connection, as the streaming
+	 * result set blocks it until all hits have been read.
+	 * @param experimentID the experiment ID
+	 * @param conn the database connection
+	 * @param handler the handler consuming the search hits
+	 * @throws SQLException if a database error occurs
+	 */
+	public static void streamSearchHitsFromExperimentID(long experimentID, Connection conn,
+			SearchHitHandler handler) throws SQLException {
+		PreparedStatement ps = prepareStreaming(UNION_STATEMENT, experimentID, conn);
+		Map<String, String> strings = new HashMap<String, String>();
+		ResultSet rs = ps.executeQuery();
+		try {
+			while (rs.next()) {
+				handler.handle(new ReducedSearchHit(
+						ENGINE_TYPES[rs.getInt(1)],
+						rs.getLong(2),
+						rs.getLong(3),
+						rs.getLong(4),
+						share(rs.getString(5), strings),
+						share(rs.getString(6), strings),
+						rs.getDouble(7),
+						(Number) rs.getObject(8),
+						rs.getLong(9)));
+			}
+		} finally {
+			rs.close();
+			ps.close();
+		}
+	}
+
+	/**
+	 * Returns the IDs of all search spectra of the specified experiment which
+	 * were identified by at least one search engine.
+	 * @param experimentID the experiment ID
+	 * @param conn the database connection
+	 * @return the set of identified search spectrum IDs
+	 * @throws SQLException if a database error occurs
+	 */
+	public static TLongSet findIdentifiedSearchSpectrumIDs(long experimentID, Connection conn) throws SQLException {
+		TLongSet searchspectrumIDs = new TLongHashSet();
+		PreparedStatement ps = prepareStreaming(IDENTIFIED_STATEMENT, experimentID, conn);
+		ResultSet rs = ps.executeQuery();
+		while (rs.next()) {
+			searchspectrumIDs.add(rs.getLong(1));
+		}
+		rs.close();
+		ps.close();
+		return searchspectrumIDs;
+	}
+
+	/**
+	 * Prepares a forward-only streaming statement binding the specified
+	 * experiment ID to each of the per-engine sub-selects.
+	 * @param statement the union statement
+	 * @param experimentID the experiment ID
+	 * @param conn the database connection
+	 * @return the prepared statement
+	 * @throws SQLException if a database error occurs
+	 */
+	private static PreparedStatement prepareStreaming(String statement, long experimentID, Connection conn) throws SQLException {
+		PreparedStatement ps = conn.prepareStatement(statement,
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ps.setFetchSize(Integer.MIN_VALUE);
+		for (int i = 1; i <= ENGINE_TYPES.length; i++) {
+			ps.setLong(i, experimentID);
+		}
+		return ps;
+	}
+
+	/**
+	 * Returns a shared instance of the specified string.
+	 * @param str the string
+	 * @param strings the map of shared string instances
+	 * @return the shared instance
+	 */
+	private static String share(String str, Map<String, String> strings) {
+		if (str == null) {
+			return null;
+		}
+		String shared = strings.get(str);
+		if (shared == null) {
+			strings.put(str, str);
+			shared = str;
+		}
+		return shared;
 	}
 }
@@ -0,0 +1,185 @@
+package de.mpa.db.extractor;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+import de.mpa.db.accessor.PeptideAccessor;
+import de.mpa.db.accessor.ProteinAccessor;
+import de.mpa.db.accessor.Taxonomy;
+import de.mpa.db.accessor.Uniprotentry;
+
+/**
+ * Bulk loader for the database entities referenced by the search hits of an
+ * experiment. Instead of looking up peptides, proteins, UniProt entries and
+ * taxonomies one hit at a time, the distinct IDs are fetched in batches of
+ * set-based <code>IN (...)</code> queries and collected in ID-keyed maps.
+ *
+ * @author A. Behne
+ */
+public class SearchResultExtractor {
+
+	/**
+	 * The maximum number of IDs bound to a single query.
+	 */
+	private static final int BATCH_SIZE = 1000;
+
+	/**
+	 * Fetches the peptides with the specified IDs.
+	 * @param peptideIDs the peptide IDs
+	 * @param conn the database connection
+	 * @return a map of peptides keyed by peptide ID
+	 * @throws SQLException if a database error occurs
+	 */
+	public static TLongObjectMap<PeptideAccessor> findPeptides(TLongSet peptideIDs, Connection conn) throws SQLException {
+		TLongObjectMap<PeptideAccessor> peptides = new TLongObjectHashMap<PeptideAccessor>(peptideIDs.size());
+		long[] ids = peptideIDs.toArray();
+		for (int from = 0; from < ids.length; from += BATCH_SIZE) {
+			int to = Math.min(from + BATCH_SIZE, ids.length);
+			PreparedStatement ps = prepareBatch(PeptideAccessor.getBasicSelect(),
+					PeptideAccessor.PEPTIDEID, ids, from, to, conn);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				PeptideAccessor peptide = new PeptideAccessor(rs);
+				peptides.put(peptide.getPeptideid(), peptide);
+			}
+			rs.close();
+			ps.close();
+		}
+		return peptides;
+	}
+
+	/**
+	 * Fetches the proteins with the specified IDs.
+	 * @param proteinIDs the protein IDs
+	 * @param conn the database connection
+	 * @return a map of proteins keyed by protein ID
+	 * @throws SQLException if a database error occurs
+	 */
+	public static TLongObjectMap<ProteinAccessor> findProteins(TLongSet proteinIDs, Connection conn) throws SQLException {
+		TLongObjectMap<ProteinAccessor> proteins = new TLongObjectHashMap<ProteinAccessor>(proteinIDs.size());
+		long[] ids = proteinIDs.toArray();
+		for (int from = 0; from < ids.length; from += BATCH_SIZE) {
+			int to = Math.min(from + BATCH_SIZE, ids.length);
+			PreparedStatement ps = prepareBatch(ProteinAccessor.getBasicSelect(),
+					ProteinAccessor.PROTEINID, ids, from, to, conn);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				ProteinAccessor protein = new ProteinAccessor(rs);
+				proteins.put(protein.getProteinid(), protein);
+			}
+			rs.close();
+			ps.close();
+		}
+		return proteins;
+	}
+
+	/**
+	 * Fetches the UniProt entries linked to the specified protein IDs.
+	 * @param proteinIDs the protein IDs
+	 * @param conn the database connection
+	 * @return a map of UniProt entries keyed by protein ID
+	 * @throws SQLException if a database error occurs
+	 */
+	public static TLongObjectMap<Uniprotentry> findUniProtEntries(TLongSet proteinIDs, Connection conn) throws SQLException {
+		TLongObjectMap<Uniprotentry> entries = new TLongObjectHashMap<Uniprotentry>(proteinIDs.size());
+		long[] ids = proteinIDs.toArray();
+		for (int from = 0; from < ids.length; from += BATCH_SIZE) {
+			int to = Math.min(from + BATCH_SIZE, ids.length);
+			PreparedStatement ps = prepareBatch(Uniprotentry.getBasicSelect(),
+					Uniprotentry.FK_PROTEINID, ids, from, to, conn);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				Uniprotentry entry = new Uniprotentry(rs);
+				entries.put(entry.getFk_proteinid(), entry);
+			}
+			rs.close();
+			ps.close();
+		}
+		return entries;
+	}
+
+	/**
+	 * Fetches the taxonomy entries of the specified taxonomy IDs including all
+	 * their ancestors and adds them to the specified map. The hierarchy is
+	 * climbed one level per batch round, entries already contained in the map
+	 * are not fetched again.
+	 * @param taxIDs the taxonomy IDs
+	 * @param taxonomyMap the map of taxonomy entries keyed by taxonomy ID
+	 * @param conn the database connection
+	 * @throws SQLException if a database error occurs
+	 */
+	public static void fillTaxonomyMap(TLongSet taxIDs, Map<Long, Taxonomy> taxonomyMap, Connection conn) throws SQLException {
+		TLongSet pending = new TLongHashSet(taxIDs);
+		TLongSet visited = new TLongHashSet();
+		while (!pending.isEmpty()) {
+			// split into known entries, whose parents are enqueued, and missing ones
+			TLongSet missing = new TLongHashSet();
+			TLongSet parentIDs = new TLongHashSet();
+			for (TLongIterator it = pending.iterator(); it.hasNext();) {
+				long taxID = it.next();
+				if (visited.add(taxID)) {
+					Taxonomy known = taxonomyMap.get(taxID);
+					if (known != null) {
+						parentIDs.add(known.getParentid());
+					} else {
+						missing.add(taxID);
+					}
+				}
+			}
+			long[] ids = missing.toArray();
+			for (int from = 0; from < ids.length; from += BATCH_SIZE) {
+				int to = Math.min(from + BATCH_SIZE, ids.length);
+				PreparedStatement ps = prepareBatch(Taxonomy.getBasicSelect(),
+						Taxonomy.TAXONOMYID, ids, from, to, conn);
+				ResultSet rs = ps.executeQuery();
+				while (rs.next()) {
+					Taxonomy taxonomy = new Taxonomy(rs);
+					taxonomyMap.put(taxonomy.getTaxonomyid(), taxonomy);
+					parentIDs.add(taxonomy.getParentid());
+				}
+				rs.close();
+				ps.close();
+			}
+			// the root node refers to the dummy parent ID 0
+			parentIDs.remove(0L);
+			pending = parentIDs;
+		}
+	}
+
+	/**
+	 * Prepares a statement selecting all rows whose specified key column
+	 * matches one of the IDs in the specified array range.
+	 * @param basicSelect the basic select statement
+	 * @param column the key column
+	 * @param ids the IDs
+	 * @param from the start index (inclusive)
+	 * @param to the end index (exclusive)
+	 * @param conn the database connection
+	 * @return the prepared statement
+	 * @throws SQLException if a database error occurs
+	 */
+	private static PreparedStatement prepareBatch(String basicSelect, String column,
+			long[] ids, int from, int to, Connection conn) throws SQLException {
+		StringBuilder sb = new StringBuilder(basicSelect);
+		sb.append(" WHERE ").append(column).append(" IN (");
+		for (int i = from; i < to; i++) {
+			sb.append((i > from) ? ", ?" : "?");
+		}
+		sb.append(")");
+		PreparedStatement ps = conn.prepareStatement(sb.toString());
+		for (int i = from; i < to; i++) {
+			ps.setLong(i - from + 1, ids[i]);
+		}
+		return ps;
+	}
+
+}
@@ -0,0 +1,456 @@
+package de.mpa.db.extractor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import de.mpa.algorithms.Interval;
+import de.mpa.algorithms.similarity.SpectrumVector;
+import de.mpa.algorithms.similarity.Transformation;
+import de.mpa.algorithms.similarity.Vectorization;
+import de.mpa.client.model.specsim.SpectralSearchCandidate;
+
+/**
+ * Persistent on-disk cache of pre-vectorized spectral library spectra.<br>
+ * Cache files are keyed by experiment ID and a string describing the
+ * vectorization and transformation settings. They store the library spectra
+ * after vectorization and transformation in ascending precursor m/z order.
+ * Files are built by streaming the library from the database and are read
+ * through a {@link SpectralSearchCandidateCursor} over memory-mapped segments,
+ * i.e. neither building nor reading holds the library in heap memory and
+ * file sizes are not limited to 2 GB.<br>
+ * Each file carries a fingerprint of the experiment's <code>libspectrum</code>
+ * rows (row count, highest ID and latest modification date) which is checked
+ * against the database before use; stale files are rebuilt.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * int      magic number
+ * int      version
+ * int      length of the settings key
+ * byte[]   settings key (UTF-8)
+ * long[3]  library fingerprint
+ * long     number of records
+ * record[] records sorted by precursor m/z (libspectrum ID, peptide ID,
+ *          precursor m/z, precursor charge, peak count, m/z values,
+ *          intensities)
+ * </pre>
+ *
+ * @author A. Behne
+ */
+public class SpectralLibraryCache {
+
+	/**
+	 * The magic number identifying cache files.
+	 */
+	private static final int MAGIC = 0x4D50414C;
+
+	/**
+	 * The cache file format version.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * The size of a record without its peaks.
+	 */
+	private static final int RECORD_HEADER_SIZE = 32;
+
+	/**
+	 * The size of the mapped record segments.
+	 */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	/**
+	 * The number of bytes by which consecutive record segments overlap, i.e.
+	 * the maximum record size.
+	 */
+	private static final long SEGMENT_OVERLAP = 1L << 24;
+
+	/**
+	 * The charset used for encoding settings keys.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The logger instance.
+	 */
+	private static Logger log = Logger.getLogger(SpectralLibraryCache.class);
+
+	/**
+	 * The directory containing the cache files.
+	 */
+	private File cacheDir;
+
+	/**
+	 * The size of the mapped record segments.
+	 */
+	private long segmentSize;
+
+	/**
+	 * The maximum record size.
+	 */
+	private long segmentOverlap;
+
+	/**
+	 * Constructs a spectral library cache residing in the specified directory.
+	 * @param cacheDir the cache directory
+	 */
+	public SpectralLibraryCache(File cacheDir) {
+		this(cacheDir, SEGMENT_SIZE, SEGMENT_OVERLAP);
+	}
+
+	/**
+	 * Constructs a spectral library cache residing in the specified directory
+	 * using the specified segment sizes.
+	 * @param cacheDir the cache directory
+	 * @param segmentSize the size of the mapped record segments
+	 * @param segmentOverlap the overlap of consecutive segments, i.e. the maximum record size
+	 */
+	SpectralLibraryCache(File cacheDir, long segmentSize, long segmentOverlap) {
+		this.cacheDir = cacheDir;
+		this.segmentSize = segmentSize;
+		this.segmentOverlap = segmentOverlap;
+	}
+
+	/**
+	 * Opens a cursor over the pre-vectorized library spectra of the specified
+	 * experiment lying inside the specified precursor m/z intervals. Reads
+	 * them from the cache if a valid cache file exists, otherwise streams the
+	 * library from the database into a new cache file first.<br>
+	 * The vectorization method must not depend on the query spectrum, i.e.
+	 * peak matching cannot be used.
+	 * @param precIntervals the ascending, disjoint precursor m/z intervals
+	 * @param experimentID the ID of the reference experiment or <code>0</code> for all experiments
+	 * @param settingsKey the string uniquely describing vectorization and transformation settings
+	 * @param vect the vectorization method
+	 * @param trafo the transformation method
+	 * @param conn the database connection
+	 * @return the cursor over candidates containing vectorized peaks
+	 * @throws SQLException if a database error occurs
+	 * @throws IOException if the cache file cannot be written or read
+	 */
+	public SpectralSearchCandidateCursor openCursor(List<Interval> precIntervals, long experimentID,
+			String settingsKey, Vectorization vect, Transformation trafo, Connection conn) throws SQLException, IOException {
+		long[] fingerprint = this.getFingerprint(experimentID, conn);
+		File cacheFile = new File(cacheDir, "speclib_" + experimentID + "_"
+				+ Integer.toHexString(settingsKey.hashCode()) + ".bin");
+
+		if (cacheFile.exists()) {
+			try {
+				SpectralSearchCandidateCursor cursor = this.open(cacheFile, settingsKey, fingerprint, precIntervals);
+				if (cursor != null) {
+					return cursor;
+				}
+			} catch (IOException e) {
+				log.warn("Could not read spectral library cache " + cacheFile + ", rebuilding.", e);
+			}
+		}
+
+		// stream the whole library from the database into a new cache file
+		SpectralSearchCandidateCursor source = new SpectrumExtractor(conn).openCandidateCursor(
+				Collections.singletonList(new Interval(0.0, Double.MAX_VALUE)), experimentID);
+		try {
+			this.build(cacheFile, settingsKey, fingerprint, source, vect, trafo);
+		} finally {
+			source.close();
+		}
+		SpectralSearchCandidateCursor cursor = this.open(cacheFile, settingsKey, fingerprint, precIntervals);
+		if (cursor == null) {
+			throw new IOException("Could not read rebuilt spectral library cache " + cacheFile);
+		}
+		return cursor;
+	}
+
+	/**
+	 * Determines the fingerprint of the library spectra of the specified experiment.
+	 * @param experimentID the experiment ID or <code>0</code> for all experiments
+	 * @param conn the database connection
+	 * @return the row count, highest libspectrum ID and latest modification time
+	 * @throws SQLException if a database error occurs
+	 */
+	private long[] getFingerprint(long experimentID, Connection conn) throws SQLException {
+		String statement = "SELECT COUNT(*), MAX(libspectrumid), MAX(modificationdate) FROM libspectrum";
+		if (experimentID != 0L) {
+			statement += " WHERE fk_experimentid = ?";
+		}
+		PreparedStatement ps = conn.prepareStatement(statement);
+		if (experimentID != 0L) {
+			ps.setLong(1, experimentID);
+		}
+		long[] res = new long[3];
+		ResultSet rs = ps.executeQuery();
+		if (rs.next()) {
+			res[0] = rs.getLong(1);
+			res[1] = rs.getLong(2);
+			Timestamp modified = rs.getTimestamp(3);
+			res[2] = (modified != null) ? modified.getTime() : 0L;
+		}
+		rs.close();
+		ps.close();
+		return res;
+	}
+
+	/**
+	 * Opens a cursor over the records of the specified cache file.
+	 * @param file the cache file
+	 * @param settingsKey the expected settings key
+	 * @param fingerprint the expected library fingerprint
+	 * @param precIntervals the ascending, disjoint precursor m/z intervals
+	 * @return the cursor or <code>null</code> if the file is stale
+	 * @throws IOException if the file cannot be read
+	 */
+	SpectralSearchCandidateCursor open(File file, String settingsKey, long[] fingerprint,
+			List<Interval> precIntervals) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		boolean valid = false;
+		try {
+			// validate header
+			if ((raf.length() < 12L) || (raf.readInt() != MAGIC) || (raf.readInt() != VERSION)) {
+				return null;
+			}
+			byte[] keyBytes = new byte[raf.readInt()];
+			raf.readFully(keyBytes);
+			if (!settingsKey.equals(new String(keyBytes, UTF8))) {
+				return null;
+			}
+			for (long value : fingerprint) {
+				if (raf.readLong() != value) {
+					return null;
+				}
+			}
+			long count = raf.readLong();
+
+			// map record section in overlapping segments
+			FileChannel channel = raf.getChannel();
+			long recordsPos = raf.getFilePointer();
+			long recordsLength = channel.size() - recordsPos;
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((recordsLength + segmentSize - 1L) / segmentSize)];
+			for (int i = 0; i < segments.length; i++) {
+				long start = i * segmentSize;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, recordsPos + start,
+						Math.min(segmentSize + segmentOverlap, recordsLength - start));
+			}
+			valid = true;
+			return new CacheCursor(raf, segments, segmentSize, count, precIntervals);
+		} finally {
+			if (!valid) {
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * Writes the candidates of the specified cursor after vectorization to a
+	 * cache file. The file is written under a unique temporary name first and
+	 * renamed afterwards so concurrent writers do not interfere and readers
+	 * never see partial files.
+	 * @param file the cache file
+	 * @param settingsKey the settings key
+	 * @param fingerprint the library fingerprint
+	 * @param source the cursor over candidates in ascending precursor m/z order
+	 * @param vect the vectorization method
+	 * @param trafo the transformation method
+	 * @throws IOException if the file cannot be written
+	 * @throws SQLException if a database error occurs
+	 */
+	void build(File file, String settingsKey, long[] fingerprint, SpectralSearchCandidateCursor source,
+			Vectorization vect, Transformation trafo) throws IOException, SQLException {
+		if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+			throw new IOException("Could not create cache directory " + cacheDir);
+		}
+		File tmpFile = File.createTempFile(file.getName(), ".tmp", cacheDir);
+		try {
+			byte[] keyBytes = settingsKey.getBytes(UTF8);
+			long count = 0L;
+			DataOutputStream dos = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16));
+			try {
+				dos.writeInt(MAGIC);
+				dos.writeInt(VERSION);
+				dos.writeInt(keyBytes.length);
+				dos.write(keyBytes);
+				for (long value : fingerprint) {
+					dos.writeLong(value);
+				}
+				// record count is written after streaming
+				dos.writeLong(0L);
+
+				SpectrumVector peaks = new SpectrumVector();
+				while (source.hasNext()) {
+					SpectralSearchCandidate candidate = source.next();
+					vect.vectorize(candidate.getPeakVector(), trafo, peaks);
+					if (RECORD_HEADER_SIZE + 16L * peaks.size() > segmentOverlap) {
+						throw new IOException("Library spectrum " + candidate.getLibpectrumID()
+								+ " exceeds the maximum record size.");
+					}
+					dos.writeLong(candidate.getLibpectrumID());
+					dos.writeLong(candidate.getPeptideID());
+					dos.writeDouble(candidate.getPrecursorMz());
+					dos.writeInt(candidate.getPrecursorCharge());
+					dos.writeInt(peaks.size());
+					for (int i = 0; i < peaks.size(); i++) {
+						dos.writeDouble(peaks.getMz(i));
+					}
+					for (int i = 0; i < peaks.size(); i++) {
+						dos.writeDouble(peaks.getIntensity(i));
+					}
+					count++;
+				}
+				vect.cleanup();
+			} finally {
+				dos.close();
+			}
+			RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+			try {
+				raf.seek(12L + keyBytes.length + 8L * fingerprint.length);
+				raf.writeLong(count);
+			} finally {
+				raf.close();
+			}
+
+			if (file.exists() && !file.delete()) {
+				throw new IOException("Could not replace cache file " + file);
+			}
+			if (!tmpFile.renameTo(file)) {
+				throw new IOException("Could not rename cache file " + tmpFile);
+			}
+		} finally {
+			if (tmpFile.exists()) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Cursor over the records of a cache file lying inside a list of
+	 * precursor m/z intervals. Records outside the intervals are skipped
+	 * without decoding their peaks.
+	 */
+	private static class CacheCursor extends SpectralSearchCandidateCursor {
+
+		/**
+		 * The cache file.
+		 */
+		private RandomAccessFile raf;
+
+		/**
+		 * The mapped record segments.
+		 */
+		private MappedByteBuffer[] segments;
+
+		/**
+		 * The size of the mapped record segments.
+		 */
+		private long segmentSize;
+
+		/**
+		 * The number of records.
+		 */
+		private long count;
+
+		/**
+		 * The ascending, disjoint precursor m/z intervals.
+		 */
+		private List<Interval> precIntervals;
+
+		/**
+		 * The index of the next record.
+		 */
+		private long index;
+
+		/**
+		 * The position of the next record relative to the record section.
+		 */
+		private long pos;
+
+		/**
+		 * The index of the current precursor m/z interval.
+		 */
+		private int intervalIndex;
+
+		/**
+		 * Constructs a cursor over the mapped records.
+		 * @param raf the cache file
+		 * @param segments the mapped record segments
+		 * @param segmentSize the size of the mapped record segments
+		 * @param count the number of records
+		 * @param precIntervals the ascending, disjoint precursor m/z intervals
+		 */
+		public CacheCursor(RandomAccessFile raf, MappedByteBuffer[] segments, long segmentSize,
+				long count, List<Interval> precIntervals) {
+			this.raf = raf;
+			this.segments = segments;
+			this.segmentSize = segmentSize;
+			this.count = count;
+			this.precIntervals = precIntervals;
+			try {
+				this.advance();
+			} catch (SQLException e) {
+				// cannot happen, records are read from mapped memory
+				throw new IllegalStateException(e);
+			}
+		}
+
+		@Override
+		protected SpectralSearchCandidate readNext() {
+			while (index < count) {
+				int segment = (int) (pos / segmentSize);
+				MappedByteBuffer buf = segments[segment];
+				int offset = (int) (pos - segment * segmentSize);
+				double precursorMz = buf.getDouble(offset + 16);
+				int size = buf.getInt(offset + 28);
+				pos += RECORD_HEADER_SIZE + 16L * size;
+				index++;
+
+				// skip intervals below the record
+				while ((intervalIndex < precIntervals.size())
+						&& (precIntervals.get(intervalIndex).getRightBorder() < precursorMz)) {
+					intervalIndex++;
+				}
+				if (intervalIndex == precIntervals.size()) {
+					index = count;
+					break;
+				}
+				if (precursorMz < precIntervals.get(intervalIndex).getLeftBorder()) {
+					continue;
+				}
+
+				double[] mzArray = new double[size];
+				double[] inArray = new double[size];
+				for (int i = 0; i < size; i++) {
+					mzArray[i] = buf.getDouble(offset + RECORD_HEADER_SIZE + 8 * i);
+					inArray[i] = buf.getDouble(offset + RECORD_HEADER_SIZE + 8 * (size + i));
+				}
+				return new SpectralSearchCandidate(buf.getLong(offset), precursorMz,
+						buf.getInt(offset + 24), buf.getLong(offset + 8), new SpectrumVector(mzArray, inArray));
+			}
+			return null;
+		}
+
+		@Override
+		public void close() throws SQLException {
+			super.close();
+			try {
+				raf.close();
+			} catch (IOException e) {
+				throw new SQLException(e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,74 @@
+package de.mpa.db.extractor;
+
+import java.sql.SQLException;
+
+import de.mpa.client.model.specsim.SpectralSearchCandidate;
+
+/**
+ * Forward-only cursor over spectral search candidates in ascending precursor
+ * m/z order. Only the current candidate is held in memory, i.e. heap usage
+ * does not depend on the size of the library.<br>
+ * Implementations read candidates from a streaming database result set or
+ * from a pre-vectorized {@link SpectralLibraryCache} file.
+ *
+ * @author A. Behne
+ */
+public abstract class SpectralSearchCandidateCursor {
+
+	/**
+	 * The candidate at the current cursor position.
+	 */
+	private SpectralSearchCandidate next;
+
+	/**
+	 * Reads the candidate following the previously read one.
+	 * @return the next candidate or <code>null</code> if the cursor is exhausted
+	 * @throws SQLException if a database error occurs
+	 */
+	protected abstract SpectralSearchCandidate readNext() throws SQLException;
+
+	/**
+	 * Reads the next candidate into the look-ahead position. Must be called
+	 * once by subclass constructors after initialization.
+	 * @throws SQLException if a database error occurs
+	 */
+	protected final void advance() throws SQLException {
+		next = this.readNext();
+	}
+
+	/**
+	 * Returns whether more candidates are available.
+	 * @return <code>true</code> if more candidates are available
+	 */
+	public boolean hasNext() {
+		return (next != null);
+	}
+
+	/**
+	 * Returns the precursor m/z of the next candidate without consuming it.
+	 * @return the precursor m/z of the next candidate
+	 */
+	public double peekPrecursorMz() {
+		return next.getPrecursorMz();
+	}
+
+	/**
+	 * Returns the next candidate and advances the cursor.
+	 * @return the next candidate
+	 * @throws SQLException if a database error occurs
+	 */
+	public SpectralSearchCandidate next() throws SQLException {
+		SpectralSearchCandidate res = next;
+		this.advance();
+		return res;
+	}
+
+	/**
+	 * Closes the cursor and releases underlying resources.
+	 * @throws SQLException if a database error occurs
+	 */
+	public void close() throws SQLException {
+		next = null;
+	}
+
+}
@@ -113,6 +113,44 @@ public class SpectrumExtractor {
 	public List<SpectralSearchCandidate> getCandidatesFromExperiment(List<Interval> precIntervals, long experimentID) throws SQLException {
 		ArrayList<SpectralSearchCandidate> res = new ArrayList<SpectralSearchCandidate>(precIntervals.size());
 		
+		// execute SQL statement and build result list
+		PreparedStatement ps = conn.prepareStatement(buildCandidateStatement(precIntervals, experimentID, false));
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            res.add(new SpectralSearchCandidate(rs));
+        }
+        rs.close();
+        ps.close();
+		
+		return res;
+	}
+	
+	/**
+	 * Opens a cursor streaming the spectral search candidates that belong to a
+	 * specific experiment and are bounded by specified precursor mass intervals
+	 * in ascending precursor m/z order. Rows are fetched one at a time, so heap 
+	 * usage does not depend on the number of candidates.<br>
+	 * The cursor must be closed before the connection is used otherwise.
+	 * @param precIntervals The list of precursor mass intervals.
+	 * @param experimentID The ID of the experiment to be queried.
+	 * @return the candidate cursor
+	 * @throws SQLException
+	 */
+	public SpectralSearchCandidateCursor openCandidateCursor(List<Interval> precIntervals, long experimentID) throws SQLException {
+		PreparedStatement ps = conn.prepareStatement(buildCandidateStatement(precIntervals, experimentID, true),
+				ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		ps.setFetchSize(Integer.MIN_VALUE);
+		return new ResultSetCandidateCursor(ps);
+	}
+	
+	/**
+	 * Builds the SQL statement selecting spectral search candidates.
+	 * @param precIntervals The list of precursor mass intervals.
+	 * @param experimentID The ID of the experiment to be queried.
+	 * @param ordered <code>true</code> if rows shall be ordered by precursor m/z
+	 * @return the SQL statement string
+	 */
+	private static String buildCandidateStatement(List<Interval> precIntervals, long experimentID, boolean ordered) {
 		// construct SQL statement
 		StringBuilder sb = new StringBuilder("SELECT ls.libspectrumid, s.*, p.peptideid, p.sequence FROM spectrum s " +
 				   							 "INNER JOIN spec2pep s2p ON s.spectrumid = s2p.fk_spectrumid " + 
@@ -131,17 +169,10 @@ public class SpectrumExtractor {
 		if (experimentID != 0L) {
 			sb.append("AND ls.fk_experimentid = " + experimentID);
 		}
-		
-		// execute SQL statement and build result list
-		PreparedStatement ps = conn.prepareStatement(sb.toString());
-        ResultSet rs = ps.executeQuery();
-        while (rs.next()) {
-            res.add(new SpectralSearchCandidate(rs));
-        }
-        rs.close();
-        ps.close();
-		
-		return res;
+		if (ordered) {
+			sb.append(" ORDER BY s.precursor_mz");
+		}
+		return sb.toString();
 	}
 
 	/**
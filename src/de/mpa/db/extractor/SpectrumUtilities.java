@@ -1,5 +1,7 @@
 package de.mpa.db.extractor;
 
+import gnu.trove.set.TLongSet;
+
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -100,12 +102,12 @@ public class SpectrumUtilities {
 		ps.setLong(1, experimentID);
 		ps.setLong(2, limit);
 		ps.setLong(3, length);
-		SearchHitExtractor.findSearchHitsFromExperimentID(experimentID, conn);
+		TLongSet identifiedIDs = SearchHitExtractor.findIdentifiedSearchSpectrumIDs(experimentID, conn);
 		
 		ResultSet rs = ps.executeQuery();
         while (rs.next()) {
         	MascotGenericFile mgf = new MascotGenericFile(rs);
-        	if(SearchHitExtractor.MAP.get(rs.getLong("searchspectrumid")) != null) {
+        	if(identifiedIDs.contains(rs.getLong("searchspectrumid"))) {
         		mgf.setFilename("Spectrum" + rs.getInt("spectrumid") + ".mgf");
             	mgf.setTitle(mgf.getTitle());
                 res.add(mgf);
@@ -135,12 +137,12 @@ public class SpectrumUtilities {
 		ps.setLong(1, experimentID);
 		ps.setLong(2, start);
 		ps.setLong(3, length);
-		SearchHitExtractor.findSearchHitsFromExperimentID(experimentID, conn);
+		TLongSet identifiedIDs = SearchHitExtractor.findIdentifiedSearchSpectrumIDs(experimentID, conn);
 		
 		ResultSet rs = ps.executeQuery();
         while (rs.next()) {
         	MascotGenericFile mgf = new MascotGenericFile(rs);
-        	if(SearchHitExtractor.MAP.get(rs.getLong("searchspectrumid")) == null) {
+        	if(!identifiedIDs.contains(rs.getLong("searchspectrumid"))) {
         		mgf.setFilename("Spectrum" + rs.getInt("spectrumid") + ".mgf");
             	mgf.setTitle(mgf.getTitle());
                 res.add(mgf);
@@ -18,6 +18,13 @@ import de.mpa.webservice.MessageQueue;
  */
 public abstract class Job implements Executable {
 	
+	/**
+	 * The resource group of jobs using the single connection of the
+	 * database manager. Such jobs must not run concurrently, as they would
+	 * interleave their transactions and statements on that connection.
+	 */
+	public static final String DATABASE_GROUP = "DBManager";
+	
 	/**
 	 * Job identifier.
 	 */
@@ -181,6 +188,17 @@ public abstract class Job implements Executable {
 		this.description = description;
 	}
 	
+	/**
+	 * Returns the name of the resource group of the job. The job manager
+	 * limits the number of concurrently executed jobs per resource group.
+	 * Defaults to the simple class name, i.e. jobs of the same kind share a
+	 * concurrency limit.
+	 * @return the resource group
+	 */
+	public String getResourceGroup() {
+		return getClass().getSimpleName();
+	}
+	
 	/**
 	 * Returns the filename for a job specific file.
 	 * @return
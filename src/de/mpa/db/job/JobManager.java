@@ -1,87 +1,583 @@
 package de.mpa.db.job;
 
-import java.util.ArrayDeque;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
 
 
 /**
- * The JobManager handles the execution of the various jobs.
- * @author Thilo Muth
+ * The JobManager handles the execution of the various jobs. Jobs are executed
+ * by a bounded pool of worker threads as soon as all jobs they depend on have
+ * completed and the concurrency limit of their resource group permits.
+ * @author Thilo Muth, A. Behne
  *
  */
 public class JobManager implements Runnable {
-	
+
+	/**
+	 * The server property key of the worker thread count.
+	 */
+	public static final String THREADS_PROPERTY = "job.threads";
+
+	/**
+	 * The server property key prefix of resource group concurrency limits.
+	 */
+	public static final String LIMIT_PROPERTY_PREFIX = "job.limit.";
+
+	/**
+	 * The default number of concurrently executed jobs of the same resource group.
+	 */
+	private static final int DEFAULT_LIMIT = 1;
+
+	/**
+	 * The logger instance.
+	 */
+	private static Logger log = Logger.getLogger(JobManager.class);
+
 	/**
 	 * JobManager instance.
 	 */
 	private static JobManager instance;
 
 	/**
-	 * JobQueue instance.
+	 * The scheduled jobs which have not completed yet in order of their addition.
+	 */
+	private Map<Job, ScheduledJob> jobQueue;
+
+	/**
+	 * The worker thread pool.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * The number of worker threads.
+	 */
+	private int threads;
+
+	/**
+	 * The concurrency limits keyed by resource group.
+	 */
+	private Map<String, Integer> limits;
+
+	/**
+	 * The numbers of running jobs keyed by resource group.
+	 */
+	private Map<String, Integer> running;
+
+	/**
+	 * The most recently added job.
+	 */
+	private Job lastJob;
+
+	/**
+	 * Flag denoting whether queued jobs are being dispatched to the workers.
+	 */
+	private boolean dispatching;
+
+	/**
+	 * The number of completed jobs.
+	 */
+	private int completedCount;
+
+	/**
+	 * The number of jobs finished with an error.
+	 */
+	private int failedCount;
+
+	/**
+	 * The number of canceled jobs.
+	 */
+	private int canceledCount;
+
+	/**
+	 * The accumulated time completed jobs spent waiting in the queue in milliseconds.
+	 */
+	private long totalWaitTime;
+
+	/**
+	 * The accumulated execution time of completed jobs in milliseconds.
 	 */
-	private Queue<Job> jobQueue;
-	
-	
+	private long totalRunTime;
+
 	/**
 	 * Constructor for the job manager.
+	 * @param threads the number of worker threads
 	 */
-	private JobManager() {
-		this.jobQueue = new ArrayDeque<Job>();
+	protected JobManager(int threads) {
+		this.jobQueue = new LinkedHashMap<Job, ScheduledJob>();
+		this.limits = new HashMap<String, Integer>();
+		this.running = new HashMap<String, Integer>();
+		this.threads = threads;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private AtomicInteger count = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "JobManager-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 	}
-	
+
 	/**
 	 * Returns the JobManager instance.
 	 *
 	 * @return the JobManager instance
 	 */
-	public static JobManager getInstance() {
+	public static synchronized JobManager getInstance() {
 		if (instance == null) {
-			instance = new JobManager();
+			int threads = Runtime.getRuntime().availableProcessors();
+			String value = getServerProperty(THREADS_PROPERTY);
+			if (value != null) {
+				threads = Integer.parseInt(value.trim());
+			}
+			instance = new JobManager(threads);
 		}
 		return instance;
 	}
-	
+
 	/**
-	 * Adds a job to the job queue.
+	 * Adds a job to the job queue. The job is executed after the previously
+	 * added job has completed.
 	 * @param job
 	 */
-	public void addJob(Job job){
-		jobQueue.add(job);
+	public synchronized void addJob(Job job) {
+		if (lastJob != null) {
+			this.scheduleJob(job, lastJob);
+		} else {
+			this.scheduleJob(job);
+		}
 	}
-	
+
 	/**
-	 * Removes a job from the job queue.
+	 * Adds a job to the job queue. The job is executed after all specified
+	 * jobs have completed, it is canceled if any of them fails or is canceled.
+	 * @param job the job to add
+	 * @param dependencies the jobs which have to complete before the job is executed
+	 */
+	public synchronized void scheduleJob(Job job, Job... dependencies) {
+		ScheduledJob scheduled = new ScheduledJob(job);
+		for (Job dependency : dependencies) {
+			ScheduledJob parent = jobQueue.get(dependency);
+			if (parent != null) {
+				// dependency has not completed yet
+				parent.dependents.add(scheduled);
+				scheduled.pending++;
+			} else if ((dependency.getStatus() == JobStatus.ERROR)
+					|| (dependency.getStatus() == JobStatus.CANCELED)) {
+				scheduled.failed = true;
+			}
+		}
+		jobQueue.put(job, scheduled);
+		lastJob = job;
+		if (scheduled.failed) {
+			this.cancel(scheduled);
+		} else {
+			this.dispatch();
+		}
+	}
+
+	/**
+	 * Removes a waiting job from the job queue. Jobs depending on the removed
+	 * job no longer wait for it.
 	 * @param job
 	 */
-	public void deleteJob(Job job){
-		jobQueue.remove(job);
+	public synchronized void deleteJob(Job job) {
+		ScheduledJob scheduled = jobQueue.get(job);
+		if ((scheduled != null) && (scheduled.future == null)) {
+			jobQueue.remove(job);
+			if (job == lastJob) {
+				lastJob = null;
+			}
+			for (ScheduledJob dependent : scheduled.dependents) {
+				dependent.pending--;
+			}
+			this.release(scheduled);
+			this.dispatch();
+			this.notifyAll();
+		}
+	}
+
+	/**
+	 * Orders two queued jobs. The successor is not executed before the
+	 * predecessor has completed, failed or was canceled, i.e. unlike a
+	 * dependency the outcome of the predecessor does not affect the successor.
+	 * @param predecessor the job to be executed first
+	 * @param successor the job to be executed afterwards
+	 */
+	public synchronized void addPrecedence(Job predecessor, Job successor) {
+		ScheduledJob before = jobQueue.get(predecessor);
+		ScheduledJob after = jobQueue.get(successor);
+		if ((before != null) && (after != null) && (after.future == null)) {
+			before.successors.add(after);
+			after.pending++;
+		}
 	}
-	
+
 	/**
-	 * Executes the jobs from the queue.
+	 * Executes the jobs from the queue and blocks until all jobs have completed.
 	 */
 	public void run() {
-		// Iterate the job queue
-		for (Job job : jobQueue) {			
-			job.run();
-			// Remove job from the queue after successful execution.
-			jobQueue.remove(job);
+		synchronized (this) {
+			dispatching = true;
+			this.dispatch();
+			try {
+				while (!jobQueue.isEmpty()) {
+					this.wait();
+				}
+			} catch (InterruptedException e) {
+				log.error("Interrupted while waiting for jobs, canceling remaining jobs.");
+				this.cancelAll();
+				Thread.currentThread().interrupt();
+			} finally {
+				dispatching = false;
+			}
 		}
 	}
-    
+
 	/**
-	 * This method deletes all the jobs from the queue.	
-	 */	
-	public void clear(){		
-		jobQueue.clear();
+	 * Cancels the specified job. Running jobs are interrupted, jobs depending
+	 * on the canceled job are canceled as well.
+	 * @param job the job to cancel
+	 */
+	public synchronized void cancel(Job job) {
+		ScheduledJob scheduled = jobQueue.get(job);
+		if (scheduled != null) {
+			this.cancel(scheduled);
+			this.dispatch();
+		}
 	}
-	
+
+	/**
+	 * Cancels all queued and running jobs.
+	 */
+	public synchronized void cancelAll() {
+		for (ScheduledJob scheduled : new ArrayList<ScheduledJob>(jobQueue.values())) {
+			this.cancel(scheduled);
+		}
+		this.dispatch();
+	}
+
+	/**
+	 * Cancels the specified scheduled job and its dependents.
+	 * @param scheduled the scheduled job
+	 */
+	private void cancel(ScheduledJob scheduled) {
+		if (!jobQueue.containsKey(scheduled.job)) {
+			return;
+		}
+		if (scheduled.future != null) {
+			// submitted job, interrupt it and cancel its dependents upon completion
+			scheduled.canceled = true;
+			if (scheduled.thread != null) {
+				scheduled.thread.interrupt();
+			}
+			return;
+		}
+		jobQueue.remove(scheduled.job);
+		canceledCount++;
+		scheduled.job.setStatus(JobStatus.CANCELED);
+		for (ScheduledJob dependent : scheduled.dependents) {
+			this.cancel(dependent);
+		}
+		this.release(scheduled);
+		this.notifyAll();
+	}
+
+	/**
+	 * Releases the successors of the specified scheduled job which has left
+	 * the queue.
+	 * @param scheduled the scheduled job
+	 */
+	private void release(ScheduledJob scheduled) {
+		for (ScheduledJob successor : scheduled.successors) {
+			successor.pending--;
+		}
+	}
+
+	/**
+	 * This method deletes all the waiting jobs from the queue.
+	 */
+	public synchronized void clear() {
+		for (Iterator<ScheduledJob> it = jobQueue.values().iterator(); it.hasNext();) {
+			if (it.next().future == null) {
+				it.remove();
+			}
+		}
+		lastJob = null;
+		this.notifyAll();
+	}
+
+	/**
+	 * Sets the maximum number of concurrently executed jobs of the specified
+	 * resource group.
+	 * @param group the resource group
+	 * @param limit the concurrency limit
+	 * @see Job#getResourceGroup()
+	 */
+	public synchronized void setConcurrencyLimit(String group, int limit) {
+		limits.put(group, limit);
+		this.dispatch();
+	}
+
+	/**
+	 * Returns the maximum number of concurrently executed jobs of the specified
+	 * resource group.
+	 * @param group the resource group
+	 * @return the concurrency limit
+	 */
+	public synchronized int getConcurrencyLimit(String group) {
+		Integer limit = limits.get(group);
+		if (limit == null) {
+			limit = DEFAULT_LIMIT;
+			String value = getServerProperty(LIMIT_PROPERTY_PREFIX + group);
+			if (value != null) {
+				limit = Integer.parseInt(value.trim());
+			}
+			limits.put(group, limit);
+		}
+		return limit;
+	}
+
+	/**
+	 * Submits all queued jobs whose dependencies have completed to the worker
+	 * pool as far as the concurrency limits of their resource groups permit.
+	 */
+	private void dispatch() {
+		if (!dispatching) {
+			return;
+		}
+		int total = this.getRunningJobs();
+		for (ScheduledJob scheduled : jobQueue.values()) {
+			if (total >= threads) {
+				break;
+			}
+			if ((scheduled.future == null) && (scheduled.pending == 0)) {
+				String group = scheduled.job.getResourceGroup();
+				int count = this.getRunningCount(group);
+				if (count < this.getConcurrencyLimit(group)) {
+					running.put(group, count + 1);
+					total++;
+					scheduled.future = executor.submit(scheduled);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks the specified scheduled job as completed, releases its dependents
+	 * and dispatches further jobs.
+	 * @param scheduled the scheduled job
+	 * @param startTime the time the job started in milliseconds
+	 */
+	private synchronized void complete(ScheduledJob scheduled, long startTime) {
+		String group = scheduled.job.getResourceGroup();
+		running.put(group, this.getRunningCount(group) - 1);
+		jobQueue.remove(scheduled.job);
+
+		if (scheduled.canceled) {
+			canceledCount++;
+			scheduled.job.setStatus(JobStatus.CANCELED);
+		} else {
+			completedCount++;
+			totalWaitTime += startTime - scheduled.addedTime;
+			totalRunTime += System.currentTimeMillis() - startTime;
+		}
+
+		if (scheduled.canceled || (scheduled.job.getStatus() == JobStatus.ERROR)) {
+			if (!scheduled.canceled) {
+				failedCount++;
+			}
+			for (ScheduledJob dependent : scheduled.dependents) {
+				this.cancel(dependent);
+			}
+		} else {
+			for (ScheduledJob dependent : scheduled.dependents) {
+				dependent.pending--;
+			}
+		}
+		this.release(scheduled);
+		this.dispatch();
+		this.notifyAll();
+	}
+
+	/**
+	 * Returns the number of running jobs of the specified resource group.
+	 * @param group the resource group
+	 * @return the number of running jobs
+	 */
+	private int getRunningCount(String group) {
+		Integer count = running.get(group);
+		return (count == null) ? 0 : count;
+	}
+
 	/**
 	 * Returns the number of jobs that have yet to be processed.
 	 * @return The number of remaining jobs.
 	 */
-	public int getRemainingJobs() {
+	public synchronized int getRemainingJobs() {
 		return jobQueue.size();
 	}
-	
+
+	/**
+	 * Returns the number of currently executed jobs.
+	 * @return the number of running jobs
+	 */
+	public synchronized int getRunningJobs() {
+		int count = 0;
+		for (Integer value : running.values()) {
+			count += value;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of jobs executed so far.
+	 * @return the number of completed jobs
+	 */
+	public synchronized int getCompletedJobs() {
+		return completedCount;
+	}
+
+	/**
+	 * Returns the number of jobs which finished with an error.
+	 * @return the number of failed jobs
+	 */
+	public synchronized int getFailedJobs() {
+		return failedCount;
+	}
+
+	/**
+	 * Returns the number of jobs which were canceled.
+	 * @return the number of canceled jobs
+	 */
+	public synchronized int getCanceledJobs() {
+		return canceledCount;
+	}
+
+	/**
+	 * Returns the average time completed jobs spent waiting in the queue.
+	 * @return the average waiting time in milliseconds
+	 */
+	public synchronized long getAverageWaitTime() {
+		return (completedCount == 0) ? 0L : totalWaitTime / completedCount;
+	}
+
+	/**
+	 * Returns the average execution time of completed jobs.
+	 * @return the average execution time in milliseconds
+	 */
+	public synchronized long getAverageRunTime() {
+		return (completedCount == 0) ? 0L : totalRunTime / completedCount;
+	}
+
+	/**
+	 * Returns the server property of the specified key.
+	 * @param key the property key
+	 * @return the property value or <code>null</code> if no server properties are available
+	 */
+	private static String getServerProperty(String key) {
+		ServerProperties properties = ServerProperties.getInstance();
+		return (properties == null) ? null : properties.getProperty(key);
+	}
+
+	/**
+	 * Wrapper for a queued job storing its dependency state.
+	 */
+	private class ScheduledJob implements Runnable {
+
+		/**
+		 * The wrapped job.
+		 */
+		private Job job;
+
+		/**
+		 * The jobs to be executed after this job has completed.
+		 */
+		private List<ScheduledJob> dependents = new ArrayList<ScheduledJob>();
+
+		/**
+		 * The jobs to be executed after this job has left the queue regardless
+		 * of its outcome.
+		 */
+		private List<ScheduledJob> successors = new ArrayList<ScheduledJob>();
+
+		/**
+		 * The number of dependencies and predecessors which have not completed yet.
+		 */
+		private int pending;
+
+		/**
+		 * Flag denoting whether one of the dependencies failed.
+		 */
+		private boolean failed;
+
+		/**
+		 * Flag denoting whether the job was canceled after its submission.
+		 */
+		private boolean canceled;
+
+		/**
+		 * The result of the execution in the worker pool, <code>null</code>
+		 * while the job is waiting.
+		 */
+		private Future<?> future;
+
+		/**
+		 * The worker thread executing the job, <code>null</code> if the job is
+		 * not running.
+		 */
+		private Thread thread;
+
+		/**
+		 * The time the job was added in milliseconds.
+		 */
+		private long addedTime = System.currentTimeMillis();
+
+		/**
+		 * Constructs a scheduled job wrapping the specified job.
+		 * @param job the job to wrap
+		 */
+		public ScheduledJob(Job job) {
+			this.job = job;
+		}
+
+		@Override
+		public void run() {
+			long startTime = System.currentTimeMillis();
+			boolean skip;
+			synchronized (JobManager.this) {
+				thread = Thread.currentThread();
+				skip = canceled;
+			}
+			try {
+				if (!skip) {
+					job.run();
+				}
+			} catch (Exception e) {
+				job.setError(e);
+			} catch (Throwable t) {
+				// errors must fail the job, too, so that dependents are canceled
+				job.setError(new Exception(t.toString(), t));
+			} finally {
+				synchronized (JobManager.this) {
+					thread = null;
+					// clear interrupt flag possibly set by cancellation
+					Thread.interrupted();
+				}
+				complete(this, startTime);
+			}
+		}
+	}
+
 }
@@ -48,18 +48,23 @@ public class CruxJob extends Job {
 		this.fragmentTol = fragmentTol;
 		this.precIonTol = precIonTol;
 		this.isPrecIonTolPpm = isPrecIonTolPpm;
-		buildParameterFile();
+		this.parameterFile = new File(cruxFile, PARAMETER_FILE);
 		initJob();
 		filename = jobProperties.getProperty("path.crux.output") + mgfFile.getName().substring(0, mgfFile.getName().length() - 4) + "_percolated.txt";
 	}	
 	
+	@Override
+	public void run() {
+		// the parameter file is shared by all Crux jobs, hence write it right before execution
+		buildParameterFile();
+		super.run();
+	}
+	
     /**
      * Constructs the parameters file.
      */
     private void buildParameterFile() {
 
-        parameterFile = new File(cruxFile, PARAMETER_FILE);
-        
         String precursorTolType = "mass";
         if(isPrecIonTolPpm) precursorTolType = "ppm";
         		
@@ -1,11 +1,15 @@
 package de.mpa.db.job.instances;
 
 import java.io.File;
+import java.util.regex.Pattern;
 
 import de.mpa.db.job.Job;
 
 /**
- * Delete job class for removing X!Tandem and OMSSA result files.
+ * Delete job class for removing X!Tandem and OMSSA result files. Only the
+ * target, decoy and q-value files of the job's spectrum file are removed, as
+ * other spectrum files of the same batch sharing the name prefix may still be
+ * searched or stored at the same time.
  * 
  * @author T.Muth
  * 
@@ -37,11 +41,16 @@ private String filename;
 		} else if (filename.endsWith("omx")) {
 			filenamePrefix = filename.substring(0, filename.indexOf("_target"));
 		}
+		if (filenamePrefix.isEmpty()) {
+			return;
+		}
+		// Match '<base>_target.*', '<base>_decoy.*' and '<base>_qvalued.*' exactly
+		Pattern pattern = Pattern.compile(Pattern.quote(new File(filenamePrefix).getName()) + "_(target|decoy|qvalued)\\.[^.]+");
 		File parentFolder = new File(parent);
 		// Iterate the files in the directory
 		if (parentFolder.isDirectory()){
 			for (File file : parentFolder.listFiles()) {
-				if (file.getAbsolutePath().startsWith(filenamePrefix) && file.isFile()) {
+				if (pattern.matcher(file.getName()).matches() && file.isFile()) {
 					file.delete();
 				}
 			}
@@ -44,15 +44,21 @@ public class InspectJob extends Job {
 		this.precIonTol = precIonTol;
 		this.isPrecIonTolPpm = isPrecIonTolPpm;
 		this.fragIonTol = fragIonTol;
-		buildInputFile();
+		this.inputFile = new File(inspectFile, jobProperties.getProperty("file.input.inspect"));
 		initJob();
 	}
+	
+	@Override
+	public void run() {
+		// the input file is shared by all InsPecT jobs, hence write it right before execution
+		buildInputFile();
+		super.run();
+	}
 
 	/**
 	 * Constructs the input.xml file needed for the Inspect process. 
 	 */
 	private void buildInputFile(){		
-	        inputFile = new File(inspectFile, jobProperties.getProperty("file.input.inspect"));
 	        try {
 	            BufferedWriter bw = new BufferedWriter(new FileWriter(inputFile));
 	            
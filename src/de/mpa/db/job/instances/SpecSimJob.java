@@ -1,9 +1,20 @@
 package de.mpa.db.job.instances;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.mpa.algorithms.Interval;
 import de.mpa.algorithms.similarity.CrossCorrelation;
@@ -16,9 +27,12 @@ import de.mpa.algorithms.similarity.Vectorization;
 import de.mpa.algorithms.similarity.VectorizationFactory;
 import de.mpa.client.SpecSimSettings;
 import de.mpa.client.model.specsim.SpectralSearchCandidate;
+import de.mpa.client.model.specsim.SpectralSearchCandidateIndex;
 import de.mpa.client.model.specsim.SpectrumSpectrumMatch;
 import de.mpa.db.DBManager;
 import de.mpa.db.MapContainer;
+import de.mpa.db.extractor.SpectralLibraryCache;
+import de.mpa.db.extractor.SpectralSearchCandidateCursor;
 import de.mpa.db.extractor.SpectrumExtractor;
 import de.mpa.db.job.Job;
 import de.mpa.db.job.JobStatus;
@@ -31,6 +45,11 @@ import de.mpa.io.MascotGenericFile;
  */
 public class SpecSimJob extends Job {
 
+	/**
+	 * The approximate maximum number of streamed candidates held in memory at once.
+	 */
+	private static final int CANDIDATE_CHUNK_SIZE = 50000;
+
 	/**
 	 * The list of spectrum files.
 	 */
@@ -44,7 +63,12 @@ public class SpecSimJob extends Job {
 	/**
 	 * The list of spectrum-spectrum matches.
 	 */
-	private List<SpectrumSpectrumMatch> ssmList;
+	private List<SpectrumSpectrumMatch> ssmList = new ArrayList<SpectrumSpectrumMatch>();
+
+	/**
+	 * The approximate maximum number of streamed candidates held in memory at once.
+	 */
+	private int candidateChunkSize = CANDIDATE_CHUNK_SIZE;
 
 	/**
 	 * Constructs a spectral similarity search job from the specified list of
@@ -62,68 +86,248 @@ public class SpecSimJob extends Job {
 	public void run() {
 		setStatus(JobStatus.RUNNING);
 		
-		// store list of results in HashMap (with spectrum title as key)
 		ssmList = new ArrayList<SpectrumSpectrumMatch>();
 		
 		List<Interval> intervals = this.buildMzIntervals();
+		
+		// determine degree of parallelism
+		int threadCount = settings.getThreadCount();
+		if (threadCount < 1) {
+			threadCount = Runtime.getRuntime().availableProcessors();
+		}
+		threadCount = Math.max(1, Math.min(threadCount, mgfList.size()));
+		ExecutorService executor = (threadCount > 1) ? Executors.newFixedThreadPool(threadCount) : null;
 
 		try {
-			// extract list of candidates
-			DBManager manager = DBManager.getInstance();
-			SpectrumExtractor specEx = new SpectrumExtractor(manager.getConnection());
-			List<SpectralSearchCandidate> candidates = 
-					specEx.getCandidatesFromExperiment(intervals, settings.getExperimentID());
-//			System.out.flush();
-//			System.out.print("Fetching candidates... ");
-//			List<SpectralSearchCandidate> candidates = 
-//					specEx.getCandidatesFromExperiment(settings.getExperimentID());
-//			System.out.flush();
-//			System.out.println("done.\nIterating query spectra... ");
-//			
-//			int total = mgfList.size();
-//			int i = 0;
+			// open cursor over candidates
+			Connection conn = DBManager.getInstance().getConnection();
+			SpectralSearchCandidateCursor cursor = null;
+			boolean preVectorized = false;
+			String cachePath = jobProperties.getProperty("path.speclib.cache");
+			// peak matching depends on the query spectrum, hence library spectra cannot be pre-vectorized
+			if ((cachePath != null) && (settings.getVectIndex() != 0)) {
+				try {
+					cursor = new SpectralLibraryCache(new File(cachePath)).openCursor(intervals,
+							settings.getExperimentID(), this.getLibrarySettingsKey(),
+							getVectorizationMethod(settings), getTransformationMethod(settings), conn);
+					preVectorized = true;
+				} catch (IOException e) {
+					log.warn("Spectral library cache unavailable, streaming library from database.", e);
+				}
+			}
+			if (cursor == null) {
+				cursor = new SpectrumExtractor(conn).openCandidateCursor(intervals, settings.getExperimentID());
+			}
+			try {
+				this.scoreQueriesStreaming(cursor, preVectorized, threadCount, executor);
+			} finally {
+				cursor.close();
+			}
 			
+			System.out.println("... done.");
+			done();
+		} catch (SQLException e) {
+			setError(e);
+		} catch (InterruptedException e) {
+			setError(e);
+		} catch (ExecutionException e) {
+			setError(new Exception(e.getCause()));
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+			}
+		}
+	}
+	
+	/**
+	 * Scores the query spectra against candidates streamed from the specified
+	 * cursor in ascending precursor m/z order. Queries are processed in
+	 * precursor order as well, in chunks whose candidate windows hold roughly 
+	 * {@link #CANDIDATE_CHUNK_SIZE} candidates, and candidates are evicted 
+	 * once they drop below the tolerance window of the next query, i.e. heap
+	 * usage is bounded independently of the library size.
+	 * @param cursor the cursor over candidates in ascending precursor m/z order
+	 * @param preVectorized <code>true</code> if candidate peaks are already vectorized
+	 * @param threadCount the number of worker threads
+	 * @param executor the executor service or <code>null</code> for single-threaded scoring
+	 * @throws SQLException if a database error occurs
+	 * @throws InterruptedException if the job is interrupted
+	 * @throws ExecutionException if scoring fails
+	 */
+	void scoreQueriesStreaming(SpectralSearchCandidateCursor cursor, boolean preVectorized, int threadCount,
+			ExecutorService executor) throws SQLException, InterruptedException, ExecutionException {
+		// sort query spectra by precursor m/z
+		List<MascotGenericFile> queries = new ArrayList<MascotGenericFile>(mgfList);
+		Collections.sort(queries, new Comparator<MascotGenericFile>() {
+			@Override
+			public int compare(MascotGenericFile o1, MascotGenericFile o2) {
+				return Double.compare(o1.getPrecursorMZ(), o2.getPrecursorMZ());
+			}
+		});
+		double tolMz = settings.getTolMz();
+		
+		ArrayDeque<SpectralSearchCandidate> window = new ArrayDeque<SpectralSearchCandidate>();
+		int from = 0;
+		while (from < queries.size()) {
+			// evict candidates below the tolerance window of the chunk's first query
+			double lowerMz = queries.get(from).getPrecursorMZ() - tolMz;
+			while (!window.isEmpty() && (window.peekFirst().getPrecursorMz() <= lowerMz)) {
+				window.pollFirst();
+			}
+			// extend chunk by subsequent queries, pulling in candidates up to their upper tolerance bound
+			int to = from;
+			while ((to < queries.size()) && ((to == from) || (window.size() < candidateChunkSize))) {
+				double upperMz = queries.get(to).getPrecursorMZ() + tolMz;
+				while (cursor.hasNext() && (cursor.peekPrecursorMz() < upperMz)) {
+					SpectralSearchCandidate candidate = cursor.next();
+					if (candidate.getPrecursorMz() > lowerMz) {
+						window.addLast(candidate);
+					}
+				}
+				to++;
+			}
+			this.scoreQueries(queries.subList(from, to), new SpectralSearchCandidateIndex(window),
+					preVectorized, Math.min(threadCount, to - from), executor);
+			from = to;
+		}
+	}
+	
+	/**
+	 * Scores the specified query spectra against the indexed candidates and
+	 * appends matches to the result list. Query spectra are distributed among
+	 * the specified number of workers, each owning its spectrum comparator and
+	 * collecting matches in a private list.
+	 * @param queries the query spectra
+	 * @param candidateIndex the precursor-sorted candidate index
+	 * @param preVectorized <code>true</code> if candidate peaks are already vectorized
+	 * @param threadCount the number of worker threads
+	 * @param executor the executor service or <code>null</code> for single-threaded scoring
+	 * @throws InterruptedException if the job is interrupted
+	 * @throws ExecutionException if scoring fails
+	 */
+	void scoreQueries(List<MascotGenericFile> queries, SpectralSearchCandidateIndex candidateIndex,
+			boolean preVectorized, int threadCount, ExecutorService executor) throws InterruptedException, ExecutionException {
+		// each worker pulls the next unprocessed query from the shared index
+		AtomicInteger queryIndex = new AtomicInteger();
+		List<ScoringWorker> workers = new ArrayList<ScoringWorker>(threadCount);
+		for (int i = 0; i < threadCount; i++) {
+			workers.add(new ScoringWorker(queries, candidateIndex, queryIndex, preVectorized));
+		}
+		if ((executor == null) || (threadCount == 1)) {
+			for (ScoringWorker worker : workers) {
+				worker.call();
+			}
+		} else {
+			for (Future<List<SpectrumSpectrumMatch>> future : executor.invokeAll(workers)) {
+				future.get();
+			}
+		}
+		
+		// merge results
+		for (ScoringWorker worker : workers) {
+			ssmList.addAll(worker.getMatches());
+		}
+	}
+	
+	/**
+	 * Worker scoring query spectra against the candidate list using its own
+	 * spectrum comparator instance.
+	 * 
+	 * @author A. Behne
+	 */
+	private class ScoringWorker implements Callable<List<SpectrumSpectrumMatch>> {
+		
+		/**
+		 * The shared list of query spectra.
+		 */
+		private List<MascotGenericFile> queries;
+		
+		/**
+		 * The shared precursor-sorted candidate index.
+		 */
+		private SpectralSearchCandidateIndex candidateIndex;
+		
+		/**
+		 * The shared index of the next query spectrum to be processed.
+		 */
+		private AtomicInteger queryIndex;
+		
+		/**
+		 * Flag denoting whether candidate peaks are already vectorized.
+		 */
+		private boolean preVectorized;
+		
+		/**
+		 * The thread-confined spectrum comparator.
+		 */
+		private SpectrumComparator specComp;
+		
+		/**
+		 * The list of matches found by this worker.
+		 */
+		private List<SpectrumSpectrumMatch> matches = new ArrayList<SpectrumSpectrumMatch>();
+		
+		/**
+		 * Constructs a scoring worker.
+		 * @param queries the list of query spectra
+		 * @param candidateIndex the candidate index
+		 * @param queryIndex the shared query index
+		 * @param preVectorized <code>true</code> if candidate peaks are already vectorized
+		 */
+		public ScoringWorker(List<MascotGenericFile> queries, SpectralSearchCandidateIndex candidateIndex,
+				AtomicInteger queryIndex, boolean preVectorized) {
+			this.queries = queries;
+			this.candidateIndex = candidateIndex;
+			this.queryIndex = queryIndex;
+			this.preVectorized = preVectorized;
+			this.specComp = getComparatorMethod(settings);
+		}
+
+		@Override
+		public List<SpectrumSpectrumMatch> call() {
+			int index;
 			// iterate query spectra to determine similarity scores
-			for (MascotGenericFile mgfQuery : mgfList) {
+			while ((index = queryIndex.getAndIncrement()) < queries.size()) {
+				MascotGenericFile mgfQuery = queries.get(index);
 				String title = mgfQuery.getTitle().trim();
 				long searchspectrumID = MapContainer.SpectrumTitle2IdMap.get(title);
 				
-				// Spectrum comparator method
-				SpectrumComparator specComp = getComparatorMethod(settings);
-				
 				// Comparison preparation
-				specComp.prepare(mgfQuery.getHighestPeaks(settings.getPickCount()));
+				specComp.prepare(mgfQuery.getHighestPeakVector(settings.getPickCount()));
 				
-				// iterate candidates
-				for (SpectralSearchCandidate candidate : candidates) {
-					// (re-)check precursor tolerance criterion to determine proper candidates
-					if (Math.abs(mgfQuery.getPrecursorMZ() - candidate.getPrecursorMz()) < settings.getTolMz()) {
-						// TODO: redundancy check in candidates (e.g. same spectrum from multiple peptide associations)
-						// Score query and library spectra
-						specComp.compareTo(candidate.getPeaks());
-						double score = specComp.getSimilarity();
-						
-						// store result if score is above specified threshold
-						if (score >= settings.getThreshScore()) {
-							ssmList.add(new SpectrumSpectrumMatch(searchspectrumID, candidate.getLibpectrumID(), score));
-						}
+				// iterate candidates inside precursor tolerance window
+				for (SpectralSearchCandidate candidate : 
+						candidateIndex.getCandidates(mgfQuery.getPrecursorMZ(), settings.getTolMz())) {
+					// TODO: redundancy check in candidates (e.g. same spectrum from multiple peptide associations)
+					// Score query and library spectra
+					if (preVectorized) {
+						specComp.compareToVectorized(candidate.getPeakVector());
+					} else {
+						specComp.compareTo(candidate.getPeakVector());
+					}
+					double score = specComp.getSimilarity();
+					
+					// store result if score is above specified threshold
+					if (score >= settings.getThreshScore()) {
+						matches.add(new SpectrumSpectrumMatch(searchspectrumID, candidate.getLibpectrumID(), score));
 					}
 				}
 				specComp.getVectorization().cleanup();
 				
-//				if ((i%100) == 0) {
-//					System.out.println("" + i + " / " + total);
-//				}
-//				i++;
-				
 				// TODO: re-implement progress event handling
 //				pSupport.firePropertyChange("progressmade", 0, 1);
 			}
-			System.out.println("... done.");
-			done();
-		} catch (SQLException e) {
-			setError(e);
+			return matches;
 		}
+		
+		/**
+		 * Returns the matches found by this worker.
+		 * @return the list of matches
+		 */
+		public List<SpectrumSpectrumMatch> getMatches() {
+			return matches;
+		}
+		
 	}
 	
 	/**
@@ -158,6 +362,17 @@ public class SpecSimJob extends Job {
 		return intervals;
 	}
 
+	/**
+	 * Returns a string uniquely describing the settings affecting vectorized
+	 * library spectra, used for keying the spectral library cache.
+	 * @return the settings key
+	 */
+	private String getLibrarySettingsKey() {
+		return "vect=" + settings.getVectIndex() + ";binWidth=" + settings.getBinWidth()
+				+ ";binShift=" + settings.getBinShift() + ";profile=" + settings.getProfileIndex()
+				+ ";baseWidth=" + settings.getBaseWidth() + ";trafo=" + settings.getTrafoIndex();
+	}
+
 	/**
 	 * Returns the vectorization method
 	 * 
@@ -236,6 +451,20 @@ public class SpecSimJob extends Job {
 		return specComp;
 	}
 	
+	/**
+	 * Sets the approximate maximum number of streamed candidates held in
+	 * memory at once.
+	 * @param candidateChunkSize the candidate chunk size
+	 */
+	void setCandidateChunkSize(int candidateChunkSize) {
+		this.candidateChunkSize = candidateChunkSize;
+	}
+	
+	@Override
+	public String getResourceGroup() {
+		return DATABASE_GROUP;
+	}
+	
 	/**
 	 * Returns the list containing found spectrum-to-spectrum matches.
 	 * @return the SSM list
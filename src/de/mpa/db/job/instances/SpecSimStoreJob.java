@@ -48,4 +48,9 @@ public class SpecSimStoreJob extends Job {
 			setError(e);
 		}
 	}
+
+	@Override
+	public String getResourceGroup() {
+		return DATABASE_GROUP;
+	}
 }
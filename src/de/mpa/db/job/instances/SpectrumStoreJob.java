@@ -0,0 +1,54 @@
+package de.mpa.db.job.instances;
+
+import java.io.File;
+
+import de.mpa.db.DBManager;
+import de.mpa.db.job.Job;
+import de.mpa.db.job.JobStatus;
+
+/**
+ * Job class for storing the spectra of an uploaded spectrum file to the database.
+ * 
+ * @author A. Behne
+ */
+public class SpectrumStoreJob extends Job {
+	
+	/**
+	 * The spectrum file.
+	 */
+	private File spectrumFile;
+	
+	/**
+	 * The experiment ID.
+	 */
+	private long experimentID;
+	
+	/**
+	 * Constructs a job storing the spectra of the specified file.
+	 * @param spectrumFile The spectrum file.
+	 * @param experimentID The experiment ID.
+	 */
+	public SpectrumStoreJob(File spectrumFile, long experimentID) {
+		this.spectrumFile = spectrumFile;
+		this.experimentID = experimentID;
+		setFilename(spectrumFile.getPath());
+		setDescription("SPECTRA STORING " + spectrumFile.getName());
+	}
+	
+	@Override
+	public void run() {
+		try {
+			setStatus(JobStatus.RUNNING);
+			DBManager.getInstance().storeSpectra(spectrumFile, experimentID);
+			done();
+		} catch (Exception e) {
+			setError(e);
+		}
+	}
+	
+	@Override
+	public String getResourceGroup() {
+		return DATABASE_GROUP;
+	}
+	
+}
@@ -67,4 +67,9 @@ public class StoreJob extends Job {
 		}
 	}
 
+	@Override
+	public String getResourceGroup() {
+		return DATABASE_GROUP;
+	}
+
 }
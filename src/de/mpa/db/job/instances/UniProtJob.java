@@ -37,4 +37,9 @@ public class UniProtJob extends Job {
 		}
 		setStatus(JobStatus.FINISHED);
 	}
+
+	@Override
+	public String getResourceGroup() {
+		return DATABASE_GROUP;
+	}
 }
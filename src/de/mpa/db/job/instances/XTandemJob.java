@@ -65,17 +65,25 @@ public class XTandemJob extends Job {
 		if(searchType == SearchType.TARGET){
 			this.inputFile = new File(xTandemFile, INPUT_TARGET_FILE);
 			this.filename = jobProperties.getProperty("path.xtandem.output") + mgfFile.getName().substring(0, mgfFile.getName().length() - 4) + "_target.xml";
-			buildTaxonomyFile();
-			buildInputFile();
-			
 		} else if (searchType == SearchType.DECOY){
 			this.inputFile = new File(xTandemFile, INPUT_DECOY_FILE);
 			this.filename = jobProperties.getProperty("path.xtandem.output") + mgfFile.getName().substring(0, mgfFile.getName().length() - 4) + "_decoy.xml";
+		}
+		initJob();
+	}
+	
+	@Override
+	public void run() {
+		// input files are shared by all X!Tandem jobs, hence write them right before execution
+		if (searchType == SearchType.TARGET) {
+			buildTaxonomyFile();
+			buildInputFile();
+		} else if (searchType == SearchType.DECOY) {
 			buildTaxonomyDecoyFile();
 			buildInputDecoyFile();
 		}
 		buildParameterFile();
-		initJob();
+		super.run();
 	}
 	
 	
@@ -1,10 +1,21 @@
 package de.mpa.db.storager;
 
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
@@ -19,13 +30,21 @@ import de.mpa.db.accessor.Searchspectrum;
 import de.mpa.db.accessor.Spec2pep;
 
 /**
- * Basic storage functionality: Loading and storing of data.
+ * Basic storage functionality: Loading and storing of data.<br>
+ * Peptide, spectrum and link identifiers are cached for the lifetime of the
+ * storager and new spectrum-to-peptide and peptide-to-protein links are
+ * written behind in multi-row inserts upon {@link #commit()}.
  * 
- * @author Thilo Muth
+ * @author Thilo Muth, A. Behne
  *
  */
 public class BasicStorager implements Storager {
 	
+	/**
+	 * The maximum number of rows per multi-row insert or lookup query.
+	 */
+	private static final int BATCH_SIZE = 500;
+	
 	/**
 	 * Logger object for the storage classes.
 	 */
@@ -46,12 +65,54 @@ public class BasicStorager implements Storager {
      */
     protected SearchEngineType searchEngineType;
     
+    /**
+     * The cached peptide IDs keyed by sequence.
+     */
+    private Map<String, Long> peptideIDs = new HashMap<String, Long>();
+    
+    /**
+     * The IDs of peptides created by this storager, i.e. peptides without pre-existing links.
+     */
+    private TLongSet newPeptideIDs = new TLongHashSet();
+    
+    /**
+     * The cached spectrum IDs keyed by searchspectrum ID.
+     */
+    private TLongLongMap spectrumIDs = new TLongLongHashMap();
+    
+    /**
+     * Flag denoting whether the spectrum IDs of the current search spectra have been pre-loaded.
+     */
+    private boolean spectrumIDsLoaded;
+    
+    /**
+     * The linked peptide IDs keyed by spectrum ID.
+     */
+    private TLongObjectMap<TLongSet> spec2pepLinks = new TLongObjectHashMap<TLongSet>();
+    
+    /**
+     * The linked protein IDs keyed by peptide ID.
+     */
+    private TLongObjectMap<TLongSet> pep2protLinks = new TLongObjectHashMap<TLongSet>();
+    
+    /**
+     * The pending spectrum-to-peptide links stored as pairs of consecutive IDs.
+     */
+    private TLongList pendingSpec2Pep = new TLongArrayList();
+    
+    /**
+     * The pending peptide-to-protein links stored as pairs of consecutive IDs.
+     */
+    private TLongList pendingPep2Prot = new TLongArrayList();
+    
 	@Override
 	public void run() {
 		this.load();
 		try {
 			this.store();
 		} catch (Exception e) {
+			// cached identifiers may refer to rolled back rows
+			this.clearCaches();
 			try {
 				conn.rollback();
 			} catch (SQLException e1) {
@@ -79,6 +140,10 @@ public class BasicStorager implements Storager {
 	 * @throws SQLException if a database error occurs
 	 */
 	protected long storePeptide(String sequence) throws SQLException {
+		Long peptideID = peptideIDs.get(sequence);
+		if (peptideID != null) {
+			return peptideID;
+		}
 		// retrieve peptide from database
 		PeptideAccessor peptide = PeptideAccessor.findFromSequence(sequence, conn);
 		if (peptide == null) {
@@ -87,45 +152,201 @@ public class BasicStorager implements Storager {
 			data.put(PeptideAccessor.SEQUENCE, sequence);
 			peptide = new PeptideAccessor(data);
 			peptide.persist(conn);
-			// return generated peptide identifier
-			return (Long) peptide.getGeneratedKeys()[0];
+			// generated peptide identifier
+			peptideID = (Long) peptide.getGeneratedKeys()[0];
+			newPeptideIDs.add(peptideID);
 		} else {
-			return peptide.getPeptideid();
+			peptideID = peptide.getPeptideid();
 		}
+		peptideIDs.put(sequence, peptideID);
+		return peptideID;
 	}
 	
 	/**
-	 * Attempts to store a spectrum-to-peptide association in the database if it doesn't already exist.<br>
-	 * The actual spectrum id is inferred from the specified searchspecrum id.
+	 * Stores a spectrum-to-peptide association in the database if it doesn't already exist.<br>
+	 * The actual spectrum id is inferred from the specified searchspecrum id. New
+	 * associations are written upon the next {@link #commit()}.
 	 * @param searchspectrumID the searchspectrum id
 	 * @param peptideID the peptide id
-	 * @return the spec2pep id
 	 * @throws SQLException if a database error occurs
 	 */
-	protected long storeSpec2Pep(long searchspectrumID, long peptideID) throws SQLException {
+	protected void storeSpec2Pep(long searchspectrumID, long peptideID) throws SQLException {
 		// check for errors
 		if ((searchspectrumID <= 0) || (peptideID <= 0)) {
 			// abort prematurely
-			return -1L;
+			return;
 		}
-		// retrieve searchspectrum from id, guaranteed to always work if searchspectrumID > 0
-		Searchspectrum searchspectrum =
-				Searchspectrum.findFromSearchSpectrumID(searchspectrumID, conn);
-		// extract spectrum id
-		long spectrumID = searchspectrum.getFk_spectrumid();
+		long spectrumID = this.getSpectrumID(searchspectrumID);
 		
-		// check whether spec2pep link already exists in database
-		Spec2pep spec2pep = Spec2pep.findLink(spectrumID, peptideID, conn);
-		if (spec2pep == null) {
-			// link does not yet exist, therefore store a new one
-			HashMap<Object, Object> data = new HashMap<Object, Object>();
-			data.put(Spec2pep.FK_SPECTRUMID, spectrumID);
-			data.put(Spec2pep.FK_PEPTIDEID, peptideID);
-			spec2pep = new Spec2pep(data);
-			spec2pep.persist(conn);
-			return (Long) spec2pep.getGeneratedKeys()[0];
+		// check whether spec2pep link already exists
+		TLongSet linkedPeptideIDs = spec2pepLinks.get(spectrumID);
+		if (linkedPeptideIDs.add(peptideID)) {
+			// link does not yet exist, therefore queue a new one
+			pendingSpec2Pep.add(spectrumID);
+			pendingSpec2Pep.add(peptideID);
+			if (pendingSpec2Pep.size() >= 2 * BATCH_SIZE) {
+				this.flush();
+			}
 		}
-		return spec2pep.getSpec2pepid();
+	}
+	
+	/**
+	 * Registers the spectrum ID of a search spectrum created by this storager.
+	 * @param searchspectrumID the searchspectrum id
+	 * @param spectrumID the spectrum id
+	 */
+	protected void registerSearchspectrum(long searchspectrumID, long spectrumID) {
+		spectrumIDs.put(searchspectrumID, spectrumID);
+		if (!spec2pepLinks.containsKey(spectrumID)) {
+			spec2pepLinks.put(spectrumID, new TLongHashSet());
+		}
+	}
+	
+	/**
+	 * Returns the spectrum ID of the specified search spectrum. Upon the first
+	 * call the spectrum IDs and spectrum-to-peptide links of all search spectra
+	 * of the current spectrum file are loaded in bulk.
+	 * @param searchspectrumID the searchspectrum id
+	 * @return the spectrum id
+	 * @throws SQLException if a database error occurs
+	 */
+	private long getSpectrumID(long searchspectrumID) throws SQLException {
+		if (!spectrumIDs.containsKey(searchspectrumID)) {
+			if (!spectrumIDsLoaded) {
+				spectrumIDsLoaded = true;
+				TLongSet searchspectrumIDs = new TLongHashSet();
+				if (MapContainer.SpectrumTitle2IdMap != null) {
+					searchspectrumIDs.addAll(MapContainer.SpectrumTitle2IdMap.values());
+				}
+				if (MapContainer.FileName2IdMap != null) {
+					searchspectrumIDs.addAll(MapContainer.FileName2IdMap.values());
+				}
+				searchspectrumIDs.add(searchspectrumID);
+				this.loadSpectrumIDs(searchspectrumIDs.toArray());
+			}
+			if (!spectrumIDs.containsKey(searchspectrumID)) {
+				this.loadSpectrumIDs(new long[] { searchspectrumID });
+				if (!spectrumIDs.containsKey(searchspectrumID)) {
+					throw new SQLException("Unknown searchspectrum ID: " + searchspectrumID);
+				}
+			}
+		}
+		return spectrumIDs.get(searchspectrumID);
+	}
+	
+	/**
+	 * Loads the spectrum IDs and the existing spectrum-to-peptide links of the
+	 * specified search spectra.
+	 * @param searchspectrumIDs the searchspectrum ids
+	 * @throws SQLException if a database error occurs
+	 */
+	private void loadSpectrumIDs(long[] searchspectrumIDs) throws SQLException {
+		for (int i = 0; i < searchspectrumIDs.length; i += BATCH_SIZE) {
+			long[] chunk = new long[Math.min(BATCH_SIZE, searchspectrumIDs.length - i)];
+			System.arraycopy(searchspectrumIDs, i, chunk, 0, chunk.length);
+			TLongLongMap chunkIDs = Searchspectrum.findSpectrumIDsFromSearchSpectrumIDs(chunk, conn);
+			long[] chunkSpectrumIDs = chunkIDs.values();
+			TLongObjectMap<TLongSet> links = Spec2pep.findPeptideIDsFromSpectrumIDs(chunkSpectrumIDs, conn);
+			for (long spectrumID : chunkSpectrumIDs) {
+				if (!spec2pepLinks.containsKey(spectrumID)) {
+					TLongSet peptideIDs = links.get(spectrumID);
+					spec2pepLinks.put(spectrumID, (peptideIDs != null) ? peptideIDs : new TLongHashSet());
+				}
+			}
+			spectrumIDs.putAll(chunkIDs);
+		}
+	}
+	
+	/**
+	 * Stores a peptide-to-protein association in the database if it doesn't
+	 * already exist. New associations are written upon the next {@link #commit()}.
+	 * @param peptideID the peptide id
+	 * @param proteinID the protein id
+	 * @throws SQLException if a database error occurs
+	 */
+	protected void storePep2Prot(long peptideID, long proteinID) throws SQLException {
+		if (this.getLinkedProteinIDs(peptideID).add(proteinID)) {
+			pendingPep2Prot.add(peptideID);
+			pendingPep2Prot.add(proteinID);
+			if (pendingPep2Prot.size() >= 2 * BATCH_SIZE) {
+				this.flush();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the set of protein IDs linked to the specified peptide. The set
+	 * is retrieved from the database only once per pre-existing peptide.
+	 * @param peptideID the peptide id
+	 * @return the linked protein ids
+	 * @throws SQLException if a database error occurs
+	 */
+	protected TLongSet getLinkedProteinIDs(long peptideID) throws SQLException {
+		TLongSet proteinIDs = pep2protLinks.get(peptideID);
+		if (proteinIDs == null) {
+			proteinIDs = new TLongHashSet();
+			if (!newPeptideIDs.contains(peptideID)) {
+				proteinIDs.addAll(Pep2prot.findProteinIDsFromPeptideID(peptideID, conn));
+			}
+			pep2protLinks.put(peptideID, proteinIDs);
+		}
+		return proteinIDs;
+	}
+	
+	/**
+	 * Writes all pending links to the database using multi-row inserts.
+	 * @throws SQLException if a database error occurs
+	 */
+	protected void flush() throws SQLException {
+		this.insertLinks("INSERT INTO spec2pep (fk_spectrumid, fk_peptideid) VALUES ", pendingSpec2Pep);
+		this.insertLinks("INSERT INTO pep2prot (fk_peptideid, fk_proteinid) VALUES ", pendingPep2Prot);
+	}
+	
+	/**
+	 * Writes all pending links and commits the current transaction.
+	 * @throws SQLException if a database error occurs
+	 */
+	protected void commit() throws SQLException {
+		this.flush();
+		conn.commit();
+	}
+	
+	/**
+	 * Inserts the specified pairs of foreign keys in chunks of multi-row
+	 * statements and clears the list afterwards.
+	 * @param insert the insert statement prefix
+	 * @param pairs the foreign key pairs stored in consecutive elements
+	 * @throws SQLException if a database error occurs
+	 */
+	private void insertLinks(String insert, TLongList pairs) throws SQLException {
+		for (int i = 0; i < pairs.size(); i += 2 * BATCH_SIZE) {
+			int rows = Math.min(BATCH_SIZE, (pairs.size() - i) / 2);
+			StringBuilder sb = new StringBuilder(insert).append("(?, ?)");
+			for (int j = 1; j < rows; j++) {
+				sb.append(", (?, ?)");
+			}
+			PreparedStatement ps = conn.prepareStatement(sb.toString());
+			for (int j = 0; j < 2 * rows; j++) {
+				ps.setLong(j + 1, pairs.get(i + j));
+			}
+			ps.executeUpdate();
+			ps.close();
+		}
+		pairs.clear();
+	}
+	
+	/**
+	 * Discards all cached identifiers and pending links.
+	 */
+	private void clearCaches() {
+		peptideIDs.clear();
+		newPeptideIDs.clear();
+		spectrumIDs.clear();
+		spectrumIDsLoaded = false;
+		spec2pepLinks.clear();
+		pep2protLinks.clear();
+		pendingSpec2Pep.clear();
+		pendingPep2Prot.clear();
 	}
 	
 	/**
@@ -148,15 +369,12 @@ public class BasicStorager implements Storager {
 			ProteinAccessor proteinAccessor = ProteinAccessor.addProteinWithPeptideID(peptideID, accession, description, protein.getSequence().getSequence(), conn);
 			proteinID = proteinAccessor.getProteinid();
 			proteinIdMap.put(accession, proteinID);
+			// link has been stored alongside the protein
+			this.getLinkedProteinIDs(peptideID).add(proteinID);
 		} else {
 			// check whether pep2prot link already exists,
 			// otherwise create new one
-			Pep2prot pep2prot = Pep2prot.findLink(peptideID, proteinID, conn);
-			// If no link from peptide to protein is given.
-			if (pep2prot == null) { 
-				// Link peptide to protein.
-				pep2prot = Pep2prot.linkPeptideToProtein(peptideID, proteinID, conn);
-			}
+			this.storePep2Prot(peptideID, proteinID);
 		}
 		// Add protein for UniProt storing.
 		MapContainer.UniprotQueryProteins.put(accession, proteinID);
@@ -130,7 +130,7 @@ public class CruxStorager extends BasicStorager {
                 counter++;
             }
         }
-        conn.commit();
+        this.commit();
         log.debug("No. of Crux hits saved: " + counter);
     }
 
@@ -118,7 +118,7 @@ public class InspectStorager extends BasicStorager {
             Long inspecthitid = (Long) inspecthit.getGeneratedKeys()[0];
             scanNumberMap.put(hit.getScanNumber(), inspecthitid);   
         }
-        conn.commit();
+        this.commit();
         log.debug("No. of InsPect hits saved: " + counter);
     }
 }
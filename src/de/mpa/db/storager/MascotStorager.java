@@ -17,12 +17,6 @@ import java.util.Vector;
 
 import javax.swing.JOptionPane;
 
-import uk.ac.ebi.kraken.interfaces.uniprot.DatabaseCrossReference;
-import uk.ac.ebi.kraken.interfaces.uniprot.DatabaseType;
-import uk.ac.ebi.kraken.interfaces.uniprot.Keyword;
-import uk.ac.ebi.kraken.interfaces.uniprot.SecondaryUniProtAccession;
-import uk.ac.ebi.kraken.interfaces.uniprot.UniProtEntry;
-
 import com.compomics.mascotdatfile.util.mascot.MascotDatfile;
 import com.compomics.mascotdatfile.util.mascot.Peak;
 import com.compomics.mascotdatfile.util.mascot.PeptideHit;
@@ -51,7 +45,6 @@ import de.mpa.db.accessor.Uniprotentry;
 import de.mpa.db.extractor.SpectrumExtractor;
 import de.mpa.io.MascotGenericFile;
 import de.mpa.io.SixtyFourBitStringSupport;
-import de.mpa.util.Formatter;
 
 public class MascotStorager extends BasicStorager {
 	
@@ -179,6 +172,7 @@ public class MascotStorager extends BasicStorager {
 						Searchspectrum searchSpectrum = new Searchspectrum(data);
 						searchSpectrum.persist(conn);
 						searchspectrumID = (Long) searchSpectrum.getGeneratedKeys()[0];
+						this.registerSearchspectrum(searchspectrumID, spectrumId);
 						// Add new spectrum to map with title and spectrum IDs
 						specTitleMap.put(query.getTitle(),spectrumId);
 					}
@@ -202,12 +196,12 @@ public class MascotStorager extends BasicStorager {
 				}
 			}
 			if (idCounter % 100 == 0) {
-				conn.commit();
+				this.commit();
 			}
 //			queryCounter++;
 			client.firePropertyChange("progressmade", 0L, 1L);
 		}
-		conn.commit();
+		this.commit();
 		client.firePropertyChange("new message", null, "PROCESSING MASCOT QUERIES FINISHED");
 		
 		// retrieve UniProt entries
@@ -230,10 +224,8 @@ public class MascotStorager extends BasicStorager {
 				// therefore look in secondary accessions
 				outerloop:
 				for (ReducedProteinData value : proteinData.values()) {
-					List<SecondaryUniProtAccession> secondaryAccessions =
-							value.getUniProtEntry().getSecondaryUniProtAccessions();
-					for (SecondaryUniProtAccession secAcc : secondaryAccessions) {
-						if (secAcc.getValue().equals(accession)) {
+					for (String secAcc : value.getSecondaryAccessions()) {
+						if (secAcc.equals(accession)) {
 							rpd = value;
 							break outerloop;
 						}
@@ -254,45 +246,18 @@ public class MascotStorager extends BasicStorager {
 			Uniprotentry upe = Uniprotentry.findFromProteinID(proteinID, conn);
 			if (upe != null) {
 				// a UniProt entry already exists, we therefore probably like to update only the protein sequence
-				protein.setSequence(rpd.getUniProtEntry().getSequence().getValue());
-				protein.update(conn);
+				// (not available for annotations read from the local UniProt store)
+				if (rpd.getSequence() != null) {
+					protein.setSequence(rpd.getSequence());
+					protein.update(conn);
+				}
 			} else {
 				// no UniProt entry exists, therefore we create a new one
-				UniProtEntry uniProtEntry = rpd.getUniProtEntry();
-				
-				// Get taxonomy id
-				Long taxID = Long.valueOf(uniProtEntry.getNcbiTaxonomyIds().get(0).getValue());
-
-				// Get EC Numbers
-				String ecNumbers = "";
-				List<String> ecNumberList = uniProtEntry.getProteinDescription().getEcNumbers();
-				if (ecNumberList.size() > 0) {
-					for (String ecNumber : ecNumberList) {
-						ecNumbers += ecNumber + ";";
-					}
-					ecNumbers = Formatter.removeLastChar(ecNumbers);
-				}
-
-				// Get ontology keywords
-				String keywords = "";
-				List<Keyword> keywordsList = uniProtEntry.getKeywords();
-
-				if (keywordsList.size() > 0) {
-					for (Keyword kw : keywordsList) {
-						keywords += kw.getValue() + ";";
-					}
-					keywords = Formatter.removeLastChar(keywords);
-				}
-
-				// Get KO numbers
-				String koNumbers = "";
-				List<DatabaseCrossReference> xRefs = uniProtEntry.getDatabaseCrossReferences(DatabaseType.KO);
-				if (xRefs.size() > 0) {
-					for (DatabaseCrossReference xRef : xRefs) {
-						koNumbers += xRef.getPrimaryId().getValue() + ";";
-					}
-					koNumbers = Formatter.removeLastChar(koNumbers);
-				}
+				// Get taxonomy id, EC numbers, ontology keywords and KO numbers
+				Long taxID = rpd.getTaxID();
+				String ecNumbers = rpd.getEcNumbers();
+				String keywords = rpd.getKeywords();
+				String koNumbers = rpd.getKoNumbers();
 				
 				// get UniRef identifiers
 				String uniref100 = rpd.getUniRef100EntryId();
@@ -305,7 +270,7 @@ public class MascotStorager extends BasicStorager {
 			}
 			client.firePropertyChange("progressmade", 0L, 1L);
 		}
-		conn.commit();
+		this.commit();
 	}
 	
 	/**
@@ -475,6 +440,7 @@ public class MascotStorager extends BasicStorager {
 		if (proteinID == null) {
 			ProteinAccessor protAccessor = ProteinAccessor.addProteinWithPeptideID(peptideID, accession, header.getDescription(), "", conn);
 			proteinID = (Long) protAccessor.getGeneratedKeys()[0];
+			this.getLinkedProteinIDs(peptideID).add(proteinID);
 			// Mark protein for UniProt lookup
 			uniProtCandidates.add(accession);
 		} else {
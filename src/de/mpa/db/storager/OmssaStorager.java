@@ -171,7 +171,7 @@ public class OmssaStorager extends BasicStorager {
 				}
     	    }
         }
-    	conn.commit();
+    	this.commit();
 	    log.debug("No. of OMSSA hits saved: " + counter);
     }
     
@@ -1,18 +1,38 @@
 package de.mpa.db.storager;
 
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongLongMap;
+
 import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import de.mpa.db.MapContainer;
 import de.mpa.db.accessor.Searchspectrum;
 import de.mpa.db.accessor.Spectrum;
 import de.mpa.io.MascotGenericFile;
 import de.mpa.io.MascotGenericFileReader;
+import de.mpa.io.MascotGenericFileReader.LoadMode;
 import de.mpa.io.SixtyFourBitStringSupport;
 
 /**
@@ -23,6 +43,25 @@ import de.mpa.io.SixtyFourBitStringSupport;
  */
 public class SpectrumStorager extends BasicStorager {
 	
+	/**
+	 * The sentinel marking the end of the parser output queue.
+	 */
+	private static final Future<EncodedSpectrum> END_OF_QUEUE = new FutureTask<EncodedSpectrum>(new Runnable() {
+		@Override
+		public void run() {
+		}
+	}, null);
+	
+	/**
+	 * The statement inserting a spectrum.
+	 */
+	private static final String INSERT_SPECTRUM = "INSERT INTO spectrum (title, precursor_mz, precursor_int, precursor_charge, mzarray, intarray, chargearray, total_int, maximum_int, creationdate, modificationdate) values(?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+	
+	/**
+	 * The statement inserting a search spectrum.
+	 */
+	private static final String INSERT_SEARCHSPECTRUM = "INSERT INTO searchspectrum (fk_spectrumid, fk_experimentid, creationdate, modificationdate) values(?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+	
     /**
      * The spectrum file reader instance.
      */
@@ -43,17 +82,28 @@ public class SpectrumStorager extends BasicStorager {
      */
     private long experimentid;
 
-    /**
-     * The list of spectra.
-     */
-	private List<MascotGenericFile> spectra;
-
 	/**
 	 * Flag denoting whether the database shall be searched to determine whether
 	 * a certain spectrum is already stored in it.
 	 */
 	private boolean redundancyCheck;
 	
+	/**
+	 * The number of spectra stored per JDBC batch.
+	 */
+	private int batchSize = 500;
+	
+	/**
+	 * The number of spectra after which the transaction is committed.
+	 */
+	private int commitInterval = 5000;
+	
+	/**
+	 * Map to link titles of spectra stored during redundancy-checked runs to
+	 * their database spectrum ID.
+	 */
+	private Map<String, Long> storedTitles;
+	
     /**
      * Constructor with experiment id as additional parameter:
      * Used for storing the search spectra.
@@ -70,164 +120,341 @@ public class SpectrumStorager extends BasicStorager {
     }
 
     /**
-     * Loads the MGF-file.
+     * Surveys the MGF-file for spectrum positions, spectra are parsed during storage.
      *
      * @param file
      */
     public void load() {
         try {
-            reader = new MascotGenericFileReader(file);
+            reader = new MascotGenericFileReader(file, LoadMode.SURVEY);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Stores the MGF-file to the database.
+     * Stores the MGF-file to the database. Spectra are processed by a pipeline:
+     * a parser thread reads spectra one by one from the surveyed file, a pool
+     * of encoder threads converts their peaks to base64 strings and the calling
+     * thread writes them in batches. Redundancy checks are performed by one
+     * multi-row query per batch, new rows are inserted using JDBC batch
+     * statements and the transaction is committed after every
+     * {@link #commitInterval} spectra. The queue between the stages is bounded,
+     * i.e. memory consumption does not depend on the size of the file. The
+     * spectrum file reader is closed upon completion as well as upon failure.
      *
      * @param conn
      * @throws SQLException
      */
     public void store() throws IOException, SQLException {
-        // Get all spectra from the reader.
-        spectra = reader.getSpectrumFiles();
+        if (reader == null) {
+        	throw new IOException("Spectrum file " + file + " could not be surveyed.");
+        }
         
         // Init cache maps.
         title2SearchIdMap = new HashMap<String, Long>();
         fileName2IdMap = new HashMap<String, Long>();
+        storedTitles = new HashMap<String, Long>();
         
-        // Iterate over all spectra.
-        for (MascotGenericFile mgf : spectra) {
-            
-            // The filename, remove leading and trailing whitespace.
-            String title = mgf.getTitle().trim();
-
-            Spectrum query = (redundancyCheck) ? Spectrum.findFromTitle(title, conn) : generateQuery(mgf);
-            
-            Long searchspectrumid;
-			if (query == null) {
-	            /* New spectrum section */
-	            HashMap<Object, Object> data = new HashMap<Object, Object>(12);
-            
-	            // The spectrum title
-                data.put(Spectrum.TITLE, title);
-                
-                // The precursor mass.
-                data.put(Spectrum.PRECURSOR_MZ, mgf.getPrecursorMZ());
-                
-                // The precursor intensity
-                data.put(Spectrum.PRECURSOR_INT, mgf.getIntensity());
-                
-                // The precursor charge
-                data.put(Spectrum.PRECURSOR_CHARGE, Long.valueOf(mgf.getCharge()));
-                
-                // The m/z array
-                TreeMap<Double, Double> peakMap = new TreeMap<Double, Double>(mgf.getPeaks());
-				Double[] mzDoubles = peakMap.keySet().toArray(new Double[0]);
-                data.put(Spectrum.MZARRAY, SixtyFourBitStringSupport.encodeDoublesToBase64String(mzDoubles));
-                
-                // The intensity array
-				Double[] inDoubles = peakMap.values().toArray(new Double[0]);
-                data.put(Spectrum.INTARRAY, SixtyFourBitStringSupport.encodeDoublesToBase64String(inDoubles));
-                
-                // The charge array
-                TreeMap<Double, Integer> chargeMap = new TreeMap<Double, Integer>(mgf.getCharges());
-                for (Double mz : peakMap.keySet()) {
-					if (!chargeMap.containsKey(mz)) {
-						chargeMap.put(mz, 0);
-					}
-				}
-				Integer[] chInts = chargeMap.values().toArray(new Integer[0]);
-				data.put(Spectrum.CHARGEARRAY, SixtyFourBitStringSupport.encodeIntsToBase64String(chInts));
-                
-                // The total intensity.
-                data.put(Spectrum.TOTAL_INT, mgf.getTotalIntensity());
-                
-                // The highest intensity.
-                data.put(Spectrum.MAXIMUM_INT, mgf.getHighestIntensity());
-
-                // Create the database object.
-                query = new Spectrum(data);
-                query.persist(conn);
-
-                // Get the spectrumid from the generated keys.
-                Long spectrumid = (Long) query.getGeneratedKeys()[0];
-                
-                /* Searchspectrum storager*/
-                HashMap<Object, Object> searchData = new HashMap<Object, Object>(5);
-
-                searchData.put(Searchspectrum.FK_SPECTRUMID, spectrumid);
-                searchData.put(Searchspectrum.FK_EXPERIMENTID, experimentid);
-
-                Searchspectrum searchSpectrum = new Searchspectrum(searchData);
-                searchSpectrum.persist(conn);
-
-                // Get the search spectrum id from the generated keys.
-                searchspectrumid = (Long) searchSpectrum.getGeneratedKeys()[0];
-                
-            } else {
-            	/* Redundant spectrum section */
-            	long spectrumid = query.getSpectrumid();
-            	
-            	// Find possibly already existing search spectrum for this experiment
-                Searchspectrum searchspectrum = Searchspectrum.findFromSpectrumIDAndExperimentID(spectrumid, experimentid, conn);
-                
-				if (searchspectrum == null) {
-                    /* Searchspectrum storager*/
-					// No search spectrum exists for this query, generate a new one
-                    HashMap<Object, Object> searchData = new HashMap<Object, Object>(5);
-                    searchData.put(Searchspectrum.FK_SPECTRUMID, spectrumid);
-                    searchData.put(Searchspectrum.FK_EXPERIMENTID, experimentid);
-                    Searchspectrum searchSpectrum = new Searchspectrum(searchData);
-                    searchSpectrum.persist(conn);
-                    
-                    // Get the search spectrum id from the generated keys.
-                    searchspectrumid = (Long) searchSpectrum.getGeneratedKeys()[0];
-                    
-                } else {
-                	// A search spectrum already exists, grab its ID
-                	searchspectrumid = searchspectrum.getSearchspectrumid();
-                }
-                
-            }
-            // Fill the cache maps
-            title2SearchIdMap.put(query.getTitle(), searchspectrumid);
-            fileName2IdMap.put(mgf.getFilename(), searchspectrumid);
-            
-            conn.commit();			
+        final BlockingQueue<Future<EncodedSpectrum>> queue =
+        		new ArrayBlockingQueue<Future<EncodedSpectrum>>(2 * batchSize);
+        final ExecutorService encoderPool = Executors.newFixedThreadPool(
+        		Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        ExecutorService parserExecutor = Executors.newSingleThreadExecutor();
+        
+        // Parse spectra and hand them to the encoder pool in file order
+        final int spectrumCount = reader.getSpectrumPositions(false).size();
+        Future<Void> parserFuture = parserExecutor.submit(new Callable<Void>() {
+        	@Override
+        	public Void call() throws Exception {
+        		try {
+        			for (int i = 0; i < spectrumCount; i++) {
+        				final MascotGenericFile mgf = reader.loadSpectrum(i);
+        				queue.put(encoderPool.submit(new Callable<EncodedSpectrum>() {
+        					@Override
+        					public EncodedSpectrum call() throws Exception {
+        						return new EncodedSpectrum(mgf);
+        					}
+        				}));
+        			}
+        		} catch (InterruptedException e) {
+        			// Storage has been aborted, nobody waits for the end of the queue
+        			throw e;
+        		} catch (Exception e) {
+        			queue.put(END_OF_QUEUE);
+        			throw e;
+        		}
+        		queue.put(END_OF_QUEUE);
+        		return null;
+        	}
+        });
+        
+        try {
+        	// Write encoded spectra in batches
+        	List<EncodedSpectrum> batch = new ArrayList<EncodedSpectrum>(batchSize);
+        	int uncommitted = 0;
+        	Future<EncodedSpectrum> future;
+        	while ((future = queue.take()) != END_OF_QUEUE) {
+        		batch.add(future.get());
+        		if (batch.size() == batchSize) {
+        			this.storeBatch(batch);
+        			uncommitted += batch.size();
+        			batch.clear();
+        			if (uncommitted >= commitInterval) {
+        				conn.commit();
+        				uncommitted = 0;
+        			}
+        		}
+        	}
+        	// Propagate parser errors
+        	parserFuture.get();
+        	if (!batch.isEmpty()) {
+        		this.storeBatch(batch);
+        	}
+        	conn.commit();
+        } catch (InterruptedException e) {
+        	Thread.currentThread().interrupt();
+        	throw new IOException("Spectrum storage has been interrupted.", e);
+        } catch (ExecutionException e) {
+        	Throwable cause = e.getCause();
+        	if (cause instanceof IOException) {
+        		throw (IOException) cause;
+        	}
+        	throw new IOException("Spectrum could not be parsed.", cause);
+        } finally {
+        	parserExecutor.shutdownNow();
+        	encoderPool.shutdownNow();
+        	try {
+        		// Let the parser release the reader before closing it
+        		parserExecutor.awaitTermination(1L, TimeUnit.MINUTES);
+        	} catch (InterruptedException e) {
+        		Thread.currentThread().interrupt();
+        	}
+        	reader.close();
+        	reader = null;
         }
         
         MapContainer.SpectrumTitle2IdMap = title2SearchIdMap;
         log.debug("No. of spectra: " + title2SearchIdMap.size());
         MapContainer.FileName2IdMap = fileName2IdMap;
-        
-        reader.close();
+    }
+    
+    /**
+     * Stores a batch of spectra and links them to the experiment.
+     * @param batch the encoded spectra to store
+     * @throws SQLException if a database error occurs
+     */
+    private void storeBatch(List<EncodedSpectrum> batch) throws SQLException {
+    	int size = batch.size();
+    	String[] titles = new String[size];
+    	String[] keys = new String[size];
+    	long[] spectrumIDs = new long[size];
+    	for (int i = 0; i < size; i++) {
+    		EncodedSpectrum encoded = batch.get(i);
+    		titles[i] = encoded.title;
+    		keys[i] = titles[i];
+    		if (!redundancyCheck && (encoded.spectrumID != null)) {
+    			spectrumIDs[i] = encoded.spectrumID;
+    			keys[i] = encoded.rawTitle;
+    		}
+    	}
+    	
+    	// Look up already stored spectra by title
+    	if (redundancyCheck) {
+    		Map<String, Long> found = Spectrum.findIDsFromTitles(Arrays.asList(titles), conn);
+    		found.putAll(storedTitles);
+    		for (int i = 0; i < size; i++) {
+    			Long spectrumID = found.get(titles[i]);
+    			if (spectrumID != null) {
+    				spectrumIDs[i] = spectrumID;
+    			}
+    		}
+    	}
+    	
+    	/* New spectrum section */
+    	PreparedStatement ps = conn.prepareStatement(INSERT_SPECTRUM, Statement.RETURN_GENERATED_KEYS);
+    	Map<String, Integer> insertedTitles = new HashMap<String, Integer>();
+    	try {
+    		List<Integer> inserted = new ArrayList<Integer>();
+    		for (int i = 0; i < size; i++) {
+    			if (spectrumIDs[i] == 0L) {
+    				if (redundancyCheck && insertedTitles.containsKey(titles[i])) {
+    					// duplicate title inside batch, link to first occurrence later
+    					continue;
+    				}
+    				insertedTitles.put(titles[i], i);
+    				inserted.add(i);
+    				batch.get(i).bind(ps);
+    				ps.addBatch();
+    			}
+    		}
+    		if (!inserted.isEmpty()) {
+    			ps.executeBatch();
+    			ResultSet rs = ps.getGeneratedKeys();
+    			for (int i : inserted) {
+    				rs.next();
+    				spectrumIDs[i] = rs.getLong(1);
+    			}
+    			rs.close();
+    		}
+    	} finally {
+    		ps.close();
+    	}
+    	for (int i = 0; i < size; i++) {
+    		if (spectrumIDs[i] == 0L) {
+    			spectrumIDs[i] = spectrumIDs[insertedTitles.get(titles[i])];
+    		}
+    		if (redundancyCheck) {
+    			storedTitles.put(titles[i], spectrumIDs[i]);
+    		}
+    	}
+    	
+    	/* Searchspectrum storager */
+    	// Find possibly already existing search spectra for this experiment
+    	TLongLongMap searchspectrumIDs = Searchspectrum.findIDsFromSpectrumIDsAndExperimentID(spectrumIDs, experimentid, conn);
+    	ps = conn.prepareStatement(INSERT_SEARCHSPECTRUM, Statement.RETURN_GENERATED_KEYS);
+    	try {
+    		TLongList pending = new TLongArrayList();
+    		for (long spectrumID : spectrumIDs) {
+    			if (!searchspectrumIDs.containsKey(spectrumID)) {
+    				// No search spectrum exists for this spectrum, generate a new one
+    				searchspectrumIDs.put(spectrumID, 0L);
+    				pending.add(spectrumID);
+    				ps.setLong(1, spectrumID);
+    				ps.setLong(2, experimentid);
+    				ps.addBatch();
+    			}
+    		}
+    		if (!pending.isEmpty()) {
+    			ps.executeBatch();
+    			ResultSet rs = ps.getGeneratedKeys();
+    			for (int i = 0; i < pending.size(); i++) {
+    				rs.next();
+    				searchspectrumIDs.put(pending.get(i), rs.getLong(1));
+    			}
+    			rs.close();
+    		}
+    	} finally {
+    		ps.close();
+    	}
+    	
+    	// Fill the cache maps
+    	for (int i = 0; i < size; i++) {
+    		long searchspectrumid = searchspectrumIDs.get(spectrumIDs[i]);
+    		title2SearchIdMap.put(keys[i], searchspectrumid);
+    		fileName2IdMap.put(batch.get(i).filename, searchspectrumid);
+    	}
+    }
+    
+    /**
+     * Sets the number of spectra stored per JDBC batch.
+     * @param batchSize the batch size
+     */
+    public void setBatchSize(int batchSize) {
+    	this.batchSize = Math.max(1, batchSize);
+    }
+    
+    /**
+     * Sets the number of spectra after which the transaction is committed.
+     * @param commitInterval the commit interval
+     */
+    public void setCommitInterval(int commitInterval) {
+    	this.commitInterval = Math.max(1, commitInterval);
     }
 
 	/**
-	 * Returns the parsed spectra.
-	 * @return the spectra
-	 */
-	public List<MascotGenericFile> getSpectra() {
-		return spectra;
-	}
-
-	/**
-	 * Helper method to generate a Spectrum instance from information stored
-	 * inside the specified spectrum file instance.
-	 * @param mgf the spectrum file instance
-	 * @return the generated query Spectrum or <code>null</code> if the spectrum 
-	 * file does not contain a spectrum ID
+	 * Container for the database column values of a spectrum with peaks
+	 * already encoded to base64 strings.
 	 */
-	private Spectrum generateQuery(MascotGenericFile mgf) {
-		Long spectrumID = mgf.getSpectrumID();
-		if (spectrumID != null) {
-			HashMap<Object, Object> params = new HashMap<Object, Object>();
-			params.put(Spectrum.SPECTRUMID, spectrumID);
-			params.put(Spectrum.TITLE, mgf.getTitle());
-			return new Spectrum(params);
+	private static class EncodedSpectrum {
+		
+		/**
+		 * The trimmed spectrum title.
+		 */
+		private final String title;
+		
+		/**
+		 * The untrimmed spectrum title.
+		 */
+		private final String rawTitle;
+		
+		/**
+		 * The spectrum filename.
+		 */
+		private final String filename;
+		
+		/**
+		 * The database spectrum ID stored in the spectrum file, may be <code>null</code>.
+		 */
+		private final Long spectrumID;
+		
+		/**
+		 * The precursor m/z, intensity and charge.
+		 */
+		private final double precursorMz, precursorInt;
+		private final long precursorCharge;
+		
+		/**
+		 * The base64-encoded m/z, intensity and charge arrays.
+		 */
+		private final String mzArray, inArray, chargeArray;
+		
+		/**
+		 * The total and highest peak intensity.
+		 */
+		private final double totalInt, maximumInt;
+		
+		/**
+		 * Encodes the specified spectrum file.
+		 * @param mgf the spectrum file
+		 */
+		public EncodedSpectrum(MascotGenericFile mgf) {
+			// The spectrum title, remove leading and trailing whitespace.
+			this.rawTitle = mgf.getTitle();
+			this.title = rawTitle.trim();
+			this.filename = mgf.getFilename();
+			this.spectrumID = mgf.getSpectrumID();
+			this.precursorMz = mgf.getPrecursorMZ();
+			this.precursorInt = mgf.getIntensity();
+			this.precursorCharge = mgf.getCharge();
+			
+			// The m/z and intensity arrays
+			TreeMap<Double, Double> peakMap = new TreeMap<Double, Double>(mgf.getPeaks());
+			Double[] mzDoubles = peakMap.keySet().toArray(new Double[0]);
+			this.mzArray = SixtyFourBitStringSupport.encodeDoublesToBase64String(mzDoubles);
+			Double[] inDoubles = peakMap.values().toArray(new Double[0]);
+			this.inArray = SixtyFourBitStringSupport.encodeDoublesToBase64String(inDoubles);
+			
+			// The charge array
+			TreeMap<Double, Integer> chargeMap = new TreeMap<Double, Integer>(mgf.getCharges());
+			for (Double mz : peakMap.keySet()) {
+				if (!chargeMap.containsKey(mz)) {
+					chargeMap.put(mz, 0);
+				}
+			}
+			Integer[] chInts = chargeMap.values().toArray(new Integer[0]);
+			this.chargeArray = SixtyFourBitStringSupport.encodeIntsToBase64String(chInts);
+			
+			this.totalInt = mgf.getTotalIntensity();
+			this.maximumInt = mgf.getHighestIntensity();
+		}
+		
+		/**
+		 * Binds the encoded values to the parameters of the spectrum insert statement.
+		 * @param ps the insert statement
+		 * @throws SQLException if a database error occurs
+		 */
+		public void bind(PreparedStatement ps) throws SQLException {
+			ps.setString(1, title);
+			ps.setDouble(2, precursorMz);
+			ps.setDouble(3, precursorInt);
+			ps.setLong(4, precursorCharge);
+			ps.setString(5, mzArray);
+			ps.setString(6, inArray);
+			ps.setString(7, chargeArray);
+			ps.setDouble(8, totalInt);
+			ps.setDouble(9, maximumInt);
 		}
-		return null;
 	}
 	
 	@Override
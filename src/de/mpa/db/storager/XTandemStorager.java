@@ -199,7 +199,7 @@ public class XTandemStorager extends BasicStorager {
 				}
             }      
         }
-        conn.commit();
+        this.commit();
         log.debug("No. of X!Tandem hits saved: " + counter);
     }
     
@@ -16,8 +16,6 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Properties;
@@ -27,6 +25,7 @@ import java.util.TreeSet;
 
 import com.compomics.util.interfaces.SpectrumFile;
 
+import de.mpa.algorithms.similarity.SpectrumVector;
 import de.mpa.db.accessor.Spectrum;
 
 /**
@@ -72,6 +71,16 @@ public class MascotGenericFile implements SpectrumFile, Serializable {
      */
     protected int iCharge = 0;
 
+    /**
+     * The cached result of the most recent top-k peak picking.
+     */
+    private transient SpectrumVector iHighestPeaks;
+    
+    /**
+     * The peak count of the cached top-k peak picking result.
+     */
+    private transient int iHighestPeaksK = -1;
+
     /**
      * The precursor intensity.
      */
@@ -753,6 +762,14 @@ public class MascotGenericFile implements SpectrumFile, Serializable {
         return iPeaks;
     }
     
+    /**
+     * Returns the peaks of the spectrum as m/z-sorted primitive arrays.
+     * @return the spectrum vector containing all peaks
+     */
+    public SpectrumVector getPeakVector() {
+    	return new SpectrumVector(iPeaks);
+    }
+    
     /**
      * Returns the k highest peaks of the spectrum.
      * @param k The amount of peaks to be picked.
@@ -762,16 +779,28 @@ public class MascotGenericFile implements SpectrumFile, Serializable {
     	if (k == 0) {
     		return iPeaks;
     	} else {
-    		HashMap<Double, Double> res = new HashMap<Double, Double>(iPeaks);
-    		ArrayList<Double> sortedList = new ArrayList<Double>(res.values());
-    		Collections.sort(sortedList);
-    		Iterator<Double> iter = sortedList.listIterator();
-    		while (res.size() > k) {
-    			res.values().remove(iter.next());
-    			iter.remove();
+    		return getHighestPeakVector(k).toPeakMap();
+    	}
+    }
+    
+    /**
+     * Returns the k highest peaks of the spectrum as m/z-sorted primitive
+     * arrays. The result of the most recent call is cached, the returned 
+     * vector must therefore not be modified.
+     * @param k The amount of peaks to be picked, <code>0</code> picks all peaks.
+     * @return the spectrum vector containing the picked peaks
+     */
+    public SpectrumVector getHighestPeakVector(int k) {
+    	SpectrumVector res = iHighestPeaks;
+    	if ((res == null) || (iHighestPeaksK != k)) {
+    		res = getPeakVector();
+    		if (k > 0) {
+    			res = res.getHighestPeaks(k);
     		}
-    		return res;
+    		iHighestPeaks = res;
+    		iHighestPeaksK = k;
     	}
+    	return res;
     }
     
     /**
@@ -853,6 +882,7 @@ public class MascotGenericFile implements SpectrumFile, Serializable {
 	@Override
 	public void setPeaks(HashMap aPeaks) {
 		this.iPeaks = aPeaks;
+		this.iHighestPeaks = null;
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,852 @@
+package de.mpa.io.fasta;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.TLongList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.list.array.TLongArrayList;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import com.compomics.util.protein.Header;
+import com.compomics.util.protein.Protein;
+
+/**
+ * Read-only accession index of a FASTA file. Entries are located by binary
+ * search over the sorted 64-bit hashes of their accessions, which together
+ * with the byte offsets and lengths of the entries are memory-mapped from the
+ * index file. Entries sharing a hash are ordered by their offset, so that of
+ * duplicated accessions the last one in the FASTA file is returned. Entries are read as slices of the memory-mapped FASTA file.
+ * The index arrays are mapped in blocks of {@value #BLOCK_SIZE} elements as a
+ * single mapping cannot exceed 2 GB, the number of entries is limited to
+ * {@link Integer#MAX_VALUE}.
+ * <p>
+ * Index file layout (big-endian):
+ * <pre>
+ * int      magic number
+ * int      version
+ * int      number of entries
+ * long[]   accession hashes sorted by hash and offset
+ * long[]   entry offsets in the FASTA file
+ * int[]    entry lengths in bytes
+ * </pre>
+ *
+ * @author A. Behne
+ */
+public class FastaIndex {
+
+	/**
+	 * The magic number identifying FASTA index files.
+	 */
+	private static final int MAGIC = 0x4D504146;
+
+	/**
+	 * The file format version.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * The byte size of the index file header.
+	 */
+	private static final int HEADER_SIZE = 12;
+
+	/**
+	 * The number of array elements per memory-mapped index block.
+	 */
+	private static final int BLOCK_SIZE = 1 << 27;
+
+	/**
+	 * The size of the memory-mapped segments of the FASTA file.
+	 */
+	private static final long SEGMENT_SIZE = 1L << 30;
+
+	/**
+	 * The number of bytes by which consecutive FASTA segments overlap.
+	 * Entries crossing segment boundaries despite the overlap are mapped
+	 * individually.
+	 */
+	private static final long SEGMENT_OVERLAP = 1L << 20;
+
+	/**
+	 * The pattern protein headers should adhere to, i.e.
+	 * '>DB|ACCESSION|SHORT_DESCRIPTION FULL_DESCRIPTION'.
+	 */
+	private static final Pattern HEADER_PATTERN = Pattern.compile("^>\\w{2}\\|[^|]*\\|[^\\s]+_[^\\s]+ .*");
+
+	/**
+	 * The number of indexed entries.
+	 */
+	private final int size;
+
+	/**
+	 * The blocks of sorted accession hashes.
+	 */
+	private final LongBuffer[] hashes;
+
+	/**
+	 * The blocks of entry offsets.
+	 */
+	private final LongBuffer[] offsets;
+
+	/**
+	 * The blocks of entry lengths.
+	 */
+	private final IntBuffer[] lengths;
+
+	/**
+	 * The FASTA file channel.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The lazily mapped segments of the FASTA file.
+	 */
+	private final MappedByteBuffer[] segments;
+
+	/**
+	 * Opens the index of the specified FASTA file.
+	 * @param fastaFile the FASTA file
+	 * @param indexFile the index file
+	 * @throws IOException if a file cannot be read or is no FASTA index
+	 */
+	public FastaIndex(File fastaFile, File indexFile) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try {
+			if (raf.length() < HEADER_SIZE) {
+				throw new IOException("Unsupported FASTA index file: " + indexFile);
+			}
+			FileChannel indexChannel = raf.getChannel();
+			ByteBuffer header = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0L, HEADER_SIZE);
+			if ((header.getInt() != MAGIC) || (header.getInt() != VERSION)) {
+				throw new IOException("Unsupported FASTA index file: " + indexFile);
+			}
+			size = header.getInt();
+			if (raf.length() < HEADER_SIZE + 20L * size) {
+				throw new IOException("Truncated FASTA index file: " + indexFile);
+			}
+			long pos = HEADER_SIZE;
+			hashes = new LongBuffer[blockCount(size)];
+			for (int i = 0; i < hashes.length; i++) {
+				hashes[i] = indexChannel.map(FileChannel.MapMode.READ_ONLY,
+						pos + 8L * i * BLOCK_SIZE, 8L * blockLength(size, i)).asLongBuffer();
+			}
+			pos += 8L * size;
+			offsets = new LongBuffer[blockCount(size)];
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = indexChannel.map(FileChannel.MapMode.READ_ONLY,
+						pos + 8L * i * BLOCK_SIZE, 8L * blockLength(size, i)).asLongBuffer();
+			}
+			pos += 8L * size;
+			lengths = new IntBuffer[blockCount(size)];
+			for (int i = 0; i < lengths.length; i++) {
+				lengths[i] = indexChannel.map(FileChannel.MapMode.READ_ONLY,
+						pos + 4L * i * BLOCK_SIZE, 4L * blockLength(size, i)).asIntBuffer();
+			}
+		} finally {
+			raf.close();
+		}
+		channel = new RandomAccessFile(fastaFile, "r").getChannel();
+		segments = new MappedByteBuffer[(int) ((channel.size() + SEGMENT_SIZE - 1L) / SEGMENT_SIZE)];
+	}
+
+	/**
+	 * Returns whether the specified file is a FASTA index file of the
+	 * current format.
+	 * @param indexFile the file to check
+	 * @return <code>true</code> if the file is a FASTA index, <code>false</code> otherwise
+	 */
+	public static boolean isIndexFile(File indexFile) {
+		if (!indexFile.exists() || (indexFile.length() < HEADER_SIZE)) {
+			return false;
+		}
+		try {
+			DataInputStream dis = new DataInputStream(new FileInputStream(indexFile));
+			try {
+				return (dis.readInt() == MAGIC) && (dis.readInt() == VERSION);
+			} finally {
+				dis.close();
+			}
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the number of indexed entries.
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns whether the specified accession is indexed.
+	 * @param accession the protein accession
+	 * @return <code>true</code> if the accession is indexed, <code>false</code> otherwise
+	 * @throws IOException if the FASTA file cannot be mapped
+	 */
+	public boolean contains(String accession) throws IOException {
+		return (this.getEntry(accession) != null);
+	}
+
+	/**
+	 * Returns the FASTA entry of the specified accession as a read-only view
+	 * on the memory-mapped FASTA file. If the accession is duplicated the
+	 * last entry in the FASTA file is returned.
+	 * @param accession the protein accession
+	 * @return the entry bytes including the header line or <code>null</code>
+	 *  if the accession is not indexed
+	 * @throws IOException if the FASTA file cannot be mapped
+	 */
+	public ByteBuffer getEntry(String accession) throws IOException {
+		long hash = hash(accession);
+		int index = this.indexOf(hash);
+		if (index < 0) {
+			return null;
+		}
+		// advance to the last of several entries sharing the same hash
+		while ((index + 1 < size) && (this.getHash(index + 1) == hash)) {
+			index++;
+		}
+		if ((index == 0) || (this.getHash(index - 1) != hash)) {
+			return this.getSlice(this.getOffset(index), this.getLength(index));
+		}
+		// resolve hash collisions and duplicates by comparing the actual
+		// accessions in descending offset order
+		for (; (index >= 0) && (this.getHash(index) == hash); index--) {
+			ByteBuffer entry = this.getSlice(this.getOffset(index), this.getLength(index));
+			String headerLine = readHeaderLine(entry.duplicate());
+			if (accession.equals(Header.parseFromFASTA(headerLine).getAccession())) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the protein of the specified accession.
+	 * @param accession the protein accession
+	 * @return the protein or <code>null</code> if the accession is not indexed
+	 * @throws IOException if the FASTA file cannot be mapped
+	 */
+	public Protein getProtein(String accession) throws IOException {
+		ByteBuffer entry = this.getEntry(accession);
+		if (entry == null) {
+			return null;
+		}
+		String headerLine = readHeaderLine(entry);
+		StringBuilder sequence = new StringBuilder(entry.remaining());
+		while (entry.hasRemaining()) {
+			byte b = entry.get();
+			if (b > ' ') {
+				sequence.append((char) b);
+			}
+		}
+		return new Protein(headerLine, sequence.toString());
+	}
+
+	/**
+	 * Closes the FASTA file.
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Binary searches the sorted hashes for the specified hash.
+	 * @param hash the accession hash
+	 * @return the index of a matching hash or <code>-1</code> if none matches
+	 */
+	private int indexOf(long hash) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long midHash = this.getHash(mid);
+			if (midHash < hash) {
+				low = mid + 1;
+			} else if (midHash > hash) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the accession hash at the specified index.
+	 * @param index the entry index
+	 * @return the hash
+	 */
+	private long getHash(int index) {
+		return hashes[index / BLOCK_SIZE].get(index % BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns the FASTA file offset of the entry at the specified index.
+	 * @param index the entry index
+	 * @return the byte offset
+	 */
+	private long getOffset(int index) {
+		return offsets[index / BLOCK_SIZE].get(index % BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns the length of the entry at the specified index.
+	 * @param index the entry index
+	 * @return the number of bytes
+	 */
+	private int getLength(int index) {
+		return lengths[index / BLOCK_SIZE].get(index % BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns the number of index blocks needed for the specified number of
+	 * array elements.
+	 * @param length the number of elements
+	 * @return the number of blocks
+	 */
+	private static int blockCount(int length) {
+		return (int) ((length + (long) BLOCK_SIZE - 1L) / BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns the number of array elements in the specified block.
+	 * @param length the total number of elements
+	 * @param block the block index
+	 * @return the number of elements in the block
+	 */
+	private static int blockLength(int length, int block) {
+		return Math.min(BLOCK_SIZE, length - block * BLOCK_SIZE);
+	}
+
+	/**
+	 * Returns a read-only view on the specified region of the FASTA file.
+	 * @param offset the byte offset
+	 * @param length the number of bytes
+	 * @return the region
+	 * @throws IOException if the FASTA file cannot be mapped
+	 */
+	private ByteBuffer getSlice(long offset, int length) throws IOException {
+		int segmentIndex = (int) (offset / SEGMENT_SIZE);
+		long segmentStart = segmentIndex * SEGMENT_SIZE;
+		if (offset + length > segmentStart + SEGMENT_SIZE + SEGMENT_OVERLAP) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+		}
+		ByteBuffer slice = this.getSegment(segmentIndex).duplicate();
+		slice.position((int) (offset - segmentStart));
+		slice.limit(slice.position() + length);
+		return slice.slice();
+	}
+
+	/**
+	 * Returns the specified segment of the FASTA file, maps it if necessary.
+	 * @param segmentIndex the segment index
+	 * @return the segment
+	 * @throws IOException if the FASTA file cannot be mapped
+	 */
+	private synchronized MappedByteBuffer getSegment(int segmentIndex) throws IOException {
+		MappedByteBuffer segment = segments[segmentIndex];
+		if (segment == null) {
+			long start = segmentIndex * SEGMENT_SIZE;
+			long length = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, channel.size() - start);
+			segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+			segments[segmentIndex] = segment;
+		}
+		return segment;
+	}
+
+	/**
+	 * Reads the trimmed header line from the start of the specified entry and
+	 * advances the buffer position past it.
+	 * @param entry the entry bytes
+	 * @return the header line
+	 */
+	private static String readHeaderLine(ByteBuffer entry) {
+		StringBuilder sb = new StringBuilder();
+		while (entry.hasRemaining()) {
+			byte b = entry.get();
+			if (b == '\n') {
+				break;
+			}
+			// decode like RandomAccessFile.readLine(), i.e. as ISO-8859-1
+			sb.append((char) (b & 0xFF));
+		}
+		return sb.toString().trim();
+	}
+
+	/**
+	 * Returns the 64-bit FNV-1a hash of the specified accession.
+	 * @param accession the accession
+	 * @return the hash
+	 */
+	static long hash(String accession) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < accession.length(); i++) {
+			hash ^= accession.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Indexes the specified FASTA file using one thread per available
+	 * processor and writes the index file.
+	 * @param fastaFile the FASTA file
+	 * @param indexFile the index file to write
+	 * @return the number of indexed entries
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static int build(File fastaFile, File indexFile) throws IOException {
+		return build(fastaFile, indexFile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Indexes the specified FASTA file and writes the index file. The file is
+	 * split into byte ranges starting at header lines which are scanned
+	 * concurrently, the sorted per-range indexes are merged afterwards.
+	 * @param fastaFile the FASTA file
+	 * @param indexFile the index file to write
+	 * @param threads the number of concurrently scanned ranges
+	 * @return the number of indexed entries
+	 * @throws IOException if an I/O error occurs
+	 */
+	public static int build(File fastaFile, File indexFile, int threads) throws IOException {
+		threads = Math.max(1, threads);
+		RandomAccessFile raf = new RandomAccessFile(fastaFile, "r");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		RangeIndex[] ranges = new RangeIndex[threads];
+		try {
+			FileChannel fastaChannel = raf.getChannel();
+			long fileSize = fastaChannel.size();
+			// align range boundaries on header lines
+			long[] bounds = new long[threads + 1];
+			for (int i = 1; i < threads; i++) {
+				bounds[i] = findEntryStart(fastaChannel, Math.max(bounds[i - 1], fileSize * i / threads));
+			}
+			bounds[threads] = fileSize;
+
+			Progress progress = new Progress(fileSize);
+			List<Future<RangeIndex>> futures = new ArrayList<Future<RangeIndex>>(threads);
+			for (int i = 0; i < threads; i++) {
+				futures.add(executor.submit(new RangeScanner(fastaChannel, bounds[i], bounds[i + 1], progress)));
+			}
+			for (int i = 0; i < threads; i++) {
+				ranges[i] = futures.get(i).get();
+			}
+		} catch (InterruptedException e) {
+			throw new IOException("FASTA indexing has been interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+			raf.close();
+		}
+
+		long total = 0L;
+		for (RangeIndex range : ranges) {
+			total += range.hashes.length;
+		}
+		if (total > Integer.MAX_VALUE) {
+			throw new IOException("FASTA file contains more than " + Integer.MAX_VALUE + " entries.");
+		}
+		int size = (int) total;
+		DataOutputStream dos = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(indexFile), 1 << 16));
+		try {
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			dos.writeInt(size);
+			// merge the sorted ranges once per section
+			int[] heads = new int[ranges.length];
+			for (int i = 0; i < size; i++) {
+				int r = nextRange(ranges, heads);
+				dos.writeLong(ranges[r].hashes[heads[r]++]);
+			}
+			Arrays.fill(heads, 0);
+			for (int i = 0; i < size; i++) {
+				int r = nextRange(ranges, heads);
+				dos.writeLong(ranges[r].offsets[heads[r]++]);
+			}
+			Arrays.fill(heads, 0);
+			for (int i = 0; i < size; i++) {
+				int r = nextRange(ranges, heads);
+				dos.writeInt(ranges[r].lengths[heads[r]++]);
+			}
+		} finally {
+			dos.close();
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the index of the range whose next unmerged entry has the
+	 * smallest hash and offset.
+	 * @param ranges the sorted range indexes
+	 * @param heads the indices of the next unmerged entry of each range
+	 * @return the range index
+	 */
+	private static int nextRange(RangeIndex[] ranges, int[] heads) {
+		int min = -1;
+		for (int r = 0; r < ranges.length; r++) {
+			if ((heads[r] < ranges[r].hashes.length) && ((min < 0) || (compare(ranges[r].hashes,
+					ranges[r].offsets, heads[r], ranges[min].hashes[heads[min]], ranges[min].offsets[heads[min]]) < 0))) {
+				min = r;
+			}
+		}
+		return min;
+	}
+
+	/**
+	 * Returns the offset of the first header line starting at or after the
+	 * specified position.
+	 * @param channel the FASTA file channel
+	 * @param pos the position to start searching at
+	 * @return the offset of the header line or the file size if there is none
+	 * @throws IOException if an I/O error occurs
+	 */
+	private static long findEntryStart(FileChannel channel, long pos) throws IOException {
+		if (pos == 0L) {
+			return 0L;
+		}
+		ByteBuffer buf = ByteBuffer.allocate(1 << 16);
+		// inspect the preceding byte to detect line starts
+		pos--;
+		byte previous = 0;
+		boolean first = true;
+		int read;
+		while ((read = channel.read(buf, pos)) > 0) {
+			buf.flip();
+			for (int i = 0; i < read; i++) {
+				byte b = buf.get(i);
+				if (!first && (previous == '\n') && (b == '>')) {
+					return pos + i;
+				}
+				previous = b;
+				first = false;
+			}
+			pos += read;
+			buf.clear();
+		}
+		return channel.size();
+	}
+
+	/**
+	 * Parses the accession from the specified header line.
+	 * @param headerLine the header line
+	 * @return the accession or <code>null</code> if none could be parsed
+	 */
+	private static String parseAccession(String headerLine) {
+		if (!HEADER_PATTERN.matcher(headerLine).matches()) {
+			System.out.println("Incorrectly formatted protein header (Please use: >DB|ACCESSION|SHORT_DESCRIPTION FULL_DESCRIPTION)");
+			System.out.println(headerLine);
+		}
+		Header header = Header.parseFromFASTA(headerLine);
+		return (header == null) ? null : header.getAccession();
+	}
+
+	/**
+	 * Sorts the index arrays by hash and offset using quicksort. As offsets
+	 * are unique the order of entries sharing a hash is the file order.
+	 * @param hashes the accession hashes
+	 * @param offsets the entry offsets
+	 * @param lengths the entry lengths
+	 * @param low the first index to sort
+	 * @param high the last index to sort
+	 */
+	private static void sort(long[] hashes, long[] offsets, int[] lengths, int low, int high) {
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			long pivotHash = hashes[mid];
+			long pivotOffset = offsets[mid];
+			int i = low, j = high;
+			while (i <= j) {
+				while (compare(hashes, offsets, i, pivotHash, pivotOffset) < 0) {
+					i++;
+				}
+				while (compare(hashes, offsets, j, pivotHash, pivotOffset) > 0) {
+					j--;
+				}
+				if (i <= j) {
+					long hash = hashes[i];
+					hashes[i] = hashes[j];
+					hashes[j] = hash;
+					long offset = offsets[i];
+					offsets[i] = offsets[j];
+					offsets[j] = offset;
+					int length = lengths[i];
+					lengths[i] = lengths[j];
+					lengths[j] = length;
+					i++;
+					j--;
+				}
+			}
+			// recurse into the smaller partition to bound the stack depth
+			if (j - low < high - i) {
+				sort(hashes, offsets, lengths, low, j);
+				low = i;
+			} else {
+				sort(hashes, offsets, lengths, i, high);
+				high = j;
+			}
+		}
+	}
+
+	/**
+	 * Compares the entry at the specified index with the specified hash and
+	 * offset.
+	 * @param hashes the accession hashes
+	 * @param offsets the entry offsets
+	 * @param index the entry index
+	 * @param hash the hash to compare with
+	 * @param offset the offset to compare with
+	 * @return a negative integer, zero, or a positive integer as the entry is
+	 *  less than, equal to, or greater than the specified hash and offset
+	 */
+	private static int compare(long[] hashes, long[] offsets, int index, long hash, long offset) {
+		int res = Long.compare(hashes[index], hash);
+		return (res != 0) ? res : Long.compare(offsets[index], offset);
+	}
+
+	/**
+	 * Index of the entries of a byte range of a FASTA file sorted by hash and
+	 * offset.
+	 */
+	private static class RangeIndex {
+
+		/**
+		 * The sorted accession hashes.
+		 */
+		private final long[] hashes;
+
+		/**
+		 * The entry offsets.
+		 */
+		private final long[] offsets;
+
+		/**
+		 * The entry lengths.
+		 */
+		private final int[] lengths;
+
+		/**
+		 * Creates a range index from the specified unsorted entry lists.
+		 * @param hashes the accession hashes
+		 * @param offsets the entry offsets
+		 * @param lengths the entry lengths
+		 */
+		private RangeIndex(TLongList hashes, TLongList offsets, TIntList lengths) {
+			this.hashes = hashes.toArray();
+			hashes.clear();
+			this.offsets = offsets.toArray();
+			offsets.clear();
+			this.lengths = lengths.toArray();
+			lengths.clear();
+			sort(this.hashes, this.offsets, this.lengths, 0, this.hashes.length - 1);
+		}
+	}
+
+	/**
+	 * Task scanning a byte range of a FASTA file starting at a header line.
+	 */
+	private static class RangeScanner implements Callable<RangeIndex> {
+
+		/**
+		 * The FASTA file channel, read using absolute positions only.
+		 */
+		private final FileChannel channel;
+
+		/**
+		 * The start offset (inclusive).
+		 */
+		private final long start;
+
+		/**
+		 * The end offset (exclusive).
+		 */
+		private final long end;
+
+		/**
+		 * The shared progress counter.
+		 */
+		private final Progress progress;
+
+		/**
+		 * The accession hashes.
+		 */
+		private final TLongList hashes = new TLongArrayList();
+
+		/**
+		 * The entry offsets.
+		 */
+		private final TLongList offsets = new TLongArrayList();
+
+		/**
+		 * The entry lengths.
+		 */
+		private final TIntList lengths = new TIntArrayList();
+
+		/**
+		 * Creates a scanner of the specified byte range.
+		 * @param channel the FASTA file channel
+		 * @param start the start offset (inclusive)
+		 * @param end the end offset (exclusive)
+		 * @param progress the shared progress counter
+		 */
+		private RangeScanner(FileChannel channel, long start, long end, Progress progress) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.progress = progress;
+		}
+
+		@Override
+		public RangeIndex call() throws IOException {
+			ByteBuffer buf = ByteBuffer.allocate(1 << 20);
+			ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+			// file offset of the first buffer byte
+			long pos = start;
+			// offset and accession of the current entry
+			long entryStart = -1L;
+			String accession = null;
+			boolean lineStart = true;
+			boolean inHeader = false;
+			while (pos < end) {
+				buf.clear();
+				buf.limit((int) Math.min(buf.capacity(), end - pos));
+				int read = channel.read(buf, pos);
+				if (read <= 0) {
+					break;
+				}
+				byte[] array = buf.array();
+				for (int i = 0; i < read; i++) {
+					byte b = array[i];
+					if (inHeader) {
+						if (b == '\n') {
+							accession = parseAccession(headerBytes.toString("ISO-8859-1").trim());
+							inHeader = false;
+							lineStart = true;
+						} else {
+							headerBytes.write(b);
+						}
+					} else {
+						if (lineStart && (b == '>')) {
+							this.addEntry(accession, entryStart, pos + i);
+							entryStart = pos + i;
+							accession = null;
+							inHeader = true;
+							headerBytes.reset();
+							headerBytes.write(b);
+						}
+						lineStart = (b == '\n');
+					}
+				}
+				pos += read;
+				progress.add(read, hashes.size());
+			}
+			if (inHeader) {
+				accession = parseAccession(headerBytes.toString("ISO-8859-1").trim());
+			}
+			this.addEntry(accession, entryStart, pos);
+			return new RangeIndex(hashes, offsets, lengths);
+		}
+
+		/**
+		 * Adds an entry to the index lists if its accession is known.
+		 * @param accession the accession
+		 * @param entryStart the entry offset
+		 * @param entryEnd the offset following the entry
+		 */
+		private void addEntry(String accession, long entryStart, long entryEnd) {
+			if ((accession == null) || (entryStart < 0L)) {
+				return;
+			}
+			hashes.add(hash(accession));
+			offsets.add(entryStart);
+			lengths.add((int) (entryEnd - entryStart));
+		}
+	}
+
+	/**
+	 * Progress counter shared by the range scanners, reports every 5% of the
+	 * scanned file.
+	 */
+	private static class Progress {
+
+		/**
+		 * The total number of bytes.
+		 */
+		private final long total;
+
+		/**
+		 * The number of scanned bytes.
+		 */
+		private long scanned;
+
+		/**
+		 * The number of entries found by each scanner at its last report, keyed by thread.
+		 */
+		private final Map<Thread, Integer> entries = new HashMap<Thread, Integer>();
+
+		/**
+		 * The last reported percentage.
+		 */
+		private int percent;
+
+		/**
+		 * Creates a progress counter for the specified number of bytes.
+		 * @param total the total number of bytes
+		 */
+		private Progress(long total) {
+			this.total = total;
+		}
+
+		/**
+		 * Adds the specified number of scanned bytes.
+		 * @param bytes the number of scanned bytes
+		 * @param count the number of entries found so far by the calling scanner
+		 */
+		private synchronized void add(long bytes, int count) {
+			scanned += bytes;
+			entries.put(Thread.currentThread(), count);
+			int newPercent = (int) (100L * scanned / Math.max(1L, total));
+			if (newPercent >= percent + 5) {
+				percent = newPercent - newPercent % 5;
+				int sum = 0;
+				for (int value : entries.values()) {
+					sum += value;
+				}
+				System.out.println(percent + "% indexed, " + sum + " sequences parsed...");
+			}
+		}
+	}
+
+}
@@ -1,18 +1,8 @@
 package de.mpa.io.fasta;
 
-import gnu.trove.map.TObjectLongMap;
-import gnu.trove.map.hash.TObjectLongHashMap;
-
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import uk.ac.ebi.kraken.interfaces.uniprot.ProteinDescription;
 import uk.ac.ebi.kraken.interfaces.uniprot.UniProtEntry;
@@ -22,27 +12,21 @@ import uk.ac.ebi.kraken.interfaces.uniprot.description.Name;
 import uk.ac.ebi.kraken.uuw.services.remoting.EntryRetrievalService;
 import uk.ac.ebi.kraken.uuw.services.remoting.UniProtJAPI;
 
-import com.compomics.util.protein.Header;
 import com.compomics.util.protein.Protein;
 
 /**
- * Singleton class providing FASTA read/write capabilities via random access
- * file. 
+ * Singleton class providing FASTA read capabilities via a memory-mapped
+ * accession index (see {@link FastaIndex}).
  * Important: The main method is used for the indexfasta.jar executable.
  * 
- * @author Thilo Muth
+ * @author Thilo Muth, A. Behne
  */
 public class FastaLoader {
 	
 	/**
-	 * The accession-to-position map.
-	 */
-	private TObjectLongMap<String> acc2pos;
-	
-	/**
-	 * The random access file instance.
+	 * The accession index.
 	 */
-	private RandomAccessFile raf;
+	private FastaIndex index;
 
 	/**
 	 * The FASTA file instance.
@@ -154,165 +138,79 @@ public class FastaLoader {
 	 * @throws IOException 
 	 */
 	public Protein getProteinFromFasta(String id) throws IOException {
-		// No mapping provided.
-		if (acc2pos == null) {
+		// No index provided.
+		if (index == null) {
 			// No index file given.
 			if ((indexFile == null) || (file == null)) {
 				return getProteinFromWebService(id);
 			} else {
-				try {
-					readIndexFile();
-				} catch (ClassNotFoundException e) {
-					e.printStackTrace();
-					return null;
-				}
+				readIndexFile();
 			}
 		}
-		Long pos = acc2pos.get(id);
-
-		if (!acc2pos.containsKey(id) || pos == null)  {
-				System.out.println("Provided string does not match any protein entry: " + id);
-				return null;
-		}
-		if (raf == null) {
-			raf = new RandomAccessFile(file, "r");
-		}
-
-		raf.seek(pos);
-		String line = "";
-		String temp = "";
-
-		String header = "";
-		while ((line = raf.readLine()) != null) {
-			line = line.trim();
-
-			if (line.startsWith(">")) {
-				if (!temp.equals("")) {
-					break;
-				}
-				header = line;
-			} else {
-				temp += line;
-			}
+		Protein protein = index.getProtein(id);
+		if (protein == null) {
+			System.out.println("Provided string does not match any protein entry: " + id);
 		}
-		return new Protein(header, temp);
+		return protein;
 	}
 	
 	/**
-	 * Writes the FASTA index file to the disk.
-	 * @throws FileNotFoundException
+	 * Opens the FASTA index file. Index files of an outdated format are
+	 * rebuilt from the FASTA file.
 	 * @throws IOException
-	 * @throws ClassNotFoundException 
 	 */
-	public void writeIndexFile() throws FileNotFoundException, IOException, ClassNotFoundException {
-		indexFile = new File(file.getAbsolutePath() + ".fb");
-		
-		if (indexFile.exists()) {
-			FileInputStream fis = new FileInputStream(indexFile);
-			ObjectInputStream ois = new ObjectInputStream(fis);
-			@SuppressWarnings("unchecked")
-			TObjectLongHashMap<String> tempMap = (TObjectLongHashMap<String>) ois.readObject();
-			fis.close();
-			ois.close();
-			
-			// Add entries of old map
-			acc2pos.putAll(tempMap);
-			tempMap.clear();
-		}		
-		
-		ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(indexFile));
-		oos.writeObject(acc2pos);
-		oos.flush();
-		oos.close();
-		acc2pos.clear();
+	public void readIndexFile() throws IOException {
+		if (hasChanged || (index == null)) {
+			if (!FastaIndex.isIndexFile(indexFile)) {
+				System.out.println("Rebuilding outdated index file " + indexFile + "...");
+				FastaIndex.build(file, indexFile);
+			}
+			this.closeIndex();
+			index = new FastaIndex(file, indexFile);
+			hasChanged = false;
+		}
 	}
-	
+
 	/**
-	 * Read the FASTA index file and stores its contents to memory.
-	 * @throws IOException
-	 * @throws ClassNotFoundException
+	 * Indexes the FASTA file using one thread per available processor.
+	 * 
+	 * @throws FileNotFoundException
+	 *             when the file could not be found.
 	 */
-	@SuppressWarnings("unchecked")
-	public void readIndexFile() throws IOException, ClassNotFoundException {
-		if(hasChanged) {
-			FileInputStream fis = new FileInputStream(indexFile);
-			ObjectInputStream ois = new ObjectInputStream(fis);
-			
-			acc2pos = (TObjectLongHashMap<String>) ois.readObject();
-			fis.close();
-			ois.close();
-		}
-	
+	public void loadFastaFile() throws FileNotFoundException {
+		this.loadFastaFile(Runtime.getRuntime().availableProcessors());
 	}
 
 	/**
-	 * Loads the FASTA file by random access and maps accessions of found 
-	 * protein blocks to their respective byte positions in the file.
+	 * Indexes the FASTA file by scanning byte ranges concurrently, i.e. maps
+	 * accessions of found protein blocks to their respective byte positions
+	 * and lengths, and writes the index next to the FASTA file.
 	 * 
-	 * @param file The FASTA file.
+	 * @param threads the number of indexing threads
 	 * @throws FileNotFoundException
 	 *             when the file could not be found.
 	 */
-	public void loadFastaFile() throws FileNotFoundException {
+	public void loadFastaFile(int threads) throws FileNotFoundException {
+		if (!file.exists()) {
+			throw new FileNotFoundException(file.getAbsolutePath());
+		}
 		try {
-			// Initialize the random access file instance
-			raf = new RandomAccessFile(file, "r");
-			
-			// Initialize index maps
-			acc2pos = new TObjectLongHashMap<String>();
-			
-			// Get the first position at the beginning of the file
-			Long pos = raf.getFilePointer();
-			int count = 0;
-			// Iterate FASTA file line by line
-			String line;
-			while ((line = raf.readLine()) != null) {
-				// Check for header
-				if (line.startsWith(">")) {
-					// Parse header
-					Header header = Header.parseFromFASTA(line);	
-					// The following pattern should be used for the protein header:
-					// >DB|ACCESSION|SHORT_DESCRIPTION FULL_DESCRIPTION
-					Pattern pattern = Pattern.compile("^>\\w{2}\\|[^|]*\\|[^\\s]+_[^\\s]+ .*");
-					Matcher m = pattern.matcher(line);
-					if (!m.matches()) {
-						System.out.println("Incorrectly formatted protein header (Please use: >DB|ACCESSION|SHORT_DESCRIPTION FULL_DESCRIPTION)");
-						System.out.println(line);
-					}
-					 
-					// Add entry to mapping
-					acc2pos.put(header.getAccession(), pos);
-					count++;
-					if(count % 10000 == 0) {			
-						System.out.println(header.getDatabaseType().name() + " found as database type.");
-						System.out.println(count + " sequences parsed...");
-					} 	
-					if(count % 1000000 == 0) {						
-						System.out.println("Writing index file...");
-						writeIndexFile();
-					}
-
-				} else {
-					// End of the sequence part == Start of a new header
-					pos = raf.getFilePointer();
-				}
-			}
-			raf.close();	
-			raf = null;
+			this.closeIndex();
+			indexFile = new File(file.getAbsolutePath() + ".fb");
+			FastaIndex.build(file, indexFile, threads);
+			index = new FastaIndex(file, indexFile);
+			hasChanged = false;
 		} catch (IOException e) {
 			e.printStackTrace();
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		} 
-		
+		}
 	}
 
 	/**
-	 * Returns the accession-to-position index map.
-	 * @return indexMap The index map. 
+	 * Returns the accession index.
+	 * @return the index or <code>null</code> if no index has been loaded
 	 */
-	public TObjectLongMap<String> getIndexMap() {
-		return acc2pos;
+	public FastaIndex getIndex() {
+		return index;
 	}
 
 	/**
@@ -321,8 +219,22 @@ public class FastaLoader {
 	 */
 	public void setFastaFile(File file) {
 		this.file = file;
-		// reset map on change of FASTA file
-		this.acc2pos = null;
+		// reset index on change of FASTA file
+		this.closeIndex();
+	}
+	
+	/**
+	 * Closes and resets the current accession index.
+	 */
+	private void closeIndex() {
+		if (index != null) {
+			try {
+				index.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			index = null;
+		}
 	}
 	
 	
@@ -343,30 +255,35 @@ public class FastaLoader {
 		if (!indexFile.equals(this.indexFile)) {
 			this.indexFile = indexFile;
 			hasChanged = true;
-			// reset map on change of index file
-			this.acc2pos = null;
+			// reset index on change of index file
+			this.closeIndex();
 		}
 	}
 
 
 	/**
-	 * Utility method to load a specified FASTA file by hand.
+	 * Utility method to index a specified FASTA file by hand and report the
+	 * indexing throughput.
 	 * 
-	 * @param args String argument containing the path pointing to a FASTA file.
+	 * @param args String arguments containing the path pointing to a FASTA
+	 *  file and optionally the number of indexing threads.
 	 */
 	public static void main(String[] args) {
 		if (args.length < 1) {
 			System.err.println("No file provided.");
 		} else {
 			File file = new File(args[0]);
+			int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
 			FastaLoader fastaLoader = FastaLoader.getInstance();
 			fastaLoader.setFastaFile(file);
 			try {
-				System.out.print("Loading file... ");
-				fastaLoader.loadFastaFile();
-				System.out.print(" done.\nWriting final output... ");
-				fastaLoader.writeIndexFile();
-				System.out.println("done.");
+				System.out.println("Loading file using " + threads + " thread(s)... ");
+				long startTime = System.currentTimeMillis();
+				fastaLoader.loadFastaFile(threads);
+				double seconds = Math.max(1L, System.currentTimeMillis() - startTime) / 1000.0;
+				int entries = fastaLoader.getNumberOfEntries();
+				System.out.println(String.format("done. Indexed %d entries in %.1f s (%.1f MB/s, %.0f entries/s).",
+						entries, seconds, file.length() / 1048576.0 / seconds, entries / seconds));
 			} catch (Exception e) {
 				System.err.println("aborted.");
 				e.printStackTrace();
@@ -379,7 +296,7 @@ public class FastaLoader {
 	 * @return number of entries
 	 */
 	public int getNumberOfEntries() {
-		return acc2pos.size();
+		return index.size();
 	}
 	
 }
@@ -1,6 +1,6 @@
 package de.mpa.webservice;
 
-import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 import org.apache.log4j.Logger;
 
@@ -8,10 +8,12 @@ import de.mpa.db.job.JobStatus;
 
 /**
  * Custom collection to hold message strings to be transferred between client and server.
+ * Backed by a concurrent deque, as jobs running on several worker threads
+ * add messages while the server polls them.
  * 
  * @author T. Muth, A.Behne
  */
-public class MessageQueue extends ArrayDeque<String> {
+public class MessageQueue extends ConcurrentLinkedDeque<String> {
 
 	/**
 	 * The message queue singleton instance.
@@ -29,7 +31,7 @@ public class MessageQueue extends ArrayDeque<String> {
 	 * Returns the message queue singleton instance.
 	 * @return The message queue singleton instance.
 	 */
-	public static MessageQueue getInstance() {
+	public static synchronized MessageQueue getInstance() {
 		if (instance == null) {
 			instance = new MessageQueue();
 		}
@@ -40,6 +40,7 @@ import de.mpa.db.job.instances.InspectProcessingJob;
 import de.mpa.db.job.instances.OmssaJob;
 import de.mpa.db.job.instances.PercolatorJob;
 import de.mpa.db.job.instances.RenameJob;
+import de.mpa.db.job.instances.SpectrumStoreJob;
 import de.mpa.db.job.instances.StoreJob;
 import de.mpa.db.job.instances.UniProtJob;
 import de.mpa.db.job.instances.XTandemJob;
@@ -74,6 +75,21 @@ public class ServerImpl implements Server {
 	 */
 	private JobManager jobManager;
 
+	/**
+	 * The last Crux job of the current batch.
+	 */
+	private Job lastCruxJob;
+
+	/**
+	 * The last InsPecT post-processing job of the current batch.
+	 */
+	private Job lastInspectProcessingJob;
+
+	/**
+	 * The last InsPecT store job of the current batch.
+	 */
+	private Job lastInspectStoreJob;
+
 	/**
 	 * The RunOptions instance.
 	 */
@@ -104,21 +120,13 @@ public class ServerImpl implements Server {
 	}
 
 	/**
-	 * Adds database search jobs. 
-	 * @param filename The spectrum filename.
+	 * Prepares the FASTA database and the UniProt query protein map shared
+	 * by the database search jobs of all files of a batch.
 	 * @param dbSearchSettings The database search settings.
-	 * @throws Exception
 	 */
-	private void addDbSearchJobs(String filename, DbSearchSettings dbSearchSettings) {	
-		File file = new File(ServerProperties.getInstance().getProperty("path.transfer") + filename);
-		
-		// Get general parameters.
+	private void initDbSearch(DbSearchSettings dbSearchSettings) {
 		ServerProperties jobProperties = ServerProperties.getInstance();
 		String searchDB = dbSearchSettings.getFastaFile();
-		double fragIonTol = dbSearchSettings.getFragmentIonTol();
-		double precIonTol = dbSearchSettings.getPrecursorIonTol();
-		int nMissedCleavages = dbSearchSettings.getNumMissedCleavages();
-		boolean isPrecIonTolPpm = dbSearchSettings.isPrecursorIonUnitPpm();
 		
 		// The FASTA loader
 		FastaLoader fastaLoader = FastaLoader.getInstance();
@@ -138,77 +146,133 @@ public class ServerImpl implements Server {
 		
 		// Init protein map for UniProt entry retrieval.
 		MapContainer.UniprotQueryProteins = new HashMap<String, Long>();
+	}
+
+	/**
+	 * Adds database search jobs. The jobs of different search engines are
+	 * independent of each other, the jobs of each engine are chained by their
+	 * dependencies. Results are stored after the spectra have been stored.
+	 * @param filename The spectrum filename.
+	 * @param dbSearchSettings The database search settings.
+	 * @param spectrumStoreJob The job storing the spectra of the file.
+	 * @return The list of added jobs.
+	 */
+	private List<Job> addDbSearchJobs(String filename, DbSearchSettings dbSearchSettings, Job spectrumStoreJob) {	
+		File file = new File(ServerProperties.getInstance().getProperty("path.transfer") + filename);
+		List<Job> fileJobs = new ArrayList<Job>();
+		
+		// Get general parameters.
+		ServerProperties jobProperties = ServerProperties.getInstance();
+		String searchDB = dbSearchSettings.getFastaFile();
+		double fragIonTol = dbSearchSettings.getFragmentIonTol();
+		double precIonTol = dbSearchSettings.getPrecursorIonTol();
+		int nMissedCleavages = dbSearchSettings.getNumMissedCleavages();
+		boolean isPrecIonTolPpm = dbSearchSettings.isPrecursorIonUnitPpm();
 		
 		// X!Tandem job
 		if (dbSearchSettings.isXTandem()) {
 			Job xTandemJob = new XTandemJob(file, searchDB, dbSearchSettings.getXtandemParams(), fragIonTol, precIonTol, nMissedCleavages, isPrecIonTolPpm, SearchType.TARGET);
-			jobManager.addJob(xTandemJob);
+			scheduleJob(fileJobs, xTandemJob);
+			Job storeJob;
 			// Decoy search only
 			if (dbSearchSettings.isDecoy()) {
 				// The X!Tandem decoy search is added here
 				Job xTandemDecoyJob = new XTandemJob(file, searchDB, dbSearchSettings.getXtandemParams(), fragIonTol, precIonTol, nMissedCleavages, isPrecIonTolPpm, SearchType.DECOY);
-				jobManager.addJob(xTandemDecoyJob);
+				scheduleJob(fileJobs, xTandemDecoyJob);
 
 				// The score job evaluates X!Tandem target + decoy results
 				Job xTandemScoreJob = new XTandemScoreJob(xTandemJob.getFilename(), xTandemDecoyJob.getFilename());
-				jobManager.addJob(xTandemScoreJob);
+				scheduleJob(fileJobs, xTandemScoreJob, xTandemJob, xTandemDecoyJob);
 				
 				// Add store job
-				jobManager.addJob(new StoreJob(SearchEngineType.XTANDEM, xTandemJob.getFilename(), xTandemScoreJob.getFilename()));
+				storeJob = new StoreJob(SearchEngineType.XTANDEM, xTandemJob.getFilename(), xTandemScoreJob.getFilename());
+				scheduleJob(fileJobs, storeJob, xTandemScoreJob, spectrumStoreJob);
 			} else {
 				// Add store job
-				jobManager.addJob(new StoreJob(SearchEngineType.XTANDEM, xTandemJob.getFilename()));
+				storeJob = new StoreJob(SearchEngineType.XTANDEM, xTandemJob.getFilename());
+				scheduleJob(fileJobs, storeJob, xTandemJob, spectrumStoreJob);
 			}
 			// Clear the folders
-			jobManager.addJob(new DeleteJob(xTandemJob.getFilename()));
+			scheduleJob(fileJobs, new DeleteJob(xTandemJob.getFilename()), storeJob);
 		}
 		
 		// OMSSA job
 		if (dbSearchSettings.isOmssa()) {
 			Job omssaJob = new OmssaJob(file, searchDB, dbSearchSettings.getOmssaParams(), fragIonTol, precIonTol, nMissedCleavages, isPrecIonTolPpm, SearchType.TARGET);
-			jobManager.addJob(omssaJob);
+			scheduleJob(fileJobs, omssaJob);
+			Job storeJob;
 			
 			// Condition if decoy search is done here
 			if (dbSearchSettings.isDecoy()) {
 				// The Omssa decoy search is added here.
 				Job omssaDecoyJob = new OmssaJob(file, searchDB + "_decoy", dbSearchSettings.getOmssaParams(), fragIonTol, precIonTol, nMissedCleavages, isPrecIonTolPpm, SearchType.DECOY);
-				jobManager.addJob(omssaDecoyJob);
+				scheduleJob(fileJobs, omssaDecoyJob);
 				
 				// The score job evaluates Omssa target + decoy results.
 				Job omssaScoreJob = new OmssaScoreJob(omssaJob.getFilename(), omssaDecoyJob.getFilename());
-				jobManager.addJob(omssaScoreJob);
+				scheduleJob(fileJobs, omssaScoreJob, omssaJob, omssaDecoyJob);
 				
 				// Add store job.
-				jobManager.addJob(new StoreJob(SearchEngineType.OMSSA, omssaJob.getFilename(), omssaScoreJob.getFilename()));
+				storeJob = new StoreJob(SearchEngineType.OMSSA, omssaJob.getFilename(), omssaScoreJob.getFilename());
+				scheduleJob(fileJobs, storeJob, omssaScoreJob, spectrumStoreJob);
 			} else {
 				// Add store job.
-				jobManager.addJob(new StoreJob(SearchEngineType.OMSSA, omssaJob.getFilename()));
+				storeJob = new StoreJob(SearchEngineType.OMSSA, omssaJob.getFilename());
+				scheduleJob(fileJobs, storeJob, omssaJob, spectrumStoreJob);
 			}
 			// Clear the folders
-			jobManager.addJob(new DeleteJob(omssaJob.getFilename()));
+			scheduleJob(fileJobs, new DeleteJob(omssaJob.getFilename()), storeJob);
 		}
 		
 		// Crux job
 		if (dbSearchSettings.isCrux()) {
 			Job cruxJob = new CruxJob(file, searchDB, dbSearchSettings.getCruxParams(), fragIonTol, precIonTol, nMissedCleavages, isPrecIonTolPpm);
-			jobManager.addJob(cruxJob);
+			scheduleJob(fileJobs, cruxJob);
+			// Crux and Percolator use fixed output filenames, hence wait for the previous file's Crux jobs
+			if (lastCruxJob != null) {
+				jobManager.addPrecedence(lastCruxJob, cruxJob);
+			}
 			Job percolatorJob = new PercolatorJob(file);
-			jobManager.addJob(percolatorJob);
+			scheduleJob(fileJobs, percolatorJob, cruxJob);
 			String percolatorfile = jobProperties.getProperty("path.crux.output") + file.getName().substring(0, file.getName().length() - 4) + "_percolated.txt";
 			Job renameJob = new RenameJob(jobProperties.getProperty("path.crux.output") + "percolator.target.psms.txt", percolatorfile);
-			jobManager.addJob(renameJob);
-			jobManager.addJob(new StoreJob(SearchEngineType.CRUX, cruxJob.getFilename()));
+			scheduleJob(fileJobs, renameJob, percolatorJob);
+			lastCruxJob = renameJob;
+			scheduleJob(fileJobs, new StoreJob(SearchEngineType.CRUX, cruxJob.getFilename()), renameJob, spectrumStoreJob);
 		}
 		
 		// InsPecT job
 		if (dbSearchSettings.isInspect()) {
 			Job inspectJob = new InspectJob(file, searchDB, dbSearchSettings.getInspectParams(), precIonTol, isPrecIonTolPpm, fragIonTol);			
-			jobManager.addJob(inspectJob);			
+			scheduleJob(fileJobs, inspectJob);			
+			// The post-processing script processes the whole raw output folder, hence raw
+			// output must not be written while the previous file's post-processing runs
+			if (lastInspectProcessingJob != null) {
+				jobManager.addPrecedence(lastInspectProcessingJob, inspectJob);
+			}
 			Job postProcessorJob = new InspectProcessingJob(file);			
-			jobManager.addJob(postProcessorJob);			
-			jobManager.addJob(new StoreJob(SearchEngineType.INSPECT, postProcessorJob.getFilename()));
-		}		
-		jobManager.addJob(new UniProtJob());
+			scheduleJob(fileJobs, postProcessorJob, inspectJob);			
+			// ... and it rewrites all processed files, hence wait until the previous file's results are stored
+			if (lastInspectStoreJob != null) {
+				jobManager.addPrecedence(lastInspectStoreJob, postProcessorJob);
+			}
+			Job storeJob = new StoreJob(SearchEngineType.INSPECT, postProcessorJob.getFilename());
+			scheduleJob(fileJobs, storeJob, postProcessorJob, spectrumStoreJob);
+			lastInspectProcessingJob = postProcessorJob;
+			lastInspectStoreJob = storeJob;
+		}
+		return fileJobs;
+	}
+	
+	/**
+	 * Adds a job to the job manager queue and to the specified list.
+	 * @param jobs The list of jobs.
+	 * @param job The job to add.
+	 * @param dependencies The jobs which have to complete before the job is executed.
+	 */
+	private void scheduleJob(List<Job> jobs, Job job, Job... dependencies) {
+		jobManager.scheduleJob(job, dependencies);
+		jobs.add(job);
 	}
 
 //	/**
@@ -254,8 +318,15 @@ public class ServerImpl implements Server {
 				// Initialize the job manager
 				jobManager = JobManager.getInstance();
 				List<String> filenames = settings.getFilenames();
+				if (settings.isDatabase()) {
+					initDbSearch(settings.getDbss());
+				}
+				lastCruxJob = null;
+				lastInspectProcessingJob = null;
+				lastInspectStoreJob = null;
 				
-				// Iterate uploaded files
+				// Schedule the jobs of all uploaded files
+				List<Job> previousStoreJobs = new ArrayList<Job>();
 				int i = 1;
 				for (String filename : filenames) {
 					// Store uploaded spectrum files to DB
@@ -264,24 +335,53 @@ public class ServerImpl implements Server {
 					// Repair spectra
 //					repairSpectra(file, dbManager.getConnection());
 					
-					dbManager.storeSpectra(file, settings.getExpID());
+					// Spectrum storing replaces the shared spectrum ID maps, hence
+					// wait for the results of the previous file having been stored
+					Job spectrumStoreJob = new SpectrumStoreJob(file, settings.getExpID());
+					jobManager.scheduleJob(spectrumStoreJob);
+					for (Job storeJob : previousStoreJobs) {
+						jobManager.addPrecedence(storeJob, spectrumStoreJob);
+					}
+					List<Job> fileJobs = new ArrayList<Job>();
+					fileJobs.add(spectrumStoreJob);
 
 					// Add search jobs to job manager queue
 					if (settings.isDatabase()) {
-						addDbSearchJobs(filename, settings.getDbss());
+						fileJobs.addAll(addDbSearchJobs(filename, settings.getDbss(), spectrumStoreJob));
 					}
 //					if (settings.isSpecSim()) {
 //						addSpecSimSearchJob(storager.getSpectra(), settings.getSss());
 //					}
-
-					msgQueue.add(new Message(new CommonJob(JobStatus.RUNNING, "BATCH SEARCH " + i + "/" + filenames.size()), new Date()), log);
-					jobManager.run();
+					previousStoreJobs.clear();
+					for (Job job : fileJobs) {
+						if (job instanceof StoreJob) {
+							previousStoreJobs.add(job);
+						}
+					}
 					
-					msgQueue.add(new Message(new CommonJob(JobStatus.FINISHED, "BATCH SEARCH " + i + "/" + filenames.size()), new Date()), log);
+					// Report the progress of the file once all of its jobs have ended
+					String description = "BATCH SEARCH " + i + "/" + filenames.size();
+					Job batchJob = new CommonJob(JobStatus.WAITING, description) {
+						@Override
+						public void run() {
+							done();
+						}
+					};
+					jobManager.scheduleJob(batchJob);
+					for (Job job : fileJobs) {
+						jobManager.addPrecedence(job, batchJob);
+					}
+					msgQueue.add(new Message(new CommonJob(JobStatus.WAITING, description), new Date()), log);
 					i++;
-					runOptions.setRunCount(1);
 				}
-
+				jobManager.run();
+				
+				// Retrieve UniProt entries once the results of all files are stored
+				if (settings.isDatabase()) {
+					jobManager.addJob(new UniProtJob());
+					jobManager.run();
+				}
+				runOptions.setRunCount(1);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
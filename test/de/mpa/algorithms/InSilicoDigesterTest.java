@@ -0,0 +1,42 @@
+package de.mpa.algorithms;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import com.compomics.util.experiment.biology.Enzyme;
+
+import de.mpa.algorithms.quantification.InSilicoDigester;
+
+/**
+ * Tests the peptide counts of the in-silico digester against full digestion.
+ *
+ * @author A. Behne
+ */
+public class InSilicoDigesterTest extends TestCase {
+
+	private static final String[] SEQUENCES = {
+		"CVVMEKMERCGWVSQDPLYIAYHDNEWGVPETDSKKLFEMWVSQDICLEGQQAGLSWITVLKKRENYRACFHQFDPVKVAAMQEEDVERLVQDAGIIRHRGKIQAIIGNARAYLQMEQNGEPFVDFVWSFVNHQPQVTQATTLSEIPTSTSASDALSKALKKRGFKFVGTTICYSFMQACGLVNDHVVGCCCYPGNKP",
+		"AAAARPRBBBBKCCCC",
+		"PEPTIDEKPEPTIDEKPEPTIDEK",
+		"KRKRKR",
+		"MAK" };
+
+	@Test
+	public void testCountPeptides() {
+		Enzyme trypsin = new Enzyme(1, "Trypsin", "RK", "", "", "P");
+		for (String sequence : SEQUENCES) {
+			assertEquals(trypsin.digest(sequence, 0, 4, 1000).size(),
+					InSilicoDigester.TRYPSIN.countPeptides(sequence));
+			// cached count
+			assertEquals(trypsin.digest(sequence, 0, 4, 1000).size(),
+					InSilicoDigester.TRYPSIN.countPeptides(sequence));
+		}
+		InSilicoDigester digester = new InSilicoDigester(trypsin, 1, 5);
+		for (String sequence : SEQUENCES) {
+			assertEquals(trypsin.digest(sequence, 0, 1, 5).size(), digester.countPeptides(sequence));
+		}
+		assertEquals(1, InSilicoDigester.TRYPSIN.countPeptides("PEPTIDEKPEPTIDEKPEPTIDEK"));
+	}
+
+}
@@ -0,0 +1,208 @@
+package de.mpa.algorithms;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpa.algorithms.similarity.CrossCorrelation;
+import de.mpa.algorithms.similarity.EuclideanDistance;
+import de.mpa.algorithms.similarity.NormalizedDotProduct;
+import de.mpa.algorithms.similarity.PearsonCorrelation;
+import de.mpa.algorithms.similarity.SpectrumComparator;
+import de.mpa.algorithms.similarity.SpectrumVector;
+import de.mpa.algorithms.similarity.Transformation;
+import de.mpa.algorithms.similarity.VectorizationFactory;
+import de.mpa.io.MascotGenericFile;
+import de.mpa.io.MascotGenericFileReader;
+
+/**
+ * Tests the array-based comparator API against the map-based one.
+ *
+ * @author A. Behne
+ */
+public class SpectrumVectorTest extends TestCase {
+
+	MascotGenericFile spectrumA, spectrumB;
+
+	@Before
+	public void setUp() {
+		try {
+			File mgfFile = new File("test/de/mpa/resources/Test_30.mgf");
+			MascotGenericFileReader mgfReader = new MascotGenericFileReader(mgfFile);
+			List<MascotGenericFile> spectrumFiles = mgfReader.getSpectrumFiles();
+			spectrumA = spectrumFiles.get(1);
+			spectrumB = spectrumFiles.get(10);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	@Test
+	public void testConsolidate() {
+		SpectrumVector vec = new SpectrumVector(
+				new double[] { 3.0, 1.0, 2.0, 1.0 }, new double[] { 30.0, 10.0, 20.0, 5.0 });
+		assertEquals(3, vec.size());
+		assertEquals(1.0, vec.getMz(0));
+		assertEquals(15.0, vec.getIntensity(0));
+		assertEquals(3.0, vec.getMz(2));
+
+		vec.accumulate(2.5, 1.0);
+		vec.accumulate(2.0, 1.0);
+		assertEquals(4, vec.size());
+		assertEquals(21.0, vec.getIntensity(1));
+		assertEquals(2.5, vec.getMz(2));
+	}
+
+	@Test
+	public void testHighestPeaks() {
+		SpectrumVector vec = new SpectrumVector(
+				new double[] { 1.0, 2.0, 3.0, 4.0, 5.0 }, new double[] { 5.0, 50.0, 20.0, 20.0, 40.0 });
+		SpectrumVector highest = vec.getHighestPeaks(3);
+		assertEquals(3, highest.size());
+		assertEquals(2.0, highest.getMz(0));
+		assertEquals(3.0, highest.getMz(1));
+		assertEquals(5.0, highest.getMz(2));
+		assertEquals(5, vec.getHighestPeaks(0).size());
+
+		// compare against sorting-based reference
+		int k = 20;
+		SpectrumVector picked = spectrumA.getHighestPeakVector(k);
+		assertEquals(k, picked.size());
+		double[] intensities = spectrumA.getPeakVector().getIntensityArray().clone();
+		Arrays.sort(intensities, 0, spectrumA.getPeakVector().size());
+		double minPicked = Double.MAX_VALUE;
+		for (int i = 0; i < picked.size(); i++) {
+			minPicked = Math.min(minPicked, picked.getIntensity(i));
+		}
+		assertEquals(intensities[spectrumA.getPeakVector().size() - k], minPicked);
+		assertSame(picked, spectrumA.getHighestPeakVector(k));
+	}
+
+	@Test
+	public void testHighestPeaksTies() {
+		// intensities tied at the selection threshold are picked by ascending m/z
+		SpectrumVector vec = new SpectrumVector(
+				new double[] { 1.0, 2.0, 3.0, 4.0, 5.0, 6.0 }, new double[] { 20.0, 50.0, 20.0, 10.0, 20.0, 20.0 });
+		SpectrumVector highest = vec.getHighestPeaks(3);
+		assertEquals(3, highest.size());
+		assertEquals(1.0, highest.getMz(0));
+		assertEquals(2.0, highest.getMz(1));
+		assertEquals(3.0, highest.getMz(2));
+		assertEquals(20.0, highest.getIntensity(0));
+		assertEquals(50.0, highest.getIntensity(1));
+
+		// all intensities tied
+		vec = new SpectrumVector(
+				new double[] { 4.0, 3.0, 2.0, 1.0 }, new double[] { 7.0, 7.0, 7.0, 7.0 });
+		highest = vec.getHighestPeaks(2);
+		assertEquals(2, highest.size());
+		assertEquals(1.0, highest.getMz(0));
+		assertEquals(2.0, highest.getMz(1));
+
+		// k not below the number of peaks keeps all of them
+		assertEquals(4, vec.getHighestPeaks(4).size());
+		assertEquals(4, vec.getHighestPeaks(10).size());
+
+		// compare against sorting-based reference on coarse, heavily tied intensities
+		Random random = new Random(7L);
+		for (int run = 0; run < 50; run++) {
+			int size = 1 + random.nextInt(40);
+			double[] mz = new double[size];
+			double[] in = new double[size];
+			for (int i = 0; i < size; i++) {
+				mz[i] = 100.0 + i;
+				in[i] = random.nextInt(5);
+			}
+			int k = 1 + random.nextInt(size);
+			highest = new SpectrumVector(mz, in).getHighestPeaks(k);
+			assertEquals(k, highest.size());
+
+			// reference: stable sort by descending intensity, ties by ascending m/z
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			final double[] intensities = in;
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer o1, Integer o2) {
+					return Double.compare(intensities[o2], intensities[o1]);
+				}
+			});
+			boolean[] expected = new boolean[size];
+			for (int i = 0; i < k; i++) {
+				expected[order[i]] = true;
+			}
+			int j = 0;
+			for (int i = 0; i < size; i++) {
+				if (expected[i]) {
+					assertEquals(mz[i], highest.getMz(j));
+					assertEquals(in[i], highest.getIntensity(j));
+					j++;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testDirectBinning() {
+		assertSameScores(new EuclideanDistance(VectorizationFactory.createDirectBinning(1.0, 0.0), Transformation.SQRT));
+		assertSameScores(new NormalizedDotProduct(VectorizationFactory.createDirectBinning(1.0, 0.0), Transformation.NONE));
+		assertSameScores(new PearsonCorrelation(VectorizationFactory.createDirectBinning(1.0, 0.0), Transformation.LOG));
+	}
+
+	@Test
+	public void testProfiling() {
+		assertSameScores(new NormalizedDotProduct(VectorizationFactory.createProfiling(1.0, 0.0, 0, 2.0), Transformation.SQRT));
+		assertSameScores(new EuclideanDistance(VectorizationFactory.createProfiling(0.5, 0.2, 0, 1.0), Transformation.NONE));
+	}
+
+	@Test
+	public void testPeakMatching() {
+		SpectrumComparator specComp = new NormalizedDotProduct(VectorizationFactory.createPeakMatching(1.0), Transformation.NONE);
+		specComp.prepare(spectrumA.getPeakVector());
+		specComp.compareTo(spectrumA.getPeakVector());
+		assertEquals(1.0, specComp.getSimilarity(), 1e-9);
+		specComp.compareTo(spectrumB.getPeakVector());
+		double score = specComp.getSimilarity();
+		assertTrue((score > 0.0) && (score < 1.0));
+		specComp.getVectorization().cleanup();
+	}
+
+	@Test
+	public void testCrossCorrelation() {
+		double binWidth = 1.0;
+		CrossCorrelation method = new CrossCorrelation(VectorizationFactory.createDirectBinning(binWidth, 0.0), Transformation.SQRT, binWidth, 75);
+		method.prepare(spectrumA.getPeakVector());
+		method.compareTo(spectrumB.getPeakVector());
+		// overlapping offset contributions are summed up, hence the score 
+		// differs slightly from the map-based variant
+		assertEquals(0.0350820, method.getSimilarity(), 1e-6);
+	}
+
+	/**
+	 * Asserts that the map-based and array-based code paths of the specified
+	 * comparator yield identical scores.
+	 */
+	private void assertSameScores(SpectrumComparator specComp) {
+		specComp.prepare(spectrumA.getPeaks());
+		specComp.compareTo(spectrumB.getPeaks());
+		double expected = specComp.getSimilarity();
+
+		specComp.prepare(spectrumA.getPeakVector());
+		specComp.compareTo(spectrumB.getPeakVector());
+		assertEquals(expected, specComp.getSimilarity(), 1e-9);
+		// repeated comparisons re-use buffers and must not alter the result
+		specComp.compareTo(spectrumB.getPeakVector());
+		assertEquals(expected, specComp.getSimilarity(), 1e-9);
+	}
+
+}
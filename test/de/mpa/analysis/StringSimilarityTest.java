@@ -1,6 +1,7 @@
 package de.mpa.analysis;
 
 import java.util.HashSet;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -37,4 +38,75 @@ public class StringSimilarityTest extends TestCase{
 
 		assertEquals(true, true);
 	}
+
+	@Test
+	public void testBoundedDistance() {
+		assertEquals(1, StringSimilarity.calculateLevenshteinDistance("B", "AB"));
+		assertEquals(1, StringSimilarity.calculateLevenshteinDistance("AB", "B"));
+		assertEquals(3, StringSimilarity.calculateLevenshteinDistance("", "ABC"));
+		assertEquals(1, StringSimilarity.calculateLevenshteinDistance("EFLDPVEMADYNGNLVK", "EFLDPVEMADFNGNLVK", 2));
+		assertEquals(3, StringSimilarity.calculateLevenshteinDistance("ADAMIGAR", "ADREDMITFMATSGTK", 2));
+
+		// compare bounded against full distances of random peptides
+		Random random = new Random(42L);
+		String[] peptides = new String[500];
+		for (int i = 0; i < peptides.length; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = 6 + random.nextInt(15);
+			for (int j = 0; j < length; j++) {
+				sb.append("ACDEKLR".charAt(random.nextInt(7)));
+			}
+			peptides[i] = sb.toString();
+		}
+		for (int maxDistance = 0; maxDistance <= 3; maxDistance++) {
+			for (int i = 0; i < peptides.length; i++) {
+				String mutated = this.mutate(peptides[i], random);
+				int expected = Math.min(StringSimilarity.calculateLevenshteinDistance(peptides[i], mutated), maxDistance + 1);
+				assertEquals(expected, StringSimilarity.calculateLevenshteinDistance(peptides[i], mutated, maxDistance));
+				expected = Math.min(StringSimilarity.calculateLevenshteinDistance(peptides[i], peptides[0]), maxDistance + 1);
+				assertEquals(expected, StringSimilarity.calculateLevenshteinDistance(peptides[i], peptides[0], maxDistance));
+			}
+		}
+
+		// all-against-all comparison, run times are compared by StringSimilarity.main()
+		int full = 0;
+		for (String peptideA : peptides) {
+			for (String peptideB : peptides) {
+				if (StringSimilarity.calculateLevenshteinDistance(peptideA, peptideB) <= 2) {
+					full++;
+				}
+			}
+		}
+		int bounded = 0;
+		for (String peptideA : peptides) {
+			for (String peptideB : peptides) {
+				if (StringSimilarity.calculateLevenshteinDistance(peptideA, peptideB, 2) <= 2) {
+					bounded++;
+				}
+			}
+		}
+		assertEquals(full, bounded);
+	}
+
+	/**
+	 * Applies up to two random point mutations to the specified sequence.
+	 */
+	private String mutate(String sequence, Random random) {
+		StringBuilder sb = new StringBuilder(sequence);
+		int edits = random.nextInt(3);
+		for (int k = 0; k < edits; k++) {
+			int pos = random.nextInt(sb.length());
+			switch (random.nextInt(3)) {
+			case 0:
+				sb.deleteCharAt(pos);
+				break;
+			case 1:
+				sb.insert(pos, 'W');
+				break;
+			default:
+				sb.setCharAt(pos, 'W');
+			}
+		}
+		return sb.toString();
+	}
 }
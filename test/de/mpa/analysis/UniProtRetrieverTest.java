@@ -0,0 +1,269 @@
+package de.mpa.analysis;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests concurrent retrieval, retries and response caching of the UniProt
+ * retriever against a local HTTP stub of the UniProt REST interface.
+ *
+ * @author A. Behne
+ */
+public class UniProtRetrieverTest extends TestCase {
+
+	private static final int THREADS = 3;
+
+	private HttpServer server;
+	private File cacheDir;
+
+	private final AtomicInteger entryRequests = new AtomicInteger();
+	private final AtomicInteger unirefRequests = new AtomicInteger();
+	private final AtomicInteger activeRequests = new AtomicInteger();
+	private final AtomicInteger maxActiveRequests = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+	private volatile String release = "2015_05";
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/uniprot/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				int active = activeRequests.incrementAndGet();
+				try {
+					synchronized (maxActiveRequests) {
+						maxActiveRequests.set(Math.max(maxActiveRequests.get(), active));
+					}
+					String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+					StringBuilder response = new StringBuilder("Entry\tOrganism ID\tEC number\tKeywords\tCross-reference (KO)\tSequence\n");
+					Matcher matcher = Pattern.compile("accession:(\\w+)").matcher(query);
+					if (matcher.find()) {
+						entryRequests.incrementAndGet();
+						if (failures.getAndDecrement() > 0) {
+							send(exchange, 503, "");
+							return;
+						}
+						// simulate latency so that batches overlap
+						Thread.sleep(50L);
+						do {
+							// 'S' accessions are secondary accessions of 'P' entries, 'X' ones are unknown
+							String accession = matcher.group(1);
+							if (accession.startsWith("S")) {
+								accession = "P" + accession.substring(1);
+							}
+							if (!accession.startsWith("X")) {
+								response.append(accession).append("\t9606\t3.1.1.4; 3.1.1.5\tCalcium; Hydrolase\tK01047;\tMPEPTIDE")
+										.append(accession.length()).append('\n');
+							}
+						} while (matcher.find());
+					}
+					send(exchange, 200, response.toString());
+				} catch (InterruptedException e) {
+					send(exchange, 500, "");
+				} finally {
+					activeRequests.decrementAndGet();
+				}
+			}
+		});
+		server.createContext("/uniref/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				unirefRequests.incrementAndGet();
+				String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+				Matcher matcher = Pattern.compile("member:(\\w+)").matcher(query);
+				matcher.find();
+				String accession = matcher.group(1);
+				send(exchange, 200, "Cluster ID\nUniRef100_" + accession + "\nUniRef90_" + accession + "\nUniRef50_Q00001\n");
+			}
+		});
+		server.start();
+
+		cacheDir = File.createTempFile("uniprot", "cache");
+		cacheDir.delete();
+		cacheDir.mkdir();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		File[] files = cacheDir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		cacheDir.delete();
+	}
+
+	@Test
+	public void testConcurrentRetrievalAndCache() {
+		// 250 accessions in batches of 100, one of them unknown to the service
+		List<String> accessions = new ArrayList<String>();
+		for (int i = 0; i < 249; i++) {
+			accessions.add(String.format("P%05d", i));
+		}
+		accessions.add("X00000");
+
+		UniProtRetriever retriever = this.createRetriever();
+		Map<String, ReducedProteinData> proteinData = retriever.retrieve(accessions, false);
+		retriever.shutdown();
+		assertEquals(249, proteinData.size());
+		// the unknown accession is requested once more on its own
+		assertEquals(4, entryRequests.get());
+		assertEquals(0, unirefRequests.get());
+		assertTrue(maxActiveRequests.get() > 1);
+		assertTrue(maxActiveRequests.get() <= THREADS);
+
+		ReducedProteinData data = proteinData.get("P00042");
+		assertEquals("P00042", data.getAccession());
+		assertEquals(Long.valueOf(9606L), data.getTaxID());
+		assertEquals("3.1.1.4;3.1.1.5", data.getEcNumbers());
+		assertEquals("K01047", data.getKoNumbers());
+		assertEquals("Calcium;Hydrolase", data.getKeywords());
+		assertEquals("MPEPTIDE6", data.getSequence());
+		assertNull(data.getUniRef100EntryId());
+
+		// a new retriever on the same release reads everything from the cache
+		retriever = this.createRetriever();
+		proteinData = retriever.retrieve(accessions.subList(0, 249), false);
+		assertEquals(249, retriever.getCacheSize());
+		retriever.shutdown();
+		assertEquals(249, proteinData.size());
+		assertEquals(4, entryRequests.get());
+		assertEquals("MPEPTIDE6", proteinData.get("P00042").getSequence());
+
+		// cached entries lacking UniRef IDs are requested again
+		retriever = this.createRetriever();
+		proteinData = retriever.retrieve(Arrays.asList("P00001", "P00002"), true);
+		assertEquals(5, entryRequests.get());
+		assertEquals(2, unirefRequests.get());
+		assertEquals("UniRef90_P00001", proteinData.get("P00001").getUniRef90EntryId());
+		proteinData = retriever.retrieve(Arrays.asList("P00001", "P00002"), true);
+		assertEquals(5, entryRequests.get());
+		assertEquals("UniRef50_Q00001", proteinData.get("P00002").getUniRef50EntryId());
+
+		// a new release served while running starts a new cache
+		release = "2015_06";
+		proteinData = retriever.retrieve(Arrays.asList("P00001"), false);
+		assertEquals(6, entryRequests.get());
+		assertEquals(1, retriever.getCacheSize());
+		retriever.shutdown();
+		assertEquals(2, cacheDir.listFiles().length);
+	}
+
+	@Test
+	public void testSecondaryAccessions() {
+		UniProtRetriever retriever = this.createRetriever();
+		Map<String, ReducedProteinData> proteinData = retriever.retrieve(
+				Arrays.asList("S00007", "P00008", "P00009", "S00009"), false);
+		retriever.shutdown();
+		// one batch and one single request per secondary accession
+		assertEquals(3, entryRequests.get());
+		assertEquals(3, proteinData.size());
+		assertEquals(Arrays.asList("S00007"), proteinData.get("P00007").getSecondaryAccessions());
+		assertEquals(Arrays.asList("S00009"), proteinData.get("P00009").getSecondaryAccessions());
+		assertTrue(proteinData.get("P00008").getSecondaryAccessions().isEmpty());
+
+		// secondary accessions are cached, too
+		retriever = this.createRetriever();
+		proteinData = retriever.retrieve(Arrays.asList("S00007", "S00009"), false);
+		retriever.shutdown();
+		assertEquals(3, entryRequests.get());
+		assertEquals(2, proteinData.size());
+		assertEquals("P00007", proteinData.get("P00007").getAccession());
+	}
+
+	@Test
+	public void testCompaction() {
+		UniProtRetriever retriever = this.createRetriever();
+		retriever.retrieve(Arrays.asList("P00001"), false);
+		// the entry is re-requested for its UniRef IDs, superseding the first record
+		retriever.retrieve(Arrays.asList("P00001"), true);
+		retriever.shutdown();
+		assertEquals(2, entryRequests.get());
+		File cacheFile = cacheDir.listFiles()[0];
+		long length = cacheFile.length();
+
+		retriever = this.createRetriever();
+		Map<String, ReducedProteinData> proteinData = retriever.retrieve(Arrays.asList("P00001"), true);
+		assertEquals(1, retriever.getCacheSize());
+		retriever.shutdown();
+		assertEquals(2, entryRequests.get());
+		assertEquals("UniRef100_P00001", proteinData.get("P00001").getUniRef100EntryId());
+		assertTrue(cacheFile.length() < length);
+		assertEquals(1, cacheDir.listFiles().length);
+	}
+
+	@Test
+	public void testOutdatedCacheFile() throws IOException {
+		// cache file of a previous format version
+		DataOutputStream dos = new DataOutputStream(new FileOutputStream(new File(cacheDir, "uniprot-" + release + ".cache")));
+		dos.writeInt(0x4D504143);
+		dos.writeInt(1);
+		dos.writeUTF("P00001");
+		dos.close();
+
+		UniProtRetriever retriever = this.createRetriever();
+		assertEquals(1, retriever.retrieve(Arrays.asList("P00001"), false).size());
+		retriever.shutdown();
+		retriever = this.createRetriever();
+		assertEquals(1, retriever.retrieve(Arrays.asList("P00001"), false).size());
+		retriever.shutdown();
+		assertEquals(1, entryRequests.get());
+	}
+
+	@Test
+	public void testRetries() {
+		failures.set(2);
+		UniProtRetriever retriever = this.createRetriever();
+		Map<String, ReducedProteinData> proteinData = retriever.retrieve(Arrays.asList("P00001"), false);
+		assertEquals(1, proteinData.size());
+		assertEquals(3, entryRequests.get());
+
+		// exhausted retries omit the batch
+		failures.set(5);
+		proteinData = retriever.retrieve(Arrays.asList("P00002"), false);
+		retriever.shutdown();
+		assertTrue(proteinData.isEmpty());
+		assertEquals(6, entryRequests.get());
+	}
+
+	private UniProtRetriever createRetriever() {
+		String url = "http://localhost:" + server.getAddress().getPort();
+		return new UniProtRetriever(new HttpEntrySource(url), cacheDir, THREADS, 2, 10L);
+	}
+
+	private void send(HttpExchange exchange, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().add(HttpEntrySource.RELEASE_HEADER, release);
+		exchange.sendResponseHeaders(code, (bytes.length == 0) ? -1 : bytes.length);
+		OutputStream os = exchange.getResponseBody();
+		os.write(bytes);
+		os.close();
+	}
+
+}
@@ -0,0 +1,151 @@
+package de.mpa.analysis;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the import and lookup of the local UniProt annotation store.
+ *
+ * @author A. Behne
+ */
+public class UniProtStoreTest extends TestCase {
+
+	private File datFile;
+	private File idMappingFile;
+	private File storeFile;
+
+	@Before
+	public void setUp() throws IOException {
+		datFile = File.createTempFile("uniprot", ".dat");
+		this.write(datFile,
+				"ID   001R_FRG3G              Reviewed;         256 AA.\n" +
+				"AC   Q6GZX4;\n" +
+				"DE   RecName: Full=Putative transcription factor 001R;\n" +
+				"OS   Frog virus 3 (isolate Goorha) (FV-3).\n" +
+				"OX   NCBI_TaxID=654924;\n" +
+				"KW   Activator; Complete proteome; Reference proteome; Transcription;\n" +
+				"KW   Transcription regulation.\n" +
+				"SQ   SEQUENCE   256 AA;  29735 MW;  B4840739BF7D4121 CRC64;\n" +
+				"     MAFSAEDVLK EYDRRRRMEA LLLSLYYPND RKLLDYKEWS PPRVQVECPK APVEWNNPPS\n" +
+				"//\n" +
+				"ID   PA21B_PIG               Reviewed;         146 AA.\n" +
+				"AC   P00592; Q9TR15;\n" +
+				"AC   Q9TR16;\n" +
+				"DE   RecName: Full=Phospholipase A2, major isoenzyme;\n" +
+				"DE            EC=3.1.1.4 {ECO:0000269|PubMed:11237599};\n" +
+				"OX   NCBI_TaxID=9823 {ECO:0000313|EMBL:AAT09660.1};\n" +
+				"DR   KO; K01047; -.\n" +
+				"KW   Calcium {ECO:0000256|SAAS:SAAS00071424}; Hydrolase.\n" +
+				"//\n");
+		idMappingFile = File.createTempFile("idmapping", ".tab");
+		this.write(idMappingFile,
+				"Q6GZX4\t001R_FRG3G\t2947773\tYP_031579.1\t81941549\t\tGO:0006355\tUniRef100_Q6GZX4\tUniRef90_Q6GZX4\tUniRef50_Q6GZX4\tUPI00003B0FD4\t\t654924\n");
+		storeFile = File.createTempFile("uniprot", ".bin");
+		storeFile.deleteOnExit();
+	}
+
+	@Test
+	public void testImportAndLookup() throws IOException {
+		assertEquals(2, UniProtStore.build(datFile, idMappingFile, storeFile));
+		UniProtStore store = new UniProtStore(storeFile);
+		try {
+			assertEquals(2, store.size());
+
+			ReducedProteinData data = store.getProteinData("Q6GZX4");
+			assertEquals("Q6GZX4", data.getAccession());
+			assertEquals(Long.valueOf(654924L), data.getTaxID());
+			assertEquals("Activator;Complete proteome;Reference proteome;Transcription;Transcription regulation", data.getKeywords());
+			assertEquals("", data.getEcNumbers());
+			assertEquals("UniRef100_Q6GZX4", data.getUniRef100EntryId());
+			assertEquals("UniRef50_Q6GZX4", data.getUniRef50EntryId());
+
+			// secondary accessions resolve to the primary entry
+			data = store.getProteinData("Q9TR16");
+			assertEquals("P00592", data.getAccession());
+			assertEquals(2, data.getSecondaryAccessions().size());
+			assertEquals(Long.valueOf(9823L), data.getTaxID());
+			assertEquals("3.1.1.4", data.getEcNumbers());
+			assertEquals("K01047", data.getKoNumbers());
+			assertEquals("Calcium;Hydrolase", data.getKeywords());
+			assertNull(data.getUniRef90EntryId());
+
+			assertNull(store.getProteinData("P12345"));
+		} finally {
+			store.close();
+		}
+	}
+
+	@Test
+	public void testRetrievalWithoutUniRefs() throws IOException {
+		// entries lacking UniRef IDs must not be requested remotely
+		UniProtStore.build(datFile, null, storeFile);
+		UniProtStore store = new UniProtStore(storeFile);
+		UniProtStore.setInstance(store);
+		try {
+			Map<String, ReducedProteinData> proteinData =
+					UniProtUtilities.retrieveProteinData(Arrays.asList("Q6GZX4", "Q9TR15"), true);
+			assertEquals(2, proteinData.size());
+			assertNull(proteinData.get("Q6GZX4").getUniRef100EntryId());
+			assertEquals(Long.valueOf(9823L), proteinData.get("P00592").getTaxID());
+		} finally {
+			UniProtStore.setInstance(null);
+			store.close();
+		}
+	}
+
+	@Test
+	public void testOversizedAnnotations() throws IOException {
+		// keywords beyond the 64 KB limit of modified UTF-8 strings and beyond the record string limit
+		this.write(datFile,
+				"AC   Q6GZX4;\n" + "OX   NCBI_TaxID=654924;\n" + this.keywordLines(8000) + "//\n" +
+				"AC   P00592;\n" + "OX   NCBI_TaxID=9823;\n" + this.keywordLines(20000) + "//\n" +
+				"AC   P12345;\n" + "OX   NCBI_TaxID=9606;\n" + "KW   Hydrolase.\n" + "//\n");
+		assertEquals(3, UniProtStore.build(datFile, null, storeFile));
+		UniProtStore store = new UniProtStore(storeFile);
+		try {
+			String[] keywords = store.getProteinData("Q6GZX4").getKeywords().split(";");
+			assertEquals(8000, keywords.length);
+			assertEquals("Keyword07999", keywords[7999]);
+
+			// oversized strings are cut after the last complete value
+			keywords = store.getProteinData("P00592").getKeywords().split(";");
+			assertTrue(keywords.length > 8000);
+			assertTrue(keywords.length < 20000);
+			assertEquals(String.format("Keyword%05d", keywords.length - 1), keywords[keywords.length - 1]);
+
+			ReducedProteinData data = store.getProteinData("P12345");
+			assertEquals(Long.valueOf(9606L), data.getTaxID());
+			assertEquals("Hydrolase", data.getKeywords());
+		} finally {
+			store.close();
+		}
+	}
+
+	/**
+	 * Returns flat file keyword lines containing the specified number of keywords.
+	 */
+	private String keywordLines(int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append((i % 5 == 0) ? "KW   " : " ").append(String.format("Keyword%05d", i));
+			sb.append((i == count - 1) ? ".\n" : (i % 5 == 4) ? ";\n" : ";");
+		}
+		return sb.toString();
+	}
+
+	private void write(File file, String content) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		writer.write(content);
+		writer.close();
+		file.deleteOnExit();
+	}
+
+}
@@ -0,0 +1,104 @@
+package de.mpa.client.model;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpa.client.model.dbsearch.DbSearchResult;
+import de.mpa.client.model.dbsearch.ProteinHit;
+import de.mpa.db.StubConnection;
+import de.mpa.db.StubConnection.StubStatement;
+import de.mpa.db.accessor.PeptideAccessor;
+import de.mpa.db.accessor.ProteinAccessor;
+import de.mpa.db.accessor.SearchHit;
+import de.mpa.db.extractor.SearchHitExtractor;
+import de.mpa.db.extractor.SearchHitExtractor.SearchHitHandler;
+import de.mpa.db.extractor.SearchResultExtractor;
+
+/**
+ * Tests building experiment results from streamed search hits against a
+ * connection stub rejecting statements while a stream is open.
+ *
+ * @author A. Behne
+ */
+public class DatabaseExperimentTest extends TestCase {
+
+	private static final int HIT_COUNT = 2500;
+	private static final int PEPTIDE_COUNT = 100;
+	private static final int PROTEIN_COUNT = 40;
+
+	private StubConnection stub;
+
+	@Before
+	public void setUp() {
+		stub = new StubConnection();
+		List<Object[]> hits = new ArrayList<Object[]>();
+		for (int i = 0; i < HIT_COUNT; i++) {
+			long peptideID = i % PEPTIDE_COUNT + 1;
+			long proteinID = i % PROTEIN_COUNT + 1;
+			hits.add(new Object[] { i % 5, (long) (i / 2 + 1), peptideID, proteinID,
+					"PEPTIDE" + peptideID, "P" + proteinID, 50.0, 0.01, 2L });
+		}
+		stub.setResult("SELECT 0, x.fk_searchspectrumid", new String[9], hits);
+
+		List<Object[]> peptides = new ArrayList<Object[]>();
+		for (long peptideID = 1L; peptideID <= PEPTIDE_COUNT; peptideID++) {
+			peptides.add(new Object[] { peptideID, "PEPTIDE" + peptideID, null, null });
+		}
+		stub.setResult(PeptideAccessor.getBasicSelect(),
+				new String[] { "peptideid", "sequence", "creationdate", "modificationdate" }, peptides);
+
+		List<Object[]> proteins = new ArrayList<Object[]>();
+		for (long proteinID = 1L; proteinID <= PROTEIN_COUNT; proteinID++) {
+			proteins.add(new Object[] { proteinID, "P" + proteinID, "protein " + proteinID, "MPEPTIDEK", "", null, null });
+		}
+		stub.setResult(ProteinAccessor.getBasicSelect(), new String[] { "proteinid", "accession",
+				"description", "sequence", "source", "creationdate", "modificationdate" }, proteins);
+	}
+
+	@Test
+	public void testStreamBlocksConnection() throws SQLException {
+		// looking up entities while hits are streamed is rejected
+		try {
+			SearchHitExtractor.streamSearchHitsFromExperimentID(42L, stub.getConnection(), new SearchHitHandler() {
+				@Override
+				public void handle(SearchHit searchHit) throws SQLException {
+					TLongSet peptideIDs = new TLongHashSet(new long[] { searchHit.getFk_peptideid() });
+					SearchResultExtractor.findPeptides(peptideIDs, stub.getConnection());
+				}
+			});
+			fail();
+		} catch (SQLException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testAddSearchHits() throws SQLException {
+		DatabaseExperiment experiment = new DatabaseExperiment(42L, "experiment", new Date(), null, null);
+		DbSearchResult result = new DbSearchResult("project", "experiment", null);
+		experiment.addSearchHits(result, stub.getConnection());
+
+		assertEquals(PROTEIN_COUNT, result.getProteinHits().size());
+		for (ProteinHit proteinHit : result.getProteinHits().values()) {
+			assertEquals("protein " + proteinHit.getAccession().substring(1), proteinHit.getDescription());
+		}
+		assertEquals(PEPTIDE_COUNT, result.getMetaProteins().getPeptideSet().size());
+
+		// entities referenced by later chunks have been loaded already
+		List<StubStatement> peptideSelects = stub.getStatements(PeptideAccessor.getBasicSelect());
+		assertEquals(1, peptideSelects.size());
+		assertEquals(PEPTIDE_COUNT, peptideSelects.get(0).getExecutions().get(0).size());
+		assertTrue(stub.isAllClosed());
+	}
+
+}
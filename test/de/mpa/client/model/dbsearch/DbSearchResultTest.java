@@ -0,0 +1,109 @@
+package de.mpa.client.model.dbsearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpa.algorithms.quantification.NormalizedSpectralAbundanceFactor;
+import de.mpa.analysis.ProteinAnalysis;
+
+/**
+ * Tests the assembly of search results from individual search hits.
+ *
+ * @author A. Behne
+ */
+public class DbSearchResultTest extends TestCase {
+
+	private DbSearchResult result;
+
+	@Before
+	public void setUp() {
+		result = new DbSearchResult("project", "experiment", null);
+		this.addHit(SearchEngineType.XTANDEM, 1L, "PEPA", "P1");
+		this.addHit(SearchEngineType.OMSSA, 1L, "PEPA", "P1");
+		this.addHit(SearchEngineType.XTANDEM, 1L, "PEPA", "P2");
+		this.addHit(SearchEngineType.XTANDEM, 2L, "PEPB", "P2");
+	}
+
+	@Test
+	public void testLookups() {
+		assertEquals(2, result.getMetaProteins().size());
+		assertEquals("P1", result.getProteinHit("P1").getAccession());
+		assertNull(result.getProteinHit("P3"));
+
+		PeptideHit peptideHit = result.getPeptideHit("PEPA");
+		assertEquals(2, peptideHit.getProteinCount());
+		assertSame(peptideHit, result.getProteinHit("P2").getPeptideHit("PEPA"));
+		assertNull(result.getPeptideHit("PEPC"));
+
+		assertEquals(2, result.getSpectrumMatch("PEPA1").getSearchHits().size());
+		assertNotNull(result.getSpectrumMatch("PEPB2"));
+		assertNull(result.getSpectrumMatch("PEPB1"));
+	}
+
+	@Test
+	public void testDeserializedLookups() throws Exception {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(result);
+		oos.close();
+		ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+		DbSearchResult copy = (DbSearchResult) ois.readObject();
+		ois.close();
+
+		assertNotNull(copy.getProteinHit("P2"));
+		assertNotNull(copy.getSpectrumMatch("PEPB2"));
+		this.addHit(copy, SearchEngineType.CRUX, 2L, "PEPB", "P2");
+		assertEquals(2, copy.getSpectrumMatch("PEPB2").getSearchHits().size());
+		assertEquals(2, copy.getMetaProteins().size());
+	}
+
+	@Test
+	public void testLabelFreeQuantification() {
+		DbSearchResult res = new DbSearchResult("project", "experiment", null);
+		this.addHit(res, SearchEngineType.XTANDEM, 1L, "AAAAK", "P1", "AAAAKCCCCKFFFFF");
+		this.addHit(res, SearchEngineType.XTANDEM, 2L, "CCCCK", "P1", "AAAAKCCCCKFFFFF");
+		this.addHit(res, SearchEngineType.XTANDEM, 3L, "DDDDDK", "P2", "DDDDDKMMMMMMMMMMMM");
+
+		ProteinHit p1 = res.getProteinHit("P1"), p2 = res.getProteinHit("P2");
+		double nsaf1 = ProteinAnalysis.calculateLabelFree(new NormalizedSpectralAbundanceFactor(), res.getProteinHits(), p1);
+		double nsaf2 = ProteinAnalysis.calculateLabelFree(new NormalizedSpectralAbundanceFactor(), res.getProteinHits(), p2);
+
+		ProteinAnalysis.calculateLabelFree(res);
+		assertEquals(nsaf1, p1.getNSAF(), 1e-9);
+		assertEquals(nsaf2, p2.getNSAF(), 1e-9);
+		assertEquals(1.0, p1.getNSAF() + p2.getNSAF(), 1e-9);
+		assertEquals(2, p1.getSpectralCount());
+		assertTrue(p1.getEmPAI() > p2.getEmPAI());
+
+		// requantification discards cached spectral counts and emPAIs
+		double emPAI1 = p1.getEmPAI();
+		this.addHit(res, SearchEngineType.XTANDEM, 4L, "FFFFF", "P1", "AAAAKCCCCKFFFFF");
+		ProteinAnalysis.calculateLabelFree(res);
+		assertEquals(3, p1.getSpectralCount());
+		assertTrue(p1.getEmPAI() > emPAI1);
+		assertEquals(ProteinAnalysis.calculateLabelFree(new NormalizedSpectralAbundanceFactor(), res.getProteinHits(), p2),
+				p2.getNSAF(), 1e-9);
+	}
+
+	private void addHit(SearchEngineType type, long spectrumID, String sequence, String accession) {
+		this.addHit(result, type, spectrumID, sequence, accession);
+	}
+
+	private void addHit(DbSearchResult res, SearchEngineType type, long spectrumID, String sequence, String accession) {
+		this.addHit(res, type, spectrumID, sequence, accession, "");
+	}
+
+	private void addHit(DbSearchResult res, SearchEngineType type, long spectrumID, String sequence, String accession, String proteinSequence) {
+		ReducedSearchHit hit = new ReducedSearchHit(type, spectrumID, 0L, 0L, sequence, accession, 1.0, 0.0, 2L);
+		PeptideHit peptideHit = new PeptideHit(sequence, new PeptideSpectrumMatch(spectrumID, hit));
+		res.addProtein(new ProteinHit(accession, "", proteinSequence, peptideHit, null, null, 1L));
+	}
+
+}
@@ -0,0 +1,61 @@
+package de.mpa.client.model.dbsearch;
+
+import gnu.trove.list.TIntList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the candidate filtering of the Levenshtein index against exhaustive
+ * pairwise comparison.
+ *
+ * @author A. Behne
+ */
+public class LevenshteinIndexTest extends TestCase {
+
+	private List<String> sequences;
+
+	@Before
+	public void setUp() {
+		// random peptides over a small alphabet yield many similar pairs
+		Random random = new Random(42L);
+		sequences = new ArrayList<String>();
+		for (int i = 0; i < 300; i++) {
+			int length = 1 + random.nextInt(12);
+			StringBuilder sb = new StringBuilder(length);
+			for (int j = 0; j < length; j++) {
+				sb.append("AKLR".charAt(random.nextInt(4)));
+			}
+			sequences.add(sb.toString());
+		}
+	}
+
+	@Test
+	public void testFindSimilar() {
+		for (int maxDistance = 1; maxDistance <= 3; maxDistance++) {
+			LevenshteinIndex index = new LevenshteinIndex(maxDistance);
+			for (int i = 0; i < sequences.size(); i++) {
+				String sequence = sequences.get(i);
+				TIntList similar = index.findSimilar(sequence);
+				int expected = 0;
+				for (int j = 0; j < i; j++) {
+					boolean isSimilar = MetaProteinFactory.computeLevenshteinDistance(
+							sequence, sequences.get(j)) <= maxDistance;
+					assertEquals(isSimilar, similar.contains(j));
+					if (isSimilar) {
+						expected++;
+					}
+				}
+				assertEquals(expected, similar.size());
+				assertEquals(i, index.add(sequence));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+package de.mpa.client.model.dbsearch;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpa.client.Client;
+import de.mpa.client.model.dbsearch.MetaProteinFactory.ClusterRule;
+import de.mpa.client.model.dbsearch.MetaProteinFactory.PeptideRule;
+import de.mpa.client.model.dbsearch.MetaProteinFactory.TaxonomyRule;
+
+/**
+ * Tests the condensing of meta-proteins via connected components against the
+ * pairwise condensing on the same input.
+ *
+ * @author A. Behne
+ */
+public class MetaProteinFactoryTest extends TestCase {
+
+	private static final int PROTEIN_COUNT = 150;
+
+	@Before
+	public void setUp() {
+		Client.init(false, false);
+	}
+
+	@After
+	public void tearDown() {
+		// peptide rules are shared enum constants
+		for (PeptideRule peptideRule : PeptideRule.values()) {
+			peptideRule.setMaximumDistance(0);
+			peptideRule.setDistinctIL(false);
+		}
+	}
+
+	@Test
+	public void testCondenseComponents() {
+		ClusterRule[] clusterRules = { ClusterRule.NEVER, ClusterRule.ALWAYS, ClusterRule.UNIREF50 };
+		PeptideRule[] peptideRules = { PeptideRule.NEVER, PeptideRule.ALWAYS, PeptideRule.SHARED_PEPTIDE };
+		TaxonomyRule[] taxonomyRules = { TaxonomyRule.NEVER, TaxonomyRule.ALWAYS };
+		for (ClusterRule clusterRule : clusterRules) {
+			for (PeptideRule peptideRule : peptideRules) {
+				for (TaxonomyRule taxonomyRule : taxonomyRules) {
+					for (int maxDistance = 0; maxDistance <= 2; maxDistance++) {
+						peptideRule.setMaximumDistance(maxDistance);
+						for (boolean distinctIL : new boolean[] { false, true }) {
+							peptideRule.setDistinctIL(distinctIL);
+
+							ProteinHitList pairwise = this.createMetaProteins();
+							MetaProteinFactory.condensePairwise(pairwise, clusterRule, peptideRule, taxonomyRule);
+							ProteinHitList components = this.createMetaProteins();
+							MetaProteinFactory.condenseComponents(components, clusterRule, peptideRule, taxonomyRule);
+
+							String rules = clusterRule.name() + "/" + peptideRule.name() + "/" + taxonomyRule.name()
+									+ "/" + maxDistance + "/" + distinctIL;
+							assertEquals(rules, this.getGroups(pairwise), this.getGroups(components));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFixtureMerges() {
+		// shared and similar peptides yield groups of various sizes
+		PeptideRule.SHARED_PEPTIDE.setDistinctIL(true);
+		ProteinHitList exact = this.createMetaProteins();
+		MetaProteinFactory.condenseComponents(exact, ClusterRule.UNIREF50, PeptideRule.SHARED_PEPTIDE, TaxonomyRule.ALWAYS);
+		assertTrue(exact.size() < PROTEIN_COUNT);
+
+		PeptideRule.SHARED_PEPTIDE.setDistinctIL(false);
+		ProteinHitList mergedIL = this.createMetaProteins();
+		MetaProteinFactory.condenseComponents(mergedIL, ClusterRule.UNIREF50, PeptideRule.SHARED_PEPTIDE, TaxonomyRule.ALWAYS);
+		assertTrue(mergedIL.size() < exact.size());
+
+		PeptideRule.SHARED_PEPTIDE.setMaximumDistance(1);
+		ProteinHitList similar = this.createMetaProteins();
+		MetaProteinFactory.condenseComponents(similar, ClusterRule.UNIREF50, PeptideRule.SHARED_PEPTIDE, TaxonomyRule.ALWAYS);
+		assertTrue(similar.size() < mergedIL.size());
+		assertTrue(similar.size() > 1);
+	}
+
+	/**
+	 * Creates single-protein meta-proteins with random peptides over a small
+	 * alphabet and random UniRef50 clusters, proteins without UniProt entry
+	 * are never clustered.
+	 * @return the meta-proteins
+	 */
+	private ProteinHitList createMetaProteins() {
+		Random random = new Random(42L);
+		DbSearchResult result = new DbSearchResult("project", "experiment", null);
+		long spectrumID = 1L;
+		for (int i = 0; i < PROTEIN_COUNT; i++) {
+			String accession = "P" + i;
+			int cluster = random.nextInt(6);
+			ReducedUniProtEntry uniProtEntry = (cluster == 0) ? null
+					: new ReducedUniProtEntry(0L, "", "", "", "UniRef100_" + accession, "UniRef90_" + accession, "UniRef50_" + cluster);
+			int peptideCount = 1 + random.nextInt(3);
+			for (int j = 0; j < peptideCount; j++) {
+				StringBuilder sb = new StringBuilder("K");
+				int length = 3 + random.nextInt(4);
+				for (int k = 0; k < length; k++) {
+					sb.append("ILMR".charAt(random.nextInt(4)));
+				}
+				String sequence = sb.toString();
+				ReducedSearchHit hit = new ReducedSearchHit(SearchEngineType.XTANDEM, spectrumID, 0L, 0L, sequence, accession, 1.0, 0.0, 2L);
+				PeptideHit peptideHit = new PeptideHit(sequence, new PeptideSpectrumMatch(spectrumID++, hit));
+				result.addProtein(new ProteinHit(accession, "", "", peptideHit, uniProtEntry, null, 1L));
+			}
+		}
+		result.setFDR(0.05);
+		ProteinHitList metaProteins = result.getMetaProteins();
+		assertEquals(PROTEIN_COUNT, metaProteins.size());
+		return metaProteins;
+	}
+
+	/**
+	 * Returns the protein accessions of each meta-protein in list order.
+	 * @param metaProteins the meta-proteins
+	 * @return the accession groups
+	 */
+	private List<Set<String>> getGroups(ProteinHitList metaProteins) {
+		List<Set<String>> groups = new ArrayList<Set<String>>();
+		for (ProteinHit mph : metaProteins) {
+			groups.add(new HashSet<String>(((MetaProteinHit) mph).getProteinHits().keySet()));
+		}
+		return groups;
+	}
+
+}
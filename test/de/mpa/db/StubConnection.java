@@ -0,0 +1,415 @@
+package de.mpa.db;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Database-less connection stub recording all prepared statements and their
+ * bound parameters. Queries return configurable rows or empty result sets,
+ * batch executions generate consecutive keys and statements matching a
+ * configurable prefix fail upon execution. Like the MySQL driver the stub
+ * rejects statements while a streaming result set is open.
+ *
+ * @author A. Behne
+ */
+public class StubConnection {
+
+	/**
+	 * The statements prepared so far.
+	 */
+	private final List<StubStatement> statements = Collections.synchronizedList(new ArrayList<StubStatement>());
+
+	/**
+	 * The number of commits and rollbacks.
+	 */
+	private int commits, rollbacks;
+
+	/**
+	 * The next generated key.
+	 */
+	private long nextKey = 1L;
+
+	/**
+	 * The prefix of statements failing upon execution, may be <code>null</code>.
+	 */
+	private String failingPrefix;
+
+	/**
+	 * The column labels and rows returned by queries keyed by SQL prefix.
+	 */
+	private final Map<String, Object[]> results = new LinkedHashMap<String, Object[]>();
+
+	/**
+	 * The statement whose streaming result set is open, may be <code>null</code>.
+	 */
+	private StubStatement streaming;
+
+	/**
+	 * The connection proxy.
+	 */
+	private final Connection connection = (Connection) Proxy.newProxyInstance(
+			Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+					String name = method.getName();
+					if (name.equals("prepareStatement")) {
+						StubStatement statement = new StubStatement((String) args[0]);
+						statements.add(statement);
+						return statement.proxy;
+					} else if (name.equals("commit")) {
+						commits++;
+					} else if (name.equals("rollback")) {
+						rollbacks++;
+					}
+					return defaultValue(method.getReturnType());
+				}
+			});
+
+	/**
+	 * Returns the stubbed connection.
+	 * @return the connection
+	 */
+	public Connection getConnection() {
+		return connection;
+	}
+
+	/**
+	 * Returns the prepared statements whose SQL starts with the specified prefix.
+	 * @param prefix the SQL prefix
+	 * @return the matching statements in order of preparation
+	 */
+	public List<StubStatement> getStatements(String prefix) {
+		List<StubStatement> res = new ArrayList<StubStatement>();
+		synchronized (statements) {
+			for (StubStatement statement : statements) {
+				if (statement.sql.startsWith(prefix)) {
+					res.add(statement);
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Returns whether all prepared statements have been closed.
+	 * @return <code>true</code> if no statement is left open
+	 */
+	public boolean isAllClosed() {
+		synchronized (statements) {
+			for (StubStatement statement : statements) {
+				if (!statement.closed) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of commits.
+	 * @return the commit count
+	 */
+	public int getCommitCount() {
+		return commits;
+	}
+
+	/**
+	 * Returns the number of rollbacks.
+	 * @return the rollback count
+	 */
+	public int getRollbackCount() {
+		return rollbacks;
+	}
+
+	/**
+	 * Lets the execution of all statements starting with the specified prefix fail.
+	 * @param failingPrefix the SQL prefix or <code>null</code> to disable failures
+	 */
+	public void setFailingPrefix(String failingPrefix) {
+		this.failingPrefix = failingPrefix;
+	}
+
+	/**
+	 * Lets all queries starting with the specified prefix return the specified rows.
+	 * @param prefix the SQL prefix
+	 * @param columns the column labels
+	 * @param rows the rows, one value per column each
+	 */
+	public void setResult(String prefix, String[] columns, List<Object[]> rows) {
+		results.put(prefix, new Object[] { columns, rows });
+	}
+
+	/**
+	 * Returns the default value of the specified return type.
+	 */
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		} else if (type == int.class) {
+			return 0;
+		} else if (type == long.class) {
+			return 0L;
+		} else if (type == double.class) {
+			return 0.0;
+		}
+		return null;
+	}
+
+	/**
+	 * Prepared statement stub recording bound parameters.
+	 */
+	public class StubStatement {
+
+		/**
+		 * The SQL of the statement.
+		 */
+		private final String sql;
+
+		/**
+		 * The currently bound parameters keyed by index.
+		 */
+		private Map<Integer, Object> parameters = new TreeMap<Integer, Object>();
+
+		/**
+		 * The executed parameter sets, one per execution or batch entry.
+		 */
+		private final List<Map<Integer, Object>> executions = new ArrayList<Map<Integer, Object>>();
+
+		/**
+		 * The keys generated by the last execution.
+		 */
+		private final List<Long> generatedKeys = new ArrayList<Long>();
+
+		/**
+		 * The pending batch entries.
+		 */
+		private final List<Map<Integer, Object>> batch = new ArrayList<Map<Integer, Object>>();
+
+		/**
+		 * Flag denoting whether the statement has been closed.
+		 */
+		private boolean closed;
+
+		/**
+		 * Flag denoting whether the statement streams its result rows.
+		 */
+		private boolean streamed;
+
+		/**
+		 * The statement proxy.
+		 */
+		private final PreparedStatement proxy;
+
+		/**
+		 * Creates a statement stub for the specified SQL.
+		 * @param sql the SQL
+		 */
+		private StubStatement(String sql) {
+			this.sql = sql;
+			this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+					PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+							return StubStatement.this.invoke(method, args);
+						}
+					});
+		}
+
+		/**
+		 * Handles a method call on the statement proxy.
+		 */
+		private Object invoke(Method method, Object[] args) throws SQLException {
+			String name = method.getName();
+			if (name.equals("setFetchSize")) {
+				streamed = (((Integer) args[0]) == Integer.MIN_VALUE);
+			} else if (name.startsWith("set") && (args != null) && (args.length == 2) && (args[0] instanceof Integer)) {
+				parameters.put((Integer) args[0], args[1]);
+			} else if (name.equals("addBatch")) {
+				batch.add(parameters);
+				parameters = new TreeMap<Integer, Object>(parameters);
+			} else if (name.equals("executeBatch")) {
+				this.checkFailure();
+				int[] res = new int[batch.size()];
+				this.execute(batch);
+				batch.clear();
+				return res;
+			} else if (name.equals("executeUpdate") || name.equals("executeQuery")) {
+				this.checkFailure();
+				this.execute(Collections.singletonList(parameters));
+				parameters = new TreeMap<Integer, Object>(parameters);
+				return name.equals("executeQuery") ? this.createQueryResult() : 1;
+			} else if (name.equals("getGeneratedKeys")) {
+				List<Object[]> rows = new ArrayList<Object[]>();
+				for (Long key : generatedKeys) {
+					rows.add(new Object[] { key });
+				}
+				return createResultSet(new String[] { "GENERATED_KEY" }, rows, null);
+			} else if (name.equals("close")) {
+				closed = true;
+				this.closeStream();
+			}
+			return defaultValue(method.getReturnType());
+		}
+
+		/**
+		 * Records the specified parameter sets as executed and generates one key each.
+		 */
+		private void execute(List<Map<Integer, Object>> parameterSets) {
+			generatedKeys.clear();
+			synchronized (StubConnection.this) {
+				for (Map<Integer, Object> parameterSet : parameterSets) {
+					executions.add(parameterSet);
+					generatedKeys.add(nextKey++);
+				}
+			}
+		}
+
+		/**
+		 * Returns the configured rows of the first matching query prefix and
+		 * opens a stream if the statement streams its rows.
+		 */
+		@SuppressWarnings("unchecked")
+		private ResultSet createQueryResult() {
+			String[] columns = new String[0];
+			List<Object[]> rows = new ArrayList<Object[]>();
+			synchronized (StubConnection.this) {
+				for (Entry<String, Object[]> entry : results.entrySet()) {
+					if (sql.startsWith(entry.getKey())) {
+						columns = (String[]) entry.getValue()[0];
+						rows = (List<Object[]>) entry.getValue()[1];
+						break;
+					}
+				}
+				if (streamed) {
+					streaming = this;
+				}
+			}
+			return createResultSet(columns, rows, new Runnable() {
+				@Override
+				public void run() {
+					closeStream();
+				}
+			});
+		}
+
+		/**
+		 * Closes the open stream of this statement, if any.
+		 */
+		private void closeStream() {
+			synchronized (StubConnection.this) {
+				if (streaming == this) {
+					streaming = null;
+				}
+			}
+		}
+
+		/**
+		 * Throws an exception if statements like this one are configured to
+		 * fail or if another statement streams its result rows.
+		 */
+		private void checkFailure() throws SQLException {
+			synchronized (StubConnection.this) {
+				if ((streaming != null) && (streaming != this)) {
+					throw new SQLException("Streaming result set is still active. No statements may be issued "
+							+ "when any streaming result sets are open and in use on a given connection.");
+				}
+			}
+			String prefix = failingPrefix;
+			if ((prefix != null) && sql.startsWith(prefix)) {
+				throw new SQLException("Simulated failure of: " + sql);
+			}
+		}
+
+		/**
+		 * Returns the SQL of the statement.
+		 * @return the SQL
+		 */
+		public String getSql() {
+			return sql;
+		}
+
+		/**
+		 * Returns the executed parameter sets, one per execution or batch entry.
+		 * @return the executed parameter sets
+		 */
+		public List<Map<Integer, Object>> getExecutions() {
+			return executions;
+		}
+
+		/**
+		 * Returns whether the statement has been closed.
+		 * @return <code>true</code> if closed
+		 */
+		public boolean isClosed() {
+			return closed;
+		}
+	}
+
+	/**
+	 * Creates a result set stub containing the specified rows. Values are
+	 * accessible by column index or label and converted to the requested type.
+	 */
+	private static ResultSet createResultSet(final String[] columns, final List<Object[]> rows, final Runnable onClose) {
+		return (ResultSet) Proxy.newProxyInstance(
+				ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class }, new InvocationHandler() {
+					private int row = -1;
+					private boolean wasNull;
+					@Override
+					public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+						String name = method.getName();
+						if (name.equals("next")) {
+							return ++row < rows.size();
+						} else if (name.equals("wasNull")) {
+							return wasNull;
+						} else if (name.equals("close")) {
+							if (onClose != null) {
+								onClose.run();
+							}
+						} else if (name.startsWith("get") && (args != null) && (args.length == 1)) {
+							int index = (args[0] instanceof Integer) ? (Integer) args[0] : this.indexOf((String) args[0]);
+							Object value = rows.get(row)[index - 1];
+							wasNull = (value == null);
+							Class<?> type = method.getReturnType();
+							if (value == null) {
+								return defaultValue(type);
+							} else if (type == long.class) {
+								return ((Number) value).longValue();
+							} else if (type == int.class) {
+								return ((Number) value).intValue();
+							} else if (type == double.class) {
+								return ((Number) value).doubleValue();
+							} else if (type == String.class) {
+								return value.toString();
+							}
+							return value;
+						}
+						return defaultValue(method.getReturnType());
+					}
+
+					/**
+					 * Returns the 1-based index of the specified column label.
+					 */
+					private int indexOf(String label) throws SQLException {
+						for (int i = 0; i < columns.length; i++) {
+							if (columns[i].equalsIgnoreCase(label)) {
+								return i + 1;
+							}
+						}
+						throw new SQLException("Unknown column: " + label);
+					}
+				});
+	}
+
+}
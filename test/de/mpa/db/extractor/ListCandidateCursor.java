@@ -0,0 +1,38 @@
+package de.mpa.db.extractor;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+
+import de.mpa.client.model.specsim.SpectralSearchCandidate;
+
+/**
+ * Cursor over an in-memory list of spectral search candidates, used in place
+ * of a database cursor in tests.
+ *
+ * @author A. Behne
+ */
+public class ListCandidateCursor extends SpectralSearchCandidateCursor {
+
+	private Iterator<SpectralSearchCandidate> iterator;
+
+	/**
+	 * Constructs a cursor over the specified candidates, which must be sorted
+	 * by ascending precursor m/z.
+	 * @param candidates the candidates
+	 */
+	public ListCandidateCursor(List<SpectralSearchCandidate> candidates) {
+		this.iterator = candidates.iterator();
+		try {
+			this.advance();
+		} catch (SQLException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	protected SpectralSearchCandidate readNext() {
+		return iterator.hasNext() ? iterator.next() : null;
+	}
+
+}
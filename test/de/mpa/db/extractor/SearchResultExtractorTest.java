@@ -0,0 +1,72 @@
+package de.mpa.db.extractor;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import de.mpa.db.StubConnection;
+import de.mpa.db.StubConnection.StubStatement;
+import de.mpa.db.accessor.PeptideAccessor;
+import de.mpa.db.accessor.Taxonomy;
+
+/**
+ * Tests the splitting of bulk entity lookups into batches of bound IDs.
+ *
+ * @author A. Behne
+ */
+public class SearchResultExtractorTest extends TestCase {
+
+	@Test
+	public void testBatchBoundaries() throws SQLException {
+		int[] counts = { 0, 1, 999, 1000, 1001, 2000, 2001 };
+		for (int count : counts) {
+			TLongSet ids = new TLongHashSet();
+			for (int i = 1; i <= count; i++) {
+				ids.add(i);
+			}
+			StubConnection stub = new StubConnection();
+			assertTrue(SearchResultExtractor.findPeptides(ids, stub.getConnection()).isEmpty());
+
+			List<StubStatement> statements = stub.getStatements(PeptideAccessor.getBasicSelect());
+			assertEquals((count + 999) / 1000, statements.size());
+			TLongSet bound = new TLongHashSet();
+			for (StubStatement statement : statements) {
+				Map<Integer, Object> parameters = statement.getExecutions().get(0);
+				// full batches except for the last one
+				int expected = (statement == statements.get(statements.size() - 1))
+						? count - 1000 * (statements.size() - 1) : 1000;
+				assertEquals(expected, parameters.size());
+				assertEquals(expected, statement.getSql().split("\\?", -1).length - 1);
+				for (Object id : parameters.values()) {
+					assertTrue(bound.add((Long) id));
+				}
+				assertTrue(statement.isClosed());
+			}
+			assertEquals(ids, bound);
+		}
+	}
+
+	@Test
+	public void testTaxonomyBatches() throws SQLException {
+		TLongSet taxIDs = new TLongHashSet();
+		for (int i = 1; i <= 1500; i++) {
+			taxIDs.add(i);
+		}
+		Map<Long, Taxonomy> taxonomyMap = new HashMap<Long, Taxonomy>();
+		StubConnection stub = new StubConnection();
+		SearchResultExtractor.fillTaxonomyMap(taxIDs, taxonomyMap, stub.getConnection());
+		List<StubStatement> statements = stub.getStatements(Taxonomy.getBasicSelect());
+		assertEquals(2, statements.size());
+		assertEquals(1000, statements.get(0).getExecutions().get(0).size());
+		assertEquals(500, statements.get(1).getExecutions().get(0).size());
+	}
+
+}
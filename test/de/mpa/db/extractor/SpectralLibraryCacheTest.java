@@ -0,0 +1,129 @@
+package de.mpa.db.extractor;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpa.algorithms.Interval;
+import de.mpa.algorithms.similarity.SpectrumVector;
+import de.mpa.algorithms.similarity.Transformation;
+import de.mpa.algorithms.similarity.Vectorization;
+import de.mpa.algorithms.similarity.VectorizationFactory;
+import de.mpa.client.model.specsim.SpectralSearchCandidate;
+
+/**
+ * Tests building and reading spectral library cache files without database.
+ *
+ * @author A. Behne
+ */
+public class SpectralLibraryCacheTest extends TestCase {
+
+	private static final String KEY = "vect=1;binWidth=1.0";
+	private static final long[] FINGERPRINT = { 4L, 42L, 1234567L };
+
+	private File cacheDir;
+	private File cacheFile;
+	private List<SpectralSearchCandidate> candidates;
+	private Vectorization vect;
+
+	@Before
+	public void setUp() throws IOException {
+		cacheDir = File.createTempFile("speclib", "");
+		cacheDir.delete();
+		cacheDir.mkdir();
+		cacheFile = new File(cacheDir, "speclib_1_test.bin");
+
+		candidates = new ArrayList<SpectralSearchCandidate>();
+		for (int i = 1; i <= 4; i++) {
+			double[] mz = new double[i * 3];
+			double[] in = new double[i * 3];
+			for (int j = 0; j < mz.length; j++) {
+				mz[j] = 100.3 + 37.1 * j;
+				in[j] = 10.0 * i + j;
+			}
+			candidates.add(new SpectralSearchCandidate(i, 100.0 * i, 2, 10L + i, new SpectrumVector(mz, in)));
+		}
+		vect = VectorizationFactory.createDirectBinning(1.0, 0.0);
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : cacheDir.listFiles()) {
+			file.delete();
+		}
+		cacheDir.delete();
+	}
+
+	@Test
+	public void testBuildAndRead() throws IOException, SQLException {
+		// tiny segments force records to be read across several mapped segments
+		SpectralLibraryCache cache = new SpectralLibraryCache(cacheDir, 100L, 1024L);
+		cache.build(cacheFile, KEY, FINGERPRINT, new ListCandidateCursor(candidates), vect, Transformation.NONE);
+		assertEquals(Arrays.asList(cacheFile), Arrays.asList(cacheDir.listFiles()));
+
+		// all candidates
+		SpectralSearchCandidateCursor cursor = cache.open(cacheFile, KEY, FINGERPRINT,
+				Arrays.asList(new Interval(0.0, Double.MAX_VALUE)));
+		for (SpectralSearchCandidate expected : candidates) {
+			assertTrue(cursor.hasNext());
+			assertEquals(expected.getPrecursorMz(), cursor.peekPrecursorMz());
+			SpectralSearchCandidate actual = cursor.next();
+			assertEquals(expected.getLibpectrumID(), actual.getLibpectrumID());
+			assertEquals(expected.getPeptideID(), actual.getPeptideID());
+			assertEquals(expected.getPrecursorCharge(), actual.getPrecursorCharge());
+			SpectrumVector vectorized = new SpectrumVector();
+			vect.vectorize(expected.getPeakVector(), Transformation.NONE, vectorized);
+			assertEquals(vectorized.size(), actual.getPeakVector().size());
+			for (int i = 0; i < vectorized.size(); i++) {
+				assertEquals(vectorized.getMz(i), actual.getPeakVector().getMz(i));
+				assertEquals(vectorized.getIntensity(i), actual.getPeakVector().getIntensity(i));
+			}
+		}
+		assertFalse(cursor.hasNext());
+		cursor.close();
+
+		// candidates inside intervals only, borders inclusive
+		cursor = cache.open(cacheFile, KEY, FINGERPRINT,
+				Arrays.asList(new Interval(50.0, 100.0), new Interval(250.0, 300.0), new Interval(350.0, 390.0)));
+		assertEquals(1L, cursor.next().getLibpectrumID());
+		assertEquals(3L, cursor.next().getLibpectrumID());
+		assertFalse(cursor.hasNext());
+		cursor.close();
+	}
+
+	@Test
+	public void testStaleFile() throws IOException, SQLException {
+		SpectralLibraryCache cache = new SpectralLibraryCache(cacheDir);
+		cache.build(cacheFile, KEY, FINGERPRINT, new ListCandidateCursor(candidates), vect, Transformation.NONE);
+		List<Interval> intervals = Arrays.asList(new Interval(0.0, 1000.0));
+		assertNull(cache.open(cacheFile, "vect=2", FINGERPRINT, intervals));
+		assertNull(cache.open(cacheFile, KEY, new long[] { 5L, 42L, 1234567L }, intervals));
+		SpectralSearchCandidateCursor cursor = cache.open(cacheFile, KEY, FINGERPRINT, intervals);
+		assertNotNull(cursor);
+		cursor.close();
+	}
+
+	@Test
+	public void testOversizedRecord() throws SQLException {
+		// maximum record size too small for the largest candidate
+		SpectralLibraryCache cache = new SpectralLibraryCache(cacheDir, 100L, 150L);
+		try {
+			cache.build(cacheFile, KEY, FINGERPRINT, new ListCandidateCursor(candidates), vect, Transformation.NONE);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		// temporary file has been removed
+		assertEquals(0, cacheDir.listFiles().length);
+	}
+
+}
@@ -0,0 +1,205 @@
+package de.mpa.db.job;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the dependency-aware concurrent execution of jobs.
+ *
+ * @author A. Behne
+ */
+public class JobManagerTest extends TestCase {
+
+	private JobManager jobManager;
+
+	private List<String> executed;
+
+	@Before
+	public void setUp() {
+		jobManager = new JobManager(4);
+		executed = Collections.synchronizedList(new ArrayList<String>());
+	}
+
+	@Test
+	public void testDependencies() {
+		final CountDownLatch latch = new CountDownLatch(2);
+		Job searchA = new TestJob("searchA", "engineA") {
+			@Override
+			protected void execute() throws InterruptedException {
+				latch.countDown();
+				// returns early only if both searches run concurrently
+				assertTrue(latch.await(5L, TimeUnit.SECONDS));
+			}
+		};
+		Job searchB = new TestJob("searchB", "engineB") {
+			@Override
+			protected void execute() throws InterruptedException {
+				latch.countDown();
+				assertTrue(latch.await(5L, TimeUnit.SECONDS));
+			}
+		};
+		Job store = new TestJob("store", "store");
+		jobManager.scheduleJob(store, new Job[0]);
+		jobManager.deleteJob(store);
+		jobManager.scheduleJob(searchA);
+		jobManager.scheduleJob(searchB);
+		jobManager.scheduleJob(store, searchA, searchB);
+		jobManager.run();
+
+		assertEquals(3, executed.size());
+		assertEquals("store", executed.get(2));
+		assertEquals(0, jobManager.getRemainingJobs());
+		assertEquals(3, jobManager.getCompletedJobs());
+	}
+
+	@Test
+	public void testConcurrencyLimit() {
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+		jobManager.setConcurrencyLimit("engine", 2);
+		for (int i = 0; i < 6; i++) {
+			jobManager.scheduleJob(new TestJob("search" + i, "engine") {
+				@Override
+				protected void execute() throws InterruptedException {
+					int count = running.incrementAndGet();
+					synchronized (maxRunning) {
+						maxRunning.set(Math.max(maxRunning.get(), count));
+					}
+					Thread.sleep(50L);
+					running.decrementAndGet();
+				}
+			});
+		}
+		jobManager.run();
+
+		assertEquals(6, executed.size());
+		assertEquals(2, maxRunning.get());
+	}
+
+	@Test
+	public void testLegacySequence() {
+		for (int i = 0; i < 4; i++) {
+			jobManager.addJob(new TestJob("job" + i, "group" + i));
+		}
+		jobManager.run();
+
+		assertEquals(4, executed.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals("job" + i, executed.get(i));
+		}
+	}
+
+	@Test
+	public void testFailureAndCancellation() {
+		Job search = new TestJob("search", "engine") {
+			@Override
+			protected void execute() {
+				setError("search failed");
+			}
+		};
+		Job score = new TestJob("score", "score");
+		Job store = new TestJob("store", "store");
+		Job other = new TestJob("other", "other");
+		Job canceled = new TestJob("canceled", "other");
+		jobManager.scheduleJob(search);
+		jobManager.scheduleJob(score, search);
+		jobManager.scheduleJob(store, score);
+		jobManager.scheduleJob(other);
+		jobManager.scheduleJob(canceled, other);
+		jobManager.cancel(canceled);
+		jobManager.run();
+
+		assertEquals(2, executed.size());
+		assertTrue(executed.contains("other"));
+		assertEquals(JobStatus.ERROR, search.getStatus());
+		assertEquals(JobStatus.CANCELED, store.getStatus());
+		assertEquals(JobStatus.CANCELED, canceled.getStatus());
+		assertEquals(1, jobManager.getFailedJobs());
+		assertEquals(3, jobManager.getCanceledJobs());
+	}
+
+	@Test
+	public void testErrorThrown() {
+		Job search = new TestJob("search", "engine") {
+			@Override
+			protected void execute() {
+				setStatus(JobStatus.RUNNING);
+				throw new NoClassDefFoundError("de/mpa/Missing");
+			}
+		};
+		Job store = new TestJob("store", "store");
+		jobManager.scheduleJob(search);
+		jobManager.scheduleJob(store, search);
+		jobManager.run();
+
+		assertTrue(executed.isEmpty());
+		assertEquals(JobStatus.ERROR, search.getStatus());
+		assertEquals(JobStatus.CANCELED, store.getStatus());
+		assertEquals(1, jobManager.getFailedJobs());
+	}
+
+	@Test
+	public void testPrecedence() {
+		Job first = new TestJob("first", "first") {
+			@Override
+			protected void execute() throws InterruptedException {
+				Thread.sleep(50L);
+				setError("first failed");
+			}
+		};
+		Job dependent = new TestJob("dependent", "dependent");
+		Job successor = new TestJob("successor", "successor");
+		jobManager.scheduleJob(first);
+		jobManager.scheduleJob(dependent, first);
+		jobManager.scheduleJob(successor);
+		jobManager.addPrecedence(first, successor);
+		jobManager.addPrecedence(dependent, successor);
+		jobManager.run();
+
+		assertEquals(2, executed.size());
+		assertEquals("successor", executed.get(1));
+		assertEquals(JobStatus.CANCELED, dependent.getStatus());
+	}
+
+	/**
+	 * Job recording its execution.
+	 */
+	private class TestJob extends Job {
+
+		private String group;
+
+		public TestJob(String description, String group) {
+			this.description = description;
+			this.group = group;
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.execute();
+				executed.add(description);
+			} catch (InterruptedException e) {
+				setError(e);
+			}
+		}
+
+		protected void execute() throws InterruptedException {
+			// do nothing
+		}
+
+		@Override
+		public String getResourceGroup() {
+			return group;
+		}
+	}
+
+}
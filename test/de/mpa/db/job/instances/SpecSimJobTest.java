@@ -0,0 +1,157 @@
+package de.mpa.db.job.instances;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpa.algorithms.similarity.SpectrumVector;
+import de.mpa.client.SpecSimSettings;
+import de.mpa.client.model.specsim.SpectralSearchCandidate;
+import de.mpa.client.model.specsim.SpectralSearchCandidateIndex;
+import de.mpa.client.model.specsim.SpectrumSpectrumMatch;
+import de.mpa.db.MapContainer;
+import de.mpa.db.extractor.ListCandidateCursor;
+import de.mpa.io.MascotGenericFile;
+
+/**
+ * Tests spectral similarity scoring of streamed candidates against scoring
+ * with the in-memory candidate index and parallel against serial scoring.
+ *
+ * @author A. Behne
+ */
+public class SpecSimJobTest extends TestCase {
+
+	private static final double TOL_MZ = 0.5;
+
+	private List<MascotGenericFile> queries;
+	private List<SpectralSearchCandidate> candidates;
+	private SpecSimSettings settings;
+
+	@Before
+	public void setUp() {
+		Random random = new Random(42L);
+		MapContainer.SpectrumTitle2IdMap = new HashMap<String, Long>();
+		queries = new ArrayList<MascotGenericFile>();
+		candidates = new ArrayList<SpectralSearchCandidate>();
+		long libspectrumID = 1L;
+		for (int i = 0; i < 40; i++) {
+			// several queries share precursors, others lie close to each other
+			double precursorMz = 400.0 + 2.0 * (i / 2) + ((i % 4 == 3) ? 0.25 : 0.0);
+			String title = "query" + i;
+			queries.add(new MascotGenericFile("test.mgf", title, randomPeaks(random), precursorMz, 0.0, 2));
+			MapContainer.SpectrumTitle2IdMap.put(title, (long) i);
+
+			// candidates exactly on both tolerance borders, inside and outside the window
+			double[] offsets = { -TOL_MZ, TOL_MZ, -0.25, 0.125, -0.75, 0.625 };
+			for (double offset : offsets) {
+				SpectrumVector peaks = new SpectrumVector(randomPeaks(random));
+				candidates.add(new SpectralSearchCandidate(libspectrumID++, precursorMz + offset, 2, 0L, peaks));
+			}
+		}
+		Collections.sort(candidates, new Comparator<SpectralSearchCandidate>() {
+			@Override
+			public int compare(SpectralSearchCandidate o1, SpectralSearchCandidate o2) {
+				return Double.compare(o1.getPrecursorMz(), o2.getPrecursorMz());
+			}
+		});
+
+		settings = new SpecSimSettings();
+		settings.setTolMz(TOL_MZ);
+		settings.setPickCount(10);
+		settings.setThreshScore(0.0);
+		settings.setTrafoIndex(0);
+		settings.setVectIndex(1);
+		settings.setCompIndex(1);
+		settings.setBinWidth(1.0);
+		settings.setThreadCount(1);
+	}
+
+	@Test
+	public void testStreamingMatchesIndex() throws Exception {
+		SpecSimJob indexJob = new SpecSimJob(queries, settings);
+		indexJob.scoreQueries(queries, new SpectralSearchCandidateIndex(candidates), false, 1, null);
+		List<SpectrumSpectrumMatch> expected = sort(indexJob.getResults());
+
+		// the index returns candidates strictly inside the tolerance window
+		int inside = 0;
+		for (MascotGenericFile query : queries) {
+			for (SpectralSearchCandidate candidate : candidates) {
+				if (Math.abs(candidate.getPrecursorMz() - query.getPrecursorMZ()) < TOL_MZ) {
+					inside++;
+				}
+			}
+		}
+		assertEquals(inside, expected.size());
+
+		// small chunks force candidate eviction between chunks
+		for (int chunkSize : new int[] { 1, 3, 50000 }) {
+			SpecSimJob streamingJob = new SpecSimJob(queries, settings);
+			streamingJob.setCandidateChunkSize(chunkSize);
+			streamingJob.scoreQueriesStreaming(new ListCandidateCursor(candidates), false, 1, null);
+			assertMatchesEqual(expected, sort(streamingJob.getResults()));
+		}
+	}
+
+	@Test
+	public void testParallelMatchesSerial() throws Exception {
+		SpecSimJob serialJob = new SpecSimJob(queries, settings);
+		serialJob.scoreQueriesStreaming(new ListCandidateCursor(candidates), false, 1, null);
+		List<SpectrumSpectrumMatch> expected = sort(serialJob.getResults());
+		assertFalse(expected.isEmpty());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int chunkSize : new int[] { 3, 50000 }) {
+				SpecSimJob parallelJob = new SpecSimJob(queries, settings);
+				parallelJob.setCandidateChunkSize(chunkSize);
+				parallelJob.scoreQueriesStreaming(new ListCandidateCursor(candidates), false, 4, executor);
+				assertMatchesEqual(expected, sort(parallelJob.getResults()));
+			}
+			SpecSimJob parallelJob = new SpecSimJob(queries, settings);
+			parallelJob.scoreQueries(queries, new SpectralSearchCandidateIndex(candidates), false, 4, executor);
+			assertMatchesEqual(expected, sort(parallelJob.getResults()));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	static HashMap<Double, Double> randomPeaks(Random random) {
+		HashMap<Double, Double> peaks = new HashMap<Double, Double>();
+		for (int i = 0; i < 20; i++) {
+			peaks.put(100.0 + random.nextInt(40) * 10.0 + random.nextDouble(), random.nextDouble() * 100.0);
+		}
+		return peaks;
+	}
+
+	static List<SpectrumSpectrumMatch> sort(List<SpectrumSpectrumMatch> matches) {
+		List<SpectrumSpectrumMatch> sorted = new ArrayList<SpectrumSpectrumMatch>(matches);
+		Collections.sort(sorted, new Comparator<SpectrumSpectrumMatch>() {
+			@Override
+			public int compare(SpectrumSpectrumMatch o1, SpectrumSpectrumMatch o2) {
+				int res = Long.compare(o1.getSearchSpectrumID(), o2.getSearchSpectrumID());
+				return (res != 0) ? res : Long.compare(o1.getLibSpectrumID(), o2.getLibSpectrumID());
+			}
+		});
+		return sorted;
+	}
+
+	static void assertMatchesEqual(List<SpectrumSpectrumMatch> expected, List<SpectrumSpectrumMatch> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).getSearchSpectrumID(), actual.get(i).getSearchSpectrumID());
+			assertEquals(expected.get(i).getLibSpectrumID(), actual.get(i).getLibSpectrumID());
+			assertEquals(expected.get(i).getSimilarity(), actual.get(i).getSimilarity());
+		}
+	}
+
+}
@@ -0,0 +1,86 @@
+package de.mpa.db.storager;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import de.mpa.db.StubConnection;
+import de.mpa.db.StubConnection.StubStatement;
+
+/**
+ * Tests the multi-row inserts of cached links against a database-less
+ * connection stub.
+ *
+ * @author A. Behne
+ */
+public class BasicStoragerTest extends TestCase {
+
+	private static final int BATCH_SIZE = 500;
+
+	@Test
+	public void testSpec2PepBatches() throws SQLException {
+		for (int count : new int[] { 1, 499, 500, 501, 1000, 1001, 1500 }) {
+			StubConnection stub = new StubConnection();
+			BasicStorager storager = new BasicStorager();
+			storager.conn = stub.getConnection();
+			storager.registerSearchspectrum(3L, 42L);
+			for (long peptideID = 1L; peptideID <= count; peptideID++) {
+				storager.storeSpec2Pep(3L, peptideID);
+				// existing links are not queued again
+				storager.storeSpec2Pep(3L, 1L);
+			}
+			storager.commit();
+
+			assertLinks(stub.getStatements("INSERT INTO spec2pep"), count, 42L);
+			assertEquals(1, stub.getCommitCount());
+		}
+	}
+
+	@Test
+	public void testPep2ProtBatches() throws SQLException {
+		for (int count : new int[] { 1, 499, 500, 501, 1000, 1001 }) {
+			StubConnection stub = new StubConnection();
+			BasicStorager storager = new BasicStorager();
+			storager.conn = stub.getConnection();
+			for (long proteinID = 1L; proteinID <= count; proteinID++) {
+				storager.storePep2Prot(7L, proteinID);
+				storager.storePep2Prot(7L, 1L);
+			}
+			storager.commit();
+
+			// pre-existing links of the peptide are looked up once
+			assertEquals(1, stub.getStatements("SELECT").size());
+			assertLinks(stub.getStatements("INSERT INTO pep2prot"), count, 7L);
+		}
+	}
+
+	/**
+	 * Asserts that the specified multi-row inserts link the specified ID to
+	 * the IDs 1 to <code>count</code> in full batches except for the last one.
+	 */
+	private static void assertLinks(List<StubStatement> inserts, int count, long id) {
+		assertEquals((count + BATCH_SIZE - 1) / BATCH_SIZE, inserts.size());
+		Set<Long> linked = new HashSet<Long>();
+		for (int i = 0; i < inserts.size(); i++) {
+			StubStatement insert = inserts.get(i);
+			int rows = (i < inserts.size() - 1) ? BATCH_SIZE : count - BATCH_SIZE * i;
+			assertEquals(rows, insert.getSql().split("\\(\\?, \\?\\)", -1).length - 1);
+			assertEquals(1, insert.getExecutions().size());
+			Map<Integer, Object> parameters = insert.getExecutions().get(0);
+			assertEquals(2 * rows, parameters.size());
+			for (int j = 1; j <= rows; j++) {
+				assertEquals(id, parameters.get(2 * j - 1));
+				assertTrue(linked.add((Long) parameters.get(2 * j)));
+			}
+			assertTrue(insert.isClosed());
+		}
+		assertEquals(count, linked.size());
+	}
+
+}
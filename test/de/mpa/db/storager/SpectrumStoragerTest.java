@@ -0,0 +1,257 @@
+package de.mpa.db.storager;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpa.db.MapContainer;
+import de.mpa.db.StubConnection;
+import de.mpa.db.StubConnection.StubStatement;
+import de.mpa.io.MascotGenericFileReader;
+
+/**
+ * Tests batched spectrum storage against a database-less connection stub.
+ *
+ * @author A. Behne
+ */
+public class SpectrumStoragerTest extends TestCase {
+
+	private static final String INSERT_SPECTRUM = "INSERT INTO spectrum";
+	private static final String INSERT_SEARCHSPECTRUM = "INSERT INTO searchspectrum";
+
+	private File mgfFile;
+	private StubConnection stub;
+
+	@Before
+	public void setUp() throws IOException {
+		mgfFile = File.createTempFile("spectra", ".mgf");
+		stub = new StubConnection();
+	}
+
+	@After
+	public void tearDown() {
+		mgfFile.delete();
+	}
+
+	@Test
+	public void testBatchedInserts() throws IOException, SQLException {
+		String[] titles = new String[23];
+		for (int i = 0; i < titles.length; i++) {
+			titles[i] = "spectrum " + i;
+		}
+		this.writeSpectra(titles);
+		SpectrumStorager storager = new SpectrumStorager(stub.getConnection(), mgfFile, 42L, false);
+		storager.setBatchSize(5);
+		storager.setCommitInterval(10);
+		storager.load();
+		storager.store();
+
+		// four full batches and a partial one
+		List<StubStatement> spectrumInserts = stub.getStatements(INSERT_SPECTRUM);
+		assertEquals(5, spectrumInserts.size());
+		Set<String> storedTitles = new HashSet<String>();
+		for (int i = 0; i < spectrumInserts.size(); i++) {
+			List<Map<Integer, Object>> executions = spectrumInserts.get(i).getExecutions();
+			assertEquals((i < 4) ? 5 : 3, executions.size());
+			for (Map<Integer, Object> parameters : executions) {
+				storedTitles.add((String) parameters.get(1));
+			}
+		}
+		assertEquals(new HashSet<String>(Arrays.asList(titles)), storedTitles);
+
+		int searchspectrumCount = 0;
+		for (StubStatement statement : stub.getStatements(INSERT_SEARCHSPECTRUM)) {
+			for (Map<Integer, Object> parameters : statement.getExecutions()) {
+				assertEquals(42L, parameters.get(2));
+				searchspectrumCount++;
+			}
+		}
+		assertEquals(titles.length, searchspectrumCount);
+		assertTrue(stub.isAllClosed());
+
+		// commits after 10 and 20 spectra and at the end
+		assertEquals(3, stub.getCommitCount());
+		assertEquals(titles.length, MapContainer.SpectrumTitle2IdMap.size());
+		assertEquals(titles.length, new HashSet<Long>(MapContainer.SpectrumTitle2IdMap.values()).size());
+		assertEquals(titles.length, MapContainer.FileName2IdMap.size());
+	}
+
+	@Test
+	public void testRedundancyCheck() throws IOException, SQLException {
+		// duplicate titles inside a batch and across batches
+		this.writeSpectra("a", "b", "a", "c", "a", "d");
+		SpectrumStorager storager = new SpectrumStorager(stub.getConnection(), mgfFile, 42L, true);
+		storager.setBatchSize(3);
+		storager.load();
+		storager.store();
+
+		// one title lookup per batch
+		assertEquals(2, stub.getStatements("SELECT spectrumid, title FROM spectrum").size());
+		List<String> storedTitles = new ArrayList<String>();
+		for (StubStatement statement : stub.getStatements(INSERT_SPECTRUM)) {
+			for (Map<Integer, Object> parameters : statement.getExecutions()) {
+				storedTitles.add((String) parameters.get(1));
+			}
+		}
+		assertEquals(Arrays.asList("a", "b", "c", "d"), storedTitles);
+		assertEquals(4, MapContainer.SpectrumTitle2IdMap.size());
+		assertTrue(stub.isAllClosed());
+	}
+
+	@Test
+	public void testPipelineEnd() throws Exception {
+		// the end of the queue must neither lose spectra nor store empty batches
+		for (int count : new int[] { 0, 1, 4, 5, 6, 10, 11 }) {
+			String[] titles = new String[count];
+			for (int i = 0; i < count; i++) {
+				titles[i] = "spectrum " + i;
+			}
+			this.writeSpectra(titles);
+			stub = new StubConnection();
+			SpectrumStorager storager = new SpectrumStorager(stub.getConnection(), mgfFile, 42L, false);
+			storager.setBatchSize(5);
+			storager.load();
+			RandomAccessFile raf = getFileAccess(storager);
+			Set<Thread> threads = Thread.getAllStackTraces().keySet();
+			storager.store();
+
+			List<StubStatement> spectrumInserts = stub.getStatements(INSERT_SPECTRUM);
+			assertEquals((count + 4) / 5, spectrumInserts.size());
+			int stored = 0;
+			for (StubStatement statement : spectrumInserts) {
+				assertFalse(statement.getExecutions().isEmpty());
+				stored += statement.getExecutions().size();
+			}
+			assertEquals(count, stored);
+			assertEquals(count, MapContainer.SpectrumTitle2IdMap.size());
+			assertEquals(1, stub.getCommitCount());
+			assertClosed(raf);
+			assertTerminated(threads);
+		}
+	}
+
+	@Test
+	public void testDatabaseError() throws Exception {
+		String[] titles = new String[30];
+		for (int i = 0; i < titles.length; i++) {
+			titles[i] = "spectrum " + i;
+		}
+		this.writeSpectra(titles);
+		stub.setFailingPrefix(INSERT_SPECTRUM);
+		// single-spectrum batches keep the parser blocked on the full queue
+		SpectrumStorager storager = new SpectrumStorager(stub.getConnection(), mgfFile, 42L, false);
+		storager.setBatchSize(1);
+		storager.load();
+		RandomAccessFile raf = getFileAccess(storager);
+		Set<Thread> threads = Thread.getAllStackTraces().keySet();
+		try {
+			storager.store();
+			fail();
+		} catch (SQLException e) {
+			// expected
+		}
+		assertTrue(stub.isAllClosed());
+		assertEquals(0, stub.getCommitCount());
+		assertClosed(raf);
+		assertTerminated(threads);
+
+		// failures are rolled back
+		storager.run();
+		assertEquals(1, stub.getRollbackCount());
+		assertEquals(0, stub.getCommitCount());
+	}
+
+	@Test
+	public void testParseError() throws Exception {
+		String[] titles = new String[20];
+		for (int i = 0; i < titles.length; i++) {
+			titles[i] = "spectrum " + i;
+		}
+		this.writeSpectra(titles);
+		SpectrumStorager storager = new SpectrumStorager(stub.getConnection(), mgfFile, 42L, false);
+		storager.setBatchSize(5);
+		storager.load();
+
+		// truncate the surveyed file so that parsing fails midway
+		RandomAccessFile truncator = new RandomAccessFile(mgfFile, "rw");
+		truncator.setLength(truncator.length() / 2);
+		truncator.close();
+
+		RandomAccessFile raf = getFileAccess(storager);
+		Set<Thread> threads = Thread.getAllStackTraces().keySet();
+		try {
+			storager.store();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(0, stub.getCommitCount());
+		assertTrue(stub.isAllClosed());
+		assertClosed(raf);
+		assertTerminated(threads);
+	}
+
+	/**
+	 * Returns the file access of the spectrum file reader of the specified storager.
+	 */
+	private static RandomAccessFile getFileAccess(SpectrumStorager storager) throws Exception {
+		Field readerField = SpectrumStorager.class.getDeclaredField("reader");
+		readerField.setAccessible(true);
+		Field rafField = MascotGenericFileReader.class.getDeclaredField("raf");
+		rafField.setAccessible(true);
+		return (RandomAccessFile) rafField.get(readerField.get(storager));
+	}
+
+	/**
+	 * Asserts that the specified file access has been closed.
+	 */
+	private static void assertClosed(RandomAccessFile raf) {
+		try {
+			raf.getFilePointer();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Asserts that all threads started after the specified ones have terminated.
+	 */
+	private static void assertTerminated(Set<Thread> threads) throws InterruptedException {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (!threads.contains(thread)) {
+				thread.join(5000L);
+				assertFalse(thread.getName(), thread.isAlive());
+			}
+		}
+	}
+
+	/**
+	 * Writes spectra with the specified titles to the test MGF file.
+	 */
+	void writeSpectra(String... titles) throws IOException {
+		FileWriter writer = new FileWriter(mgfFile);
+		for (int i = 0; i < titles.length; i++) {
+			writer.write("BEGIN IONS\nTITLE=" + titles[i] + "\nPEPMASS=" + (400.0 + i) + "\nCHARGE=2+\n");
+			writer.write("150.0\t10.0\n" + (200.0 + i) + "\t20.0\n");
+			writer.write("END IONS\n\n");
+		}
+		writer.close();
+	}
+
+}
@@ -1,10 +1,11 @@
 package de.mpa.io.fasta;
 
-import gnu.trove.map.TObjectLongMap;
-
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
 
 import junit.framework.TestCase;
 
@@ -35,15 +36,82 @@ public class FastaLoaderTest extends TestCase {
 	}
 	
 	@Test 
-	public void testWriteAndReadIndexFile(){
+	public void testWriteAndReadIndexFile() throws IOException {
+		assertTrue(FastaIndex.isIndexFile(fastaLoader.getIndexFile()));
+		fastaLoader.setIndexFile(new File(filePath + ".fb"));
+		fastaLoader.readIndexFile();
+		FastaIndex index = fastaLoader.getIndex();
+		assertNotNull(index);
+		assertEquals(76, index.size());
+		assertTrue(index.contains("Q197F8"));
+		assertFalse(index.contains("P00000"));
+	}
+	
+	@Test
+	public void testParallelIndexing() throws IOException {
+		File fastaFile = new File(filePath);
+		File serialFile = File.createTempFile("serial", ".fb");
+		File parallelFile = File.createTempFile("parallel", ".fb");
+		try {
+			assertEquals(76, FastaIndex.build(fastaFile, serialFile, 1));
+			// more ranges than entries per range boundary
+			assertEquals(76, FastaIndex.build(fastaFile, parallelFile, 7));
+			assertTrue(Arrays.equals(this.readBytes(serialFile), this.readBytes(parallelFile)));
+			
+			FastaIndex index = new FastaIndex(fastaFile, parallelFile);
+			assertEquals("Q197A7", index.getProtein("Q197A7").getHeader().getAccession());
+			index.close();
+		} finally {
+			serialFile.delete();
+			parallelFile.delete();
+		}
+	}
+	
+	@Test
+	public void testDuplicateAccessions() throws IOException {
+		File fastaFile = File.createTempFile("duplicates", ".fasta");
+		File indexFile = File.createTempFile("duplicates", ".fb");
 		try {
-			fastaLoader.writeIndexFile();
-			fastaLoader.readIndexFile();
-			TObjectLongMap<String> indexMap = fastaLoader.getIndexMap();
-			assertNotNull(indexMap);
-		} catch (Exception e) {
-			e.printStackTrace();
+			// ten accessions occurring five times each, sequences encode the entry number
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 50; i++) {
+				sb.append(">sp|P0000" + (i % 10) + "|PROT" + (i % 10) + "_HUMAN Protein " + i + "\n");
+				sb.append(this.encode(i) + "\n");
+			}
+			FileOutputStream fos = new FileOutputStream(fastaFile);
+			fos.write(sb.toString().getBytes("ISO-8859-1"));
+			fos.close();
+			
+			for (int threads = 1; threads <= 4; threads++) {
+				assertEquals(50, FastaIndex.build(fastaFile, indexFile, threads));
+				FastaIndex index = new FastaIndex(fastaFile, indexFile);
+				// the last entry of a duplicated accession is returned
+				for (int i = 40; i < 50; i++) {
+					Protein protein = index.getProtein("P0000" + (i % 10));
+					assertEquals(this.encode(i), protein.getSequence().getSequence());
+				}
+				index.close();
+			}
+		} finally {
+			fastaFile.delete();
+			indexFile.delete();
+		}
+	}
+	
+	private String encode(int number) {
+		StringBuilder sb = new StringBuilder("M");
+		for (char c : String.valueOf(number).toCharArray()) {
+			sb.append("ACDEFGHIKL".charAt(c - '0'));
 		}
+		return sb.toString();
+	}
+	
+	private byte[] readBytes(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		byte[] bytes = new byte[(int) raf.length()];
+		raf.readFully(bytes);
+		raf.close();
+		return bytes;
 	}
 	
 	@Test
@@ -54,6 +122,14 @@ public class FastaLoaderTest extends TestCase {
 		fastaLoader.readIndexFile();
 		Protein protein = fastaLoader.getProteinFromFasta("Q197F8");
 		assertEquals("002R_IIV3 Uncharacterized protein 002R OS=Invertebrate iridescent virus 3 GN=IIV3-002R PE=4 SV=1", protein.getHeader().getDescription());
+		String sequence = protein.getSequence().getSequence();
+		assertTrue(sequence.startsWith("MASNTVSAQGGSNRPVRDFSNIQDVAQFLLFDPIWNEQPGSIVPWKMNREQALAERYPELQTSEPSEDYSGPVESLELLPLEIK"));
+		assertEquals(-1, sequence.indexOf('>'));
+		
+		// last entry of the file
+		protein = fastaLoader.getProteinFromFasta("Q197A7");
+		assertTrue(protein.getSequence().getSequence().endsWith("YKPNTLVTVQICSIKMDNTLCFGTILD"));
+		assertNull(fastaLoader.getProteinFromFasta("P00000"));
 
 	}
 
@@ -0,0 +1,104 @@
+package de.mpa.taxonomy;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpa.analysis.UniProtUtilities.TaxonomyRank;
+import de.mpa.analysis.taxonomy.TaxonomyNode;
+import de.mpa.analysis.taxonomy.TaxonomyStore;
+import de.mpa.analysis.taxonomy.TaxonomyUtils;
+
+/**
+ * Tests the building and reading of memory-mapped taxonomy stores.
+ *
+ * @author A. Behne
+ */
+public class TaxonomyStoreTest extends TestCase {
+
+	private TaxonomyStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		File nodesFile = this.createDumpFile("nodes",
+				"1\t|\t1\t|\tno rank\t|\t\t|\t8\t|",
+				"2\t|\t131567\t|\tsuperkingdom\t|\t\t|\t0\t|",
+				"131567\t|\t1\t|\tno rank\t|\t\t|\t8\t|",
+				"1224\t|\t2\t|\tphylum\t|\t\t|\t0\t|",
+				"562\t|\t1224\t|\tspecies\t|\tEC\t|\t0\t|",
+				"83333\t|\t562\t|\tno rank\t|\t\t|\t0\t|");
+		File namesFile = this.createDumpFile("names",
+				"1\t|\troot\t|\t\t|\tscientific name\t|",
+				"2\t|\tBacteria\t|\tBacteria <prokaryotes>\t|\tscientific name\t|",
+				"2\t|\teubacteria\t|\t\t|\tgenbank common name\t|",
+				"131567\t|\tcellular organisms\t|\t\t|\tscientific name\t|",
+				"1224\t|\tProteobacteria\t|\t\t|\tscientific name\t|",
+				"562\t|\tEscherichia coli\t|\t\t|\tscientific name\t|",
+				"83333\t|\tEscherichia coli K-12\t|\t\t|\tscientific name\t|");
+		File storeFile = File.createTempFile("taxonomy", ".bin");
+		storeFile.deleteOnExit();
+		TaxonomyStore.build(nodesFile, namesFile, storeFile);
+		store = new TaxonomyStore(storeFile);
+		TaxonomyUtils.clearTaxonomyNodeCache();
+	}
+
+	@Test
+	public void testLookups() {
+		assertTrue(store.contains(562L));
+		assertFalse(store.contains(3L));
+		assertFalse(store.contains(1000000L));
+		assertEquals(0L, store.getParentID(1L));
+		assertEquals("root", store.getRank(1L));
+		assertEquals(1224L, store.getParentID(562L));
+		assertEquals("species", store.getRank(562L));
+		assertEquals("no rank", store.getRank(83333L));
+		assertEquals("Bacteria", store.getName(2L));
+		assertEquals("Escherichia coli K-12", store.getName(83333L));
+		assertNull(store.getName(3L));
+	}
+
+	@Test
+	public void testCreateTaxonomyNode() {
+		TaxonomyNode node = TaxonomyUtils.createTaxonomyNode(83333L, store);
+		assertEquals(83333, node.getID());
+		assertEquals(TaxonomyRank.SUBSPECIES, node.getRank());
+		assertEquals("Escherichia coli", node.getParentNode().getName());
+		assertEquals(TaxonomyRank.PHYLUM, node.getParentNode(TaxonomyRank.PHYLUM).getRank());
+		assertEquals(2, node.getParentNode(TaxonomyRank.SUPERKINGDOM).getID());
+		assertEquals(TaxonomyRank.ROOT, node.getParentNode(TaxonomyRank.ROOT).getRank());
+		assertEquals(4, node.getDepth());
+		assertNull(TaxonomyUtils.createTaxonomyNode(3L, store));
+	}
+
+	@Test
+	public void testSharedBranches() {
+		TaxonomyNode strain = TaxonomyUtils.createTaxonomyNode(83333L, store);
+		assertSame(strain, TaxonomyUtils.createTaxonomyNode(83333L, store));
+		assertSame(strain, TaxonomyUtils.getCachedTaxonomyNode(83333L));
+
+		TaxonomyNode species = TaxonomyUtils.createTaxonomyNode(562L, store);
+		assertSame(strain.getParentNode(), species);
+		assertEquals(TaxonomyRank.SPECIES, species.getRank());
+
+		TaxonomyUtils.clearTaxonomyNodeCache();
+		assertNull(TaxonomyUtils.getCachedTaxonomyNode(562L));
+		assertNotSame(species, TaxonomyUtils.createTaxonomyNode(562L, store));
+	}
+
+	private File createDumpFile(String prefix, String... lines) throws IOException {
+		File file = File.createTempFile(prefix, ".dmp");
+		file.deleteOnExit();
+		FileWriter writer = new FileWriter(file);
+		for (String line : lines) {
+			writer.write(line + "\n");
+		}
+		writer.close();
+		return file;
+	}
+
+}
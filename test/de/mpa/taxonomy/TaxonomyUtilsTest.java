@@ -0,0 +1,149 @@
+package de.mpa.taxonomy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.mpa.analysis.UniProtUtilities.TaxonomyRank;
+import de.mpa.analysis.taxonomy.Taxonomic;
+import de.mpa.analysis.taxonomy.TaxonomyNode;
+import de.mpa.analysis.taxonomy.TaxonomyUtils;
+import de.mpa.analysis.taxonomy.TaxonomyUtils.TaxonomyDefinition;
+import de.mpa.client.Client;
+import de.mpa.client.model.SpectrumMatch;
+import de.mpa.client.model.dbsearch.PeptideHit;
+import de.mpa.client.model.dbsearch.ProteinHit;
+
+/**
+ * Tests the determination of common taxonomy nodes.
+ *
+ * @author A. Behne
+ */
+public class TaxonomyUtilsTest extends TestCase {
+
+	private TaxonomyNode root, bacteria, archaea, unclassified;
+	private TaxonomyNode proteobacteria, ecoli, salmonella, firmicutes;
+
+	@Before
+	public void setUp() {
+		Client.init(false, false);
+		root = new TaxonomyNode(1, TaxonomyRank.NO_RANK, "root");
+		bacteria = new TaxonomyNode(2, TaxonomyRank.SUPERKINGDOM, "Bacteria", root);
+		archaea = new TaxonomyNode(2157, TaxonomyRank.SUPERKINGDOM, "Archaea", root);
+		unclassified = new TaxonomyNode(0, TaxonomyRank.NO_RANK, "unclassified", root);
+		proteobacteria = new TaxonomyNode(1224, TaxonomyRank.PHYLUM, "Proteobacteria", bacteria);
+		firmicutes = new TaxonomyNode(1239, TaxonomyRank.PHYLUM, "Firmicutes", bacteria);
+		ecoli = new TaxonomyNode(562, TaxonomyRank.SPECIES, "Escherichia coli", proteobacteria);
+		salmonella = new TaxonomyNode(28901, TaxonomyRank.SPECIES, "Salmonella enterica", proteobacteria);
+	}
+
+	@Test
+	public void testCommonAncestor() {
+		TaxonomyDefinition def = TaxonomyDefinition.COMMON_ANCESTOR;
+		assertSame(proteobacteria, def.getCommonTaxonomyNode(ecoli, salmonella));
+		assertSame(bacteria, def.getCommonTaxonomyNode(ecoli, firmicutes));
+		assertSame(ecoli, def.getCommonTaxonomyNode(ecoli, ecoli));
+		assertSame(proteobacteria, def.getCommonTaxonomyNode(proteobacteria, salmonella));
+		assertTrue(def.getCommonTaxonomyNode(ecoli, archaea).isRoot());
+		assertTrue(def.getCommonTaxonomyNode(root, ecoli).isRoot());
+		assertSame(ecoli, def.getCommonTaxonomyNode(unclassified, ecoli));
+		assertSame(archaea, def.getCommonTaxonomyNode(archaea, unclassified));
+		assertTrue(def.getCommonTaxonomyNode(unclassified, unclassified).isRoot());
+
+		assertSame(ecoli, TaxonomyDefinition.MOST_SPECIFIC.getCommonTaxonomyNode(proteobacteria, ecoli));
+		// ties are broken by the lower taxonomy ID
+		assertSame(ecoli, TaxonomyDefinition.MOST_SPECIFIC.getCommonTaxonomyNode(ecoli, salmonella));
+		assertSame(ecoli, TaxonomyDefinition.MOST_SPECIFIC.getCommonTaxonomyNode(salmonella, ecoli));
+		assertSame(bacteria, TaxonomyDefinition.MOST_SPECIFIC.getCommonTaxonomyNode(archaea, bacteria));
+		assertEquals(3, ecoli.getDepth());
+		assertEquals(0, root.getDepth());
+	}
+
+	@Test
+	public void testDetermineTaxonomy() {
+		List<Taxonomic> proteins = new ArrayList<Taxonomic>();
+		List<List<TaxonomyNode>> childNodes = Arrays.asList(
+				Arrays.asList(ecoli, salmonella),
+				Arrays.asList(salmonella, ecoli),
+				Arrays.asList(ecoli, firmicutes, ecoli),
+				Arrays.asList(ecoli, unclassified),
+				Arrays.asList(unclassified, unclassified, ecoli));
+		for (final List<TaxonomyNode> nodes : childNodes) {
+			proteins.add(new ProteinHit("P" + proteins.size()) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				public List<? extends Taxonomic> getTaxonomicChildren() {
+					List<Taxonomic> children = new ArrayList<Taxonomic>();
+					for (TaxonomyNode node : nodes) {
+						ProteinHit child = new ProteinHit("child");
+						child.setTaxonomyNode(node);
+						children.add(child);
+					}
+					return children;
+				}
+			});
+		}
+		TaxonomyUtils.determineTaxonomy(proteins, TaxonomyDefinition.COMMON_ANCESTOR);
+		assertEquals(proteobacteria, proteins.get(0).getTaxonomyNode());
+		assertEquals(proteobacteria, proteins.get(1).getTaxonomyNode());
+		assertEquals(bacteria, proteins.get(2).getTaxonomyNode());
+		assertEquals(ecoli, proteins.get(3).getTaxonomyNode());
+		assertTrue(proteins.get(4).getTaxonomyNode().isRoot());
+
+		// memoized results do not depend on the order of the child nodes
+		TaxonomyUtils.determineTaxonomy(proteins, TaxonomyDefinition.MOST_SPECIFIC);
+		assertSame(ecoli, proteins.get(0).getTaxonomyNode());
+		assertSame(ecoli, proteins.get(1).getTaxonomyNode());
+		assertSame(ecoli, proteins.get(2).getTaxonomyNode());
+	}
+
+	@Test
+	public void testDeterminePeptideTaxonomy() {
+		Set<PeptideHit> peptides = new LinkedHashSet<PeptideHit>();
+		List<List<TaxonomyNode>> proteinNodes = Arrays.asList(
+				Arrays.asList(ecoli, salmonella),
+				Arrays.asList(ecoli),
+				Arrays.asList(salmonella, firmicutes));
+		for (final List<TaxonomyNode> nodes : proteinNodes) {
+			peptides.add(new PeptideHit("PEPTIDE" + peptides.size(), 0, 0) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				public List<ProteinHit> getProteinHits() {
+					List<ProteinHit> proteinHits = new ArrayList<ProteinHit>();
+					for (TaxonomyNode node : nodes) {
+						ProteinHit proteinHit = new ProteinHit("P");
+						proteinHit.setTaxonomyNode(node);
+						proteinHits.add(proteinHit);
+					}
+					return proteinHits;
+				}
+				@Override
+				public List<SpectrumMatch> getSpectrumMatches() {
+					return new ArrayList<SpectrumMatch>();
+				}
+			});
+		}
+		TaxonomyUtils.determinePeptideTaxonomy(peptides, TaxonomyDefinition.COMMON_ANCESTOR);
+		List<TaxonomyNode> peptideNodes = new ArrayList<TaxonomyNode>();
+		for (PeptideHit peptide : peptides) {
+			peptideNodes.add(peptide.getTaxonomyNode());
+		}
+		assertEquals(Arrays.asList(proteobacteria, ecoli, bacteria), peptideNodes);
+
+		// shared nodes are copied instead of rewired, the copies are merged
+		assertSame(peptideNodes.get(0), peptideNodes.get(1).getParentNode());
+		assertSame(peptideNodes.get(2), peptideNodes.get(0).getParentNode());
+		assertNotSame(ecoli, peptideNodes.get(1));
+		assertSame(proteobacteria, ecoli.getParentNode());
+		assertSame(bacteria, proteobacteria.getParentNode());
+		assertSame(root, bacteria.getParentNode());
+	}
+
+}